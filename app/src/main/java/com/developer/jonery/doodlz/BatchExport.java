@@ -0,0 +1,109 @@
+package com.developer.jonery.doodlz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Linha de comando da exportacao em lote, roda numa JVM comum (./gradlew :app:batchExport):
+ *
+ * BatchExport [-threads N] [-buffers N] [-thumbnail LADO] saida entrada...
+ *
+ * Cada entrada e um arquivo de desenho ou uma pasta, que e lida com as subpastas.
+ * O nome da saida e o caminho dentro da pasta com as barras trocadas por _, entao
+ * varios strokes.checkpoint de aparelhos diferentes nao se sobrescrevem.
+ */
+
+public class BatchExport {
+    private static final int DEFAULT_THUMBNAIL_SIZE = 256;
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int buffers = -1;
+        int thumbnailSize = DEFAULT_THUMBNAIL_SIZE;
+
+        int i = 0;
+        try {
+            for(; i < args.length && args[i].startsWith("-"); i += 2){
+                int value = Integer.parseInt(args[i + 1]);
+                switch (args[i]){
+                    case "-threads":
+                        threads = value;
+                        break;
+                    case "-buffers":
+                        buffers = value;
+                        break;
+                    case "-thumbnail":
+                        thumbnailSize = value;
+                        break;
+                    default:
+                        usage("opcao desconhecida " + args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage("valor invalido pra " + args[i]);
+        }
+        if(args.length - i < 2)
+            usage("falta a pasta de saida ou as entradas");
+
+        File output = new File(args[i]);
+        List<File> inputs = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for(int arg = i + 1; arg < args.length; arg++){
+            File input = new File(args[arg]);
+            if(input.isDirectory())
+                collect(input, "", inputs, names);
+            else {
+                inputs.add(input);
+                names.add(stripExtension(input.getName()));
+            }
+        }
+
+        //sem limite, um buffer por thread
+        if(buffers < 1)
+            buffers = threads;
+        BatchRenderer renderer = new BatchRenderer(output, thumbnailSize, threads, buffers);
+        BatchRenderer.Report report;
+        try {
+            report = renderer.render(inputs, names);
+        } finally {
+            renderer.release();
+        }
+
+        for(String failure : report.getFailures())
+            System.err.println("falhou: " + failure);
+        System.out.println(report + " com " + threads + " threads");
+        if(!report.getFailures().isEmpty())
+            System.exit(1);
+    }
+
+    //junta os arquivos da pasta e das subpastas em ordem, com prefix no nome
+    private static void collect(File directory, String prefix, List<File> inputs, List<String> names){
+        File[] files = directory.listFiles();
+        if(files == null)
+            return;
+        Arrays.sort(files);
+        for(File file : files){
+            if(file.isDirectory())
+                collect(file, prefix + file.getName() + "_", inputs, names);
+            //o diario e o temporario do checkpoint ficam na mesma pasta mas nao sao desenhos
+            else if(file.isFile() && !file.getName().endsWith(".journal") && !file.getName().endsWith(".tmp")){
+                inputs.add(file);
+                names.add(prefix + stripExtension(file.getName()));
+            }
+        }
+    }
+
+    private static String stripExtension(String name){
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static void usage(String error){
+        System.err.println(error);
+        System.err.println("uso: BatchExport [-threads N] [-buffers N] [-thumbnail LADO] saida entrada...");
+        System.exit(2);
+    }
+}
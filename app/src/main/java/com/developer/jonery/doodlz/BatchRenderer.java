@@ -0,0 +1,256 @@
+package com.developer.jonery.doodlz;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exporta muitos desenhos (arquivos do DocumentFile ou checkpoints) pra PNG e
+ * miniatura em paralelo num ForkJoinPool. Cada tarefa pega um Worker de uma fila
+ * com o pixel buffer, o rasterizador e o codificador dele, e devolve no fim, entao
+ * nunca existem mais que maxBuffers buffers do tamanho da imagem, e eles sao
+ * reusados de um desenho pro outro. Fora a fila nao tem nada compartilhado entre
+ * as threads alem dos contadores do Report.
+ */
+
+public class BatchRenderer {
+    //maior area aceita, pra um arquivo ruim nao pedir um buffer gigante
+    public static final int MAX_PIXELS = 8192 * 8192;
+    private static final int BACKGROUND = 0xFFFFFFFF; //igual ao fundo dos tiles
+    private static final int OUTPUT_BUFFER = 64 * 1024;
+    private static final String THUMBNAIL_SUFFIX = "_thumb";
+
+    //numeros de uma exportacao
+    public static class Report {
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong strokes = new AtomicLong();
+        private final AtomicLong pixels = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        private long elapsedNanos;
+
+        public long getDocuments(){
+            return documents.get();
+        }
+
+        public long getStrokes(){
+            return strokes.get();
+        }
+
+        //pixels das imagens em tamanho cheio, sem as miniaturas
+        public long getPixels(){
+            return pixels.get();
+        }
+
+        //bytes de PNG gravados, com as miniaturas
+        public long getBytes(){
+            return bytes.get();
+        }
+
+        //arquivo e motivo de cada desenho que nao foi exportado
+        public List<String> getFailures(){
+            return failures;
+        }
+
+        public long getElapsedNanos(){
+            return elapsedNanos;
+        }
+
+        public double getDocumentsPerSecond(){
+            return elapsedNanos == 0 ? 0 : documents.get() * 1e9 / elapsedNanos;
+        }
+
+        public double getMegapixelsPerSecond(){
+            return elapsedNanos == 0 ? 0 : pixels.get() * 1e3 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d desenhos (%d falhas), %d tracos, %.1f Mpixels, %.1f MB em %.2f s: "
+                            + "%.1f desenhos/s, %.1f Mpixels/s",
+                    documents.get(), failures.size(), strokes.get(), pixels.get() / 1e6,
+                    bytes.get() / 1e6, elapsedNanos / 1e9, getDocumentsPerSecond(), getMegapixelsPerSecond());
+        }
+    }
+
+    //tudo que uma tarefa precisa pra desenhar e codificar um desenho
+    private static class Worker {
+        final StrokeDocument document = new StrokeDocument();
+        final int[] size = new int[2];
+        final StrokeRasterizer rasterizer = new StrokeRasterizer(0, 0);
+        final PngEncoder encoder = new PngEncoder();
+        int[] pixels = new int[0]; //cresce ate o maior desenho visto
+        int[] thumbnailPixels = new int[0];
+    }
+
+    private final File outputDirectory;
+    private final int thumbnailSize;
+    private final int parallelism;
+    private final BlockingQueue<Worker> workers;
+
+    //thumbnailSize e o maior lado da miniatura, 0 pra nao gerar; maxBuffers limita
+    //quantos desenhos ficam na memoria ao mesmo tempo, normalmente igual a parallelism
+    public BatchRenderer(File outputDirectory, int thumbnailSize, int parallelism, int maxBuffers){
+        if(parallelism < 1 || maxBuffers < 1)
+            throw new IllegalArgumentException("parallelism e maxBuffers tem que ser positivos");
+        this.outputDirectory = outputDirectory;
+        this.thumbnailSize = thumbnailSize;
+        this.parallelism = parallelism;
+        workers = new ArrayBlockingQueue<>(maxBuffers);
+        for(int i = 0; i < maxBuffers; i++)
+            workers.add(new Worker());
+    }
+
+    //exporta os arquivos com o nome deles sem a extensao
+    public Report render(List<File> inputs) throws IOException {
+        List<String> names = new ArrayList<>(inputs.size());
+        for(File input : inputs)
+            names.add(baseName(input));
+        return render(inputs, names);
+    }
+
+    //exporta inputs.get(i) pra names.get(i).png e retorna o relatorio; um arquivo
+    //ruim vira uma falha no relatorio e nao para os outros
+    public Report render(List<File> inputs, List<String> names) throws IOException {
+        if(names.size() != inputs.size())
+            throw new IllegalArgumentException("um nome por arquivo");
+        if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+            throw new IOException("nao deu pra criar " + outputDirectory);
+
+        Report report = new Report();
+        long start = System.nanoTime();
+        if(!inputs.isEmpty()){
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new RenderTask(inputs, names, 0, inputs.size(), report));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    //libera os deflaters nativos dos workers
+    public void release(){
+        for(Worker worker : workers)
+            worker.encoder.release();
+    }
+
+    //divide a lista ao meio ate sobrar um arquivo, o roubo de tarefas do pool
+    //equilibra desenhos grandes e pequenos entre as threads
+    private class RenderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> inputs;
+        private final List<String> names;
+        private final int from;
+        private final int to;
+        private final Report report;
+
+        RenderTask(List<File> inputs, List<String> names, int from, int to, Report report){
+            this.inputs = inputs;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1){
+                int middle = (from + to) >>> 1;
+                invokeAll(new RenderTask(inputs, names, from, middle, report),
+                        new RenderTask(inputs, names, middle, to, report));
+                return;
+            }
+
+            File input = inputs.get(from);
+            Worker worker;
+            try {
+                worker = workers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                report.failures.add(input + ": interrompido");
+                return;
+            }
+            try {
+                renderOne(input, names.get(from), worker, report);
+            } catch (IOException | RuntimeException e) {
+                report.failures.add(input + ": " + e);
+            } finally {
+                workers.add(worker);
+            }
+        }
+    }
+
+    private void renderOne(File input, String name, Worker worker, Report report) throws IOException {
+        StrokeDocument document = worker.document;
+        document.clear();
+        int strokeCount = DocumentFile.read(input, document, worker.size);
+        int width = worker.size[0];
+        int height = worker.size[1];
+        if(width == 0 || height == 0 || (long) width * height > MAX_PIXELS)
+            throw new IOException("tamanho nao suportado: " + width + "x" + height);
+
+        int pixelCount = width * height;
+        if(worker.pixels.length < pixelCount)
+            worker.pixels = new int[pixelCount];
+        long bytes = draw(worker, worker.pixels, width, height, 1,
+                new File(outputDirectory, name + ".png"));
+
+        if(thumbnailSize > 0){
+            float scale = Math.min(1f, (float) thumbnailSize / Math.max(width, height));
+            int thumbnailWidth = Math.max(1, Math.round(width * scale));
+            int thumbnailHeight = Math.max(1, Math.round(height * scale));
+            if(worker.thumbnailPixels.length < thumbnailWidth * thumbnailHeight)
+                worker.thumbnailPixels = new int[thumbnailWidth * thumbnailHeight];
+            //a miniatura e desenhada dos vetores, nao reduzida da imagem grande
+            bytes += draw(worker, worker.thumbnailPixels, thumbnailWidth, thumbnailHeight, scale,
+                    new File(outputDirectory, name + THUMBNAIL_SUFFIX + ".png"));
+        }
+
+        report.documents.incrementAndGet();
+        report.strokes.addAndGet(strokeCount);
+        report.pixels.addAndGet(pixelCount);
+        report.bytes.addAndGet(bytes);
+    }
+
+    //desenha o documento do worker em pixels e grava o PNG, retorna quantos bytes
+    private static long draw(Worker worker, int[] pixels, int width, int height, float scale, File output)
+            throws IOException {
+        StrokeRasterizer rasterizer = worker.rasterizer;
+        rasterizer.setTarget(pixels, width, height);
+        rasterizer.setTransform(scale, 0, 0);
+        rasterizer.fill(BACKGROUND);
+        rasterizer.drawDocument(worker.document);
+
+        PngEncoder encoder = worker.encoder;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output), OUTPUT_BUFFER);
+        try {
+            encoder.begin(out, width, height, false);
+            encoder.writeRows(pixels, 0, width, height);
+            encoder.end();
+        } finally {
+            out.close();
+        }
+        return encoder.getBytesWritten();
+    }
+
+    //nome do arquivo sem a extensao
+    private static String baseName(File file){
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,93 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Pinceis do desenho. O ROUND e o traco continuo do Paint com ponta redonda; os
+ * outros sao carimbos (dabs) de uma mascara espalhados ao longo do traco a cada
+ * spacing do diametro. Os carimbos de um traco se juntam numa camada de alpha e
+ * o traco inteiro e pintado com a cor uma vez so, com opacity, entao a
+ * transparencia da cor nao escurece onde os carimbos se sobrepoem. O numero de
+ * cada pincel (ordinal) e gravado nos arquivos, entao a ordem nao pode mudar.
+ * O FILL nao e um pincel de verdade: e o balde de tinta, guardado no documento
+ * como um traco de tres pontos (o toque e os cantos da area pintada) com a
+ * tolerancia de cor no lugar da grossura.
+ */
+
+public enum Brush {
+    //diametro/grossura, spacing, dureza, fluxo, opacidade, proporcao, granulado, variacoes
+    ROUND(1, 0, 1, 1, 1, 1, 0, 1),
+    AIRBRUSH(3, 0.1f, 0, 0.08f, 1, 1, 0, 1), //macio e largo, vai escurecendo aos poucos
+    MARKER(1.2f, 0.08f, 0.8f, 1, 0.6f, 0.3f, 0, 1), //ponta chanfrada a 45 graus, translucido
+    PENCIL(1, 0.2f, 0.9f, 0.6f, 1, 1, 0.5f, 4), //duro com granulado, 4 mascaras alternadas
+    FILL(0, 0, 1, 1, 1, 1, 0, 1); //balde de tinta, nao aparece na lista de pinceis
+
+    //maior quantidade de variacoes de um pincel
+    public static final int MAX_VARIANTS = 4;
+    //o values() copia o array toda vez
+    private static final Brush[] BRUSHES = values();
+
+    final float sizeScale; //diametro do carimbo pela grossura da linha
+    final float spacing; //distancia entre carimbos pelo diametro
+    final float hardness; //fracao do raio com alpha cheio, dali ate a borda cai suave
+    final float flow; //alpha de cada carimbo
+    final float opacity; //alpha do traco inteiro, multiplica o da cor
+    final float aspect; //largura/comprimento do carimbo, 1 e redondo
+    final float grain; //quanto o granulado tira do alpha
+    final int variants; //mascaras diferentes usadas em sequencia, pra o granulado nao repetir
+
+    Brush(float sizeScale, float spacing, float hardness, float flow, float opacity,
+          float aspect, float grain, int variants){
+        this.sizeScale = sizeScale;
+        this.spacing = spacing;
+        this.hardness = hardness;
+        this.flow = flow;
+        this.opacity = opacity;
+        this.aspect = aspect;
+        this.grain = grain;
+        this.variants = variants;
+    }
+
+    //o pincel de numero ordinal, como gravado nos arquivos, ou null se nao existe
+    public static Brush fromOrdinal(int ordinal){
+        return ordinal >= 0 && ordinal < BRUSHES.length ? BRUSHES[ordinal] : null;
+    }
+
+    //se o traco e feito de carimbos, senao e o path do Paint ou o balde
+    public boolean isStamped(){
+        return this != ROUND && this != FILL;
+    }
+
+    //se o traco e um balde de tinta: pontos x/y do toque, left/top e right/bottom
+    //(exclusivos) da area pintada, e a grossura e a tolerancia de cor
+    public boolean isFill(){
+        return this == FILL;
+    }
+
+    //diametro do carimbo pra grossura de linha width, no minimo 1 pixel
+    public float getDabDiameter(float width){
+        return Math.max(1, width * sizeScale);
+    }
+
+    //distancia entre carimbos pra grossura de linha width
+    public float getDabSpacing(float width){
+        return Math.max(0.5f, getDabDiameter(width) * spacing);
+    }
+
+    //alpha de cada carimbo, de 0 a 255
+    public int getFlowAlpha(){
+        return Math.round(flow * 255);
+    }
+
+    //alpha do traco inteiro com a cor color
+    public int getStrokeAlpha(int color){
+        return Math.round((color >>> 24) * opacity);
+    }
+
+    //quanto o traco passa dos pontos pra cada lado, com folga pro anti-alias
+    public float getReach(float width){
+        if(isFill())
+            return 0; //os pontos ja sao o retangulo pintado
+        if(!isStamped())
+            return width / 2 + 2;
+        return DabMask.sideFor(DabCache.quantize(getDabDiameter(width))) / 2f + 1;
+    }
+}
@@ -0,0 +1,125 @@
+package com.developer.jonery.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Desenha os carimbos dos pinceis num Canvas do Android. As mascaras do DabMask
+ * viram bitmaps ALPHA_8 guardados num DabCache, entao cada carimbo e so um
+ * drawBitmap de tamanho fixo, e os carimbos sao espalhados pelo DabSpacer. Os
+ * tracos ao vivo e o replay (tracos do documento, pontas previstas, preview) tem
+ * cada um o seu pincel e espacador, entao refazer o documento no meio de um traco
+ * nao muda o traco. Normalmente o destino e uma camada ALPHA_8 e a cor entra
+ * quando a camada e copiada. Usado numa thread so.
+ */
+
+public class BrushPainter {
+    private final DabCache<Bitmap> dabs;
+    private final Stamper live = new Stamper();
+    private final Stamper replay = new Stamper();
+    private final float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+
+    //mascaras, espacamento e destino de uma sequencia de tracos
+    private class Stamper implements DabSpacer.DabListener {
+        final DabSpacer spacer = new DabSpacer(this);
+        final Bitmap[] masks = new Bitmap[Brush.MAX_VARIANTS];
+        final Paint paint = new Paint(); //alpha do fluxo, a cor so vale fora das camadas
+        int variants = 1;
+        float halfSide; //metade do lado das mascaras
+        int flowAlpha = 255;
+        Canvas target;
+
+        void setBrush(Brush brush, float width){
+            float diameter = brush.getDabDiameter(width);
+            variants = brush.variants;
+            for(int variant = 0; variant < variants; variant++)
+                masks[variant] = dabs.get(brush, diameter, variant);
+            halfSide = DabMask.sideFor(DabCache.quantize(diameter)) / 2f;
+            flowAlpha = brush.getFlowAlpha();
+            paint.setColor(Color.argb(flowAlpha, 0, 0, 0));
+            spacer.setSpacing(brush.getDabSpacing(width));
+        }
+
+        @Override
+        public void onDab(int id, float x, float y, int index) {
+            //posicao inteira, igual ao StrokeRasterizer, e sem filtro nenhum
+            target.drawBitmap(masks[index % variants], Math.round(x - halfSide),
+                    Math.round(y - halfSide), paint);
+        }
+    }
+
+    //maxBytes limita a memoria das mascaras guardadas
+    public BrushPainter(long maxBytes){
+        dabs = new DabCache<Bitmap>(maxBytes) {
+            @Override
+            protected Bitmap create(Brush brush, float diameter, int variant, int side) {
+                byte[] mask = new byte[side * side];
+                DabMask.render(brush, diameter, variant, mask, side);
+                Bitmap bitmap = Bitmap.createBitmap(side, side, Bitmap.Config.ALPHA_8);
+                bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(mask));
+                //sem recycle ao sair do cache: o traco em andamento pode ainda estar
+                //usando a mascara, e o GC libera ela depois
+                return bitmap;
+            }
+        };
+    }
+
+    //os proximos tracos ao vivo usam o pincel, que tem que ser de carimbo, com a grossura
+    public void setLiveBrush(Brush brush, float width){
+        live.setBrush(brush, width);
+    }
+
+    //destino dos carimbos dos tracos ao vivo
+    public void setLiveTarget(Canvas canvas){
+        live.target = canvas;
+    }
+
+    //recebe os segmentos dos tracos ao vivo e carimba no destino
+    public StrokeGeometry.SegmentListener getLiveListener(){
+        return live.spacer;
+    }
+
+    //carimba em canvas o traco guardado com os pontos aceitos de coords[offset] em
+    //diante, igual ao que saiu ao vivo
+    public void drawStroke(Canvas canvas, Brush brush, float width, float[] coords, int offset, int pointCount){
+        replay.setBrush(brush, width);
+        replay.target = canvas;
+        StrokeGeometry.replay(0, coords, offset, pointCount, segment, replay.spacer);
+        replay.target = null;
+    }
+
+    //carimba direto em canvas, com a cor, as retas entre os pointCount pontos x/y;
+    //usado nas pontas previstas, que nao passam pela camada
+    public void drawLines(Canvas canvas, Brush brush, float width, int color, float[] points, int pointCount){
+        replay.setBrush(brush, width);
+        replay.target = canvas;
+        replay.paint.setColor(color);
+        replay.paint.setAlpha((color >>> 24) * replay.flowAlpha / 255);
+
+        replay.spacer.onStrokeStart(0, points[0], points[1]);
+        for(int i = 2; i < pointCount * 2; i += 2){
+            //controle no meio, o quadTo vira reta
+            segment[0] = points[i - 2];
+            segment[1] = points[i - 1];
+            segment[2] = (points[i - 2] + points[i]) / 2;
+            segment[3] = (points[i - 1] + points[i + 1]) / 2;
+            segment[4] = points[i];
+            segment[5] = points[i + 1];
+            replay.spacer.onSegment(0, segment);
+        }
+        replay.target = null;
+    }
+
+    //esquece as mascaras guardadas
+    public void release(){
+        dabs.clear();
+    }
+
+    public DabCache<Bitmap> getCache(){
+        return dabs;
+    }
+}
@@ -0,0 +1,32 @@
+package com.developer.jonery.doodlz;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+
+/**
+ * Fragmento sem tela que sobrevive a mudancas de configuracao (setRetainInstance)
+ * e guarda o DrawingState, que o MainActivityFragment liga de novo na DoodleView nova.
+ */
+
+public class CanvasHolderFragment extends Fragment {
+    public static final String TAG = "canvas holder";
+
+    private final DrawingState state = new DrawingState();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true); //nao e destruido quando a tela gira
+    }
+
+    //so chamado quando a activity termina de verdade
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        state.release();
+    }
+
+    public DrawingState getState(){
+        return state;
+    }
+}
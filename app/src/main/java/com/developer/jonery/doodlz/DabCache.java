@@ -0,0 +1,101 @@
+package com.developer.jonery.doodlz;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU das mascaras de carimbo por pincel, diametro e variacao, limitado pelos
+ * bytes das mascaras. O diametro e arredondado pra meio pixel, entao grossuras
+ * quase iguais usam a mesma mascara. A cor nao entra na chave: a mascara e so
+ * alpha e a cor vem do Paint (ou do blend) na hora de pintar o traco. Quem usa
+ * diz como a mascara vira T (Bitmap no Android, byte[] na JVM) e como liberar.
+ * Nao e thread-safe, cada thread de desenho tem o seu.
+ */
+
+public abstract class DabCache<T> {
+    private final LinkedHashMap<Integer, T> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public DabCache(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    //cria a mascara do pincel com o diametro e variacao, side x side (DabMask.sideFor)
+    protected abstract T create(Brush brush, float diameter, int variant, int side);
+
+    //chamado quando a mascara sai do cache
+    protected void discard(T dab){
+    }
+
+    //diametro que o cache usa no lugar de diameter, arredondado pra meio pixel
+    public static float quantize(float diameter){
+        return Math.max(2, Math.round(diameter * 2)) / 2f;
+    }
+
+    //mascara do pincel pro diametro e variacao, criada se ainda nao esta no cache
+    public T get(Brush brush, float diameter, int variant){
+        int halfPixels = Math.min(0xFFFFF, Math.round(quantize(diameter) * 2));
+        Integer key = brush.ordinal() << 24 | variant << 20 | halfPixels;
+        T dab = entries.get(key);
+        if(dab != null){
+            hits++;
+            return dab;
+        }
+
+        misses++;
+        float quantized = halfPixels / 2f;
+        int side = DabMask.sideFor(quantized);
+        dab = create(brush, quantized, variant, side);
+        entries.put(key, dab);
+        bytes += (long) side * side;
+        trim(key);
+        return dab;
+    }
+
+    //tira as mascaras usadas ha mais tempo ate caber no limite, menos a keep
+    private void trim(Integer keep){
+        Iterator<Map.Entry<Integer, T>> iterator = entries.entrySet().iterator();
+        while(bytes > maxBytes && iterator.hasNext()){
+            Map.Entry<Integer, T> entry = iterator.next();
+            if(entry.getKey().equals(keep))
+                continue;
+            bytes -= sizeOf(entry.getKey());
+            discard(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(int key){
+        int side = DabMask.sideFor((key & 0xFFFFF) / 2f);
+        return (long) side * side;
+    }
+
+    //libera todas as mascaras
+    public void clear(){
+        for(T dab : entries.values())
+            discard(dab);
+        entries.clear();
+        bytes = 0;
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    //bytes das mascaras no cache
+    public long getBytes(){
+        return bytes;
+    }
+
+    public long getHits(){
+        return hits;
+    }
+
+    public long getMisses(){
+        return misses;
+    }
+}
@@ -0,0 +1,73 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Gera a mascara de alpha de um carimbo: um quadrado de side x side bytes, linha
+ * a linha, com o carimbo no centro. O lado e multiplo de 4 pra que as linhas do
+ * bitmap ALPHA_8 nao tenham preenchimento e os bytes possam ser copiados direto.
+ * Em Java puro, usado pelo cache do Android e pelo rasterizador da JVM.
+ */
+
+public class DabMask {
+    //menor largura da borda suave, em pixels, pra carimbos duros terem anti-alias
+    private static final float MIN_FALLOFF = 1;
+    private static final float CHISEL_ANGLE_COS = (float) Math.cos(Math.PI / 4);
+
+    private DabMask(){
+    }
+
+    //lado do quadrado da mascara pra um carimbo de diameter pixels
+    public static int sideFor(float diameter){
+        int side = (int) Math.ceil(diameter) + 2;
+        return (side + 3) & ~3;
+    }
+
+    //desenha em out (side x side) a mascara do pincel com o diametro, variant escolhe
+    //o granulado; o mesmo pincel, diametro e variant dao sempre os mesmos bytes
+    public static void render(Brush brush, float diameter, int variant, byte[] out, int side){
+        float radius = diameter / 2;
+        float center = side / 2f;
+        //a parte dura vai ate hardness do raio, mas sempre sobra MIN_FALLOFF de borda
+        float falloff = Math.max(1 - brush.hardness, Math.min(1, MIN_FALLOFF / radius));
+        float solid = 1 - falloff;
+        float stretch = 1 / brush.aspect;
+
+        for(int y = 0; y < side; y++){
+            float dy = y + 0.5f - center;
+            for(int x = 0; x < side; x++){
+                float dx = x + 0.5f - center;
+                float r;
+                if(brush.aspect == 1)
+                    r = (float) Math.sqrt(dx * dx + dy * dy) / radius;
+                else {
+                    //elipse girada 45 graus, esticada no eixo curto
+                    float u = (dx + dy) * CHISEL_ANGLE_COS;
+                    float v = (dy - dx) * CHISEL_ANGLE_COS * stretch;
+                    r = (float) Math.sqrt(u * u + v * v) / radius;
+                }
+
+                float alpha;
+                if(r >= 1)
+                    alpha = 0;
+                else if(r <= solid)
+                    alpha = 1;
+                else {
+                    //smoothstep de 1 no fim da parte dura ate 0 na borda
+                    float s = (r - solid) / falloff;
+                    alpha = 1 - s * s * (3 - 2 * s);
+                }
+                if(brush.grain > 0 && alpha > 0)
+                    alpha *= 1 - brush.grain * noise(x, y, variant);
+                out[y * side + x] = (byte) Math.round(alpha * 255);
+            }
+        }
+    }
+
+    //ruido de 0 a 1 fixo por pixel e variacao
+    private static float noise(int x, int y, int variant){
+        int h = x * 73856093 ^ y * 19349663 ^ (variant + 1) * 83492791;
+        h ^= h >>> 13;
+        h *= 0x5bd1e995;
+        h ^= h >>> 15;
+        return (h & 0xFFFF) / 65536f;
+    }
+}
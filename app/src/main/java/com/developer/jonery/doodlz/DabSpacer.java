@@ -0,0 +1,102 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Espalha carimbos a distancias iguais ao longo dos segmentos de um traco. Recebe
+ * os quadTo do StrokeGeometry (ao vivo ou no replay), troca cada um por retas e
+ * anda por elas guardando quanto falta ate o proximo carimbo, entao o espacamento
+ * continua igual entre um segmento e outro e o custo e um carimbo por spacing de
+ * comprimento, nao importa de quantas amostras o traco veio. Guarda o estado de
+ * cada ID de pointer como o PointerStateTable.
+ */
+
+public class DabSpacer implements StrokeGeometry.SegmentListener {
+    //recebe o centro de cada carimbo; index conta os carimbos do traco desde 0
+    public interface DabListener {
+        void onDab(int id, float x, float y, int index);
+    }
+
+    //distancia maxima entre a curva e as retas, em pixels
+    private static final float FLATTEN_TOLERANCE = 0.1f;
+    private static final int MAX_SUBDIVISIONS = 32;
+
+    private final DabListener listener;
+    private float spacing = 1; //vale pros tracos comecados depois
+
+    //por ID: ultimo ponto x/y, distancia ate o proximo carimbo e spacing do traco
+    private final float[] state = new float[PointerStateTable.MAX_POINTERS * 4];
+    private final int[] dabCount = new int[PointerStateTable.MAX_POINTERS];
+
+    public DabSpacer(DabListener listener){
+        this.listener = listener;
+    }
+
+    //distancia entre os carimbos dos proximos tracos
+    public void setSpacing(float spacing){
+        if(spacing <= 0)
+            throw new IllegalArgumentException("spacing tem que ser positivo");
+        this.spacing = spacing;
+    }
+
+    //o primeiro carimbo fica no toque
+    @Override
+    public void onStrokeStart(int id, float x, float y) {
+        int i = id * 4;
+        state[i] = x;
+        state[i + 1] = y;
+        state[i + 2] = spacing;
+        state[i + 3] = spacing;
+        dabCount[id] = 1;
+        listener.onDab(id, x, y, 0);
+    }
+
+    @Override
+    public void onSegment(int id, float[] segment) {
+        float x0 = segment[0], y0 = segment[1];
+        float cx = segment[2], cy = segment[3];
+        float x1 = segment[4], y1 = segment[5];
+
+        //o erro de n retas e |p0 - 2c + p1| / (4 n^2)
+        float ddx = x0 - 2 * cx + x1;
+        float ddy = y0 - 2 * cy + y1;
+        float dd = (float) Math.sqrt(ddx * ddx + ddy * ddy);
+        int n = (int) Math.ceil(Math.sqrt(dd / (4 * FLATTEN_TOLERANCE)));
+        n = Math.max(1, Math.min(MAX_SUBDIVISIONS, n));
+
+        for(int k = 1; k < n; k++){
+            float t = (float) k / n;
+            float u = 1 - t;
+            lineTo(id, u * u * x0 + 2 * u * t * cx + t * t * x1,
+                    u * u * y0 + 2 * u * t * cy + t * t * y1);
+        }
+        lineTo(id, x1, y1);
+    }
+
+    //anda do ultimo ponto ate (x, y) soltando os carimbos que caem no caminho
+    private void lineTo(int id, float x, float y){
+        int i = id * 4;
+        float startX = state[i];
+        float startY = state[i + 1];
+        float dx = x - startX;
+        float dy = y - startY;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if(length == 0)
+            return;
+
+        float untilNext = state[i + 2];
+        float traveled = 0;
+        while(untilNext <= length - traveled){
+            traveled += untilNext;
+            float t = traveled / length;
+            listener.onDab(id, startX + dx * t, startY + dy * t, dabCount[id]++);
+            untilNext = state[i + 3];
+        }
+        state[i] = x;
+        state[i + 1] = y;
+        state[i + 2] = untilNext - (length - traveled);
+    }
+
+    //quantos carimbos o traco do ID ja soltou
+    public int getDabCount(int id){
+        return dabCount[id];
+    }
+}
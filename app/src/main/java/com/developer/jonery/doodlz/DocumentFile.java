@@ -0,0 +1,75 @@
+package com.developer.jonery.doodlz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Formato de arquivo de um desenho: cabecalho com magic, versao e tamanho da area
+ * de desenho, seguido dos tracos do StrokeDocument. O checkpoint do StrokeJournal
+ * comeca igual (depois vem os tiles), entao um checkpoint copiado do aparelho
+ * tambem pode ser lido aqui, por exemplo pela exportacao em lote. A versao 2 tem
+ * a camada de cada traco e os tiles do checkpoint por camada; a 1 ainda e lida.
+ */
+
+public class DocumentFile {
+    public static final int MAGIC = 0x444F4F44; //DOOD
+    public static final int VERSION = 2;
+    //versao mais antiga que ainda e lida
+    public static final int MIN_VERSION = 1;
+
+    private DocumentFile(){
+    }
+
+    //grava magic, versao e o tamanho da area de desenho
+    public static void writeHeader(DataOutput out, int width, int height) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    //le o cabecalho, guarda largura e altura em size e retorna a versao
+    public static int readHeader(DataInput in, int[] size) throws IOException {
+        if(in.readInt() != MAGIC)
+            throw new IOException("nao e um desenho");
+        int version = in.readInt();
+        if(version < MIN_VERSION || version > VERSION)
+            throw new IOException("versao nao suportada: " + version);
+        size[0] = in.readInt();
+        size[1] = in.readInt();
+        if(size[0] < 0 || size[1] < 0)
+            throw new IOException("tamanho invalido: " + size[0] + "x" + size[1]);
+        return version;
+    }
+
+    //grava o cabecalho e os tracos do documento em file
+    public static void write(File file, StrokeDocument document, int width, int height) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            writeHeader(out, width, height);
+            document.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    //le o cabecalho pra size e os tracos pro fim do documento, retorna quantos tracos;
+    //o que vier depois dos tracos (os tiles de um checkpoint) e ignorado
+    public static int read(File file, StrokeDocument document, int[] size) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readHeader(in, size);
+            return document.read(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -1,51 +1,372 @@
 package com.developer.jonery.doodlz;
 
 
+import android.app.ActivityManager;
 import android.content.Context;
-import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.Point;
-import android.net.Uri;
-import android.provider.MediaStore;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.print.PrintHelper;
-import android.text.method.MovementMethod;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
 import android.view.View;
 import android.widget.Toast;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
 
 /**
  * Created by Jonery on 07/10/2016.
  */
 
 public class DoodleView extends View {
-    //define se o usuario mexeu o dedo suficiente pra desenhar uma linha
-    private static final float TOUCH_TOLERANCE = 10;
+    //quanto o usuario precisa mexer o dedo pra aceitar uma amostra: pouco quando o
+    //dedo vai devagar ou faz curva, mais quando vai rapido e reto
+    private static final float MIN_TOUCH_TOLERANCE = 3;
+    private static final float MAX_TOUCH_TOLERANCE = 16;
+    //distancia maxima de um ponto tirado pela simplificacao ate o traco guardado
+    private static final float SIMPLIFY_TOLERANCE = 1;
+    //fracao do heap que os tiles de todas as camadas podem usar antes de ir pro disco
+    private static final float CANVAS_HEAP_FRACTION = 0.25f;
+    //maximo de camadas, menos em aparelhos com pouca memoria
+    private static final int MAX_LAYERS = 8;
+    private static final int LOW_RAM_MAX_LAYERS = 3;
+    //lado dos tiles que o undo salva de cada traco, divide o TiledCanvas.TILE_SIZE
+    private static final int UNDO_TILE_SIZE = 64;
 
-    private Bitmap bitmap; //area de desenho pra mostrar ou salvar
-    private Canvas bitmapCanvas; //usado pra desenhar no bitmap
-    private final Paint paintScreen; //usado pra desenhar o bitmap na tela
-    private final Paint paintLine; //usado pra desenhar linhas no bitmap
+    //altura das faixas onde os overlays de debug escrevem o texto, embaixo e em cima
+    private static final int OVERLAY_TEXT_HEIGHT = 56;
+    //quanto a frente a ponta dos tracos e prevista, mais ou menos um frame
+    public static final long DEFAULT_PREDICTION_MS = 16;
+    //a ponta prevista nunca passa disso alem da ultima amostra
+    private static final float MAX_PREDICTION_DISTANCE = 48;
+    //com uma ponta na tela, de quanto em quanto tempo a thread de render acorda pra ver
+    //se o dedo parou
+    private static final long TAIL_CHECK_MS = 16;
+    //eventos que cabem na fila entre a thread de UI e a de render
+    private static final int TOUCH_QUEUE_CAPACITY = 4096;
+    //memoria das mascaras de carimbo guardadas
+    private static final long MAX_DAB_BYTES = 1024 * 1024;
+    //raio da borracha de tracos em volta do dedo, em pixels da tela
+    private static final float ERASER_RADIUS = 16;
+    //um segundo dedo que chega ate esse tempo depois do primeiro comeca um gesto de
+    //zoom e deslocamento em vez de outro traco
+    private static final long GESTURE_WINDOW_MS = 150;
+    //cor da tela em volta do desenho, quando ele fica menor que a tela ou sai dela
+    private static final int OUTSIDE_COLOR = 0xFF9E9E9E;
 
-    //Maps dos caminhos que estao sendo desenhados e pontos desses caminhos
-    //O primeiro é pra pegar o ponto que os dedos estão
-    private final Map<Integer, Path> pathMap = new HashMap<>();
-    //Est mantem aonde começou pra poder desenhar a linha
-    private final Map<Integer, Point> previousPointMap = new HashMap<>();
+    //onde os tracos sao desenhados na tela
+    public enum RenderMode {
+        VIEW, //no onDraw, na thread de UI
+        SURFACE //numa SurfaceView, pela RenderThread
+    }
+
+    //desenho que sobrevive a view (tiles, documento, undo, diario), guardado fora dela
+    //pra continuar igual depois de girar a tela
+    private DrawingState state;
+    private LayerStack layers; //camadas em tiles pra mostrar ou salvar, o traco vai pra ativa
+    private final Paint paintLine; //usado pra desenhar linhas nos tiles
+
+    //caminhos que estao sendo desenhados, um por ID de pointer
+    private final Path[] paths = new Path[PointerStateTable.MAX_POINTERS];
+    //filtro, suavizacao e pontos aceitos de cada traco, sem Android; os segmentos
+    //viram Path e camada no geometryListener
+    private final StrokeGeometry geometry;
+    //ultimo ponto, fim do path e retangulo de cada pointer, do geometry
+    private final PointerStateTable pointers;
+
+    //camada de cada traco em andamento: cada segmento novo e desenhado nela uma vez so,
+    //entao o frame so copia a camada em vez de desenhar o path inteiro de novo.
+    //E ALPHA_8 com a tinta opaca, a cor e a transparencia vem do paintLayer ao copiar,
+    //assim as pontas redondas sobrepostas dos segmentos nao ficam mais escuras
+    private final Bitmap[] strokeLayers = new Bitmap[PointerStateTable.MAX_POINTERS];
+    private final Canvas layerCanvas = new Canvas();
+    private final Paint paintInk; //paintLine opaco, desenha os segmentos na camada
+    private final Paint paintLayer; //copia a camada pra tela com a cor da linha
+    private final Path segmentPath = new Path(); //o segmento novo de um traco
+    private final Rect layerRect = new Rect(); //parte da camada copiada ou limpa
+
+    //ponta temporaria de cada traco, da ultima amostra ate onde o dedo deve estar;
+    //e trocada a cada amostra real e nunca vai pros tiles
+    private final MotionPredictor predictor = new MotionPredictor(DEFAULT_PREDICTION_MS, MAX_PREDICTION_DISTANCE);
+    private final boolean[] hasTail = new boolean[PointerStateTable.MAX_POINTERS];
+    //por pointer: ultima amostra x/y e previsao x/y
+    private final float[] tails = new float[PointerStateTable.MAX_POINTERS * 4];
+    //por pointer: retangulo da ponta, do fim do path ate a previsao
+    private final float[] tailBounds = new float[PointerStateTable.MAX_POINTERS * 4];
+    private final float[] predicted = new float[2];
+    private final Path tailPath = new Path(); //reusado pra desenhar cada ponta
+    private final Paint paintTail; //paintLine com a opacidade da camada ativa
+
+    //documento com todos os tracos terminados, os tiles sao um cache dele
+    private StrokeDocument document;
+    //grade com os tracos do documento, pra achar quem esta num lugar sem olhar todos
+    private StrokeIndex index;
+    private final Path replayPath = new Path(); //usado pra redesenhar os tracos do documento
+    private final float[] replaySegment = new float[PointerStateTable.SEGMENT_SIZE];
+    //monta o replayPath com os segmentos de um traco do documento
+    private final StrokeGeometry.SegmentListener replayListener = new StrokeGeometry.SegmentListener() {
+        @Override
+        public void onStrokeStart(int id, float x, float y) {
+            replayPath.moveTo(x, y);
+        }
+
+        @Override
+        public void onSegment(int id, float[] segment) {
+            replayPath.quadTo(segment[2], segment[3], segment[4], segment[5]);
+        }
+    };
+    private final Paint paintReplay; //paintLine com a cor e grossura de cada traco
+    private final float[] strokeBounds = new float[4]; //retangulo de um traco do documento
+
+    //pinceis de carimbo: as mascaras ficam em cache e cada carimbo e um drawBitmap, na
+    //camada do traco ao vivo ou, no replay, numa camada do tamanho do traco
+    private final BrushPainter brushPainter = new BrushPainter(MAX_DAB_BYTES);
+    private Brush brush = Brush.ROUND; //pincel dos proximos tracos
+    //pincel e folga de cada traco em andamento, fixos desde o toque
+    private final Brush[] strokeBrushes = new Brush[PointerStateTable.MAX_POINTERS];
+    private final float[] strokeReach = new float[PointerStateTable.MAX_POINTERS];
+    private Bitmap replayLayer; //cresce ate o maior traco de carimbo refeito
+    private final Rect replaySource = new Rect();
+    private final Rect replayDestination = new Rect();
+    private final float[] tailPoints = new float[6]; //fim do path, ultima amostra e previsao
+
+    //borracha de tracos: com ela ligada o toque apaga os tracos inteiros da camada
+    //ativa que o dedo encosta, em vez de desenhar
+    private boolean strokeEraser;
+    private final boolean[] erasing = new boolean[PointerStateTable.MAX_POINTERS];
+    private final float[] eraserPoints = new float[PointerStateTable.MAX_POINTERS * 2]; //ultimo x/y
+    private int[] eraseHits = new int[64]; //tracos achados no indice
+    private final Rect eraseRect = new Rect(); //area dos tracos apagados
+
+    //balde de tinta: com ele ligado um toque pinta a area da cor do toque na camada
+    //ativa. O preenchimento roda no FloodFiller e so a area pintada volta pros tiles
+    private static final int FILL_TOLERANCE = 32;
+    private boolean bucketFill;
+    private boolean fillPending; //os toques do balde sao ignorados enquanto um roda
+    private final float[] fillPoints = new float[6]; //toque e retangulo pintado
+    //o replay do balde roda na thread de quem redesenha, com os pixels so do retangulo dele
+    private final ScanlineFill replayFill = new ScanlineFill();
+    private int[] replayFillPixels = new int[0];
+    private final int[] replayFillBounds = new int[4];
+
+    //undo/redo: cada traco guarda so os tiles que ele mudou, comprimidos
+    private UndoHistory history;
+    private final TileCodec tileCodec = new TileCodec();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int[] tilePixels = new int[0]; //pixels dos tiles sendo salvos
+    private int[] restorePixels = new int[0]; //pixels descomprimidos de uma entrada
+
+    //zoom e deslocamento da tela: os toques vao pra fila ja em coordenadas do desenho,
+    //e o desenho, os tracos do documento e a area suja ficam nelas. So as camadas dos
+    //tracos ao vivo ficam em coordenadas da tela, desenhadas com o viewMatrix
+    private Viewport viewport;
+    private final Matrix viewMatrix = new Matrix();
+    private final float[] mappedRect = new float[4];
+    private final Rect contentClip = new Rect(); //o clipRect em coordenadas do desenho
+    private final Rect screenDirty = new Rect(); //a area suja em coordenadas da tela
+    //de longe o desenho vem da piramide de tiles, filtrada
+    private final Paint paintLevel = new Paint(Paint.FILTER_BITMAP_FLAG);
+    //gesto de dois dedos: os dois primeiros dedos mexem o viewport ate todos sairem
+    private boolean gesturing;
+    private final int[] gestureIds = new int[2];
+    private float gestureX, gestureY, gestureSpan; //meio e distancia dos dedos no ultimo evento
+
+    //area suja acumulada desde o ultimo frame, so ela e invalidada, em coordenadas do desenho
+    private final Rect dirtyRect = new Rect();
+    private final Rect clipRect = new Rect(); //usado no onDraw pra ler o clip
+
+    //overlay de debug que mostra quanto da tela foi redesenhado
+    private boolean showRepaintOverlay = false;
+    private final Paint paintOverlay;
+    private final Paint paintOverlayText;
+    private long repaintedPixels; //soma da area redesenhada
+    private long repaintedFrames; //frames desenhados desde que ligou o overlay
+
+    //tempos de cada fase, latencia do toque e frames perdidos, sempre gravados;
+    //o overlay mostra os percentis na faixa de cima
+    private FrameMetrics metrics;
+    private boolean showMetricsOverlay = false;
+    private final StringBuilder metricsText = new StringBuilder(128);
+    private FrameMetrics exportedMetrics; //copia lida fora do lock pra exportar
+
+    //modo SURFACE: a thread de UI so coloca os toques na fila e a RenderThread aplica e
+    //desenha. Com a thread rodando, tudo que mexe nos tiles, documento, undo e tracos em
+    //andamento sincroniza no LayerStack
+    private RenderMode renderMode = RenderMode.VIEW;
+    private SurfaceView renderSurface; //fica embaixo desta view, que nao desenha nada no modo SURFACE
+    private boolean surfaceReady;
+    private RenderThread renderThread; //null no modo VIEW ou sem surface
+    private final TouchEventQueue touchQueue = new TouchEventQueue(TOUCH_QUEUE_CAPACITY);
+
+    //aplica os eventos da fila, na thread de render ou na de UI quando a thread para
+    private final TouchEventQueue.Consumer touchConsumer = new TouchEventQueue.Consumer() {
+        @Override
+        public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+            if(type == TouchEventQueue.CANCEL)
+                touchCancelled(pointerId);
+            else if(type == TouchEventQueue.DOWN){
+                if(strokeEraser)
+                    eraserStarted(x, y, pointerId);
+                else if(bucketFill)
+                    fillAt(x, y);
+                else
+                    touchStarted(x, y, pointerId, time);
+            }
+            else if(PointerStateTable.isValidId(pointerId) && erasing[pointerId]){
+                if(type == TouchEventQueue.UP)
+                    erasing[pointerId] = false;
+                else
+                    eraseTo(pointerId, x, y);
+            }
+            else if(type == TouchEventQueue.UP)
+                touchEnded(pointerId);
+            else if(pointers.isActive(pointerId))
+                addSample(pointerId, x, y, time);
+        }
+    };
+
+    //modo VIEW: os toques que chegaram entre dois vsyncs sao aplicados de uma vez
+    //no inicio do frame, e so invalida se alguma coisa mudou
+    private boolean framePosted;
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            framePosted = false;
+            //a RenderThread pode ter comecado depois do callback ser pedido
+            if(renderThread != null)
+                return;
+            touchQueue.drain(touchConsumer);
+            //enquanto tem ponta na tela os frames continuam, pra ela sair quando o dedo parar
+            if(expireTails(SystemClock.uptimeMillis()))
+                scheduleFrame();
+            invalidateDirtyRegion();
+        }
+    };
+
+    private boolean tailsShowing; //usado so na thread de render
+    private final RenderThread.Renderer renderer = new RenderThread.Renderer() {
+        @Override
+        public boolean prepareFrame(Rect dirty) {
+            synchronized (layers){
+                touchQueue.drain(touchConsumer);
+                tailsShowing = expireTails(SystemClock.uptimeMillis());
+                if(dirtyRect.isEmpty())
+                    return false;
+
+                takeDirtyRegion(dirty);
+                return !dirty.isEmpty();
+            }
+        }
+
+        @Override
+        public long getIdleTimeoutMs() {
+            return tailsShowing ? TAIL_CHECK_MS : 0;
+        }
+
+        @Override
+        public void drawFrame(Canvas canvas, Rect dirty) {
+            synchronized (layers){
+                //o lockCanvas pode ter aumentado o retangulo pro buffer de tras ficar igual
+                clipRect.set(dirty);
+                drawContent(canvas);
+            }
+        }
+    };
+
+    private final SurfaceHolder.Callback surfaceCallback = new SurfaceHolder.Callback() {
+        @Override
+        public void surfaceCreated(SurfaceHolder holder) {
+            surfaceReady = true;
+            startRenderThread();
+        }
+
+        @Override
+        public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            //a surface nova nao tem nada, desenha tudo
+            if(renderThread != null)
+                synchronized (layers){
+                    invalidateAll();
+                }
+        }
+
+        @Override
+        public void surfaceDestroyed(SurfaceHolder holder) {
+            //a thread tem que parar antes da surface sumir
+            surfaceReady = false;
+            stopRenderThread();
+        }
+    };
+
+    //adapta os segmentos do traco ao vivo: path pro commit, camada pra tela e area suja
+    private final StrokeGeometry.SegmentListener geometryListener = new StrokeGeometry.SegmentListener() {
+        @Override
+        public void onStrokeStart(int id, float x, float y) {
+            //move pras coordenadas do toque
+            paths[id].moveTo(x, y);
+
+            //o primeiro carimbo fica no toque
+            if(strokeBrushes[id].isStamped()){
+                layerCanvas.setBitmap(strokeLayers[id]);
+                layerCanvas.setMatrix(viewMatrix);
+                brushPainter.getLiveListener().onStrokeStart(id, x, y);
+            }
+
+            //a ponta redonda ja aparece no toque
+            addDirtyRegion(id, x, y, x, y);
+        }
+
+        @Override
+        public void onSegment(int id, float[] segment) {
+            layerCanvas.setBitmap(strokeLayers[id]);
+            layerCanvas.setMatrix(viewMatrix); //a camada fica em coordenadas da tela
+            if(strokeBrushes[id].isStamped())
+                //os carimbos novos vao direto pra camada, o path so serve pro ROUND
+                brushPainter.getLiveListener().onSegment(id, segment);
+            else {
+                //move o path para a nova localizacao
+                paths[id].quadTo(segment[2], segment[3], segment[4], segment[5]);
+
+                //e desenha so o segmento novo na camada do traco
+                segmentPath.reset();
+                segmentPath.moveTo(segment[0], segment[1]);
+                segmentPath.quadTo(segment[2], segment[3], segment[4], segment[5]);
+                layerCanvas.drawPath(segmentPath, paintInk);
+            }
+
+            //a curva fica dentro do triangulo inicio, controle e fim
+            addDirtyRegion(id, Math.min(segment[0], Math.min(segment[2], segment[4])),
+                    Math.min(segment[1], Math.min(segment[3], segment[5])),
+                    Math.max(segment[0], Math.max(segment[2], segment[4])),
+                    Math.max(segment[1], Math.max(segment[3], segment[5])));
+        }
+    };
 
     //este construtor inicializa o doodleView
     public DoodleView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        paintScreen = new Paint();
+        geometry = new StrokeGeometry(MIN_TOUCH_TOLERANCE, MAX_TOUCH_TOLERANCE,
+                SIMPLIFY_TOLERANCE, geometryListener);
+        pointers = geometry.getPointers();
 
         //define os sets iniciais da linha
         paintLine = new Paint();
@@ -54,29 +375,416 @@ public class DoodleView extends View {
         paintLine.setStyle(Paint.Style.STROKE); //solid line
         paintLine.setStrokeWidth(5); //line width
         paintLine.setStrokeCap(Paint.Cap.ROUND); //rounded ends
+        paintReplay = new Paint(paintLine);
+        paintInk = new Paint(paintLine);
+        paintTail = new Paint(paintLine);
+        paintLayer = new Paint();
+        brushPainter.setLiveTarget(layerCanvas);
+
+        //overlay de debug: pinta a area do clip de vermelho transparente
+        paintOverlay = new Paint();
+        paintOverlay.setColor(Color.argb(48, 255, 0, 0));
+        paintOverlay.setStyle(Paint.Style.FILL);
+        paintOverlayText = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paintOverlayText.setColor(Color.RED);
+        paintOverlayText.setTextSize(32);
+
+        //ate o fragmento entregar o estado guardado, comeca com um desenho vazio
+        setDrawingState(new DrawingState());
     }
 
-    //método que define o tamanho do bitmap, ocorre toda vez que muda o tamanho da tela (rotacao)
+    //liga a view a um desenho que ja existe, por exemplo depois de girar a tela;
+    //os tiles sao reusados e nada e redesenhado
+    public void setDrawingState(DrawingState drawingState){
+        state = drawingState;
+        document = state.document;
+        index = state.index;
+        history = state.history;
+        layers = state.layers;
+        metrics = state.metrics;
+        viewport = state.viewport;
+        updateViewMatrix();
+        paintLine.setColor(state.drawingColor);
+        paintLine.setStrokeWidth(state.lineWidth);
+        brush = state.brush;
+        strokeEraser = state.strokeEraser;
+        bucketFill = state.bucketFill;
+
+        if(layers != null){
+            ensureCanvasSize(getWidth(), getHeight());
+            if(state.needsRecovery)
+                recoverJournal();
+        }
+        invalidate();
+    }
+
+    //método que define o tamanho da area de desenho, ocorre toda vez que muda o tamanho da tela (rotacao)
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        //pega o tamanho do doodleView, e o Bitmap tem config de 1 byte por item
-        //alpha, red, green e blue em cada byte
-        bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        bitmapCanvas = new Canvas(bitmap); //inicializa o canvas que desenha diretamente no bitmap
-        bitmap.eraseColor(Color.WHITE); //apaga o bitmap para branco, pois este iniciliza em Black
+        if(layers == null){
+            //a area e quadrada com o lado maior da tela, pra caber nas duas orientacoes,
+            //mas os tiles so sao alocados quando alguem desenha neles
+            int side = Math.max(w, h);
+            ActivityManager activityManager =
+                    (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+            boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+            layers = new LayerStack(Math.max(side, state.minCanvasWidth),
+                    Math.max(side, state.minCanvasHeight),
+                    TiledCanvas.tilesForHeapFraction(CANVAS_HEAP_FRACTION),
+                    lowRam ? LOW_RAM_MAX_LAYERS : MAX_LAYERS,
+                    new File(getContext().getCacheDir(), "tiles"));
+            state.layers = layers;
+            index.ensureSize(layers.getWidth(), layers.getHeight());
+            updateViewport();
+
+            //os tiles novos sao refeitos a partir do diario ou do documento
+            if(state.needsRecovery)
+                recoverJournal();
+            else {
+                index.rebuild(document);
+                redrawDocument();
+            }
+        }
+        else
+            ensureCanvasSize(w, h); //so cresce, os tiles e o conteudo continuam no lugar
+
+        //as camadas dos tracos tem o tamanho da view, sao criadas de novo no proximo toque
+        for(int id = 0; id < strokeLayers.length; id++)
+            if(!pointers.isActive(id))
+                strokeLayers[id] = null;
+
+        //a surface pode ter ficado pronta antes da area de desenho existir
+        startRenderThread();
+    }
+
+    //define a SurfaceView usada no modo SURFACE, que deve ficar embaixo desta view
+    public void setRenderSurface(SurfaceView surface){
+        renderSurface = surface;
+        renderSurface.getHolder().addCallback(surfaceCallback);
+        renderSurface.setVisibility(renderMode == RenderMode.SURFACE ? VISIBLE : GONE);
+    }
+
+    //troca onde os tracos sao desenhados, pode ser chamado no meio de um traco
+    public void setRenderMode(RenderMode mode){
+        if(mode == renderMode || renderSurface == null)
+            return;
+
+        renderMode = mode;
+        if(mode == RenderMode.VIEW)
+            stopRenderThread();
+        //a thread de render comeca quando a surface for criada
+        renderSurface.setVisibility(mode == RenderMode.SURFACE ? VISIBLE : GONE);
+        invalidate();
+    }
+
+    public RenderMode getRenderMode(){
+        return renderMode;
+    }
+
+    //comeca a desenhar na surface se o modo SURFACE esta ligado e tudo esta pronto
+    private void startRenderThread(){
+        if(renderMode != RenderMode.SURFACE || !surfaceReady || layers == null || renderThread != null)
+            return;
+
+        //o que o Choreographer ainda nao aplicou vai antes da thread comecar a consumir a fila
+        flushFrame();
+        renderThread = new RenderThread(renderSurface.getHolder(), renderer);
+        setViewDirty(); //o primeiro frame desenha tudo
+        renderThread.start();
+        invalidate(); //esta view fica transparente
+    }
+
+    //para a thread de render e aplica aqui o que ficou na fila
+    private void stopRenderThread(){
+        if(renderThread == null)
+            return;
+
+        renderThread.quit();
+        renderThread = null;
+        //depois do join a thread de UI e quem consome a fila
+        touchQueue.drain(touchConsumer);
+        dirtyRect.setEmpty();
+        invalidate();
+    }
+
+    //manda redesenhar a tela inteira, em qualquer um dos modos
+    private void invalidateAll(){
+        if(renderThread != null){
+            setViewDirty();
+            renderThread.wake();
+        }
+        else
+            invalidate();
+    }
+
+
+    //define o tamanho minimo da area de desenho, que pode ser maior que a tela
+    public void setCanvasSize(int width, int height){
+        state.minCanvasWidth = width;
+        state.minCanvasHeight = height;
+        if(layers != null)
+            ensureCanvasSize(width, height);
+    }
+
+    //aumenta as camadas e a grade do indice junto
+    private void ensureCanvasSize(int width, int height){
+        layers.ensureSize(width, height);
+        index.ensureSize(layers.getWidth(), layers.getHeight());
+        updateViewport();
+    }
+
+    //o viewport segue o tamanho da view e do desenho
+    private void updateViewport(){
+        viewport.setSizes(getWidth(), getHeight(), layers.getWidth(), layers.getHeight());
+        updateViewMatrix();
+    }
+
+    //volta pra 1:1 com o canto do desenho no canto da tela
+    public void resetZoom(){
+        synchronized (layers){
+            viewport.reset();
+            updateViewport();
+            invalidateAll();
+        }
+    }
+
+    //o mesmo zoom e deslocamento do viewport, pra desenhar nas camadas dos tracos;
+    //as tolerancias das amostras continuam em pixels da tela
+    private void updateViewMatrix(){
+        viewMatrix.setScale(viewport.getScale(), viewport.getScale());
+        viewMatrix.postTranslate(viewport.getTranslateX(), viewport.getTranslateY());
+        geometry.setScale(viewport.getScale());
+    }
+
+    //poe em content o retangulo screen da tela em coordenadas do desenho, arredondado pra fora
+    private void screenToContent(Rect screen, Rect content){
+        mappedRect[0] = screen.left;
+        mappedRect[1] = screen.top;
+        mappedRect[2] = screen.right;
+        mappedRect[3] = screen.bottom;
+        viewport.toContent(mappedRect);
+        content.set((int) Math.floor(mappedRect[0]), (int) Math.floor(mappedRect[1]),
+                (int) Math.ceil(mappedRect[2]), (int) Math.ceil(mappedRect[3]));
+    }
+
+    //poe em screen o retangulo content do desenho em coordenadas da tela, com um pixel
+    //a mais de cada lado pro antialias da escala
+    private void contentToScreen(float left, float top, float right, float bottom, Rect screen){
+        mappedRect[0] = left;
+        mappedRect[1] = top;
+        mappedRect[2] = right;
+        mappedRect[3] = bottom;
+        viewport.toScreen(mappedRect);
+        screen.set((int) Math.floor(mappedRect[0]) - 1, (int) Math.floor(mappedRect[1]) - 1,
+                (int) Math.ceil(mappedRect[2]) + 1, (int) Math.ceil(mappedRect[3]) + 1);
     }
 
-    //limpa o bitmap
+    //redesenha todos os tracos do documento nos tiles
+    private void redrawDocument(){
+        layers.clear();
+        drawDocumentStrokes(0);
+    }
+
+    //camada onde o traco do documento e desenhado; um documento com mais camadas do
+    //que o aparelho aceita junta as de cima na ultima
+    private int layerOf(int stroke){
+        return Math.min(document.getLayer(stroke), layers.getLayerCount() - 1);
+    }
+
+    //desenha nos tiles os tracos do documento a partir de first, cada um na sua camada
+    private void drawDocumentStrokes(int first){
+        layers.ensureLayerCount(document.getLayerCount());
+        for(int stroke = first; stroke < document.getStrokeCount(); stroke++)
+            drawDocumentStroke(stroke);
+    }
+
+    //desenha um traco do documento nos tiles da camada dele
+    private void drawDocumentStroke(int stroke){
+        if(document.getBrush(stroke).isFill()){
+            drawFillDocumentStroke(stroke);
+            return;
+        }
+        if(document.getBrush(stroke).isStamped()){
+            drawStampedDocumentStroke(stroke);
+            return;
+        }
+
+        replayPath.reset();
+        StrokeGeometry.replay(stroke, document.getCoords(), document.getCoordOffset(stroke),
+                document.getPointCount(stroke), replaySegment, replayListener);
+        paintReplay.setColor(document.getColor(stroke));
+        paintReplay.setStrokeWidth(document.getWidth(stroke));
+
+        document.getBounds(stroke, strokeBounds);
+        float pad = document.getWidth(stroke) / 2 + 2;
+        int layer = layerOf(stroke);
+        layers.getCanvas(layer).drawPath(replayPath, paintReplay, strokeBounds[0] - pad, strokeBounds[1] - pad,
+                strokeBounds[2] + pad, strokeBounds[3] + pad);
+        layers.invalidate(layer, strokeBounds[0] - pad, strokeBounds[1] - pad,
+                strokeBounds[2] + pad, strokeBounds[3] + pad);
+        replayPath.reset();
+    }
+
+    //refaz os carimbos do traco numa camada do tamanho dele e pinta ela nos tiles com
+    //a cor, igual ao que o fim do traco ao vivo faz com a camada dele
+    private void drawStampedDocumentStroke(int stroke){
+        Brush strokeBrush = document.getBrush(stroke);
+        float width = document.getWidth(stroke);
+        float reach = strokeBrush.getReach(width);
+        document.getBounds(stroke, strokeBounds);
+        replayDestination.set((int) Math.floor(strokeBounds[0] - reach), (int) Math.floor(strokeBounds[1] - reach),
+                (int) Math.ceil(strokeBounds[2] + reach), (int) Math.ceil(strokeBounds[3] + reach));
+        if(!replayDestination.intersect(0, 0, layers.getWidth(), layers.getHeight()))
+            return;
+
+        int layerWidth = replayDestination.width();
+        int layerHeight = replayDestination.height();
+        if(replayLayer == null || replayLayer.getWidth() < layerWidth || replayLayer.getHeight() < layerHeight){
+            int oldWidth = replayLayer == null ? 0 : replayLayer.getWidth();
+            int oldHeight = replayLayer == null ? 0 : replayLayer.getHeight();
+            replayLayer = Bitmap.createBitmap(Math.max(layerWidth, oldWidth), Math.max(layerHeight, oldHeight),
+                    Bitmap.Config.ALPHA_8);
+        }
+
+        //limpa so a parte que o traco usa e carimba com a origem no canto dela
+        replaySource.set(0, 0, layerWidth, layerHeight);
+        layerCanvas.setBitmap(replayLayer);
+        layerCanvas.setMatrix(null); //o zoom so vale pras camadas dos tracos ao vivo
+        layerCanvas.save();
+        layerCanvas.clipRect(replaySource);
+        layerCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        layerCanvas.translate(-replayDestination.left, -replayDestination.top);
+        brushPainter.drawStroke(layerCanvas, strokeBrush, width, document.getCoords(),
+                document.getCoordOffset(stroke), document.getPointCount(stroke));
+        layerCanvas.restore();
+        layerCanvas.setBitmap(null);
+
+        setLayerPaint(strokeBrush, document.getColor(stroke));
+        int layer = layerOf(stroke);
+        layers.getCanvas(layer).drawBitmap(replayLayer, replaySource, replayDestination, paintLayer);
+        layers.invalidate(layer, replayDestination.left, replayDestination.top,
+                replayDestination.right, replayDestination.bottom);
+    }
+
+    //refaz o balde de tinta lendo so o retangulo guardado da camada, entao o
+    //preenchimento nao passa dele mesmo que um traco de borda tenha sido apagado
+    private void drawFillDocumentStroke(int stroke){
+        if(document.getPointCount(stroke) < 3)
+            return;
+
+        float[] coords = document.getCoords();
+        int offset = document.getCoordOffset(stroke);
+        int left = Math.max(0, (int) coords[offset + 2]);
+        int top = Math.max(0, (int) coords[offset + 3]);
+        int right = Math.min(layers.getWidth(), (int) coords[offset + 4]);
+        int bottom = Math.min(layers.getHeight(), (int) coords[offset + 5]);
+        if(left >= right || top >= bottom)
+            return;
+
+        int width = right - left;
+        int height = bottom - top;
+        if(replayFillPixels.length < width * height)
+            replayFillPixels = new int[width * height];
+        int layer = layerOf(stroke);
+        TiledCanvas canvas = layers.getCanvas(layer);
+        canvas.readPixels(replayFillPixels, 0, width, left, top, width, height);
+        if(replayFill.fill(replayFillPixels, width, height, (int) coords[offset] - left, (int) coords[offset + 1] - top,
+                document.getColor(stroke), (int) document.getWidth(stroke)) == 0)
+            return;
+
+        //so o que foi pintado volta pros tiles
+        int[] bounds = replayFillBounds;
+        replayFill.getBounds(bounds);
+        canvas.writePixels(replayFillPixels, bounds[1] * width + bounds[0], width, left + bounds[0], top + bounds[1],
+                bounds[2] - bounds[0], bounds[3] - bounds[1]);
+        layers.invalidate(layer, left + bounds[0], top + bounds[1], left + bounds[2] - 1, top + bounds[3] - 1);
+    }
+
+    //paintLayer pinta uma camada de alpha com a cor e a opacidade do pincel
+    private void setLayerPaint(Brush strokeBrush, int color){
+        paintLayer.setColor(color);
+        paintLayer.setAlpha(strokeBrush.getStrokeAlpha(color));
+    }
+
+    //grava agora o que esta no buffer do diario, chamado quando o app sai da tela
+    public void flushJournal(){
+        if(state.journal != null)
+            state.journal.flush();
+    }
+
+    //le o checkpoint (documento e tiles prontos) e so desenha os tracos do fim do diario
+    private void recoverJournal(){
+        document.clear();
+        history.clear();
+        layers.clear();
+
+        int rasterized = state.journal.recover(document, layers);
+        state.needsRecovery = false;
+        index.rebuild(document);
+        if(rasterized == StrokeJournal.REDRAW_ALL)
+            redrawDocument();
+        else
+            drawDocumentStrokes(rasterized);
+        invalidateAll();
+    }
+
+    //quando o diario fica grande, grava um checkpoint em segundo plano com uma copia
+    //do documento e um snapshot dos tiles de cada camada, e o diario recomeca vazio
+    private void checkpointJournalIfNeeded(){
+        if(state.journal == null || !state.journal.needsCheckpoint())
+            return;
+
+        final TiledCanvas.Snapshot[] snapshots = layers.snapshotLayers();
+        state.journal.checkpoint(document.copy(), snapshots, layers.getWidth(), layers.getHeight(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        //os snapshots so podem ser liberados na thread principal
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                for(TiledCanvas.Snapshot snapshot : snapshots)
+                                    snapshot.release();
+                            }
+                        });
+                    }
+                });
+    }
+
+    //retorna o documento com os tracos terminados
+    public StrokeDocument getDocument(){
+        return document;
+    }
+
+    //limpa a area de desenho
     public void clear(){
-        pathMap.clear(); //remove todos os paths
-        previousPointMap.clear(); //remove os pontos anteriores
-        bitmap.eraseColor(Color.WHITE); //coloca a tela em branco
-        invalidate(); //refresh the screen
+        synchronized (layers){
+            //remove todos os paths
+            for(Path path : paths)
+                if(path != null)
+                    path.reset();
+            //remove os pontos anteriores e o que ja estava nas camadas
+            for(int id = 0; id < PointerStateTable.MAX_POINTERS; id++){
+                if(pointers.isActive(id))
+                    strokeLayers[id].eraseColor(Color.TRANSPARENT);
+                hasTail[id] = false;
+            }
+            geometry.clear();
+            document.clear(); //remove os tracos do documento
+            index.clear();
+            history.clear(); //o undo nao volta de um clear
+            if(state.journal != null)
+                state.journal.appendClear();
+            dirtyRect.setEmpty();
+            layers.clear(); //coloca a tela em branco, liberando os tiles; as camadas continuam
+            invalidateAll(); //refresh the screen
+        }
     }
 
     //define a cor da linha
     public void setDrawingColor(int color){
         paintLine.setColor(color);
+        state.drawingColor = color;
     }
 
     //retorna a cor da linha
@@ -87,6 +795,7 @@ public class DoodleView extends View {
     //define a grossura da linha
     public void setLineWidth(int width){
         paintLine.setStrokeWidth(width);
+        state.lineWidth = width;
     }
 
     //retorna a grossura da linha
@@ -94,237 +803,1056 @@ public class DoodleView extends View {
         return (int) paintLine.getStrokeWidth();
     }
 
+    //define o pincel dos proximos tracos
+    public void setBrush(Brush brush){
+        this.brush = brush;
+        state.brush = brush;
+    }
+
+    public Brush getBrush(){
+        return brush;
+    }
+
+    public int getLayerCount(){
+        return layers == null ? 1 : layers.getLayerCount();
+    }
+
+    public boolean canAddLayer(){
+        return layers != null && layers.canAddLayer();
+    }
+
+    //poe uma camada vazia em cima de todas e deixa ela ativa, retorna false se ja tem
+    //o maximo de camadas
+    public boolean addLayer(){
+        if(layers == null)
+            return false;
+
+        synchronized (layers){
+            int layer = layers.addLayer();
+            if(layer < 0)
+                return false;
+            layers.setActive(layer);
+            invalidateAll();
+            return true;
+        }
+    }
+
+    //apaga a camada e os tracos dela; os indices das camadas de cima mudam, entao o
+    //undo nao volta daqui, como no clear
+    public boolean removeLayer(int layer){
+        if(layers == null)
+            return false;
+
+        synchronized (layers){
+            if(!layers.removeLayer(layer))
+                return false;
+            document.removeLayer(layer);
+            index.rebuild(document);
+            history.clear();
+            if(state.journal != null)
+                state.journal.appendRemoveLayer(layer);
+            invalidateAll();
+            return true;
+        }
+    }
+
+    //os proximos tracos vao pra camada layer
+    public void setActiveLayer(int layer){
+        if(layers == null)
+            return;
+
+        synchronized (layers){
+            layers.setActive(layer);
+            invalidateAll();
+        }
+    }
+
+    public int getActiveLayer(){
+        return layers == null ? 0 : layers.getActive();
+    }
+
+    //visibilidade, opacidade (0 a 255) e modo de mistura de uma camada
+    public void setLayerProperties(int layer, boolean visible, int alpha, LayerStack.Blend blend){
+        if(layers == null)
+            return;
+
+        synchronized (layers){
+            layers.setVisible(layer, visible);
+            layers.setAlpha(layer, alpha);
+            layers.setBlend(layer, blend);
+            invalidateAll();
+        }
+    }
+
+    public boolean isLayerVisible(int layer){
+        return layers == null || layers.isVisible(layer);
+    }
+
+    public int getLayerAlpha(int layer){
+        return layers == null ? 255 : layers.getAlpha(layer);
+    }
+
+    public LayerStack.Blend getLayerBlend(int layer){
+        return layers == null ? LayerStack.Blend.NORMAL : layers.getBlend(layer);
+    }
+
+    //bytes de pixels das camadas e dos caches na memoria, sem contar os que foram pro disco
+    public long getLayerMemoryBytes(){
+        if(layers == null)
+            return 0;
+
+        synchronized (layers){
+            return layers.getMemoryBytes();
+        }
+    }
+
+    //define quanto a frente a ponta dos tracos e prevista, 0 desliga a previsao
+    public void setPredictionMs(long ms){
+        if(layers == null){
+            predictor.setPredictionMs(ms);
+            return;
+        }
+
+        synchronized (layers){
+            predictor.setPredictionMs(ms);
+        }
+    }
+
+    public long getPredictionMs(){
+        return predictor.getPredictionMs();
+    }
+
+    //liga ou desliga o overlay que mostra a area redesenhada em cada frame
+    public void setShowRepaintOverlay(boolean show){
+        if(layers == null){
+            showRepaintOverlay = show;
+            return;
+        }
+
+        synchronized (layers){
+            showRepaintOverlay = show;
+            repaintedPixels = 0;
+            repaintedFrames = 0;
+            invalidateAll();
+        }
+    }
+
+    public boolean isShowRepaintOverlay(){
+        return showRepaintOverlay;
+    }
+
+    //liga ou desliga o overlay com os percentis da latencia e do desenho
+    public void setShowMetricsOverlay(boolean show){
+        if(layers == null){
+            showMetricsOverlay = show;
+            return;
+        }
+
+        synchronized (layers){
+            showMetricsOverlay = show;
+            invalidateAll();
+        }
+    }
+
+    public boolean isShowMetricsOverlay(){
+        return showMetricsOverlay;
+    }
+
+    //zera as medidas, por exemplo antes de testar uma mudanca
+    public void resetMetrics(){
+        if(layers == null){
+            metrics.reset();
+            return;
+        }
+
+        synchronized (layers){
+            metrics.reset();
+            invalidateAll();
+        }
+    }
+
+    //grava as medidas em CSV num arquivo novo em directory e retorna ele; o arquivo
+    //tem poucos KB, entao e gravado aqui mesmo, mas fora do lock do desenho
+    public File exportMetrics(File directory) throws IOException {
+        if(exportedMetrics == null)
+            exportedMetrics = new FrameMetrics();
+        if(layers == null)
+            metrics.copyTo(exportedMetrics);
+        else
+            synchronized (layers){
+                metrics.copyTo(exportedMetrics);
+            }
+
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("nao deu pra criar " + directory);
+        File file = new File(directory, "metrics-" + System.currentTimeMillis() + ".csv");
+        Writer out = new FileWriter(file);
+        try {
+            exportedMetrics.writeTo(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
+        //no modo SURFACE quem desenha e a RenderThread e esta view fica transparente
+        if(renderThread != null)
+            return;
+
+        //so a parte dentro do clip precisa ser redesenhada
+        if(!canvas.getClipBounds(clipRect))
+            clipRect.set(0, 0, getWidth(), getHeight());
+        drawContent(canvas);
+    }
+
+    //desenha a area clipRect: tiles, tracos em andamento e overlays
+    private void drawContent(Canvas canvas){
+        long start = System.nanoTime();
+
+        //o clip vem em coordenadas da tela, os tiles sao escolhidos pela parte do
+        //desenho que aparece nele; o que fica fora do desenho e cinza
+        screenToContent(clipRect, contentClip);
+        if(contentClip.left < 0 || contentClip.top < 0
+                || contentClip.right > layers.getWidth() || contentClip.bottom > layers.getHeight())
+            canvas.drawColor(OUTSIDE_COLOR);
+        //de longe um nivel da piramide ja tem todas as camadas misturadas, e cada pixel
+        //dele vira mais ou menos um pixel da tela, entao o frame desenha tantos pixels
+        //quanto em 1:1 qualquer que seja o zoom
+        int level = viewport.getLevel(LayerStack.PYRAMID_LEVELS);
+
+        //desenha o fundo, o cache das camadas de baixo e a camada ativa, so os tiles no clip
+        canvas.save();
+        canvas.concat(viewMatrix);
+        canvas.clipRect(0, 0, layers.getWidth(), layers.getHeight());
+        if(level > 0)
+            layers.drawLevel(canvas, contentClip, level, paintLevel);
+        else
+            layers.drawBelow(canvas, contentClip);
+        canvas.restore();
+
+        //desenha cada path que esta sendo desenhado
+        //copia a camada de cada traco que esta sendo desenhado, so a parte no clip,
+        //com a opacidade da camada ativa por cima da do traco; as camadas ja estao
+        //em coordenadas da tela
+        int active = layers.getActive();
+        int layerAlpha = layers.isVisible(active) ? layers.getAlpha(active) : 0;
+        for(int id = 0; id < paths.length; id++)
+            if(pointers.isActive(id) && layerAlpha > 0){
+                setLayerPaint(strokeBrushes[id], paintLine.getColor()); //pega as caracteristicas da linha
+                paintLayer.setAlpha(paintLayer.getAlpha() * layerAlpha / 255);
+                if(strokeLayerRect(id) && layerRect.intersect(clipRect))
+                    canvas.drawBitmap(strokeLayers[id], layerRect, layerRect, paintLayer);
+            }
+
+        //as pontas previstas e o cache das camadas de cima, que cobre os tracos em
+        //andamento; de longe as camadas de cima ja vieram na piramide, embaixo deles
+        canvas.save();
+        canvas.concat(viewMatrix);
+        for(int id = 0; id < paths.length; id++)
+            if(pointers.isActive(id) && layerAlpha > 0 && hasTail[id])
+                drawTail(canvas, id, layerAlpha);
+        if(level == 0){
+            canvas.clipRect(0, 0, layers.getWidth(), layers.getHeight());
+            layers.drawAbove(canvas, contentClip);
+        }
+        canvas.restore();
+
+        //no modo VIEW com aceleracao de hardware o onDraw so grava os comandos, entao
+        //o desenho e a latencia medidos aqui nao contam a thread de render do sistema
+        metrics.recordPhase(FrameMetrics.DRAW, start);
+        metrics.frameDrawn(System.nanoTime(), SystemClock.uptimeMillis());
+
+        if(showRepaintOverlay)
+            drawRepaintOverlay(canvas);
+        if(showMetricsOverlay)
+            drawMetricsOverlay(canvas);
+    }
+
+    //poe em layerRect a parte da camada que o traco usa, em coordenadas da tela,
+    //retorna false se esta vazia
+    private boolean strokeLayerRect(int id){
+        float pad = strokeReach[id];
+        contentToScreen(pointers.getMinX(id) - pad, pointers.getMinY(id) - pad,
+                pointers.getMaxX(id) + pad, pointers.getMaxY(id) + pad, layerRect);
+        return layerRect.intersect(0, 0, strokeLayers[id].getWidth(), strokeLayers[id].getHeight());
+    }
+
+    //desenha a ponta prevista: do fim do path ate a ultima amostra e dela ate a previsao
+    private void drawTail(Canvas canvas, int id, int layerAlpha){
+        int i = id * 4;
+        int color = paintLine.getColor();
+        if(strokeBrushes[id].isStamped()){
+            //a ponta nao passa pela camada, os carimbos vao direto com a cor
+            tailPoints[0] = pointers.getEndX(id);
+            tailPoints[1] = pointers.getEndY(id);
+            System.arraycopy(tails, i, tailPoints, 2, 4);
+            int alpha = strokeBrushes[id].getStrokeAlpha(color) * layerAlpha / 255;
+            brushPainter.drawLines(canvas, strokeBrushes[id], paintLine.getStrokeWidth(),
+                    alpha << 24 | (color & 0xFFFFFF), tailPoints, 3);
+            return;
+        }
+
+        tailPath.reset();
+        tailPath.moveTo(pointers.getEndX(id), pointers.getEndY(id));
+        tailPath.lineTo(tails[i], tails[i + 1]);
+        tailPath.lineTo(tails[i + 2], tails[i + 3]);
+        paintTail.set(paintLine);
+        paintTail.setAlpha((color >>> 24) * layerAlpha / 255);
+        canvas.drawPath(tailPath, paintTail);
+    }
+
+    //mostra a area do clip e a porcentagem media da tela redesenhada por frame
+    //obs: com aceleracao de hardware o sistema pode redesenhar a view inteira mesmo
+    //invalidando so um retangulo, e o overlay mostra isso
+    private void drawRepaintOverlay(Canvas canvas){
+        long viewPixels = (long) getWidth() * getHeight();
+        if(viewPixels == 0)
+            return;
+
+        repaintedPixels += (long) clipRect.width() * clipRect.height();
+        repaintedFrames++;
+
+        canvas.drawRect(clipRect, paintOverlay);
+
+        long frameArea = (long) clipRect.width() * clipRect.height();
+        long averageArea = repaintedPixels / repaintedFrames;
+        canvas.drawText("repaint " + (100 * frameArea / viewPixels) + "% avg "
+                + (100 * averageArea / viewPixels) + "%",
+                16, getHeight() - 16, paintOverlayText);
+    }
+
+    //mostra na faixa de cima os percentis da latencia e do desenho, sem alocar
+    private void drawMetricsOverlay(Canvas canvas){
+        metricsText.setLength(0);
+        metrics.appendSummary(metricsText);
+        metricsText.append(" layers ").append(layers.getMemoryBytes() >> 20).append("MB");
+        canvas.drawText(metricsText, 0, metricsText.length(), 16, OVERLAY_TEXT_HEIGHT - 16, paintOverlayText);
+    }
+
+    //adiciona um retangulo a area suja do traco id, com a folga do pincel dele
+    //pra cobrir a ponta redonda ou os carimbos e o antialias
+    private void addDirtyRegion(int id, float left, float top, float right, float bottom){
+        int pad = (int) Math.ceil(strokeReach[id]);
+        dirtyRect.union((int) Math.floor(left) - pad, (int) Math.floor(top) - pad,
+                (int) Math.ceil(right) + pad, (int) Math.ceil(bottom) + pad);
+    }
+
+    //com os overlays ligados as faixas do texto tambem precisam ser redesenhadas
+    private void addOverlayRegions(Rect screen){
+        if(showRepaintOverlay)
+            screen.union(0, getHeight() - OVERLAY_TEXT_HEIGHT, getWidth(), getHeight());
+        if(showMetricsOverlay)
+            screen.union(0, 0, getWidth(), OVERLAY_TEXT_HEIGHT);
+    }
+
+    //poe em screen a area suja em coordenadas da tela, com os overlays, e limpa ela
+    //pro proximo frame
+    private void takeDirtyRegion(Rect screen){
+        contentToScreen(dirtyRect.left, dirtyRect.top, dirtyRect.right, dirtyRect.bottom, screen);
+        if(!screen.intersect(0, 0, getWidth(), getHeight()))
+            screen.setEmpty();
+        dirtyRect.setEmpty();
+        addOverlayRegions(screen);
+    }
+
+    //a tela inteira fica suja
+    private void setViewDirty(){
+        dirtyRect.set((int) Math.floor(viewport.toContentX(0)), (int) Math.floor(viewport.toContentY(0)),
+                (int) Math.ceil(viewport.toContentX(getWidth())), (int) Math.ceil(viewport.toContentY(getHeight())));
+    }
+
+    //invalida so a area suja acumulada e limpa ela pro proximo frame
+    private void invalidateDirtyRegion(){
+        if(dirtyRect.isEmpty())
+            return;
 
-        //desenha o background
-        canvas.drawBitmap(bitmap, 0, 0, paintScreen);
+        //no modo SURFACE a RenderThread pega a area suja no proximo frame
+        if(renderThread != null){
+            renderThread.wake();
+            return;
+        }
 
-        //desenha cada path que estava desenhado
-        for(Integer key : pathMap.keySet())
-            canvas.drawPath(pathMap.get(key), paintLine); //pega as caracteristicas da linha
+        takeDirtyRegion(screenDirty);
+        if(!screenDirty.isEmpty())
+            invalidate(screenDirty);
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        long start = System.nanoTime();
+        //a latencia conta do toque mais antigo que ainda nao apareceu na tela
+        metrics.inputReceived(event.getEventTime());
 
         int action = event.getActionMasked(); //o tipo do evento, é gerado um int comparando com constante abaixo
         int actionIndex = event.getActionIndex(); //pega o ID do touch, pointer
 
+            //os toques so vao pra fila, que e aplicada uma vez por frame: no modo VIEW
+            //pelo callback do Choreographer e no modo SURFACE pela RenderThread
+
             //determina se o toque começou, terminou ou esta se movendo
             //o primeiro dedo gera ACTION_DOWN e todos os outros geram ACTION_POINTER_DOWN
             if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
-                //pega o ponto inicial do toque - coloquei o i no lugar de actionIndex pra testar o erro e no deu
-                touchStarted(event.getX(actionIndex), event.getY(actionIndex), event.getPointerId(actionIndex));
+                //um segundo dedo logo depois do primeiro e zoom; durante o gesto os
+                //outros dedos nao desenham
+                if(action == MotionEvent.ACTION_DOWN)
+                    gesturing = false;
+                if(!gesturing){
+                    if(action == MotionEvent.ACTION_POINTER_DOWN && event.getPointerCount() == 2
+                            && event.getEventTime() - event.getDownTime() <= GESTURE_WINDOW_MS)
+                        gestureStarted(event, actionIndex);
+                    else
+                        //pega o ponto inicial do toque - coloquei o i no lugar de actionIndex pra testar o erro e no deu
+                        offerTouchEvent(TouchEventQueue.DOWN, event.getPointerId(actionIndex),
+                                event.getX(actionIndex), event.getY(actionIndex), event.getEventTime());
+                }
             } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP) {
-                //pega o ponto final do toque
-                touchEnded(event.getPointerId(actionIndex));
+                //pega o ponto final do toque; o gesto acaba quando um dos dois dedos sai
+                if(gesturing)
+                    gestureIds[0] = gestureIds[1] = -1;
+                else
+                    offerTouchEvent(TouchEventQueue.UP, event.getPointerId(actionIndex), 0, 0, event.getEventTime());
+            } else if(gesturing) {
+                gestureMoved(event);
             } else {
                 //desenha enquanto nao tirou ou colocou novo dedo
                 touchMoved(event);
             }
 
-            invalidate(); //redraw
+            if(renderThread != null)
+                renderThread.wake();
+            else
+                scheduleFrame(); //redraw so no proximo frame, e so do que mudou
+
+        metrics.recordPhase(FrameMetrics.TOUCH_EVENT, start);
         return true; //retorna que o evento foi processado
     }
 
-    //chamado quando user toca a tela
-    private void touchStarted (float x, float y, int lineID){
-        Path path; //usado pra gravar o path pro toque
-        Point point; //usado pra gravar o ultimo ponto do toque
+    //nenhum toque pode se perder: se a fila encher, ela e esvaziada antes. O ponto
+    //(x, y) da tela vai pra fila em coordenadas do desenho
+    private void offerTouchEvent(int type, int pointerId, float x, float y, long time){
+        float contentX = viewport.toContentX(x);
+        float contentY = viewport.toContentY(y);
+        while(!touchQueue.offer(type, pointerId, contentX, contentY, time)){
+            if(renderThread == null)
+                touchQueue.drain(touchConsumer);
+            else {
+                renderThread.wake();
+                Thread.yield();
+            }
+        }
+    }
 
-        //se ja existe um path pro toque
-        if(pathMap.containsKey(lineID)){
-            path = pathMap.get(lineID); //pega o path
-            path.reset(); //reseta ja que um novo toque foi registrado
-            point = previousPointMap.get(lineID); //pega o ultimo ponto
+    //pede o callback do proximo frame se ainda nao foi pedido
+    private void scheduleFrame(){
+        if(!framePosted){
+            framePosted = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    //cancela o callback e aplica agora o que esta na fila
+    private void flushFrame(){
+        if(framePosted){
+            framePosted = false;
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
         }
-        else {
+        touchQueue.drain(touchConsumer);
+    }
+
+    //o segundo dedo chegou logo depois do primeiro: o traco do primeiro some e os dois
+    //passam a mexer no zoom e no deslocamento
+    private void gestureStarted(MotionEvent event, int actionIndex){
+        int first = actionIndex == 0 ? 1 : 0;
+        gesturing = true;
+        gestureIds[0] = event.getPointerId(first);
+        gestureIds[1] = event.getPointerId(actionIndex);
+        offerTouchEvent(TouchEventQueue.CANCEL, gestureIds[0], 0, 0, event.getEventTime());
+
+        gestureX = (event.getX(first) + event.getX(actionIndex)) / 2;
+        gestureY = (event.getY(first) + event.getY(actionIndex)) / 2;
+        gestureSpan = (float) Math.hypot(event.getX(first) - event.getX(actionIndex),
+                event.getY(first) - event.getY(actionIndex));
+    }
+
+    //desloca pelo que o meio dos dedos andou e aumenta pelo que a distancia entre eles
+    //cresceu, em volta do meio
+    private void gestureMoved(MotionEvent event){
+        int a = event.findPointerIndex(gestureIds[0]);
+        int b = event.findPointerIndex(gestureIds[1]);
+        if(a < 0 || b < 0)
+            return;
+
+        float x = (event.getX(a) + event.getX(b)) / 2;
+        float y = (event.getY(a) + event.getY(b)) / 2;
+        float span = (float) Math.hypot(event.getX(a) - event.getX(b), event.getY(a) - event.getY(b));
+        synchronized (layers){
+            boolean changed = viewport.pan(x - gestureX, y - gestureY);
+            if(gestureSpan > 0 && span > 0)
+                changed |= viewport.zoom(span / gestureSpan, x, y);
+            if(changed){
+                updateViewMatrix();
+                setViewDirty();
+            }
+        }
+        gestureX = x;
+        gestureY = y;
+        gestureSpan = span;
+    }
+
+    //chamado quando user toca a tela
+    private void touchStarted (float x, float y, int lineID, long time){
+        //IDs fora da tabela sao ignorados
+        if(!PointerStateTable.isValidId(lineID))
+            return;
+
+        //o path de cada ID e criado uma vez so e reusado nos proximos toques
+        Path path = paths[lineID];
+        if(path == null){
             path = new Path();
-            pathMap.put(lineID, path); //adiciona o path pro Map
-            point = new Point();
-            previousPointMap.put(lineID, point); // adiciona o ponto ao Map
+            paths[lineID] = path;
         }
+        else
+            path.reset(); //reseta ja que um novo toque foi registrado
+
+        predictor.start(lineID, x, y, time);
+
+        //a camada e criada uma vez so por ID e chega aqui vazia
+        Bitmap layer = strokeLayers[lineID];
+        if(layer == null){
+            layer = Bitmap.createBitmap(Math.max(1, getWidth()), Math.max(1, getHeight()), Bitmap.Config.ALPHA_8);
+            strokeLayers[lineID] = layer;
+        }
+        paintInk.set(paintLine);
+        paintInk.setAlpha(255);
+
+        //o pincel e a grossura ficam fixos ate o fim do traco
+        strokeBrushes[lineID] = brush;
+        strokeReach[lineID] = brush.getReach(paintLine.getStrokeWidth());
+        if(brush.isStamped())
+            brushPainter.setLiveBrush(brush, paintLine.getStrokeWidth());
 
-        //move pras coordenadas do toque
-        path.moveTo(x, y);
-        point.x = (int) x;
-        point.y = (int) y;
+        //comeca o traco, o geometryListener move o path pro toque
+        geometry.start(lineID, x, y, time);
     }
 
-    //chamado quando o user move o dedo na tela
+    //chamado quando o user move o dedo na tela, coloca as amostras na fila
     private void touchMoved (MotionEvent event){
+        //quantas amostras antigas o Android juntou neste evento desde o ultimo frame
+        int historySize = event.getHistorySize();
+
         //pra cada pointer
-        try {
-            for (int i = 0; i < event.getPointerCount(); i++) {
-                //pega o ID e index
-                int pointerID = event.getPointerId(i);
-                int pointerIndex = event.findPointerIndex(i);
-
-                //se tiver um path com o pointer
-                if (pathMap.containsKey(pointerID)) {
-                    //pega as novas coordenadas para o path
-                    float newX = event.getX(pointerIndex);
-                    float newY = event.getY(pointerIndex);
-
-                    //pega o path e ponto anterior
-                    Path path = pathMap.get(pointerID);
-                    Point point = previousPointMap.get(pointerID);
-
-                    //calcula quando o user deslizou o dedo
-                    float deltaX = Math.abs(newX - point.x);
-                    float deltaY = Math.abs(newY - point.y);
-
-                    //se a distancia é significante
-                    if (deltaX >= TOUCH_TOLERANCE || deltaY >= TOUCH_TOLERANCE) {
-                        //move o path para a nova localizacao
-                        path.quadTo(point.x, point.y, (newX + point.x) / 2, (newY + point.y) / 2);
-
-                        //guarda as novas coordenadas
-                        point.x = (int) newX;
-                        point.y = (int) newY;
-                    }
-                }
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            //pega o ID do pointer no index i
+            int pointerID = event.getPointerId(i);
+
+            //quem aplica a fila ignora os pointers que nao estao desenhando
+            //primeiro as amostras historicas, da mais antiga pra mais nova,
+            //pra curva seguir o dedo mesmo em movimentos rapidos
+            for (int h = 0; h < historySize; h++)
+                offerTouchEvent(TouchEventQueue.MOVE, pointerID, event.getHistoricalX(i, h),
+                        event.getHistoricalY(i, h), event.getHistoricalEventTime(h));
+
+            //depois a posicao atual
+            offerTouchEvent(TouchEventQueue.MOVE, pointerID, event.getX(i), event.getY(i), event.getEventTime());
+        }
+    }
+
+    //passa uma amostra pelo filtro de tolerancia e adiciona ao path se for significante
+    private void addSample(int pointerID, float x, float y, long time){
+        long start = System.nanoTime();
+
+        //o preditor ve todas as amostras, ate as que o filtro segura
+        predictor.addSample(pointerID, x, y, time);
+
+        //se for aceita o geometryListener recebe o segmento novo
+        geometry.addSample(pointerID, x, y, time);
+        updateTail(pointerID);
+        metrics.recordPhase(FrameMetrics.TOUCH_MOVE, start);
+    }
+
+    //troca a ponta prevista do pointer pela da amostra mais nova
+    private void updateTail(int id){
+        int i = id * 4;
+        //a ponta antiga sai da tela
+        if(hasTail[id])
+            addDirtyRegion(id, tailBounds[i], tailBounds[i + 1], tailBounds[i + 2], tailBounds[i + 3]);
+
+        hasTail[id] = predictor.predict(id, SystemClock.uptimeMillis(), predicted);
+        if(!hasTail[id])
+            return;
+
+        tails[i] = predictor.getLastX(id);
+        tails[i + 1] = predictor.getLastY(id);
+        tails[i + 2] = predicted[0];
+        tails[i + 3] = predicted[1];
+
+        float endX = pointers.getEndX(id);
+        float endY = pointers.getEndY(id);
+        tailBounds[i] = Math.min(endX, Math.min(tails[i], tails[i + 2]));
+        tailBounds[i + 1] = Math.min(endY, Math.min(tails[i + 1], tails[i + 3]));
+        tailBounds[i + 2] = Math.max(endX, Math.max(tails[i], tails[i + 2]));
+        tailBounds[i + 3] = Math.max(endY, Math.max(tails[i + 1], tails[i + 3]));
+        addDirtyRegion(id, tailBounds[i], tailBounds[i + 1], tailBounds[i + 2], tailBounds[i + 3]);
+    }
+
+    //tira da tela as pontas dos pointers cujo dedo parou, ja que nenhum MOVE vai chegar
+    //pra trocar elas; retorna se ainda sobrou alguma ponta
+    private boolean expireTails(long now){
+        boolean showing = false;
+        for(int id = 0; id < hasTail.length; id++){
+            if(!hasTail[id])
+                continue;
+            if(predictor.isStale(id, now)){
+                int i = id * 4;
+                addDirtyRegion(id, tailBounds[i], tailBounds[i + 1], tailBounds[i + 2], tailBounds[i + 3]);
+                hasTail[id] = false;
             }
-        } catch(Exception e) {
-            e.printStackTrace();
+            else
+                showing = true;
         }
+        return showing;
+    }
+
+    //o traco virou parte de um gesto ou ficou fora da area de desenho: sai da tela
+    //sem ir pro documento
+    private void touchCancelled(int lineID){
+        if(!PointerStateTable.isValidId(lineID))
+            return;
+        erasing[lineID] = false; //o que a borracha ja apagou continua apagado
+        if(!pointers.isActive(lineID))
+            return;
+
+        hasTail[lineID] = false;
+        predictor.end(lineID);
+        geometry.end(lineID);
+        paths[lineID].reset();
+        //o zoom pode ter mudado desde o toque, entao a camada e limpa inteira
+        strokeLayers[lineID].eraseColor(Color.TRANSPARENT);
+        setViewDirty();
     }
 
     //chamada quando tira o dedo
     private void touchEnded(int lineID){
-        Path path = pathMap.get(lineID); //pega o path correspondente
-        bitmapCanvas.drawPath(path, paintLine);//desenha no bitmapCanvas
-        path.reset(); //reseta o path
+        if(!pointers.isActive(lineID))
+            return;
+        long start = System.nanoTime();
+
+        Brush strokeBrush = strokeBrushes[lineID];
+        float pad = strokeReach[lineID];
+        float left = pointers.getMinX(lineID) - pad;
+        float top = pointers.getMinY(lineID) - pad;
+        float right = pointers.getMaxX(lineID) + pad;
+        float bottom = pointers.getMaxY(lineID) + pad;
+        //com zoom o traco pode ficar todo fora da area de desenho: nao entra no
+        //documento, senao ficaria sem entrada de undo
+        if(right < 0 || bottom < 0 || left >= layers.getWidth() || top >= layers.getHeight()){
+            touchCancelled(lineID);
+            return;
+        }
+
+        //o traco vai pra camada ativa; antes de desenhar, salva os tiles que ele vai cobrir pro undo
+        int layer = layers.getActive();
+        saveUndoTiles(layer, left, top, right, bottom);
+
+        //a ponta prevista some, o traco termina na ultima amostra aceita
+        if(hasTail[lineID]){
+            int i = lineID * 4;
+            addDirtyRegion(lineID, tailBounds[i], tailBounds[i + 1], tailBounds[i + 2], tailBounds[i + 3]);
+            hasTail[lineID] = false;
+        }
+        predictor.end(lineID);
+
+        //o que foi desenhado ao vivo sai da tela
+        paths[lineID].reset();
+        if(strokeLayerRect(lineID)){
+            layerCanvas.setBitmap(strokeLayers[lineID]);
+            layerCanvas.setMatrix(null); //layerRect ja esta em coordenadas da tela
+            layerCanvas.save();
+            layerCanvas.clipRect(layerRect);
+            layerCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            layerCanvas.restore();
+        }
+        layerCanvas.setBitmap(null);
+
+        //guarda no documento so os pontos que sobraram da simplificacao, com a cor,
+        //grossura, pincel e camada atuais
+        geometry.end(lineID);
+        int stroke = document.addStroke(paintLine.getColor(), paintLine.getStrokeWidth(), strokeBrush, layer,
+                geometry.getStoredPoints(lineID));
+        index.add(document, stroke);
+        metrics.strokeStored(geometry.getSampleCount(lineID), geometry.getPoints(lineID).getPointCount(),
+                document.getPointCount(stroke));
+
+        //os tiles recebem o replay dos pontos guardados, igual ao redraw do documento,
+        //e nao o traco ao vivo; os dois diferem um pouco, entao a area toda e redesenhada
+        drawDocumentStroke(stroke);
+        addDirtyRegion(lineID, left, top, right, bottom);
+
+        //e no diario, que e gravado em lotes por outra thread
+        if(state.journal != null){
+            state.journal.appendStroke(document.getColor(stroke), document.getWidth(stroke),
+                    document.getBrush(stroke), document.getLayer(stroke), document.getCoords(),
+                    document.getCoordOffset(stroke), document.getPointCount(stroke));
+            checkpointJournalIfNeeded();
+        }
+        metrics.recordPhase(FrameMetrics.TOUCH_END, start);
     }
 
-    //salva a image na galeria
-    public void saveImage(){
-        //usa o nome do app seguido pelo horario pra salvar
-        final String name = "Doodlz" + System.currentTimeMillis() + ".jpg";
-         //insere imagem no device
-        String location = MediaStore.Images.Media.insertImage(getContext().getContentResolver(),
-                bitmap, name, "Doodlz drawing");
-
-        //To solve problem with Date follow commented code below
-
-       /* public static final String insertImage(ContentResolver cr,
-                Bitmap source,
-                String title,
-                String description) {
-
-            ContentValues values = new ContentValues();
-            values.put(Images.Media.TITLE, title);
-            values.put(Images.Media.DISPLAY_NAME, title);
-            values.put(Images.Media.DESCRIPTION, description);
-            values.put(Images.Media.MIME_TYPE, "image/jpeg");
-            // Add the date meta data to ensure the image is added at the front of the gallery
-            values.put(Images.Media.DATE_ADDED, System.currentTimeMillis());
-            values.put(Images.Media.DATE_TAKEN, System.currentTimeMillis());
-
-            Uri url = null;
-            String stringUrl = null;    // value to be returned
-
-            try {
-                url = cr.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-
-                if (source != null) {
-                    OutputStream imageOut = cr.openOutputStream(url);
-                    try {
-                        source.compress(Bitmap.CompressFormat.JPEG, 50, imageOut);
-                    } finally {
-                        imageOut.close();
-                    }
+    //comeca a apagar com o pointer lineID
+    private void eraserStarted(float x, float y, int lineID){
+        if(!PointerStateTable.isValidId(lineID))
+            return;
 
-                    long id = ContentUris.parseId(url);
-                    // Wait until MINI_KIND thumbnail is generated.
-                    Bitmap miniThumb = Images.Thumbnails.getThumbnail(cr, id, Images.Thumbnails.MINI_KIND, null);
-                    // This is for backward compatibility.
-                    storeThumbnail(cr, miniThumb, id, 50F, 50F,Images.Thumbnails.MICRO_KIND);
-                } else {
-                    cr.delete(url, null, null);
-                    url = null;
-                }
-            } catch (Exception e) {
-                if (url != null) {
-                    cr.delete(url, null, null);
-                    url = null;
+        erasing[lineID] = true;
+        eraserPoints[2 * lineID] = x;
+        eraserPoints[2 * lineID + 1] = y;
+        eraseTo(lineID, x, y);
+    }
+
+    //apaga os tracos da camada ativa que o dedo encostou desde a ultima amostra; o
+    //caminho todo e testado, entao um movimento rapido nao pula tracos finos
+    private void eraseTo(int lineID, float x, float y){
+        long start = System.nanoTime();
+        float lastX = eraserPoints[2 * lineID];
+        float lastY = eraserPoints[2 * lineID + 1];
+        eraserPoints[2 * lineID] = x;
+        eraserPoints[2 * lineID + 1] = y;
+
+        //camada escondida nao e apagada sem ninguem ver
+        int layer = layers.getActive();
+        if(!layers.isVisible(layer))
+            return;
+
+        if(eraseHits.length < index.getStrokeCount())
+            eraseHits = new int[Math.max(index.getStrokeCount(), 2 * eraseHits.length)];
+        int count = index.queryPath(document, lastX, lastY, x, y, ERASER_RADIUS / viewport.getScale(),
+                layer, eraseHits);
+        if(count > 0)
+            eraseStrokes(layer, eraseHits, count);
+        metrics.recordPhase(FrameMetrics.TOUCH_MOVE, start);
+    }
+
+    //tira do documento os count tracos de strokes (em ordem crescente), todos da camada,
+    //e refaz so a area deles com os tracos que sobraram ali. O undo guarda os tracos
+    //apagados com os numeros que tinham e os pixels de antes da area refeita
+    private void eraseStrokes(int layer, int[] strokes, int count){
+        eraseRect.setEmpty();
+        for(int n = 0; n < count; n++){
+            int stroke = strokes[n];
+            document.getBounds(stroke, strokeBounds);
+            float reach = document.getBrush(stroke).getReach(document.getWidth(stroke));
+            eraseRect.union((int) Math.floor(strokeBounds[0] - reach), (int) Math.floor(strokeBounds[1] - reach),
+                    (int) Math.ceil(strokeBounds[2] + reach), (int) Math.ceil(strokeBounds[3] + reach));
+        }
+
+        int[] erased = Arrays.copyOf(strokes, count);
+        StrokeDocument erasedStrokes = document.extract(strokes, count);
+        document.removeStrokes(strokes, count);
+        index.removeStrokes(strokes, count);
+        if(state.journal != null){
+            state.journal.appendErase(strokes, count);
+            checkpointJournalIfNeeded();
+        }
+        if(!eraseRect.intersect(0, 0, layers.getWidth(), layers.getHeight())){
+            //nada aparece na area de desenho, mas o undo ainda poe os tracos de volta
+            saveUndoTiles(layer, 0, 0, -1, -1, erased, erasedStrokes);
+            return;
+        }
+
+        //limpa a area e desenha de novo, em ordem, os tracos da camada que passam por ela,
+        //cortados na area pra nao pintar duas vezes o que ficou fora. O balde de tinta
+        //depende de tudo que estava embaixo dele e nao respeita o corte, entao se um
+        //passa pela area a camada inteira e refeita
+        int redraw = index.query(eraseRect.left, eraseRect.top, eraseRect.right, eraseRect.bottom, layer, strokes);
+        for(int n = 0; n < redraw; n++)
+            if(document.getBrush(strokes[n]).isFill()){
+                eraseRect.set(0, 0, layers.getWidth(), layers.getHeight());
+                redraw = index.query(0, 0, eraseRect.right, eraseRect.bottom, layer, strokes);
+                break;
+            }
+        saveUndoTiles(layer, eraseRect.left, eraseRect.top, eraseRect.right - 1, eraseRect.bottom - 1,
+                erased, erasedStrokes);
+        TiledCanvas canvas = layers.getCanvas(layer);
+        canvas.clearRect(eraseRect);
+        canvas.setClip(eraseRect);
+        for(int n = 0; n < redraw; n++)
+            drawDocumentStroke(strokes[n]);
+        canvas.setClip(null);
+
+        layers.invalidate(layer, eraseRect.left, eraseRect.top, eraseRect.right, eraseRect.bottom);
+        dirtyRect.union(eraseRect);
+    }
+
+    //liga ou desliga a borracha de tracos, vale a partir do proximo toque; ligar ela
+    //desliga o balde
+    public void setStrokeEraser(boolean eraser){
+        strokeEraser = eraser;
+        state.strokeEraser = eraser;
+        if(eraser)
+            setBucketFill(false);
+    }
+
+    public boolean isStrokeEraser(){
+        return strokeEraser;
+    }
+
+    //liga ou desliga o balde de tinta, vale a partir do proximo toque; ligar ele
+    //desliga a borracha
+    public void setBucketFill(boolean fill){
+        bucketFill = fill;
+        state.bucketFill = fill;
+        if(fill)
+            setStrokeEraser(false);
+    }
+
+    public boolean isBucketFill(){
+        return bucketFill;
+    }
+
+    //pinta com a cor atual a area em volta de (x, y) na camada ativa
+    private void fillAt(float x, float y){
+        int layer = layers.getActive();
+        if(fillPending || !layers.isVisible(layer) || x < 0 || y < 0
+                || x >= layers.getWidth() || y >= layers.getHeight())
+            return;
+
+        //a camada inteira vai pra outra thread como snapshot, sem copiar nada aqui
+        fillPending = true;
+        final int version = document.getVersion();
+        final int fillLayer = layer;
+        final int fillX = (int) x;
+        final int fillY = (int) y;
+        final int color = paintLine.getColor();
+        TiledCanvas.Snapshot snapshot = layers.getCanvas(layer).snapshot(0, 0, layers.getWidth(), layers.getHeight());
+        state.getFloodFiller().fill(snapshot, fillX, fillY, color, FILL_TOLERANCE, new FloodFiller.Callback() {
+            @Override
+            public void onFilled(FloodFiller.Result result) {
+                synchronized (layers){
+                    fillPending = false;
+                    //se um traco entrou ou saiu enquanto preenchia, os pixels lidos ja nao
+                    //sao os da camada e o toque e descartado
+                    if(document.getVersion() == version && result.filled > 0)
+                        commitFill(fillLayer, fillX, fillY, color, result);
                 }
             }
+        });
+    }
+
+    //escreve nos tiles so o retangulo pintado e guarda o balde no documento, no indice
+    //e no diario como um traco
+    private void commitFill(int layer, int x, int y, int color, FloodFiller.Result result){
+        long start = System.nanoTime();
+        int[] bounds = result.bounds;
+        saveUndoTiles(layer, bounds[0], bounds[1], bounds[2] - 1, bounds[3] - 1);
+        layers.getCanvas(layer).writePixels(result.pixels, bounds[1] * result.width + bounds[0], result.width,
+                bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+
+        fillPoints[0] = x;
+        fillPoints[1] = y;
+        for(int i = 0; i < 4; i++)
+            fillPoints[2 + i] = bounds[i];
+        int stroke = document.addStroke(color, FILL_TOLERANCE, Brush.FILL, layer, fillPoints, 0, 3);
+        index.add(document, stroke);
+        if(state.journal != null){
+            state.journal.appendStroke(color, FILL_TOLERANCE, Brush.FILL, layer, fillPoints, 0, 3);
+            checkpointJournalIfNeeded();
+        }
+
+        layers.invalidate(layer, bounds[0], bounds[1], bounds[2] - 1, bounds[3] - 1);
+        dirtyRect.union(bounds[0], bounds[1], bounds[2], bounds[3]);
+        invalidateDirtyRegion();
+        metrics.recordPhase(FrameMetrics.TOUCH_END, start);
+    }
 
-            if (url != null) {
-                stringUrl = url.toString();
+    //desfaz o ultimo traco ou a ultima borracha, retorna false se nao tem o que desfazer
+    public boolean undo(){
+        synchronized (layers){
+            UndoHistory.Entry entry = history.popUndo();
+            if(entry == null)
+                return false;
+
+            //os pixels de agora viram o redo
+            history.pushRedo(swapTiles(entry));
+            if(entry.isErase()){
+                //os apagados voltam pros numeros que tinham
+                int[] erased = entry.getErased();
+                document.insertStrokes(erased, erased.length, entry.getErasedStrokes());
+                index.insertStrokes(document, erased, erased.length);
+                if(state.journal != null)
+                    state.journal.appendInsert(erased, erased.length, entry.getErasedStrokes());
+                return true;
             }
+            if(document.removeLastStroke())
+                index.removeLast();
+            if(state.journal != null)
+                state.journal.appendUndo();
+            return true;
+        }
+    }
 
-            return stringUrl;
-        }
-
-        *//**
-         * A copy of the Android internals StoreThumbnail method, it used with the insertImage to
-         * populate the android.provider.MediaStore.Images.Media#insertImage with all the correct
-         * meta data. The StoreThumbnail method is private so it must be duplicated here.
-         * @see android.provider.MediaStore.Images.Media (StoreThumbnail private method)
-         *//*
-        private static final Bitmap storeThumbnail(
-                ContentResolver cr,
-                Bitmap source,
-        long id,
-        float width,
-        float height,
-        int kind) {
-
-            // create the matrix to scale it
-            Matrix matrix = new Matrix();
-
-            float scaleX = width / source.getWidth();
-            float scaleY = height / source.getHeight();
-
-            matrix.setScale(scaleX, scaleY);
-
-            Bitmap thumb = Bitmap.createBitmap(source, 0, 0,
-                    source.getWidth(),
-                    source.getHeight(), matrix,
-                    true
-            );
-
-            ContentValues values = new ContentValues(4);
-            values.put(Images.Thumbnails.KIND,kind);
-            values.put(Images.Thumbnails.IMAGE_ID,(int)id);
-            values.put(Images.Thumbnails.HEIGHT,thumb.getHeight());
-            values.put(Images.Thumbnails.WIDTH,thumb.getWidth());
-
-            Uri url = cr.insert(Images.Thumbnails.EXTERNAL_CONTENT_URI, values);
-
-            try {
-                OutputStream thumbOut = cr.openOutputStream(url);
-                thumb.compress(Bitmap.CompressFormat.JPEG, 100, thumbOut);
-                thumbOut.close();
-                return thumb;
-            } catch (FileNotFoundException ex) {
-                return null;
-            } catch (IOException ex) {
-                return null;
+    //refaz o ultimo traco desfeito, retorna false se nao tem o que refazer
+    public boolean redo(){
+        synchronized (layers){
+            UndoHistory.Entry entry = history.popRedo();
+            if(entry == null)
+                return false;
+
+            history.pushUndo(swapTiles(entry));
+            if(entry.isErase()){
+                int[] erased = entry.getErased();
+                document.removeStrokes(erased, erased.length);
+                index.removeStrokes(erased, erased.length);
+                if(state.journal != null)
+                    state.journal.appendErase(erased, erased.length);
+                return true;
             }
+            if(document.restoreStroke())
+                index.add(document, document.getStrokeCount() - 1);
+            if(state.journal != null)
+                state.journal.appendRedo();
+            return true;
         }
-    */
-        if(location!= null){
-            //mostra um texto que a imagem foi salva
-            Toast message = Toast.makeText(getContext(),
-                    R.string.message_saved, Toast.LENGTH_SHORT);
+    }
 
-            message.setGravity(Gravity.CENTER, message.getXOffset()/2, message.getYOffset()/2);
-            message.show();
+    public boolean canUndo(){
+        return history.canUndo();
+    }
+
+    public boolean canRedo(){
+        return history.canRedo();
+    }
+
+    //define quantos bytes o historico de undo/redo pode usar
+    public void setUndoBudget(long bytes){
+        history.setBudgetBytes(bytes);
+    }
+
+    public long getUndoMemoryUsed(){
+        return history.getUsedBytes();
+    }
+
+    //salva comprimidos os tiles de undo da camada que cobrem o retangulo
+    private void saveUndoTiles(int layer, float left, float top, float right, float bottom){
+        saveUndoTiles(layer, left, top, right, bottom, null, null);
+    }
+
+    //o mesmo, guardando tambem os tracos que a borracha apagou; a entrada entra mesmo
+    //sem tiles, pra cada alteracao do documento ter o seu undo
+    private void saveUndoTiles(int layer, float left, float top, float right, float bottom,
+                               int[] erased, StrokeDocument erasedStrokes){
+        int columns = (layers.getWidth() + UNDO_TILE_SIZE - 1) / UNDO_TILE_SIZE;
+        int rows = (layers.getHeight() + UNDO_TILE_SIZE - 1) / UNDO_TILE_SIZE;
+        int firstColumn = Math.max(0, (int) Math.floor(left / UNDO_TILE_SIZE));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor(right / UNDO_TILE_SIZE));
+        int firstRow = Math.max(0, (int) Math.floor(top / UNDO_TILE_SIZE));
+        int lastRow = Math.min(rows - 1, (int) Math.floor(bottom / UNDO_TILE_SIZE));
+
+        //cada tile e guardado como linha << 16 | coluna, que continua valendo se a area crescer
+        int[] tiles = new int[Math.max(0, lastColumn - firstColumn + 1) * Math.max(0, lastRow - firstRow + 1)];
+        int count = 0;
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++)
+                tiles[count++] = row << 16 | column;
+
+        int pixelCount = readTiles(layers.getCanvas(layer), tiles);
+        history.push(new UndoHistory.Entry(layer, tiles, tileCodec.compress(tilePixels, pixelCount),
+                erased, erasedStrokes));
+    }
+
+    //copia os pixels dos tiles de undo do canvas pro tilePixels, um tile depois do
+    //outro, e retorna quantos pixels foram copiados
+    private int readTiles(TiledCanvas canvas, int[] tiles){
+        int total = 0;
+        for(int tile : tiles)
+            total += undoTileWidth(tile) * undoTileHeight(tile);
+        if(tilePixels.length < total)
+            tilePixels = new int[total];
+
+        int offset = 0;
+        for(int tile : tiles){
+            int width = undoTileWidth(tile);
+            int height = undoTileHeight(tile);
+            canvas.getPixels(tilePixels, offset, (tile & 0xFFFF) * UNDO_TILE_SIZE,
+                    (tile >>> 16) * UNDO_TILE_SIZE, width, height);
+            offset += width * height;
         }
-        else{//mensagem que deu erro
-            Toast message = Toast.makeText(getContext(),
-                    R.string.message_error_saving, Toast.LENGTH_SHORT);
+        return total;
+    }
 
-            message.setGravity(Gravity.CENTER, message.getXOffset()/2, message.getYOffset()/2);
-            message.show();
+    //troca os pixels salvos na entrada pelos da camada dela e retorna uma entrada
+    //com os pixels que estavam la, pra fazer o caminho contrario
+    private UndoHistory.Entry swapTiles(UndoHistory.Entry entry){
+        int layer = entry.getLayer();
+        TiledCanvas canvas = layers.getCanvas(layer);
+        int[] tiles = entry.getTiles();
+        int pixelCount = readTiles(canvas, tiles);
+        byte[] current = tileCodec.compress(tilePixels, pixelCount);
+
+        if(restorePixels.length < pixelCount)
+            restorePixels = new int[pixelCount];
+        try {
+            tileCodec.decompress(entry.getPixels(), restorePixels, pixelCount);
+        } catch (DataFormatException e) {
+            Log.e("DoodleView", "tile de undo corrompido", e);
+            return entry.withPixels(current);
         }
+
+        int offset = 0;
+        for(int tile : tiles){
+            int width = undoTileWidth(tile);
+            int height = undoTileHeight(tile);
+            int x = (tile & 0xFFFF) * UNDO_TILE_SIZE;
+            int y = (tile >>> 16) * UNDO_TILE_SIZE;
+            canvas.setPixels(restorePixels, offset, x, y, width, height);
+            offset += width * height;
+            dirtyRect.union(x, y, x + width, y + height);
+            layers.invalidate(layer, x, y, x + width - 1, y + height - 1);
+        }
+        invalidateDirtyRegion();
+        return entry.withPixels(current);
+    }
+
+    //largura do tile de undo, o ultimo pode ser cortado pela borda da area de desenho
+    private int undoTileWidth(int tile){
+        return Math.min(UNDO_TILE_SIZE, layers.getWidth() - (tile & 0xFFFF) * UNDO_TILE_SIZE);
+    }
+
+    private int undoTileHeight(int tile){
+        return Math.min(UNDO_TILE_SIZE, layers.getHeight() - (tile >>> 16) * UNDO_TILE_SIZE);
     }
 
-    //para imprimir a imagem ou criar pdf
+    //salva na galeria o desenho inteiro, seja qual for o zoom, sem travar a UI:
+    //tira um snapshot dos tiles das camadas e o ImageSaver mistura e codifica em outra thread
+    public void saveImage(ImageSaver.Format format, int quality, ImageSaver.Callback callback){
+        //usa o nome do app seguido pelo horario pra salvar
+        String name = "Doodlz" + System.currentTimeMillis();
+        LayerStack.Snapshot snapshot;
+        synchronized (layers){
+            snapshot = layers.snapshot(0, 0, layers.getWidth(), layers.getHeight());
+        }
+        state.getImageSaver(getContext()).save(snapshot, format, quality, name, "Doodlz drawing", callback);
+    }
+
+    //os frames perdidos sao contados em vsyncs da tela onde a view esta
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Display display = getDisplay();
+        if(display != null && display.getRefreshRate() > 0)
+            metrics.setFramePeriodNanos((long) (1e9 / display.getRefreshRate()));
+    }
+
+    //a thread de render tem que parar antes da view sair da tela
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopRenderThread();
+        flushFrame();
+    }
+
+    //para imprimir o desenho inteiro ou criar pdf, como no save
     public void printImage(){
         if(PrintHelper.systemSupportsPrint()){
             //usa a biblioteca do PrintHelper para imprimir a imagem
@@ -332,6 +1860,12 @@ public class DoodleView extends View {
 
             //encaixa a imagem nos limites e imprime
             printHelper.setScaleMode(PrintHelper.SCALE_MODE_FIT);
+            LayerStack.Snapshot snapshot;
+            synchronized (layers){
+                snapshot = layers.snapshot(0, 0, layers.getWidth(), layers.getHeight());
+            }
+            Bitmap bitmap = snapshot.render();
+            snapshot.release();
             printHelper.printBitmap("Doodlz Image", bitmap);
         }
         else {//mostra imagem que o sistema nao suporta
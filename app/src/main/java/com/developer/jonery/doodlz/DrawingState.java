@@ -0,0 +1,83 @@
+package com.developer.jonery.doodlz;
+
+import android.content.Context;
+import android.graphics.Color;
+
+import java.io.File;
+
+/**
+ * Tudo que o desenho precisa alem da view: as camadas, o documento e o indice dele,
+ * o historico de undo, o diario, a thread de save e a do balde de tinta, mais a
+ * cor, grossura e pincel da linha, a borracha, o balde e o zoom. Fica
+ * guardado no CanvasHolderFragment pra que uma nova DoodleView (depois de girar a
+ * tela) continue com o mesmo desenho sem alocar nem redesenhar nada.
+ */
+
+public class DrawingState {
+    //memoria maxima do historico de undo/redo
+    private static final long DEFAULT_UNDO_BUDGET = 8 * 1024 * 1024;
+
+    final StrokeDocument document = new StrokeDocument();
+    //cresce junto com as camadas, comeca com uma celula so
+    final StrokeIndex index = new StrokeIndex(0, 0);
+    final UndoHistory history = new UndoHistory(DEFAULT_UNDO_BUDGET);
+    LayerStack layers; //criado quando a primeira view recebe um tamanho
+    int minCanvasWidth; //tamanho minimo pedido pra area de desenho
+    int minCanvasHeight;
+
+    StrokeJournal journal;
+    boolean needsRecovery; //o diario foi aberto mas ainda nao foi lido pros tiles
+    ImageSaver imageSaver;
+    FloodFiller floodFiller;
+
+    int drawingColor = Color.BLACK;
+    float lineWidth = 5;
+    Brush brush = Brush.ROUND;
+    boolean strokeEraser; //o toque apaga tracos em vez de desenhar
+    boolean bucketFill; //o toque pinta a area em volta em vez de desenhar
+    //zoom e deslocamento da tela sobre o desenho
+    final Viewport viewport = new Viewport();
+
+    //tempos do toque e do desenho, continuam somando depois de girar a tela
+    final FrameMetrics metrics = new FrameMetrics();
+
+    //abre o diario, que sera lido assim que existir area de desenho
+    public void openJournal(File directory){
+        journal = new StrokeJournal(directory);
+        needsRecovery = true;
+    }
+
+    //cria a thread de save na primeira vez
+    ImageSaver getImageSaver(Context context){
+        if(imageSaver == null)
+            imageSaver = new ImageSaver(context.getApplicationContext().getContentResolver());
+        return imageSaver;
+    }
+
+    //cria a thread do balde de tinta na primeira vez
+    FloodFiller getFloodFiller(){
+        if(floodFiller == null)
+            floodFiller = new FloodFiller();
+        return floodFiller;
+    }
+
+    //libera tudo quando o desenho nao vai mais ser usado
+    public void release(){
+        if(journal != null){
+            journal.close();
+            journal = null;
+        }
+        if(imageSaver != null){
+            imageSaver.shutdown(); //os saves na fila ainda terminam
+            imageSaver = null;
+        }
+        if(floodFiller != null){
+            floodFiller.shutdown();
+            floodFiller = null;
+        }
+        if(layers != null){
+            layers.recycle();
+            layers = null;
+        }
+    }
+}
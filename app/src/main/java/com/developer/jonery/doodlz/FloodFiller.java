@@ -0,0 +1,75 @@
+package com.developer.jonery.doodlz;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Balde de tinta fora da thread de UI. Cada pedido recebe um snapshot de uma
+ * camada inteira, que e copiado pra um int[] e preenchido pelo ScanlineFill numa
+ * thread so de preenchimento; as passadas por todos os pixels das areas grandes
+ * sao divididas em faixas num ForkJoinPool. O resultado volta na thread principal
+ * e tem que ser usado no callback, o proximo pedido reusa o mesmo int[].
+ */
+
+public class FloodFiller {
+    //avisado na thread principal quando o preenchimento termina
+    public interface Callback {
+        void onFilled(Result result);
+    }
+
+    //pixels da camada inteira ja com o preenchimento, linha a linha
+    public static class Result {
+        int[] pixels = new int[0];
+        int width;
+        int height;
+        int filled; //pixels pintados, 0 se nada mudou
+        final int[] bounds = new int[4]; //left, top, right e bottom pintados, os dois ultimos exclusivos
+        long elapsedNanos; //da copia do snapshot ate o fim do preenchimento
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    private final ScanlineFill scanlineFill = new ScanlineFill(pool);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Result result = new Result();
+
+    //preenche a partir de (x, y) com color; o snapshot e liberado na thread principal
+    //antes do callback
+    public void fill(final TiledCanvas.Snapshot snapshot, final int x, final int y, final int color,
+                     final int tolerance, final Callback callback){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                int width = snapshot.getWidth();
+                int height = snapshot.getHeight();
+                if(result.pixels.length < width * height)
+                    result.pixels = new int[width * height];
+                snapshot.getPixels(result.pixels, 0, width);
+                result.width = width;
+                result.height = height;
+                result.filled = scanlineFill.fill(result.pixels, width, height, x, y, color, tolerance);
+                scanlineFill.getBounds(result.bounds);
+                result.elapsedNanos = System.nanoTime() - start;
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        snapshot.release();
+                        callback.onFilled(result);
+                    }
+                });
+            }
+        });
+    }
+
+    //para as threads; o preenchimento na fila ainda termina
+    public void shutdown(){
+        executor.shutdown();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,198 @@
+package com.developer.jonery.doodlz;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Medidas de desempenho do desenho ao vivo: quanto cada fase leva (onTouchEvent,
+ * amostras de movimento, fim do traco, desenho do frame), a latencia do timestamp
+ * do toque ate o frame que mostra ele, os frames perdidos enquanto o dedo mexe e
+ * quantas amostras de cada traco viram pontos guardados no documento.
+ * Tudo vai pra LatencyHistograms de tamanho fixo, sem alocar nada. Cada fase e
+ * gravada por uma thread de cada vez (a de UI ou a RenderThread); a leitura pra
+ * mostrar ou exportar deve ser feita com o mesmo lock do desenho.
+ */
+
+public class FrameMetrics {
+    //fases medidas
+    public static final int TOUCH_EVENT = 0; //onTouchEvent inteiro, so colocar na fila
+    public static final int TOUCH_MOVE = 1; //uma amostra: previsao, filtro e segmento na camada
+    public static final int TOUCH_END = 2; //fim do traco: undo, tiles, documento e diario
+    public static final int DRAW = 3; //desenho do frame, onDraw ou RenderThread
+    public static final int INPUT_LATENCY = 4; //timestamp do toque ate o fim do frame
+    public static final int FRAME_INTERVAL = 5; //entre dois frames seguidos com toque
+    public static final int PHASE_COUNT = 6;
+
+    private static final String[] NAMES = {
+            "touch_event", "touch_move", "touch_end", "draw", "input_latency", "frame_interval"
+    };
+    //frames sem toque nesse tempo contam como pausa, nao como frames perdidos
+    private static final int IDLE_FRAMES = 8;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASE_COUNT];
+    //uptime em ms do toque mais antigo que ainda nao foi desenhado, 0 se nenhum;
+    //escrito pela thread de UI e zerado por quem desenha
+    private final AtomicLong pendingInputMs = new AtomicLong();
+    private long framePeriodNanos = 16666667; //60 Hz
+    private long lastInputFrameNanos; //fim do ultimo frame que mostrou um toque
+    private long frames;
+    private long droppedFrames;
+    //amostras recebidas, pontos aceitos pelo filtro e pontos guardados dos tracos
+    private long samples;
+    private long acceptedPoints;
+    private long storedPoints;
+
+    public FrameMetrics(){
+        for(int i = 0; i < PHASE_COUNT; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    //intervalo entre vsyncs da tela
+    public void setFramePeriodNanos(long nanos){
+        framePeriodNanos = nanos;
+    }
+
+    public long getFramePeriodNanos(){
+        return framePeriodNanos;
+    }
+
+    //grava quanto tempo a fase levou desde startNanos (System.nanoTime)
+    public void recordPhase(int phase, long startNanos){
+        histograms[phase].recordSince(startNanos);
+    }
+
+    //um toque com esse timestamp (uptime em ms, como o MotionEvent.getEventTime)
+    //chegou; so o mais antigo ainda nao desenhado conta pra latencia
+    public void inputReceived(long eventTimeMs){
+        pendingInputMs.compareAndSet(0, Math.max(1, eventTimeMs));
+    }
+
+    //um frame terminou de desenhar em nowNanos (System.nanoTime) / nowMs (uptime)
+    public void frameDrawn(long nowNanos, long nowMs){
+        long input = pendingInputMs.getAndSet(0);
+        if(input == 0)
+            return;
+
+        frames++;
+        histograms[INPUT_LATENCY].record((nowMs - input) * 1000);
+
+        //so conta frames seguidos de um movimento continuo: cada vsync a mais entre
+        //dois deles foi um frame em que o toque esperou sem ser desenhado
+        if(lastInputFrameNanos != 0){
+            long interval = nowNanos - lastInputFrameNanos;
+            if(interval < IDLE_FRAMES * framePeriodNanos){
+                histograms[FRAME_INTERVAL].record(interval / 1000);
+                long vsyncs = (interval + framePeriodNanos / 2) / framePeriodNanos;
+                if(vsyncs > 1)
+                    droppedFrames += vsyncs - 1;
+            }
+        }
+        lastInputFrameNanos = nowNanos;
+    }
+
+    //um traco terminou com samples amostras, accepted pontos aceitos e stored guardados
+    public void strokeStored(int samples, int accepted, int stored){
+        this.samples += samples;
+        acceptedPoints += accepted;
+        storedPoints += stored;
+    }
+
+    public long getSamples(){
+        return samples;
+    }
+
+    public long getAcceptedPoints(){
+        return acceptedPoints;
+    }
+
+    public long getStoredPoints(){
+        return storedPoints;
+    }
+
+    public LatencyHistogram getHistogram(int phase){
+        return histograms[phase];
+    }
+
+    public static String getName(int phase){
+        return NAMES[phase];
+    }
+
+    //frames que mostraram algum toque novo
+    public long getFrames(){
+        return frames;
+    }
+
+    public long getDroppedFrames(){
+        return droppedFrames;
+    }
+
+    //copia tudo pra target, pra ler sem segurar o lock do desenho
+    public void copyTo(FrameMetrics target){
+        for(int i = 0; i < PHASE_COUNT; i++)
+            histograms[i].copyTo(target.histograms[i]);
+        target.framePeriodNanos = framePeriodNanos;
+        target.frames = frames;
+        target.droppedFrames = droppedFrames;
+        target.samples = samples;
+        target.acceptedPoints = acceptedPoints;
+        target.storedPoints = storedPoints;
+    }
+
+    public void reset(){
+        for(LatencyHistogram histogram : histograms)
+            histogram.reset();
+        pendingInputMs.set(0);
+        lastInputFrameNanos = 0;
+        frames = 0;
+        droppedFrames = 0;
+        samples = 0;
+        acceptedPoints = 0;
+        storedPoints = 0;
+    }
+
+    //resume no builder a latencia e o desenho em percentis, em ms, sem alocar
+    public void appendSummary(StringBuilder out){
+        LatencyHistogram latency = histograms[INPUT_LATENCY];
+        LatencyHistogram draw = histograms[DRAW];
+        out.append("latency p50 ");
+        appendMillis(out, latency.getPercentile(50));
+        out.append(" p90 ");
+        appendMillis(out, latency.getPercentile(90));
+        out.append(" p99 ");
+        appendMillis(out, latency.getPercentile(99));
+        out.append(" | draw p99 ");
+        appendMillis(out, draw.getPercentile(99));
+        out.append(" | dropped ").append(droppedFrames).append('/').append(frames);
+        if(samples > 0)
+            out.append(" | points ").append(storedPoints * 100 / samples).append('%');
+    }
+
+    //grava um resumo por fase e depois os baldes nao vazios, em texto CSV
+    public void writeTo(Writer out) throws IOException {
+        out.write("# frame_period_us," + framePeriodNanos / 1000 + "\n");
+        out.write("# frames," + frames + ",dropped," + droppedFrames + "\n");
+        out.write("# samples," + samples + ",accepted," + acceptedPoints + ",stored," + storedPoints + "\n");
+        out.write("phase,count,mean_us,p50_us,p90_us,p95_us,p99_us,max_us\n");
+        for(int i = 0; i < PHASE_COUNT; i++){
+            LatencyHistogram histogram = histograms[i];
+            out.write(NAMES[i] + "," + histogram.getCount() + "," + histogram.getMean() + ","
+                    + histogram.getPercentile(50) + "," + histogram.getPercentile(90) + ","
+                    + histogram.getPercentile(95) + "," + histogram.getPercentile(99) + ","
+                    + histogram.getMax() + "\n");
+        }
+
+        out.write("phase,bucket_us,count\n");
+        for(int i = 0; i < PHASE_COUNT; i++)
+            for(int bucket = 0; bucket < LatencyHistogram.getBuckets(); bucket++){
+                long count = histograms[i].getBucketCount(bucket);
+                if(count > 0)
+                    out.write(NAMES[i] + "," + LatencyHistogram.getBucketLowerBound(bucket) + "," + count + "\n");
+            }
+    }
+
+    //micros como ms com uma casa decimal
+    private static void appendMillis(StringBuilder out, long micros){
+        out.append(micros / 1000).append('.').append(micros / 100 % 10);
+    }
+}
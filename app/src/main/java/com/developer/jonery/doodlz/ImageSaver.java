@@ -0,0 +1,156 @@
+package com.developer.jonery.doodlz;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Salva imagens na galeria fora da thread de UI. Cada pedido recebe um snapshot
+ * da area de desenho, que e desenhado num bitmap, codificado e gravado direto no
+ * OutputStream do ContentResolver por uma unica thread, entao saves seguidos
+ * ficam na fila em vez de travar o desenho. O resultado volta na thread principal.
+ */
+
+public class ImageSaver {
+    private static final String TAG = "ImageSaver";
+    //tamanho da miniatura MICRO_KIND, igual ao MediaStore.Images.Media.insertImage
+    private static final int MICRO_THUMBNAIL_SIZE = 50;
+
+    //formatos de imagem suportados
+    public enum Format {
+        PNG(Bitmap.CompressFormat.PNG, "image/png", ".png"),
+        JPEG(Bitmap.CompressFormat.JPEG, "image/jpeg", ".jpg"),
+        WEBP(Bitmap.CompressFormat.WEBP, "image/webp", ".webp");
+
+        final Bitmap.CompressFormat compressFormat;
+        final String mimeType;
+        final String extension;
+
+        Format(Bitmap.CompressFormat compressFormat, String mimeType, String extension){
+            this.compressFormat = compressFormat;
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+    }
+
+    //avisado na thread principal quando um save termina
+    public interface Callback {
+        //uri e null se deu erro
+        void onImageSaved(Uri uri);
+    }
+
+    private final ContentResolver resolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public ImageSaver(ContentResolver resolver){
+        this.resolver = resolver;
+    }
+
+    //coloca o save na fila, o snapshot e liberado na thread principal quando acabar
+    public void save(final LayerStack.Snapshot snapshot, final Format format, final int quality,
+                     final String title, final String description, final Callback callback){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Uri uri = write(snapshot, format, quality, title, description);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        snapshot.release();
+                        if(callback != null)
+                            callback.onImageSaved(uri);
+                    }
+                });
+            }
+        });
+    }
+
+    //para a thread depois dos saves que ja estao na fila
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    //roda na thread do executor
+    private Uri write(LayerStack.Snapshot snapshot, Format format, int quality,
+                      String title, String description){
+        Bitmap bitmap = snapshot.render();
+        long now = System.currentTimeMillis();
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.TITLE, title);
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, title + format.extension);
+        values.put(MediaStore.Images.Media.DESCRIPTION, description);
+        values.put(MediaStore.Images.Media.MIME_TYPE, format.mimeType);
+        //a data coloca a imagem no inicio da galeria
+        values.put(MediaStore.Images.Media.DATE_ADDED, now / 1000);
+        values.put(MediaStore.Images.Media.DATE_TAKEN, now);
+        values.put(MediaStore.Images.Media.WIDTH, bitmap.getWidth());
+        values.put(MediaStore.Images.Media.HEIGHT, bitmap.getHeight());
+
+        Uri uri = null;
+        try {
+            uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if(uri == null)
+                return null;
+
+            OutputStream out = new BufferedOutputStream(resolver.openOutputStream(uri));
+            try {
+                if(!bitmap.compress(format.compressFormat, quality, out))
+                    throw new IOException("compress falhou");
+            } finally {
+                out.close();
+            }
+
+            storeThumbnail(bitmap, ContentUris.parseId(uri));
+            return uri;
+        } catch (Exception e) {
+            Log.e(TAG, "erro salvando a imagem", e);
+            if(uri != null)
+                resolver.delete(uri, null, null);
+            return null;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    //grava a miniatura MICRO_KIND como o insertImage faz, por compatibilidade
+    private void storeThumbnail(Bitmap source, long id){
+        Bitmap thumb = Bitmap.createScaledBitmap(source, MICRO_THUMBNAIL_SIZE, MICRO_THUMBNAIL_SIZE, true);
+
+        ContentValues values = new ContentValues(4);
+        values.put(MediaStore.Images.Thumbnails.KIND, MediaStore.Images.Thumbnails.MICRO_KIND);
+        values.put(MediaStore.Images.Thumbnails.IMAGE_ID, (int) id);
+        values.put(MediaStore.Images.Thumbnails.HEIGHT, thumb.getHeight());
+        values.put(MediaStore.Images.Thumbnails.WIDTH, thumb.getWidth());
+
+        try {
+            Uri uri = resolver.insert(MediaStore.Images.Thumbnails.EXTERNAL_CONTENT_URI, values);
+            if(uri != null){
+                OutputStream out = resolver.openOutputStream(uri);
+                try {
+                    thumb.compress(Bitmap.CompressFormat.JPEG, 100, out);
+                } finally {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            //sem miniatura a galeria gera uma depois
+            Log.w(TAG, "erro salvando a miniatura", e);
+        } finally {
+            thumb.recycle();
+        }
+    }
+}
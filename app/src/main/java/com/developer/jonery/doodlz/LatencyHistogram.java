@@ -0,0 +1,113 @@
+package com.developer.jonery.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Histograma de tempos em microssegundos com baldes de tamanho fixo: exatos ate 64us
+ * e depois 32 baldes por potencia de 2, entao o erro de um percentil fica abaixo de
+ * ~3% de 0 a ~17 s. O record nao aloca nada e custa umas poucas operacoes, entao
+ * pode ficar ligado no caminho do toque. Feito pra uma thread gravando; quem le
+ * de outra thread deve sincronizar com ela ou aceitar numeros um pouco atrasados.
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS; //ate aqui um balde por microssegundo
+    //maior valor guardado, o resto cai no ultimo balde
+    public static final long MAX_MICROS = (1L << 24) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_MICROS) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long total;
+    private long max;
+
+    //guarda uma medida em microssegundos, negativos viram 0
+    public void record(long micros){
+        if(micros < 0)
+            micros = 0;
+        counts[bucketIndex(Math.min(micros, MAX_MICROS))]++;
+        count++;
+        total += micros;
+        if(micros > max)
+            max = micros;
+    }
+
+    //guarda o tempo de startNanos ate agora
+    public void recordSince(long startNanos){
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    //menor valor que o percentil p (0 a 100) das medidas nao passa, pelo limite
+    //de cima do balde; 0 se nao tem medidas
+    public long getPercentile(double p){
+        if(count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(p / 100 * count);
+        rank = Math.max(1, Math.min(count, rank));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += counts[i];
+            if(seen >= rank)
+                return Math.min(max, bucketUpperBound(i));
+        }
+        return max;
+    }
+
+    public long getCount(){
+        return count;
+    }
+
+    public long getMax(){
+        return max;
+    }
+
+    public long getMean(){
+        return count == 0 ? 0 : total / count;
+    }
+
+    //quantos baldes existem, pra percorrer com getBucketCount/getBucketLowerBound
+    public static int getBuckets(){
+        return BUCKET_COUNT;
+    }
+
+    public long getBucketCount(int bucket){
+        return counts[bucket];
+    }
+
+    //menor valor em microssegundos que cai no balde
+    public static long getBucketLowerBound(int bucket){
+        if(bucket < LINEAR_LIMIT)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket - shift * SUB_BUCKETS) << shift;
+    }
+
+    //copia as medidas pra target, sem alocar
+    public void copyTo(LatencyHistogram target){
+        System.arraycopy(counts, 0, target.counts, 0, BUCKET_COUNT);
+        target.count = count;
+        target.total = total;
+        target.max = max;
+    }
+
+    public void reset(){
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    private static long bucketUpperBound(int bucket){
+        return bucket + 1 < BUCKET_COUNT ? getBucketLowerBound(bucket + 1) - 1 : MAX_MICROS;
+    }
+
+    //abaixo de 64 o proprio valor; acima, 32 baldes entre cada potencia de 2
+    private static int bucketIndex(long micros){
+        if(micros < LINEAR_LIMIT)
+            return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 5;
+        return shift * SUB_BUCKETS + (int) (micros >> shift);
+    }
+}
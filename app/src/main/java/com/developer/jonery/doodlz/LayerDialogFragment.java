@@ -0,0 +1,95 @@
+package com.developer.jonery.doodlz;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.SeekBar;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+/**
+ * Dialogo com a visibilidade, opacidade e modo de mistura da camada ativa, e o
+ * botao pra apagar ela. Mostra tambem quanta memoria as camadas estao usando.
+ */
+
+public class LayerDialogFragment extends DialogFragment {
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        View layerDialogView = getActivity().getLayoutInflater().inflate(R.layout.fragment_layer, null);
+        builder.setView(layerDialogView);
+
+        final DoodleView doodleView = getDoodleFragment().getDoodleView();
+        final int layer = doodleView.getActiveLayer();
+        builder.setTitle(getString(R.string.layer_name, layer + 1));
+
+        final CheckBox visibleCheckBox = (CheckBox) layerDialogView.findViewById(R.id.layerVisibleCheckBox);
+        final SeekBar opacitySeekBar = (SeekBar) layerDialogView.findViewById(R.id.layerOpacitySeekBar);
+        final Spinner blendSpinner = (Spinner) layerDialogView.findViewById(R.id.layerBlendSpinner);
+        TextView memoryTextView = (TextView) layerDialogView.findViewById(R.id.layerMemoryTextView);
+
+        //comeca com o que a camada ja tem
+        visibleCheckBox.setChecked(doodleView.isLayerVisible(layer));
+        opacitySeekBar.setProgress(doodleView.getLayerAlpha(layer));
+        blendSpinner.setSelection(doodleView.getLayerBlend(layer).ordinal());
+        memoryTextView.setText(getString(R.string.label_layer_memory,
+                doodleView.getLayerMemoryBytes() / (1024 * 1024)));
+
+        builder.setPositiveButton(R.string.button_set_layer,
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        doodleView.setLayerProperties(layer, visibleCheckBox.isChecked(),
+                                opacitySeekBar.getProgress(),
+                                LayerStack.Blend.values()[blendSpinner.getSelectedItemPosition()]);
+                    }
+                });
+
+        //a ultima camada nao pode ser apagada
+        if(doodleView.getLayerCount() > 1)
+            builder.setNegativeButton(R.string.button_delete_layer,
+                    new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            doodleView.removeLayer(layer);
+                        }
+                    });
+
+        return builder.create();
+    }
+
+    private MainActivityFragment getDoodleFragment(){
+        return (MainActivityFragment) getFragmentManager().findFragmentById(R.id.doodleFragment);
+    }
+
+    //fala pro mainActivityFragment que o dialogo esta na tela
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        MainActivityFragment fragment = getDoodleFragment();
+
+        if(fragment!=null){
+            fragment.setDialogOnScreen(true);
+        }
+    }
+
+    //fala pro MainActivityFragment que o dialogo saiu da tela
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        MainActivityFragment fragment = getDoodleFragment();
+
+        if(fragment!=null){
+            fragment.setDialogOnScreen(false);
+        }
+    }
+}
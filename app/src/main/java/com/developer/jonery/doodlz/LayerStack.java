@@ -0,0 +1,517 @@
+package com.developer.jonery.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Camadas do desenho, de baixo pra cima, cada uma num TiledCanvas transparente com
+ * visibilidade, opacidade e modo de mistura. Pra um frame nao misturar todas as
+ * camadas de novo, ficam em cache as camadas de baixo da ativa ja misturadas com o
+ * fundo branco e as de cima ja misturadas entre si: o frame desenha o cache de baixo,
+ * a camada ativa, os tracos em andamento e o cache de cima. Os caches sao refeitos
+ * tile por tile, so quando um tile que mudou e desenhado. Os modos de mistura fora o
+ * NORMAL nao podem ser agrupados, entao se alguma camada de cima usa um deles as de
+ * cima sao desenhadas uma a uma. De longe o desenho vem de uma TilePyramid com
+ * tudo misturado, refeita so onde os tiles das camadas mudaram. Todos os TiledCanvas
+ * sincronizam no LayerStack.
+ */
+
+public class LayerStack {
+    //niveis da piramide, o ultimo tem 1/2^PYRAMID_LEVELS do tamanho do desenho
+    public static final int PYRAMID_LEVELS = 3;
+
+    //como a camada e misturada com o que esta embaixo dela, na ordem do R.array.blend_modes
+    public enum Blend {
+        NORMAL(PorterDuff.Mode.SRC_OVER),
+        MULTIPLY(PorterDuff.Mode.MULTIPLY),
+        SCREEN(PorterDuff.Mode.SCREEN),
+        OVERLAY(PorterDuff.Mode.OVERLAY),
+        DARKEN(PorterDuff.Mode.DARKEN),
+        LIGHTEN(PorterDuff.Mode.LIGHTEN),
+        ADD(PorterDuff.Mode.ADD);
+
+        final PorterDuffXfermode xfermode;
+
+        Blend(PorterDuff.Mode mode){
+            xfermode = new PorterDuffXfermode(mode);
+        }
+    }
+
+    private static class Layer {
+        final TiledCanvas canvas;
+        final File directory; //arquivos dos tiles que foram pro disco
+        final Paint paint = new Paint(); //alpha e modo de mistura da camada
+        boolean visible = true;
+        int alpha = 255;
+        Blend blend = Blend.NORMAL;
+
+        Layer(TiledCanvas canvas, File directory){
+            this.canvas = canvas;
+            this.directory = directory;
+        }
+
+        void updatePaint(){
+            paint.setAlpha(alpha);
+            paint.setXfermode(blend == Blend.NORMAL ? null : blend.xfermode);
+        }
+    }
+
+    private final File directory;
+    private final int maxLayers;
+    private int maxResidentTiles; //dividido entre as camadas e os caches
+    private final List<Layer> layers = new ArrayList<>();
+    private int active;
+    private int nextId; //nome da pasta da proxima camada
+
+    //fundo branco mais as camadas visiveis de baixo da ativa
+    private final TiledCanvas below;
+    //camadas visiveis de cima da ativa, transparente, so usado se todas sao NORMAL
+    private final TiledCanvas above;
+    private boolean[] belowStale;
+    private boolean[] aboveStale;
+    private final Canvas tileCanvas = new Canvas(); //refaz um tile dos caches
+    private final Paint backgroundPaint = new Paint();
+    //todas as camadas misturadas em tamanhos menores, pra desenhar de longe
+    private TilePyramid pyramid;
+    private final TilePyramid.Source pyramidSource = new TilePyramid.Source() {
+        @Override
+        public int getTileStamp(int index) {
+            //as camadas so mudam de numero junto com um invalidateCaches
+            int stamp = 0;
+            for(Layer layer : layers)
+                stamp += layer.canvas.getTileVersion(index);
+            return stamp;
+        }
+
+        @Override
+        public void composeTile(int index, Canvas canvas) {
+            drawBelowTile(canvas, index, 0, 0, anyVisible(0, active));
+            drawAboveTile(canvas, index, 0, 0, anyVisible(active + 1, layers.size()),
+                    allNormal(active + 1, layers.size()));
+        }
+    };
+
+    public LayerStack(int width, int height, int maxResidentTiles, int maxLayers, File directory){
+        this.directory = directory;
+        this.maxLayers = Math.max(1, Math.min(StrokeDocument.MAX_LAYERS, maxLayers));
+        this.maxResidentTiles = maxResidentTiles;
+        backgroundPaint.setColor(Color.WHITE);
+
+        //pastas de camadas de uma sessao anterior nao valem mais
+        File[] old = directory.listFiles();
+        if(old != null)
+            for(File file : old)
+                deleteDirectory(file);
+
+        below = new TiledCanvas(width, height, maxResidentTiles, new File(directory, "below"), Color.WHITE, this);
+        above = new TiledCanvas(width, height, maxResidentTiles, new File(directory, "above"),
+                Color.TRANSPARENT, this);
+        belowStale = new boolean[below.getColumns() * below.getRows()];
+        aboveStale = new boolean[belowStale.length];
+        pyramid = newPyramid();
+        addLayer();
+    }
+
+    public int getWidth(){
+        return below.getWidth();
+    }
+
+    public int getHeight(){
+        return below.getHeight();
+    }
+
+    //aumenta todas as camadas e os caches mantendo o conteudo no lugar
+    public void ensureSize(int width, int height){
+        if(width <= getWidth() && height <= getHeight())
+            return;
+
+        for(Layer layer : layers)
+            layer.canvas.ensureSize(width, height);
+        below.ensureSize(width, height);
+        above.ensureSize(width, height);
+        //os indices dos tiles mudaram junto com o numero de colunas
+        belowStale = new boolean[below.getColumns() * below.getRows()];
+        aboveStale = new boolean[belowStale.length];
+        pyramid.recycle();
+        pyramid = newPyramid();
+        invalidateCaches();
+    }
+
+    private TilePyramid newPyramid(){
+        return new TilePyramid(below.getColumns(), below.getRows(), PYRAMID_LEVELS, directory, this, pyramidSource);
+    }
+
+    public int getLayerCount(){
+        return layers.size();
+    }
+
+    public int getMaxLayers(){
+        return maxLayers;
+    }
+
+    public boolean canAddLayer(){
+        return layers.size() < maxLayers;
+    }
+
+    //poe uma camada vazia em cima de todas e retorna o numero dela, ou -1 se ja tem
+    //o maximo de camadas. A ativa nao muda
+    public int addLayer(){
+        if(!canAddLayer())
+            return -1;
+
+        File layerDirectory = new File(directory, "layer" + nextId++);
+        layers.add(new Layer(new TiledCanvas(getWidth(), getHeight(), maxResidentTiles, layerDirectory,
+                Color.TRANSPARENT, this), layerDirectory));
+        splitResidentTiles();
+        invalidateCaches();
+        return layers.size() - 1;
+    }
+
+    //cria camadas ate ter pelo menos count, por exemplo pros tracos de um documento lido
+    public void ensureLayerCount(int count){
+        while(layers.size() < count && addLayer() >= 0) {
+            //addLayer ja fez tudo
+        }
+    }
+
+    //remove a camada e os pixels dela; a ultima camada nao pode ser removida
+    public boolean removeLayer(int index){
+        if(layers.size() == 1)
+            return false;
+
+        Layer layer = layers.remove(index);
+        layer.canvas.recycle();
+        deleteDirectory(layer.directory);
+        if(active > index || active == layers.size())
+            active--;
+        splitResidentTiles();
+        invalidateCaches();
+        return true;
+    }
+
+    public int getActive(){
+        return active;
+    }
+
+    //os tracos novos vao pra camada index
+    public void setActive(int index){
+        if(index == active)
+            return;
+        active = index;
+        //a mistura de todas continua igual, so a piramide fica como esta
+        Arrays.fill(belowStale, true);
+        Arrays.fill(aboveStale, true);
+    }
+
+    public TiledCanvas getCanvas(int index){
+        return layers.get(index).canvas;
+    }
+
+    public boolean isVisible(int index){
+        return layers.get(index).visible;
+    }
+
+    public void setVisible(int index, boolean visible){
+        layers.get(index).visible = visible;
+        invalidateCaches();
+    }
+
+    //opacidade da camada, de 0 a 255
+    public int getAlpha(int index){
+        return layers.get(index).alpha;
+    }
+
+    public void setAlpha(int index, int alpha){
+        Layer layer = layers.get(index);
+        layer.alpha = Math.max(0, Math.min(255, alpha));
+        layer.updatePaint();
+        invalidateCaches();
+    }
+
+    public Blend getBlend(int index){
+        return layers.get(index).blend;
+    }
+
+    public void setBlend(int index, Blend blend){
+        Layer layer = layers.get(index);
+        layer.blend = blend;
+        layer.updatePaint();
+        invalidateCaches();
+    }
+
+    //apaga o conteudo de todas as camadas, que continuam com as mesmas propriedades
+    public void clear(){
+        for(Layer layer : layers)
+            layer.canvas.clear();
+        below.clear();
+        above.clear();
+        invalidateCaches();
+    }
+
+    //o retangulo da camada index mudou; se ela esta num cache os tiles dele sao refeitos
+    public void invalidate(int index, float left, float top, float right, float bottom){
+        if(index == active)
+            return;
+
+        boolean[] stale = index < active ? belowStale : aboveStale;
+        int columns = below.getColumns();
+        int firstColumn = Math.max(0, (int) Math.floor(left / TiledCanvas.TILE_SIZE));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor(right / TiledCanvas.TILE_SIZE));
+        int firstRow = Math.max(0, (int) Math.floor(top / TiledCanvas.TILE_SIZE));
+        int lastRow = Math.min(below.getRows() - 1, (int) Math.floor(bottom / TiledCanvas.TILE_SIZE));
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++)
+                stale[row * columns + column] = true;
+    }
+
+    //os dois caches e a piramide sao refeitos conforme forem desenhados
+    private void invalidateCaches(){
+        Arrays.fill(belowStale, true);
+        Arrays.fill(aboveStale, true);
+        pyramid.invalidate();
+    }
+
+    //desenha o fundo, as camadas de baixo e a ativa na parte clip do canvas
+    public void drawBelow(Canvas canvas, Rect clip){
+        boolean anyBelow = anyVisible(0, active);
+        int columns = below.getColumns();
+        int firstColumn = Math.max(0, clip.left / TiledCanvas.TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (clip.right - 1) / TiledCanvas.TILE_SIZE);
+        int firstRow = Math.max(0, clip.top / TiledCanvas.TILE_SIZE);
+        int lastRow = Math.min(below.getRows() - 1, (clip.bottom - 1) / TiledCanvas.TILE_SIZE);
+
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++)
+                drawBelowTile(canvas, row * columns + column, column * TiledCanvas.TILE_SIZE,
+                        row * TiledCanvas.TILE_SIZE, anyBelow);
+    }
+
+    //desenha as camadas de cima da ativa na parte clip do canvas
+    public void drawAbove(Canvas canvas, Rect clip){
+        boolean anyAbove = anyVisible(active + 1, layers.size());
+        if(!anyAbove)
+            return;
+
+        boolean normal = allNormal(active + 1, layers.size());
+        int columns = above.getColumns();
+        int firstColumn = Math.max(0, clip.left / TiledCanvas.TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (clip.right - 1) / TiledCanvas.TILE_SIZE);
+        int firstRow = Math.max(0, clip.top / TiledCanvas.TILE_SIZE);
+        int lastRow = Math.min(above.getRows() - 1, (clip.bottom - 1) / TiledCanvas.TILE_SIZE);
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++)
+                drawAboveTile(canvas, row * columns + column, column * TiledCanvas.TILE_SIZE,
+                        row * TiledCanvas.TILE_SIZE, anyAbove, normal);
+    }
+
+    //desenha todas as camadas ja misturadas, do nivel level (de 1 ate PYRAMID_LEVELS)
+    //da piramide, na parte clip (em coordenadas do desenho) de um canvas que ja esta
+    //na escala do desenho
+    public void drawLevel(Canvas canvas, Rect clip, int level, Paint paint){
+        pyramid.draw(canvas, clip, level, paint);
+    }
+
+    //desenha em (x, y) o fundo, o cache de baixo e a camada ativa do tile index
+    private void drawBelowTile(Canvas canvas, int index, int x, int y, boolean anyBelow){
+        Bitmap tile = null;
+        if(anyBelow){
+            if(belowStale[index])
+                flatten(below, index, 0, active);
+            belowStale[index] = false;
+            tile = below.getTile(index);
+        }
+        if(tile != null)
+            canvas.drawBitmap(tile, x, y, null);
+        else
+            canvas.drawRect(x, y, x + TiledCanvas.TILE_SIZE, y + TiledCanvas.TILE_SIZE, backgroundPaint);
+
+        Layer activeLayer = layers.get(active);
+        if(activeLayer.visible){
+            tile = activeLayer.canvas.getTile(index);
+            if(tile != null)
+                canvas.drawBitmap(tile, x, y, activeLayer.paint);
+        }
+    }
+
+    //desenha em (x, y) as camadas de cima do tile index: o cache, ou uma a uma se
+    //alguma nao e NORMAL
+    private void drawAboveTile(Canvas canvas, int index, int x, int y, boolean anyAbove, boolean normal){
+        if(!anyAbove)
+            return;
+
+        if(!normal){
+            for(int i = active + 1; i < layers.size(); i++){
+                Layer layer = layers.get(i);
+                Bitmap tile = layer.visible ? layer.canvas.getTile(index) : null;
+                if(tile != null)
+                    canvas.drawBitmap(tile, x, y, layer.paint);
+            }
+            return;
+        }
+
+        if(aboveStale[index])
+            flatten(above, index, active + 1, layers.size());
+        aboveStale[index] = false;
+        Bitmap tile = above.getTile(index);
+        if(tile != null)
+            canvas.drawBitmap(tile, x, y, null);
+    }
+
+    //refaz o tile index do cache com as camadas visiveis de first ate end (exclusive);
+    //se nenhuma tem pixels ali o tile do cache fica em branco e sem memoria
+    private void flatten(TiledCanvas cache, int index, int first, int end){
+        Bitmap tile = null;
+        for(int i = first; i < end; i++){
+            Layer layer = layers.get(i);
+            if(!layer.visible)
+                continue;
+            Bitmap source = layer.canvas.getTile(index);
+            if(source == null)
+                continue;
+
+            if(tile == null){
+                tile = cache.editTile(index);
+                tile.eraseColor(cache.getBackgroundColor());
+                tileCanvas.setBitmap(tile);
+            }
+            tileCanvas.drawBitmap(source, 0, 0, layer.paint);
+        }
+
+        if(tile == null)
+            cache.clearTile(index);
+        tileCanvas.setBitmap(null);
+    }
+
+    private boolean anyVisible(int first, int end){
+        for(int i = first; i < end; i++)
+            if(layers.get(i).visible)
+                return true;
+        return false;
+    }
+
+    private boolean allNormal(int first, int end){
+        for(int i = first; i < end; i++)
+            if(layers.get(i).visible && layers.get(i).blend != Blend.NORMAL)
+                return false;
+        return true;
+    }
+
+    //foto de todas as camadas visiveis na area (x, y, w, h), sem copiar pixels
+    public Snapshot snapshot(int x, int y, int w, int h){
+        Snapshot snapshot = new Snapshot(w, h);
+        for(Layer layer : layers)
+            if(layer.visible){
+                snapshot.layers.add(layer.canvas.snapshot(x, y, w, h));
+                snapshot.paints.add(new Paint(layer.paint));
+            }
+        return snapshot;
+    }
+
+    //foto de cada camada inteira, visivel ou nao, pro checkpoint do diario
+    public TiledCanvas.Snapshot[] snapshotLayers(){
+        TiledCanvas.Snapshot[] snapshots = new TiledCanvas.Snapshot[layers.size()];
+        for(int i = 0; i < snapshots.length; i++)
+            snapshots[i] = getCanvas(i).snapshot(0, 0, getWidth(), getHeight());
+        return snapshots;
+    }
+
+    //foto das camadas que pode ser misturada em outra thread, como a do TiledCanvas
+    public static class Snapshot {
+        private final int width;
+        private final int height;
+        private final List<TiledCanvas.Snapshot> layers = new ArrayList<>();
+        private final List<Paint> paints = new ArrayList<>();
+
+        private Snapshot(int width, int height){
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth(){
+            return width;
+        }
+
+        public int getHeight(){
+            return height;
+        }
+
+        //mistura as camadas no destino, que precisa ter width x height, sobre o fundo branco
+        public void render(Bitmap destination){
+            destination.eraseColor(Color.WHITE);
+            Canvas canvas = new Canvas(destination);
+            for(int i = 0; i < layers.size(); i++)
+                layers.get(i).render(canvas, paints.get(i));
+        }
+
+        public Bitmap render(){
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            render(bitmap);
+            return bitmap;
+        }
+
+        //pode ser chamado em qualquer thread
+        public void release(){
+            for(TiledCanvas.Snapshot layer : layers)
+                layer.release();
+        }
+    }
+
+    //bytes de pixels na memoria das camadas e dos caches
+    public long getMemoryBytes(){
+        long bytes = getCacheMemoryBytes();
+        for(Layer layer : layers)
+            bytes += layer.canvas.getResidentBytes();
+        return bytes;
+    }
+
+    public long getLayerMemoryBytes(int index){
+        return layers.get(index).canvas.getResidentBytes();
+    }
+
+    public long getCacheMemoryBytes(){
+        return below.getResidentBytes() + above.getResidentBytes() + pyramid.getResidentBytes();
+    }
+
+    //limite de tiles na memoria somando camadas e caches; o resto vai pro disco
+    public void setMaxResidentTiles(int maxTiles){
+        maxResidentTiles = maxTiles;
+        splitResidentTiles();
+    }
+
+    //com uma camada so os caches nao sao usados e ela fica com tudo
+    private void splitResidentTiles(){
+        int caches = layers.size() > 1 ? 2 : 0;
+        int share = Math.max(1, maxResidentTiles / (layers.size() + caches));
+        for(Layer layer : layers)
+            layer.canvas.setMaxResidentTiles(share);
+        below.setMaxResidentTiles(share);
+        above.setMaxResidentTiles(share);
+    }
+
+    //libera a memoria e os arquivos, nao deve ser usado depois
+    public void recycle(){
+        for(Layer layer : layers)
+            layer.canvas.recycle();
+        below.recycle();
+        above.recycle();
+        pyramid.recycle();
+    }
+
+    private static void deleteDirectory(File directory){
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        directory.delete();
+    }
+}
@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -19,6 +20,9 @@ import android.widget.SeekBar;
  */
 
 public class LineWidthDialogFragment extends DialogFragment {
+    //memoria das mascaras do preview, so uma grossura por vez
+    private static final long PREVIEW_DAB_BYTES = 256 * 1024;
+
     private ImageView widthImageView;
 
     @NonNull
@@ -82,19 +86,37 @@ public class LineWidthDialogFragment extends DialogFragment {
                 final Bitmap bitmap = Bitmap.createBitmap(
                         400, 100, Bitmap.Config.ARGB_8888);
                 final Canvas canvas = new Canvas(bitmap);//desenha a linha no bitmap
+                //tudo criado uma vez so, arrastar a barra nao aloca nada
+                final Paint linePaint = new Paint();
+                final Paint layerPaint = new Paint();
+                //os pinceis de carimbo vao pra uma camada que e pintada com a cor,
+                //igual ao traco na DoodleView
+                final Bitmap layer = Bitmap.createBitmap(400, 100, Bitmap.Config.ALPHA_8);
+                final Canvas layerCanvas = new Canvas(layer);
+                final BrushPainter painter = new BrushPainter(PREVIEW_DAB_BYTES);
+                final float[] line = {30, 50, 370, 50};
+
                 @Override
                 public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-
-                    Paint p = new Paint();
-                    p.setColor(getDoodleFragment().getDoodleView().getDrawingColor());
-                    p.setStrokeWidth(progress);
-                    p.setStrokeCap(Paint.Cap.ROUND);
+                    DoodleView doodleView = getDoodleFragment().getDoodleView();
+                    Brush brush = doodleView.getBrush();
+                    int color = doodleView.getDrawingColor();
 
                     //apaga o desenha e faz denovo
-                    bitmap.eraseColor(
-                            getResources().getColor(android.R.color.transparent,
-                            getContext().getTheme()));
-                    canvas.drawLine(30, 50, 370, 50, p);
+                    bitmap.eraseColor(Color.TRANSPARENT);
+                    if(brush.isStamped()){
+                        layer.eraseColor(Color.TRANSPARENT);
+                        painter.drawLines(layerCanvas, brush, progress, Color.BLACK, line, 2);
+                        layerPaint.setColor(color);
+                        layerPaint.setAlpha(brush.getStrokeAlpha(color));
+                        canvas.drawBitmap(layer, 0, 0, layerPaint);
+                    }
+                    else {
+                        linePaint.setColor(color);
+                        linePaint.setStrokeWidth(progress);
+                        linePaint.setStrokeCap(Paint.Cap.ROUND);
+                        canvas.drawLine(line[0], line[1], line[2], line[3], linePaint);
+                    }
                     widthImageView.setImageBitmap(bitmap);
                 }
 
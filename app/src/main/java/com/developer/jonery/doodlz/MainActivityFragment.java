@@ -8,6 +8,7 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
 import android.os.Bundle;
@@ -16,26 +17,42 @@ import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.Gravity;
+import android.view.SurfaceView;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * A placeholder fragment containing a simple view.
  */
-public class MainActivityFragment extends Fragment {
+public class MainActivityFragment extends Fragment implements ImageSaver.Callback {
 
     private DoodleView doodleView; //handle touche events and draws
-    private float acceleration;
-    private float currentAcceleration;
-    private float lastAcceleration;
+    private final ShakeDetector shakeDetector = new ShakeDetector(); //chacoalhar pra apagar
     private boolean dialogOnScreen = false;
 
-    //valor usado pra saber se o user chacoalhou o cel para apagar
-    private static final int ACCELERATION_THRESHOLD = 100000;
+    //25 amostras por segundo entregues em lotes de ate meio segundo pelo FIFO do
+    //sensor, entao o processador acorda ~2 vezes por segundo e nao a cada amostra
+    private static final int SHAKE_SAMPLING_PERIOD_US = 40000;
+    private static final int SHAKE_MAX_REPORT_LATENCY_US = 500000;
+    //sem FIFO cada amostra acorda o processador, entao a taxa cai pra 12.5 por segundo,
+    //o minimo em que um shake de ~4 Hz ainda aparece sem depender da sorte
+    private static final int SHAKE_FALLBACK_PERIOD_US = 80000;
+    //tag do dialogo de apagar, pra nao abrir dois
+    private static final String ERASE_DIALOG_TAG = "erase dialog";
 
     //usado pra identificar o pedido de utilizar external storage pra salvar a imagem
     private static final int SAVE_IMAGE_PERMISSION_REQUEST_CODE = 1;
 
+    //qualidade usada nos formatos com perda (JPEG e WebP)
+    private static final int SAVE_QUALITY = 90;
+    //formato escolhido no dialogo de salvar
+    private ImageSaver.Format saveFormat = ImageSaver.Format.PNG;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -48,11 +65,21 @@ public class MainActivityFragment extends Fragment {
 
         //pegar a referencia pro doodleView
         doodleView = (DoodleView) view.findViewById(R.id.doodleView);
-
-        //inicializa os valores de aceleracao
-        acceleration = 0.00f;
-        currentAcceleration = SensorManager.GRAVITY_EARTH;
-        lastAcceleration = SensorManager.GRAVITY_EARTH;
+        //surface usada quando o desenho passa pra thread de render
+        doodleView.setRenderSurface((SurfaceView) view.findViewById(R.id.renderSurface));
+
+        //pega o desenho guardado no fragmento que sobrevive a rotacao, ou cria um
+        CanvasHolderFragment holder = (CanvasHolderFragment)
+                getFragmentManager().findFragmentByTag(CanvasHolderFragment.TAG);
+        if(holder == null){
+            holder = new CanvasHolderFragment();
+            getFragmentManager().beginTransaction().add(holder, CanvasHolderFragment.TAG).commit();
+        }
+        //desenho novo, ou holder recriado vazio depois que o processo morreu: recupera
+        //do diario, se o app tinha sido fechado ou morto
+        if(holder.getState().journal == null)
+            holder.getState().openJournal(new File(getContext().getFilesDir(), "journal"));
+        doodleView.setDrawingState(holder.getState());
 
         return view;
     }
@@ -69,9 +96,17 @@ public class MainActivityFragment extends Fragment {
         //pega o SensorManager
         SensorManager sensorManager = (SensorManager) getActivity().getSystemService(Context.SENSOR_SERVICE);
 
-        //registra pra escutar o acelerometro
-        sensorManager.registerListener(sensorEventListener, sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-                SensorManager.SENSOR_DELAY_NORMAL);
+        Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        if(accelerometer == null)
+            return;
+
+        //registra pra escutar o acelerometro, em lotes se o sensor tiver FIFO
+        shakeDetector.reset();
+        if(accelerometer.getFifoMaxEventCount() > 0)
+            sensorManager.registerListener(sensorEventListener, accelerometer,
+                    SHAKE_SAMPLING_PERIOD_US, SHAKE_MAX_REPORT_LATENCY_US);
+        else
+            sensorManager.registerListener(sensorEventListener, accelerometer, SHAKE_FALLBACK_PERIOD_US);
     }
 
     //parar de ouvir o acelerometro
@@ -79,12 +114,13 @@ public class MainActivityFragment extends Fragment {
     public void onPause() {
         super.onPause();
         disableAccelerometerListening(); //para o listening de shake
+        doodleView.flushJournal(); //garante que os ultimos tracos estao no disco
     }
 
     private void disableAccelerometerListening(){
         SensorManager sensorManager = (SensorManager) getActivity().getSystemService(Context.SENSOR_SERVICE);
 
-        sensorManager.unregisterListener(sensorEventListener, sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
+        sensorManager.unregisterListener(sensorEventListener);
     }
 
     //evento handler do acelerometro
@@ -92,27 +128,11 @@ public class MainActivityFragment extends Fragment {
             new SensorEventListener() {
                 @Override
                 public void onSensorChanged(SensorEvent event) {
-
-                    if(!dialogOnScreen){
-                        //pega os x, y e z se nao tiver caixa de dialogo na tela
-                        float x = event.values[0];
-                        float y = event.values[1];
-                        float z = event.values[2];
-
-                        //pega a aceleracao anterior
-                        lastAcceleration = currentAcceleration;
-
-                        //calcula a nova aceleracao
-                        currentAcceleration = x*x + y*y + z*z;
-
-                        //calcula a variacao da aceleracao
-                        acceleration = currentAcceleration*(currentAcceleration-lastAcceleration);
-
-                        //apaga se a aceleracao estiver acima de um valor
-                        if(acceleration> ACCELERATION_THRESHOLD){
-                            confirmErase();
-                        }
-                    }
+                    //o detector ve todas as amostras pra manter o filtro em dia, mas
+                    //com um dialogo na tela o shake e ignorado
+                    if(shakeDetector.addSample(event.timestamp, event.values[0], event.values[1], event.values[2])
+                            && !dialogOnScreen)
+                        confirmErase();
                 }
 
                 @Override
@@ -122,20 +142,39 @@ public class MainActivityFragment extends Fragment {
             };
 
     public void confirmErase(){
+        //o show so e executado depois, entao marca o dialogo ja e confere a tag, senao
+        //outro shake ou clique antes do onAttach abriria um segundo dialogo
+        if(dialogOnScreen || getFragmentManager().findFragmentByTag(ERASE_DIALOG_TAG) != null)
+            return;
+        dialogOnScreen = true;
+
         EraseImageDialogFragment fragment = new EraseImageDialogFragment();
-        fragment.show(getFragmentManager(), "erase dialog");
+        fragment.show(getFragmentManager(), ERASE_DIALOG_TAG);
     }
 
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
         inflater.inflate(R.menu.doodle_fragment_menu,menu);
+
+        //as medidas de latencia so aparecem nos builds de debug
+        menu.findItem(R.id.latency_stats).setVisible(BuildConfig.DEBUG)
+                .setChecked(doodleView.isShowMetricsOverlay());
+        menu.findItem(R.id.export_latency_stats).setVisible(BuildConfig.DEBUG);
+        menu.findItem(R.id.stroke_eraser).setChecked(doodleView.isStrokeEraser());
+        menu.findItem(R.id.bucket_fill).setChecked(doodleView.isBucketFill());
     }
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
 
         switch (item.getItemId()){
+            case R.id.undo:
+                doodleView.undo();
+                return true;
+            case R.id.redo:
+                doodleView.redo();
+                return true;
             case R.id.color:
                 ColorDialogFragment colorDialog = new ColorDialogFragment();
                 colorDialog.show(getFragmentManager(), "color dialog");
@@ -144,19 +183,147 @@ public class MainActivityFragment extends Fragment {
                 LineWidthDialogFragment widthDialog = new LineWidthDialogFragment();
                 widthDialog.show(getFragmentManager(), "line width dialog");
                 return true;
+            case R.id.brush:
+                chooseBrush();
+                return true;
+            case R.id.layers:
+                chooseLayer();
+                return true;
+            case R.id.stroke_eraser:
+                //o toque passa a apagar tracos inteiros em vez de desenhar
+                item.setChecked(!item.isChecked());
+                doodleView.setStrokeEraser(item.isChecked());
+                getActivity().invalidateOptionsMenu(); //o balde pode ter sido desligado
+                return true;
+            case R.id.bucket_fill:
+                //o toque passa a pintar a area em volta dele na camada ativa
+                item.setChecked(!item.isChecked());
+                doodleView.setBucketFill(item.isChecked());
+                getActivity().invalidateOptionsMenu(); //a borracha pode ter sido desligada
+                return true;
+            case R.id.reset_zoom:
+                //volta pra 1:1, o zoom e o deslocamento sao feitos com dois dedos
+                doodleView.resetZoom();
+                return true;
             case R.id.delete_drawing:
                 confirmErase();
                 return true;
             case R.id.save:
-                saveImage();
+                chooseSaveFormat();
                 return true;
             case R.id.print:
                 doodleView.printImage();
                 return true;
+            case R.id.show_repaints:
+                //liga/desliga o overlay de debug das areas redesenhadas
+                item.setChecked(!item.isChecked());
+                doodleView.setShowRepaintOverlay(item.isChecked());
+                return true;
+            case R.id.render_thread:
+                //alterna entre desenhar no onDraw e numa SurfaceView pela thread de render
+                item.setChecked(!item.isChecked());
+                doodleView.setRenderMode(item.isChecked() ?
+                        DoodleView.RenderMode.SURFACE : DoodleView.RenderMode.VIEW);
+                return true;
+            case R.id.predict_strokes:
+                //liga/desliga a ponta prevista dos tracos
+                item.setChecked(!item.isChecked());
+                doodleView.setPredictionMs(item.isChecked() ? DoodleView.DEFAULT_PREDICTION_MS : 0);
+                return true;
+            case R.id.latency_stats:
+                //liga/desliga o overlay com os percentis da latencia
+                item.setChecked(!item.isChecked());
+                doodleView.setShowMetricsOverlay(item.isChecked());
+                return true;
+            case R.id.export_latency_stats:
+                exportMetrics();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    //grava as medidas em CSV na pasta do app, que nao precisa de permissao,
+    //e depois zera pra proxima medida comecar limpa
+    private void exportMetrics(){
+        File directory = getContext().getExternalFilesDir(null);
+        if(directory == null)
+            directory = getContext().getFilesDir();
+
+        Toast message;
+        try {
+            File file = doodleView.exportMetrics(directory);
+            doodleView.resetMetrics();
+            message = Toast.makeText(getContext(),
+                    getString(R.string.message_metrics_saved, file.getAbsolutePath()), Toast.LENGTH_LONG);
+        } catch (IOException e) {
+            message = Toast.makeText(getContext(), R.string.message_error_metrics, Toast.LENGTH_SHORT);
+        }
+        message.show();
+    }
+
+    //mostra os pinceis com o atual marcado, escolher um ja fecha
+    private void chooseBrush(){
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(R.string.title_brush_dialog);
+        builder.setSingleChoiceItems(R.array.brushes, doodleView.getBrush().ordinal(),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        doodleView.setBrush(Brush.fromOrdinal(which));
+                        dialog.dismiss();
+                    }
+                });
+        builder.create().show();
+    }
+
+    //escolhe a camada ativa; dali da pra criar uma camada nova ou abrir as opcoes da ativa
+    private void chooseLayer(){
+        String[] names = new String[doodleView.getLayerCount()];
+        for(int layer = 0; layer < names.length; layer++)
+            names[layer] = getString(doodleView.isLayerVisible(layer) ?
+                    R.string.layer_name : R.string.layer_name_hidden, layer + 1);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(R.string.title_layers_dialog);
+        builder.setSingleChoiceItems(names, doodleView.getActiveLayer(),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        doodleView.setActiveLayer(which);
+                        dialog.dismiss();
+                    }
+                });
+        builder.setNeutralButton(R.string.button_new_layer, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                if(!doodleView.addLayer())
+                    Toast.makeText(getContext(), R.string.message_max_layers, Toast.LENGTH_SHORT).show();
+            }
+        });
+        builder.setPositiveButton(R.string.button_layer_options, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                LayerDialogFragment layerDialog = new LayerDialogFragment();
+                layerDialog.show(getFragmentManager(), "layer dialog");
+            }
+        });
+        builder.create().show();
+    }
+
+    //pergunta o formato da imagem e depois salva
+    private void chooseSaveFormat(){
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(R.string.title_save_dialog);
+        builder.setItems(R.array.save_formats, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                saveFormat = ImageSaver.Format.values()[which];
+                saveImage();
+            }
+        });
+        builder.create().show();
+    }
+
     //pra salvar a imagem, primeiro verifica se tem permissao
     //se nao tiver permissao requisita mostrando primeiro o porque
     //depois se permitir salva a imagem
@@ -193,7 +360,7 @@ public class MainActivityFragment extends Fragment {
             }
         }
         else { //se o app ja tem essa permissao
-            doodleView.saveImage();
+            doodleView.saveImage(saveFormat, SAVE_QUALITY, this);
         }
     }
 
@@ -202,11 +369,27 @@ public class MainActivityFragment extends Fragment {
         switch (requestCode){
             case SAVE_IMAGE_PERMISSION_REQUEST_CODE:
                 if(grantResults[0] == PackageManager.PERMISSION_GRANTED)
-                    doodleView.saveImage();
+                    doodleView.saveImage(saveFormat, SAVE_QUALITY, this);
                 return;
         }
     }
 
+    //chamado na thread principal quando o save termina
+    @Override
+    public void onImageSaved(Uri uri) {
+        //o fragmento pode ter saido da tela enquanto salvava
+        if(!isAdded())
+            return;
+
+        //mostra um texto que a imagem foi salva ou que deu erro
+        Toast message = Toast.makeText(getContext(),
+                uri != null ? R.string.message_saved : R.string.message_error_saving,
+                Toast.LENGTH_SHORT);
+
+        message.setGravity(Gravity.CENTER, message.getXOffset()/2, message.getYOffset()/2);
+        message.show();
+    }
+
     //retorna o DoodleView
     public DoodleView getDoodleView(){
         return doodleView;
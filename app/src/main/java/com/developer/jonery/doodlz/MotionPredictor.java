@@ -0,0 +1,148 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Preve onde o dedo vai estar daqui a alguns milissegundos a partir das ultimas
+ * amostras de cada pointer, usando velocidade e aceleracao. Recebe todas as amostras,
+ * inclusive as que o filtro de tolerancia segura, e a previsao so serve pra desenhar
+ * uma ponta temporaria que e trocada quando as amostras reais chegam.
+ */
+
+public class MotionPredictor {
+    //quantas amostras de cada pointer ficam guardadas
+    private static final int HISTORY = 3;
+    //sem amostra nova ha mais tempo que isso o dedo parou e nao tem o que prever
+    public static final long DEFAULT_STALE_MS = 50;
+
+    private final float[] xs = new float[PointerStateTable.MAX_POINTERS * HISTORY];
+    private final float[] ys = new float[PointerStateTable.MAX_POINTERS * HISTORY];
+    private final long[] times = new long[PointerStateTable.MAX_POINTERS * HISTORY];
+    private final int[] counts = new int[PointerStateTable.MAX_POINTERS]; //amostras guardadas, ate HISTORY
+
+    private long predictionMs; //quanto a frente prever, 0 desliga
+    private float maxDistance; //maior distancia entre a ultima amostra e a previsao
+    private long staleMs = DEFAULT_STALE_MS;
+
+    public MotionPredictor(long predictionMs, float maxDistance){
+        this.predictionMs = predictionMs;
+        this.maxDistance = maxDistance;
+    }
+
+    public void setPredictionMs(long predictionMs){
+        this.predictionMs = predictionMs;
+    }
+
+    public long getPredictionMs(){
+        return predictionMs;
+    }
+
+    public void setMaxDistance(float maxDistance){
+        this.maxDistance = maxDistance;
+    }
+
+    public void setStaleMs(long staleMs){
+        this.staleMs = staleMs;
+    }
+
+    //comeca um traco novo pro pointer
+    public void start(int id, float x, float y, long time){
+        if(!PointerStateTable.isValidId(id))
+            return;
+        counts[id] = 0;
+        addSample(id, x, y, time);
+    }
+
+    //guarda uma amostra, a mais antiga sai
+    public void addSample(int id, float x, float y, long time){
+        if(!PointerStateTable.isValidId(id))
+            return;
+
+        int base = id * HISTORY;
+        int count = counts[id];
+        //amostra com o mesmo horario da anterior so substitui ela, nao da pra tirar velocidade
+        if(count > 0 && time <= times[base + count - 1]){
+            xs[base + count - 1] = x;
+            ys[base + count - 1] = y;
+            return;
+        }
+
+        if(count == HISTORY){
+            System.arraycopy(xs, base + 1, xs, base, HISTORY - 1);
+            System.arraycopy(ys, base + 1, ys, base, HISTORY - 1);
+            System.arraycopy(times, base + 1, times, base, HISTORY - 1);
+            count--;
+        }
+        xs[base + count] = x;
+        ys[base + count] = y;
+        times[base + count] = time;
+        counts[id] = count + 1;
+    }
+
+    //termina o traco do pointer
+    public void end(int id){
+        if(PointerStateTable.isValidId(id))
+            counts[id] = 0;
+    }
+
+    //se o dedo parou: nao chega amostra nova do pointer desde staleMs antes de now,
+    //no mesmo relogio das amostras. A tela nao recebe MOVE de um dedo parado, entao
+    //quem desenha a ponta tem que perguntar isso a cada frame
+    public boolean isStale(int id, long now){
+        if(!PointerStateTable.isValidId(id) || counts[id] == 0)
+            return true;
+        return now - times[id * HISTORY + counts[id] - 1] > staleMs;
+    }
+
+    //poe em out (x, y) a previsao pra predictionMs depois da ultima amostra. Retorna
+    //false se a previsao esta desligada, tem menos de 2 amostras ou o dedo parou, tanto
+    //entre as ultimas amostras quanto ate now
+    public boolean predict(int id, long now, float[] out){
+        if(predictionMs <= 0 || !PointerStateTable.isValidId(id) || counts[id] < 2 || isStale(id, now))
+            return false;
+
+        int base = id * HISTORY;
+        int last = base + counts[id] - 1;
+        float dt = times[last] - times[last - 1];
+        if(dt > staleMs)
+            return false;
+
+        //velocidade em px/ms entre as duas ultimas amostras
+        float vx = (xs[last] - xs[last - 1]) / dt;
+        float vy = (ys[last] - ys[last - 1]) / dt;
+
+        //aceleracao pela diferenca das duas ultimas velocidades, se tem 3 amostras
+        float ax = 0;
+        float ay = 0;
+        if(counts[id] == HISTORY){
+            float dt0 = times[last - 1] - times[last - 2];
+            if(dt0 <= staleMs){
+                float span = (dt + dt0) / 2;
+                ax = (vx - (xs[last - 1] - xs[last - 2]) / dt0) / span;
+                ay = (vy - (ys[last - 1] - ys[last - 2]) / dt0) / span;
+            }
+        }
+
+        float t = predictionMs;
+        float dx = vx * t + ax * t * t / 2;
+        float dy = vy * t + ay * t * t / 2;
+
+        //limita o quanto a ponta pode passar do dedo
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if(distance > maxDistance){
+            dx *= maxDistance / distance;
+            dy *= maxDistance / distance;
+        }
+
+        out[0] = xs[last] + dx;
+        out[1] = ys[last] + dy;
+        return true;
+    }
+
+    //ultima amostra recebida do pointer
+    public float getLastX(int id){
+        return xs[id * HISTORY + Math.max(0, counts[id] - 1)];
+    }
+
+    public float getLastY(int id){
+        return ys[id * HISTORY + Math.max(0, counts[id] - 1)];
+    }
+}
@@ -0,0 +1,162 @@
+package com.developer.jonery.doodlz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Codificador de PNG em Java puro que grava enquanto recebe as linhas: cada linha
+ * passa pelo filtro Sub e pelo deflater, e a saida comprimida vai pro OutputStream
+ * em chunks IDAT de tamanho fixo. So uma linha e um chunk ficam na memoria, nunca a
+ * imagem comprimida inteira. Reusavel com begin, mas nao e thread safe.
+ */
+
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int COLOR_RGB = 2;
+    private static final int COLOR_RGBA = 6;
+    private static final int FILTER_SUB = 1;
+    private static final int CHUNK_SIZE = 64 * 1024; //dados de cada IDAT
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[8]; //tamanho e tipo de um chunk
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength;
+    private byte[] row = new byte[0]; //linha filtrada com o byte do filtro na frente
+
+    private OutputStream out;
+    private int width;
+    private int height;
+    private boolean alpha;
+    private int rowsWritten;
+    private long bytesWritten;
+
+    public PngEncoder(){
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    //level do Deflater, de BEST_SPEED a BEST_COMPRESSION
+    public PngEncoder(int level){
+        deflater = new Deflater(level);
+    }
+
+    //comeca uma imagem width x height; sem alpha grava RGB e ignora o alpha dos pixels
+    public void begin(OutputStream out, int width, int height, boolean alpha) throws IOException {
+        if(width <= 0 || height <= 0)
+            throw new IllegalArgumentException("tamanho invalido: " + width + "x" + height);
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        rowsWritten = 0;
+        bytesWritten = 0;
+        chunkLength = 0;
+        deflater.reset();
+
+        int rowLength = 1 + width * (alpha ? 4 : 3);
+        if(row.length < rowLength)
+            row = new byte[rowLength];
+
+        out.write(SIGNATURE);
+        bytesWritten += SIGNATURE.length;
+
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = 8; //bits por canal
+        ihdr[9] = (byte) (alpha ? COLOR_RGBA : COLOR_RGB);
+        //compressao, filtro e entrelacamento padrao
+        writeChunk("IHDR", ihdr, ihdr.length);
+    }
+
+    //codifica rows linhas de pixels ARGB nao pre-multiplicados, comecando em
+    //pixels[offset] com stride pixels entre uma linha e a proxima
+    public void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if(rowsWritten + rows > height)
+            throw new IllegalStateException("linhas demais: " + (rowsWritten + rows) + " de " + height);
+
+        int channels = alpha ? 4 : 3;
+        int rowLength = 1 + width * channels;
+        for(int r = 0; r < rows; r++){
+            int start = offset + r * stride;
+            row[0] = FILTER_SUB;
+            //o filtro Sub guarda a diferenca pro pixel da esquerda, que nas areas lisas
+            //do desenho e quase sempre zero
+            int previous = 0;
+            int i = 1;
+            for(int x = 0; x < width; x++){
+                int pixel = pixels[start + x];
+                row[i++] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[i++] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[i++] = (byte) (pixel - previous);
+                if(alpha)
+                    row[i++] = (byte) ((pixel >>> 24) - (previous >>> 24));
+                previous = pixel;
+            }
+
+            deflater.setInput(row, 0, rowLength);
+            while(!deflater.needsInput())
+                deflate();
+        }
+        rowsWritten += rows;
+    }
+
+    //termina a imagem; o OutputStream nao e fechado
+    public void end() throws IOException {
+        if(rowsWritten != height)
+            throw new IllegalStateException("faltam linhas: " + rowsWritten + " de " + height);
+
+        deflater.finish();
+        while(!deflater.finished())
+            deflate();
+        if(chunkLength > 0)
+            writeChunk("IDAT", chunk, chunkLength);
+        writeChunk("IEND", chunk, 0);
+        out = null;
+    }
+
+    //libera o deflater nativo, a instancia nao pode mais ser usada
+    public void release(){
+        deflater.end();
+    }
+
+    //bytes gravados da imagem atual
+    public long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    //puxa saida do deflater pro chunk e grava o chunk quando ele enche
+    private void deflate() throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+        if(chunkLength == CHUNK_SIZE){
+            writeChunk("IDAT", chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    //grava tamanho, tipo, dados e o CRC do tipo com os dados
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        putInt(header, 0, length);
+        for(int i = 0; i < 4; i++)
+            header[4 + i] = (byte) type.charAt(i);
+
+        crc.reset();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+
+        out.write(header);
+        out.write(data, 0, length);
+        putInt(header, 0, (int) crc.getValue());
+        out.write(header, 0, 4);
+        bytesWritten += 12 + length;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value){
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,47 @@
+package com.developer.jonery.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Lista de pontos x/y guardados em sequencia num float[] que so cresce,
+ * usada pra juntar os pontos de um traco enquanto o dedo esta na tela.
+ */
+
+public class PointBuffer {
+    private float[] coords;
+    private int size; //quantidade de floats usados, 2 por ponto
+
+    public PointBuffer(int initialPoints){
+        coords = new float[Math.max(2, initialPoints * 2)];
+    }
+
+    //adiciona um ponto, dobrando o array se precisar
+    public void add(float x, float y){
+        if(size + 2 > coords.length)
+            coords = Arrays.copyOf(coords, coords.length * 2);
+        coords[size++] = x;
+        coords[size++] = y;
+    }
+
+    //esvazia a lista mas mantem o array pra reusar
+    public void clear(){
+        size = 0;
+    }
+
+    public int getPointCount(){
+        return size / 2;
+    }
+
+    public float getX(int point){
+        return coords[point * 2];
+    }
+
+    public float getY(int point){
+        return coords[point * 2 + 1];
+    }
+
+    //array interno, so os primeiros getPointCount()*2 floats valem
+    public float[] getCoords(){
+        return coords;
+    }
+}
@@ -0,0 +1,152 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Estado de cada dedo (pointer) que esta desenhando, indexado pelo ID do pointer.
+ * Tudo fica em arrays primitivos alocados uma vez so, entao um traco nao gera lixo
+ * nem faz boxing de Integer como os HashMaps faziam.
+ */
+
+public class PointerStateTable {
+    //o MotionEvent usa IDs de 0 a 31
+    public static final int MAX_POINTERS = 32;
+
+    //tamanho do array de segmento preenchido pelo addSample
+    public static final int SEGMENT_SIZE = 6;
+
+    private final boolean[] active = new boolean[MAX_POINTERS];
+    //ultimo ponto aceito pelo filtro, vira o controle do proximo quadTo
+    private final float[] lastX = new float[MAX_POINTERS];
+    private final float[] lastY = new float[MAX_POINTERS];
+    //onde termina o ultimo segmento, inicio do proximo quadTo
+    private final float[] endX = new float[MAX_POINTERS];
+    private final float[] endY = new float[MAX_POINTERS];
+    //retangulo que contem todos os pontos do path (inicio, controles e fins)
+    private final float[] minX = new float[MAX_POINTERS];
+    private final float[] minY = new float[MAX_POINTERS];
+    private final float[] maxX = new float[MAX_POINTERS];
+    private final float[] maxY = new float[MAX_POINTERS];
+    //horario (ms) da ultima amostra recebida
+    private final long[] lastTime = new long[MAX_POINTERS];
+    private int activeCount;
+
+    //retorna se o ID cabe na tabela
+    public static boolean isValidId(int id){
+        return id >= 0 && id < MAX_POINTERS;
+    }
+
+    //comeca um traco novo pro pointer, retorna false se o ID nao cabe na tabela
+    public boolean start(int id, float x, float y, long time){
+        if(!isValidId(id))
+            return false;
+
+        if(!active[id]){
+            active[id] = true;
+            activeCount++;
+        }
+        lastX[id] = x;
+        lastY[id] = y;
+        endX[id] = x;
+        endY[id] = y;
+        minX[id] = x;
+        minY[id] = y;
+        maxX[id] = x;
+        maxY[id] = y;
+        lastTime[id] = time;
+        return true;
+    }
+
+    //passa uma amostra pelo filtro de tolerancia
+    //se ela for significante guarda o novo segmento em segment como
+    //inicio x/y, controle x/y e fim x/y, atualiza o estado e retorna true
+    public boolean addSample(int id, float x, float y, long time, float tolerance, float[] segment){
+        if(!isActive(id))
+            return false;
+
+        lastTime[id] = time;
+
+        //calcula quanto o user deslizou o dedo
+        float deltaX = Math.abs(x - lastX[id]);
+        float deltaY = Math.abs(y - lastY[id]);
+        if(deltaX < tolerance && deltaY < tolerance)
+            return false;
+
+        //o segmento vai do fim do anterior ate o meio entre o ultimo ponto e o novo
+        segment[0] = endX[id];
+        segment[1] = endY[id];
+        segment[2] = lastX[id];
+        segment[3] = lastY[id];
+        segment[4] = (x + lastX[id]) / 2;
+        segment[5] = (y + lastY[id]) / 2;
+
+        endX[id] = segment[4];
+        endY[id] = segment[5];
+        lastX[id] = x;
+        lastY[id] = y;
+
+        //o controle e o fim do segmento estao entre o ponto anterior e o novo
+        minX[id] = Math.min(minX[id], x);
+        minY[id] = Math.min(minY[id], y);
+        maxX[id] = Math.max(maxX[id], x);
+        maxY[id] = Math.max(maxY[id], y);
+        return true;
+    }
+
+    //termina o traco do pointer
+    public void end(int id){
+        if(isActive(id)){
+            active[id] = false;
+            activeCount--;
+        }
+    }
+
+    //termina todos os tracos
+    public void clear(){
+        for(int id = 0; id < MAX_POINTERS; id++)
+            active[id] = false;
+        activeCount = 0;
+    }
+
+    public boolean isActive(int id){
+        return isValidId(id) && active[id];
+    }
+
+    public int getActiveCount(){
+        return activeCount;
+    }
+
+    public float getLastX(int id){
+        return lastX[id];
+    }
+
+    public float getLastY(int id){
+        return lastY[id];
+    }
+
+    public float getEndX(int id){
+        return endX[id];
+    }
+
+    public float getEndY(int id){
+        return endY[id];
+    }
+
+    public float getMinX(int id){
+        return minX[id];
+    }
+
+    public float getMinY(int id){
+        return minY[id];
+    }
+
+    public float getMaxX(int id){
+        return maxX[id];
+    }
+
+    public float getMaxY(int id){
+        return maxY[id];
+    }
+
+    public long getLastTime(int id){
+        return lastTime[id];
+    }
+}
@@ -0,0 +1,89 @@
+package com.developer.jonery.doodlz;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread que desenha numa SurfaceView em vez da thread de UI. Ela dorme ate alguem
+ * chamar wake(), pede ao Renderer a area que mudou e desenha so ela no buffer de tras
+ * da surface. O lockCanvas aumenta o retangulo pra cobrir o que o buffer de tras ainda
+ * nao tem (double buffering), e o unlockCanvasAndPost segura a thread ate o buffer
+ * ser trocado, entao os eventos que chegam nesse tempo sao juntados no proximo frame.
+ */
+
+public class RenderThread extends Thread {
+
+    //chamado na thread de render
+    public interface Renderer {
+        //aplica o que chegou desde o ultimo frame e coloca em dirty a area que mudou,
+        //retorna false se nao tem nada pra desenhar
+        boolean prepareFrame(Rect dirty);
+
+        //quanto a thread pode dormir sem frame antes de chamar prepareFrame de novo,
+        //0 dorme ate o proximo wake
+        long getIdleTimeoutMs();
+
+        //desenha a area dirty no canvas da surface
+        void drawFrame(Canvas canvas, Rect dirty);
+    }
+
+    private final SurfaceHolder holder;
+    private final Renderer renderer;
+    private final Rect dirty = new Rect();
+    private volatile boolean running = true;
+
+    public RenderThread(SurfaceHolder holder, Renderer renderer){
+        super("DoodleRender");
+        this.holder = holder;
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void run() {
+        while(running){
+            if(!renderer.prepareFrame(dirty)){
+                //nada mudou, dorme ate o proximo wake ou o tempo que o renderer pediu; se o
+                //wake veio antes, volta na hora
+                long timeout = renderer.getIdleTimeoutMs();
+                if(timeout > 0)
+                    LockSupport.parkNanos(this, timeout * 1000000L);
+                else
+                    LockSupport.park(this);
+                continue;
+            }
+
+            Canvas canvas = holder.lockCanvas(dirty);
+            if(canvas == null)
+                continue; //a surface foi destruida, o quit vem em seguida
+            try {
+                renderer.drawFrame(canvas, dirty);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    //acorda a thread pra desenhar um frame, pode ser chamado de qualquer thread
+    public void wake(){
+        LockSupport.unpark(this);
+    }
+
+    //para a thread e espera ela terminar o frame atual
+    public void quit(){
+        running = false;
+        wake();
+
+        boolean retry = true;
+        while(retry){
+            try {
+                join();
+                retry = false;
+            } catch (InterruptedException e) {
+                //tenta de novo, a surface nao pode sumir com a thread desenhando
+            }
+        }
+    }
+}
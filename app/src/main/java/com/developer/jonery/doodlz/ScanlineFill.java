@@ -0,0 +1,274 @@
+package com.developer.jonery.doodlz;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Balde de tinta num int[] de pixels ARGB, sem Android. Usa preenchimento por
+ * trechos de linha: cada trecho da pilha e uma faixa horizontal ja pintada, e so
+ * as pontas que passam do trecho de onde ele veio voltam pra linha anterior, entao
+ * cada pixel e testado poucas vezes e a pilha guarda trechos, nao pixels. Um pixel
+ * entra se cada canal (alpha tambem) fica a no maximo tolerance do pixel do toque.
+ * Os pixels pintados sao marcados numa mascara de bytes e a cor so e escrita no
+ * fim, dentro do retangulo pintado. Com um ForkJoinPool, quando o preenchimento ja
+ * pintou uma parte grande da area, o teste de cor dos pixels que faltam e a escrita
+ * sao divididos em faixas de linhas entre as threads; a varredura dos trechos
+ * continua numa thread so, e preenchimentos pequenos nao pagam a passada pela area
+ * toda. Nao e thread safe, um por thread.
+ */
+
+public class ScanlineFill {
+    //abaixo disso (largura x altura) dividir em faixas custa mais do que ganha
+    private static final int PARALLEL_MIN_PIXELS = 512 * 512;
+    //fracao da area pintada a partir da qual o resto e testado em faixas
+    private static final int PARALLEL_FILLED_DIVISOR = 8;
+    //linhas por faixa, no minimo
+    private static final int MIN_BAND_ROWS = 32;
+
+    //mascara: 0 ainda nao testado, MATCH ou OTHER testado antes, FILLED pintado
+    private static final byte MATCH = 1;
+    private static final byte OTHER = 2;
+    private static final byte FILLED = 3;
+
+    private final ForkJoinPool pool; //null faz tudo na thread de quem chama
+    private byte[] mask = new byte[0];
+    private int[] stack = new int[4 * 256]; //x1, x2, y, dy de cada trecho
+    private int stackSize;
+
+    //pixels e tamanho do preenchimento atual
+    private int[] pixels;
+    private int offset;
+    private int stride;
+    private int width;
+    private int height;
+    private int seedColor;
+    private int tolerance;
+    private int filled;
+    private int classifyAt; //pixels pintados que disparam o teste em faixas, 0 sem threads
+    private boolean classified; //todos os pixels ja foram testados
+    private int left, top, right, bottom; //retangulo pintado, right e bottom exclusivos
+
+    public ScanlineFill(){
+        this(null);
+    }
+
+    //com pool, as passadas por todos os pixels das areas grandes rodam em faixas nele
+    public ScanlineFill(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    //preenche a partir de (x, y) em pixels de width x height, linha a linha
+    public int fill(int[] pixels, int width, int height, int x, int y, int color, int tolerance){
+        return fill(pixels, 0, width, width, height, x, y, color, tolerance);
+    }
+
+    //preenche a partir de (x, y) no retangulo de width x height que comeca em
+    //pixels[offset], com stride inteiros por linha; retorna quantos pixels foram
+    //pintados, 0 se (x, y) esta fora
+    public int fill(int[] pixels, int offset, int stride, int width, int height,
+                    int x, int y, int color, int tolerance){
+        if(width < 0 || height < 0 || stride < width || offset < 0
+                || (height > 0 && pixels.length < offset + (height - 1) * stride + width))
+            throw new IllegalArgumentException("pixels nao tem " + width + "x" + height);
+        filled = 0;
+        left = top = right = bottom = 0;
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            return 0;
+
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = width;
+        this.height = height;
+        seedColor = pixels[offset + y * stride + x];
+        this.tolerance = Math.max(0, tolerance);
+        left = right = x;
+        top = bottom = y;
+        if(mask.length < width * height)
+            mask = new byte[width * height];
+
+        //cada pixel e testado quando a varredura chega nele; com threads, se a area
+        //pintada passa de uma fracao da imagem o resto e testado de uma vez em faixas
+        classified = false;
+        classifyAt = pool != null && (long) width * height >= PARALLEL_MIN_PIXELS
+                ? width * height / PARALLEL_FILLED_DIVISOR : 0;
+
+        scan(x, y);
+        right++;
+        bottom++;
+
+        //escreve a cor nos pintados e zera a mascara pro proximo; sem o teste em faixas
+        //so foram testados os pixels pintados e os vizinhos deles
+        if(classified)
+            pool.invoke(new BandTask(BandTask.WRITE_ALL, 0, height, color));
+        else
+            write(Math.max(0, top - 1), Math.min(height, bottom + 1),
+                    Math.max(0, left - 1), Math.min(width, right + 1), color);
+        this.pixels = null;
+        return filled;
+    }
+
+    //pixels pintados no ultimo fill
+    public int getFilledCount(){
+        return filled;
+    }
+
+    //retangulo pintado no ultimo fill, em coordenadas do retangulo de pixels:
+    //left, top, right e bottom, os dois ultimos exclusivos; tudo 0 se nada foi pintado
+    public void getBounds(int[] bounds){
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    //bytes da mascara, que fica do tamanho do maior preenchimento
+    public long getMemoryBytes(){
+        return mask.length + 4L * stack.length;
+    }
+
+    //se cada canal de color fica a no maximo tolerance do de seed
+    static boolean matches(int color, int seed, int tolerance){
+        return Math.abs((color >>> 24) - (seed >>> 24)) <= tolerance
+                && Math.abs((color >> 16 & 0xFF) - (seed >> 16 & 0xFF)) <= tolerance
+                && Math.abs((color >> 8 & 0xFF) - (seed >> 8 & 0xFF)) <= tolerance
+                && Math.abs((color & 0xFF) - (seed & 0xFF)) <= tolerance;
+    }
+
+    //o preenchimento por trechos (Smith/Heckbert): cada trecho da pilha foi pintado
+    //na linha y - dy e a linha y ainda precisa ser varrida embaixo dele
+    private void scan(int x, int y){
+        stackSize = 0;
+        push(x, x, y, 1);
+        push(x, x, y - 1, -1);
+        while(stackSize > 0){
+            if(classifyAt > 0 && !classified && filled >= classifyAt){
+                pool.invoke(new BandTask(BandTask.CLASSIFY, 0, height, 0));
+                classified = true;
+            }
+            stackSize -= 4;
+            int x1 = stack[stackSize];
+            int x2 = stack[stackSize + 1];
+            int row = stack[stackSize + 2];
+            int dy = stack[stackSize + 3];
+            if(row < 0 || row >= height)
+                continue;
+
+            int start = x1;
+            if(inside(start, row)){
+                //vai pra esquerda alem do trecho de onde veio
+                while(start > 0 && inside(start - 1, row))
+                    start--;
+                if(start < x1)
+                    push(start, x1 - 1, row - dy, -dy);
+            }
+            while(x1 <= x2){
+                while(x1 < width && inside(x1, row))
+                    x1++;
+                if(x1 > start){
+                    paint(start, x1, row);
+                    push(start, x1 - 1, row + dy, dy);
+                    //o que passou da direita do trecho de onde veio volta pra tras
+                    if(x1 - 1 > x2)
+                        push(x2 + 1, x1 - 1, row - dy, -dy);
+                }
+                x1++;
+                while(x1 < x2 && !inside(x1, row))
+                    x1++;
+                start = x1;
+            }
+        }
+    }
+
+    //se o pixel ainda nao foi pintado e tem a cor do toque
+    private boolean inside(int x, int y){
+        int i = y * width + x;
+        byte state = mask[i];
+        if(state == 0){
+            state = matches(pixels[offset + y * stride + x], seedColor, tolerance) ? MATCH : OTHER;
+            mask[i] = state;
+        }
+        return state == MATCH;
+    }
+
+    //marca o trecho [x1, x2) da linha y como pintado
+    private void paint(int x1, int x2, int y){
+        Arrays.fill(mask, y * width + x1, y * width + x2, FILLED);
+        filled += x2 - x1;
+        left = Math.min(left, x1);
+        right = Math.max(right, x2 - 1);
+        top = Math.min(top, y);
+        bottom = Math.max(bottom, y);
+    }
+
+    private void push(int x1, int x2, int y, int dy){
+        if(stackSize + 4 > stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[stackSize] = x1;
+        stack[stackSize + 1] = x2;
+        stack[stackSize + 2] = y;
+        stack[stackSize + 3] = dy;
+        stackSize += 4;
+    }
+
+    //pinta com color os pixels marcados nas linhas [firstRow, endRow) entre firstColumn
+    //e endColumn e zera a mascara ali
+    private void write(int firstRow, int endRow, int firstColumn, int endColumn, int color){
+        for(int y = firstRow; y < endRow; y++){
+            int row = y * width;
+            int pixelRow = offset + y * stride;
+            for(int x = firstColumn; x < endColumn; x++){
+                if(mask[row + x] == FILLED)
+                    pixels[pixelRow + x] = color;
+            }
+            Arrays.fill(mask, row + firstColumn, row + endColumn, (byte) 0);
+        }
+    }
+
+    //testa a cor dos pixels ainda nao testados das linhas [firstRow, endRow)
+    private void classify(int firstRow, int endRow){
+        for(int y = firstRow; y < endRow; y++){
+            int row = y * width;
+            int pixelRow = offset + y * stride;
+            for(int x = 0; x < width; x++)
+                if(mask[row + x] == 0)
+                    mask[row + x] = matches(pixels[pixelRow + x], seedColor, tolerance) ? MATCH : OTHER;
+        }
+    }
+
+    //divide as linhas ao meio ate ficar com uma faixa por thread, mais ou menos
+    private class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        static final int CLASSIFY = 0;
+        static final int WRITE_ALL = 1; //escreve e zera a mascara em todas as colunas
+
+        private final int pass;
+        private final int firstRow;
+        private final int endRow;
+        private final int color;
+
+        BandTask(int pass, int firstRow, int endRow, int color){
+            this.pass = pass;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.color = color;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = endRow - firstRow;
+            if(rows > MIN_BAND_ROWS && rows > height / pool.getParallelism()){
+                int middle = (firstRow + endRow) >>> 1;
+                invokeAll(new BandTask(pass, firstRow, middle, color), new BandTask(pass, middle, endRow, color));
+                return;
+            }
+
+            if(pass == CLASSIFY)
+                classify(firstRow, endRow);
+            else
+                write(firstRow, endRow, 0, width, color);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Detecta quando o aparelho e chacoalhado a partir das amostras do acelerometro.
+ * Um passa-baixa por eixo estima a gravidade e o que sobra (passa-alta) e o
+ * movimento da mao; cada amostra com esse movimento acima do limite e um pico,
+ * e os tempos dos ultimos picos ficam num pequeno buffer circular. Um shake sao
+ * MIN_PEAKS picos dentro de SHAKE_WINDOW. Depois de um shake os picos seguintes
+ * so estendem o cooldown, entao chacoalhar por varios segundos dispara uma vez so.
+ * Tudo usa o timestamp das amostras, entao funciona igual com os eventos chegando
+ * em lote do FIFO do sensor. Nao depende do Android pra poder ser testado na JVM.
+ */
+
+public class ShakeDetector {
+    //aceleracao da mao, sem a gravidade, que conta como pico (m/s2)
+    public static final float DEFAULT_THRESHOLD = 12f;
+    //quantos picos e em quanto tempo formam um shake
+    private static final int MIN_PEAKS = 3;
+    private static final long SHAKE_WINDOW_NANOS = 1000000000L;
+    //tempo sem picos depois de um shake ate poder disparar de novo
+    private static final long COOLDOWN_NANOS = 1000000000L;
+    //constante de tempo do filtro da gravidade
+    private static final float GRAVITY_TIME_CONSTANT = 0.3f;
+    //um buraco maior entre amostras (listener pausado) reinicia o filtro
+    private static final long MAX_GAP_NANOS = 1000000000L;
+
+    private final float thresholdSquared;
+    private final long[] peaks = new long[MIN_PEAKS]; //tempos dos ultimos picos
+    private int peakCount;
+    private int nextPeak;
+
+    private final float[] gravity = new float[3];
+    private long lastTimestamp; //0 se o filtro ainda nao tem amostra
+    private long cooldownEnd; //sem disparo ate aqui
+
+    public ShakeDetector(){
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public ShakeDetector(float threshold){
+        thresholdSquared = threshold * threshold;
+    }
+
+    //processa uma amostra (timestamp em ns, aceleracao em m/s2) e retorna true
+    //se ela completou um shake
+    public boolean addSample(long timestamp, float x, float y, float z){
+        long dt = timestamp - lastTimestamp;
+        if(lastTimestamp == 0 || dt <= 0 || dt > MAX_GAP_NANOS){
+            //sem historia confiavel, a propria amostra e a melhor estimativa da gravidade
+            gravity[0] = x;
+            gravity[1] = y;
+            gravity[2] = z;
+            lastTimestamp = timestamp;
+            return false;
+        }
+        lastTimestamp = timestamp;
+
+        //passa-baixa com alpha pelo intervalo real, vale pra qualquer taxa de amostragem
+        float seconds = dt * 1e-9f;
+        float alpha = seconds / (GRAVITY_TIME_CONSTANT + seconds);
+        gravity[0] += alpha * (x - gravity[0]);
+        gravity[1] += alpha * (y - gravity[1]);
+        gravity[2] += alpha * (z - gravity[2]);
+
+        //passa-alta: o que nao e gravidade, comparado ao quadrado pra nao tirar raiz
+        float lx = x - gravity[0];
+        float ly = y - gravity[1];
+        float lz = z - gravity[2];
+        if(lx * lx + ly * ly + lz * lz < thresholdSquared)
+            return false;
+
+        //ainda no mesmo shake, so empurra o fim do cooldown
+        if(timestamp < cooldownEnd){
+            cooldownEnd = timestamp + COOLDOWN_NANOS;
+            return false;
+        }
+
+        peaks[nextPeak] = timestamp;
+        nextPeak = (nextPeak + 1) % MIN_PEAKS;
+        if(peakCount < MIN_PEAKS)
+            peakCount++;
+        //com o buffer cheio, nextPeak aponta pro pico mais antigo
+        if(peakCount < MIN_PEAKS || timestamp - peaks[nextPeak] > SHAKE_WINDOW_NANOS)
+            return false;
+
+        peakCount = 0;
+        cooldownEnd = timestamp + COOLDOWN_NANOS;
+        return true;
+    }
+
+    //esquece as amostras e os picos, por exemplo ao voltar a escutar o sensor
+    public void reset(){
+        lastTimestamp = 0;
+        peakCount = 0;
+        nextPeak = 0;
+        cooldownEnd = 0;
+    }
+}
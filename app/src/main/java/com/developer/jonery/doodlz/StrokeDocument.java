@@ -0,0 +1,403 @@
+package com.developer.jonery.doodlz;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Documento vetorial do desenho: todos os tracos terminados, com os pontos
+ * guardados em sequencia num unico float[] e a cor, grossura, pincel e camada de
+ * cada traco em arrays paralelos. As camadas da DoodleView sao so um cache que
+ * pode ser refeito a partir daqui.
+ */
+
+public class StrokeDocument {
+    private float[] coords = new float[4096]; //x/y de todos os tracos, em ordem
+    private int coordCount;
+
+    //dados de cada traco, indexados pelo numero do traco
+    private int[] strokeStart = new int[64]; //primeiro float do traco em coords
+    private int[] strokePoints = new int[64]; //quantidade de pontos
+    private int[] strokeColor = new int[64];
+    private float[] strokeWidth = new float[64];
+    private byte[] strokeBrush = new byte[64]; //ordinal do Brush
+    private byte[] strokeLayer = new byte[64]; //camada, 0 e a de baixo
+    private int strokeCount;
+    //tracos removidos pelo undo continuam nos arrays ate um traco novo ser adicionado
+    private int restorableCount;
+    //muda a cada alteracao, pra quem calculou algo em outra thread saber se ainda vale
+    private int version;
+
+    //quantas camadas os tracos podem usar
+    public static final int MAX_LAYERS = 16;
+
+    //bits de cima da quantidade de pontos gravada que guardam o pincel e a camada;
+    //arquivos de antes tem 0 ali, que e o ROUND na camada 0
+    private static final int BRUSH_SHIFT = 24;
+    private static final int LAYER_SHIFT = 20;
+    private static final int POINT_COUNT_MASK = (1 << LAYER_SHIFT) - 1;
+
+    //adiciona um traco na camada layer com os pontos x/y de coords[offset] em diante
+    //e retorna o numero dele
+    public int addStroke(int color, float width, Brush brush, int layer, float[] points, int offset, int pointCount){
+        checkLayer(layer);
+        ensureCapacity(pointCount);
+        System.arraycopy(points, offset, coords, coordCount, pointCount * 2);
+        return appendStroke(color, width, brush, layer, pointCount);
+    }
+
+    //adiciona um traco na camada 0
+    public int addStroke(int color, float width, Brush brush, float[] points, int offset, int pointCount){
+        return addStroke(color, width, brush, 0, points, offset, pointCount);
+    }
+
+    //adiciona um traco com o pincel ROUND
+    public int addStroke(int color, float width, float[] points, int offset, int pointCount){
+        return addStroke(color, width, Brush.ROUND, points, offset, pointCount);
+    }
+
+    //garante lugar pra mais um traco com pointCount pontos
+    private void ensureCapacity(int pointCount){
+        if(strokeCount == strokeStart.length){
+            int capacity = strokeCount * 2;
+            strokeStart = Arrays.copyOf(strokeStart, capacity);
+            strokePoints = Arrays.copyOf(strokePoints, capacity);
+            strokeColor = Arrays.copyOf(strokeColor, capacity);
+            strokeWidth = Arrays.copyOf(strokeWidth, capacity);
+            strokeBrush = Arrays.copyOf(strokeBrush, capacity);
+            strokeLayer = Arrays.copyOf(strokeLayer, capacity);
+        }
+
+        int floats = pointCount * 2;
+        if(coordCount + floats > coords.length)
+            coords = Arrays.copyOf(coords, Math.max(coords.length * 2, coordCount + floats));
+    }
+
+    //registra o traco cujos pontos ja estao em coords a partir de coordCount
+    private int appendStroke(int color, float width, Brush brush, int layer, int pointCount){
+        strokeStart[strokeCount] = coordCount;
+        strokePoints[strokeCount] = pointCount;
+        strokeColor[strokeCount] = color;
+        strokeWidth[strokeCount] = width;
+        strokeBrush[strokeCount] = (byte) brush.ordinal();
+        strokeLayer[strokeCount] = (byte) layer;
+        coordCount += pointCount * 2;
+        restorableCount = strokeCount + 1;
+        version++;
+        return strokeCount++;
+    }
+
+    //grava a quantidade de tracos e depois cada traco como no writeStroke
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(strokeCount);
+        for(int stroke = 0; stroke < strokeCount; stroke++)
+            writeStroke(out, strokeColor[stroke], strokeWidth[stroke], getBrush(stroke), strokeLayer[stroke],
+                    coords, strokeStart[stroke], strokePoints[stroke]);
+    }
+
+    //le tracos gravados pelo write e coloca no fim do documento, retorna quantos
+    public int read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if(count < 0)
+            throw new IOException("quantidade de tracos invalida: " + count);
+        for(int i = 0; i < count; i++)
+            readStroke(in);
+        return count;
+    }
+
+    //grava um traco: cor, grossura, pincel e camada junto com a quantidade de pontos e os x/y
+    public static void writeStroke(DataOutput out, int color, float width, Brush brush, int layer,
+                                   float[] coords, int offset, int pointCount) throws IOException {
+        if(pointCount > POINT_COUNT_MASK)
+            throw new IOException("traco com pontos demais: " + pointCount);
+        checkLayer(layer);
+        out.writeInt(color);
+        out.writeFloat(width);
+        out.writeInt(brush.ordinal() << BRUSH_SHIFT | layer << LAYER_SHIFT | pointCount);
+        for(int i = 0; i < pointCount * 2; i++)
+            out.writeFloat(coords[offset + i]);
+    }
+
+    //le um traco gravado pelo writeStroke direto pros arrays e retorna o numero dele
+    public int readStroke(DataInput in) throws IOException {
+        int color = in.readInt();
+        float width = in.readFloat();
+        int packed = in.readInt();
+        Brush brush = Brush.fromOrdinal(packed >>> BRUSH_SHIFT);
+        if(brush == null)
+            throw new IOException("pincel invalido: " + (packed >>> BRUSH_SHIFT));
+        int layer = (packed >>> LAYER_SHIFT) & (MAX_LAYERS - 1);
+        int pointCount = packed & POINT_COUNT_MASK;
+
+        ensureCapacity(pointCount);
+        for(int i = 0; i < pointCount * 2; i++)
+            coords[coordCount + i] = in.readFloat();
+        return appendStroke(color, width, brush, layer, pointCount);
+    }
+
+    private static void checkLayer(int layer){
+        if(layer < 0 || layer >= MAX_LAYERS)
+            throw new IllegalArgumentException("camada invalida: " + layer);
+    }
+
+    //tira os tracos da camada e desce uma as camadas de cima, retorna quantos tracos
+    //sairam. Os tracos desfeitos pelo undo nao voltam mais
+    public int removeLayer(int layer){
+        int kept = 0;
+        int keptCoords = 0;
+        for(int stroke = 0; stroke < strokeCount; stroke++){
+            if(strokeLayer[stroke] == layer)
+                continue;
+
+            moveStroke(stroke, kept, keptCoords);
+            if(strokeLayer[kept] > layer)
+                strokeLayer[kept]--;
+            keptCoords += 2 * strokePoints[kept];
+            kept++;
+        }
+
+        int removed = strokeCount - kept;
+        strokeCount = kept;
+        restorableCount = kept;
+        coordCount = keptCoords;
+        version++;
+        return removed;
+    }
+
+    //tira os count tracos de strokes, em ordem crescente, e junta os outros sem mudar a
+    //ordem. Os tracos desfeitos pelo undo continuam podendo voltar com o redo
+    public void removeStrokes(int[] strokes, int count){
+        if(count == 0)
+            return;
+
+        int restorable = restorableCount - strokeCount;
+        int kept = strokes[0];
+        int keptCoords = strokeStart[kept];
+        int next = 0;
+        for(int stroke = kept; stroke < restorableCount; stroke++){
+            if(next < count && strokes[next] == stroke){
+                next++;
+                continue;
+            }
+            moveStroke(stroke, kept, keptCoords);
+            keptCoords += 2 * strokePoints[kept];
+            kept++;
+        }
+
+        restorableCount = kept;
+        strokeCount = kept - restorable;
+        coordCount = restorable > 0 ? strokeStart[strokeCount] : keptCoords;
+        version++;
+    }
+
+    //poe de volta os tracos de removed, o n-esimo no numero strokes[n] (em ordem
+    //crescente), e renumera os outros; desfaz o removeStrokes. Os tracos desfeitos pelo
+    //undo continuam podendo voltar com o redo
+    public void insertStrokes(int[] strokes, int count, StrokeDocument removed){
+        if(count == 0)
+            return;
+        if(count > removed.strokeCount || strokes[count - 1] >= strokeCount + count)
+            throw new IllegalArgumentException("tracos invalidos pra inserir: " + count);
+
+        //monta os arrays novos num documento e fica com eles
+        int total = restorableCount + count;
+        StrokeDocument merged = new StrokeDocument();
+        int old = 0;
+        int next = 0;
+        for(int stroke = 0; stroke < total; stroke++){
+            if(next < count && strokes[next] == stroke)
+                merged.appendFrom(removed, next++);
+            else
+                merged.appendFrom(this, old++);
+        }
+
+        coords = merged.coords;
+        strokeStart = merged.strokeStart;
+        strokePoints = merged.strokePoints;
+        strokeColor = merged.strokeColor;
+        strokeWidth = merged.strokeWidth;
+        strokeBrush = merged.strokeBrush;
+        strokeLayer = merged.strokeLayer;
+        strokeCount += count;
+        restorableCount = total;
+        coordCount = total > strokeCount ? strokeStart[strokeCount] : merged.coordCount;
+        version++;
+    }
+
+    //copia dos count tracos de strokes, em ordem, com os arrays do tamanho certo
+    public StrokeDocument extract(int[] strokes, int count){
+        int points = 0;
+        for(int n = 0; n < count; n++)
+            points += strokePoints[strokes[n]];
+
+        StrokeDocument copy = new StrokeDocument();
+        copy.coords = new float[Math.max(2, 2 * points)];
+        int capacity = Math.max(1, count);
+        copy.strokeStart = new int[capacity];
+        copy.strokePoints = new int[capacity];
+        copy.strokeColor = new int[capacity];
+        copy.strokeWidth = new float[capacity];
+        copy.strokeBrush = new byte[capacity];
+        copy.strokeLayer = new byte[capacity];
+        for(int n = 0; n < count; n++)
+            copy.appendFrom(this, strokes[n]);
+        return copy;
+    }
+
+    //adiciona no fim uma copia do traco stroke de source
+    private void appendFrom(StrokeDocument source, int stroke){
+        int pointCount = source.strokePoints[stroke];
+        ensureCapacity(pointCount);
+        System.arraycopy(source.coords, source.strokeStart[stroke], coords, coordCount, 2 * pointCount);
+        appendStroke(source.strokeColor[stroke], source.strokeWidth[stroke], source.getBrush(stroke),
+                source.strokeLayer[stroke], pointCount);
+    }
+
+    //copia o traco from pro lugar to, com os pontos comecando em coordStart
+    private void moveStroke(int from, int to, int coordStart){
+        System.arraycopy(coords, strokeStart[from], coords, coordStart, 2 * strokePoints[from]);
+        strokeStart[to] = coordStart;
+        strokePoints[to] = strokePoints[from];
+        strokeColor[to] = strokeColor[from];
+        strokeWidth[to] = strokeWidth[from];
+        strokeBrush[to] = strokeBrush[from];
+        strokeLayer[to] = strokeLayer[from];
+    }
+
+    //remove o ultimo traco, que pode voltar com restoreStroke
+    public boolean removeLastStroke(){
+        if(strokeCount == 0)
+            return false;
+
+        strokeCount--;
+        coordCount = strokeStart[strokeCount];
+        version++;
+        return true;
+    }
+
+    //devolve o ultimo traco removido pelo removeLastStroke
+    public boolean restoreStroke(){
+        if(strokeCount >= restorableCount)
+            return false;
+
+        coordCount = strokeStart[strokeCount] + 2 * strokePoints[strokeCount];
+        strokeCount++;
+        version++;
+        return true;
+    }
+
+    //adiciona os pontos juntados num PointBuffer
+    public int addStroke(int color, float width, Brush brush, int layer, PointBuffer points){
+        return addStroke(color, width, brush, layer, points.getCoords(), 0, points.getPointCount());
+    }
+
+    public int addStroke(int color, float width, Brush brush, PointBuffer points){
+        return addStroke(color, width, brush, 0, points);
+    }
+
+    public int addStroke(int color, float width, PointBuffer points){
+        return addStroke(color, width, Brush.ROUND, points);
+    }
+
+    //copia dos tracos atuais, pra ser lida em outra thread
+    public StrokeDocument copy(){
+        StrokeDocument copy = new StrokeDocument();
+        copy.coords = Arrays.copyOf(coords, Math.max(2, coordCount));
+        copy.coordCount = coordCount;
+        int capacity = Math.max(1, strokeCount);
+        copy.strokeStart = Arrays.copyOf(strokeStart, capacity);
+        copy.strokePoints = Arrays.copyOf(strokePoints, capacity);
+        copy.strokeColor = Arrays.copyOf(strokeColor, capacity);
+        copy.strokeWidth = Arrays.copyOf(strokeWidth, capacity);
+        copy.strokeBrush = Arrays.copyOf(strokeBrush, capacity);
+        copy.strokeLayer = Arrays.copyOf(strokeLayer, capacity);
+        copy.strokeCount = strokeCount;
+        copy.restorableCount = strokeCount;
+        return copy;
+    }
+
+    //apaga todos os tracos mas mantem os arrays alocados
+    public void clear(){
+        coordCount = 0;
+        strokeCount = 0;
+        restorableCount = 0;
+        version++;
+    }
+
+    public int getStrokeCount(){
+        return strokeCount;
+    }
+
+    //numero que muda sempre que um traco entra ou sai
+    public int getVersion(){
+        return version;
+    }
+
+    //total de pontos de todos os tracos
+    public int getTotalPointCount(){
+        return coordCount / 2;
+    }
+
+    public int getColor(int stroke){
+        return strokeColor[stroke];
+    }
+
+    public float getWidth(int stroke){
+        return strokeWidth[stroke];
+    }
+
+    public Brush getBrush(int stroke){
+        return Brush.fromOrdinal(strokeBrush[stroke]);
+    }
+
+    public int getLayer(int stroke){
+        return strokeLayer[stroke];
+    }
+
+    //quantas camadas os tracos usam, pelo menos 1
+    public int getLayerCount(){
+        int count = 1;
+        for(int stroke = 0; stroke < strokeCount; stroke++)
+            count = Math.max(count, strokeLayer[stroke] + 1);
+        return count;
+    }
+
+    public int getPointCount(int stroke){
+        return strokePoints[stroke];
+    }
+
+    //index em getCoords() do x do primeiro ponto do traco
+    public int getCoordOffset(int stroke){
+        return strokeStart[stroke];
+    }
+
+    //guarda em bounds o retangulo (esquerda, topo, direita, baixo) que contem os
+    //pontos do traco, sem contar a grossura
+    public void getBounds(int stroke, float[] bounds){
+        int start = strokeStart[stroke];
+        int end = start + 2 * strokePoints[stroke];
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for(int i = start; i < end; i += 2){
+            left = Math.min(left, coords[i]);
+            right = Math.max(right, coords[i]);
+            top = Math.min(top, coords[i + 1]);
+            bottom = Math.max(bottom, coords[i + 1]);
+        }
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    //array interno com os pontos de todos os tracos, nao deve ser alterado
+    public float[] getCoords(){
+        return coords;
+    }
+
+    //bytes ocupados pelos arrays do documento
+    public long getMemoryBytes(){
+        return 4L * coords.length + 18L * strokeStart.length;
+    }
+}
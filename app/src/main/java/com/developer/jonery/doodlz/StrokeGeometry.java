@@ -0,0 +1,223 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Geometria dos tracos sem nada do Android: filtro de tolerancia, suavizacao com
+ * quadTo ate o meio entre os pontos e o estado de cada pointer, tudo em arrays
+ * primitivos. A tolerancia pode ser adaptativa (maior com o dedo rapido, menor
+ * devagar e nas curvas) e os pontos aceitos podem passar por um StrokeSimplifier,
+ * que deixa so os que o traco guardado precisa. Os segmentos saem por um
+ * SegmentListener, e quem desenha (a DoodleView com Path, ou um rasterizador) so
+ * adapta eles. Assim da pra testar e medir o caminho quente numa JVM comum, sem
+ * aparelho.
+ */
+
+public class StrokeGeometry {
+
+    //recebe os segmentos na ordem em que sao criados
+    public interface SegmentListener {
+        //o traco id comeca em (x, y)
+        void onStrokeStart(int id, float x, float y);
+
+        //segmento novo do traco id: segment tem inicio x/y, controle x/y e fim x/y
+        //(PointerStateTable.SEGMENT_SIZE floats) e e reusado na proxima chamada
+        void onSegment(int id, float[] segment);
+    }
+
+    private final PointerStateTable pointers = new PointerStateTable();
+    //pontos aceitos de cada traco em andamento
+    private final PointBuffer[] points = new PointBuffer[PointerStateTable.MAX_POINTERS];
+    private final float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+    private final float minTolerance;
+    private final float maxTolerance;
+    private final SegmentListener listener;
+
+    //velocidade (px/ms) em que a tolerancia chega no maximo
+    private static final float FAST_SPEED = 2;
+    //peso de cada amostra na media da velocidade
+    private static final float SPEED_SMOOTHING = 0.3f;
+    //quanto uma curva fechada pode diminuir a tolerancia, antes do minimo
+    private static final float MIN_TURN_SCALE = 0.25f;
+    //pontos que o simplificador pode pular de uma vez
+    private static final int SIMPLIFY_WINDOW = 32;
+
+    //por pointer: ultima amostra recebida, velocidade media e quantas amostras
+    private final float[] sampleX = new float[PointerStateTable.MAX_POINTERS];
+    private final float[] sampleY = new float[PointerStateTable.MAX_POINTERS];
+    private final long[] sampleTime = new long[PointerStateTable.MAX_POINTERS];
+    private final float[] speed = new float[PointerStateTable.MAX_POINTERS];
+    private final int[] sampleCount = new int[PointerStateTable.MAX_POINTERS];
+    //pontos que ficam depois de simplificar, null sem simplificacao
+    private final StrokeSimplifier[] simplifiers;
+    private final float simplifyTolerance;
+    //pixels da tela por unidade das amostras; as tolerancias e a velocidade sao da tela
+    private float scale = 1;
+
+    //tolerance e quanto o dedo tem que andar em x ou y pra amostra virar um ponto,
+    //sempre o mesmo, e todos os pontos aceitos sao guardados
+    public StrokeGeometry(float tolerance, SegmentListener listener){
+        this(tolerance, tolerance, 0, listener);
+    }
+
+    //a tolerancia vai de minTolerance, devagar ou numa curva fechada, ate maxTolerance
+    //com o dedo rapido em linha reta; com simplifyTolerance > 0 os pontos guardados sao
+    //os que sobram tirando os que ficam a menos disso do trecho entre os vizinhos
+    public StrokeGeometry(float minTolerance, float maxTolerance, float simplifyTolerance,
+                          SegmentListener listener){
+        this.minTolerance = minTolerance;
+        this.maxTolerance = Math.max(minTolerance, maxTolerance);
+        this.simplifyTolerance = simplifyTolerance;
+        this.listener = listener;
+        simplifiers = simplifyTolerance > 0 ? new StrokeSimplifier[PointerStateTable.MAX_POINTERS] : null;
+    }
+
+    //as amostras chegam em coordenadas com zoom: scale pixels da tela por unidade.
+    //As tolerancias continuam em pixels da tela, entao de perto os pontos ficam mais
+    //juntos. So deve mudar sem traco em andamento
+    public void setScale(float scale){
+        this.scale = scale;
+    }
+
+    //comeca um traco, retorna false se o ID nao cabe na tabela
+    public boolean start(int id, float x, float y, long time){
+        if(!pointers.start(id, x, y, time))
+            return false;
+
+        //o buffer de cada ID e criado uma vez so e reusado nos proximos toques
+        PointBuffer buffer = points[id];
+        if(buffer == null){
+            buffer = new PointBuffer(256);
+            points[id] = buffer;
+        }
+        buffer.clear();
+        buffer.add(x, y);
+
+        sampleX[id] = x;
+        sampleY[id] = y;
+        sampleTime[id] = time;
+        speed[id] = 0;
+        sampleCount[id] = 1;
+        if(simplifiers != null){
+            if(simplifiers[id] == null)
+                simplifiers[id] = new StrokeSimplifier(simplifyTolerance, SIMPLIFY_WINDOW);
+            simplifiers[id].setTolerance(simplifyTolerance / scale);
+            simplifiers[id].start(buffer);
+        }
+
+        listener.onStrokeStart(id, x, y);
+        return true;
+    }
+
+    //passa uma amostra pelo filtro e emite o segmento novo, retorna se ela foi aceita
+    public boolean addSample(int id, float x, float y, long time){
+        if(!pointers.isActive(id))
+            return false;
+
+        float tolerance = toleranceFor(id, x, y, time);
+        if(!pointers.addSample(id, x, y, time, tolerance, segment))
+            return false;
+
+        points[id].add(x, y);
+        if(simplifiers != null)
+            simplifiers[id].addPoint(points[id]);
+        listener.onSegment(id, segment);
+        return true;
+    }
+
+    //tolerancia pra amostra: cresce com a velocidade media do dedo e diminui quando a
+    //direcao do ultimo ponto ate a amostra vira em relacao ao ultimo trecho aceito
+    private float toleranceFor(int id, float x, float y, long time){
+        sampleCount[id]++;
+        if(minTolerance == maxTolerance)
+            return maxTolerance / scale;
+
+        long elapsed = time - sampleTime[id];
+        if(elapsed > 0){
+            float distance = scale * (float) Math.hypot(x - sampleX[id], y - sampleY[id]);
+            speed[id] += SPEED_SMOOTHING * (distance / elapsed - speed[id]);
+        }
+        sampleX[id] = x;
+        sampleY[id] = y;
+        sampleTime[id] = time;
+
+        float tolerance = minTolerance + Math.min(1, speed[id] / FAST_SPEED) * (maxTolerance - minTolerance);
+
+        PointBuffer buffer = points[id];
+        int last = buffer.getPointCount() - 1;
+        if(last > 0){
+            float lastX = buffer.getX(last), lastY = buffer.getY(last);
+            float ax = lastX - buffer.getX(last - 1), ay = lastY - buffer.getY(last - 1);
+            float bx = x - lastX, by = y - lastY;
+            float lengths = (float) Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+            if(lengths > 0){
+                //1 em linha reta, 0.5 num angulo reto e 0 voltando
+                float straightness = (1 + (ax * bx + ay * by) / lengths) / 2;
+                tolerance *= Math.max(MIN_TURN_SCALE, straightness);
+            }
+        }
+        return Math.max(minTolerance, tolerance) / scale;
+    }
+
+    //termina o traco; os pontos e o retangulo continuam validos ate o proximo start do ID
+    public void end(int id){
+        if(simplifiers != null && pointers.isActive(id))
+            simplifiers[id].finish(points[id]);
+        pointers.end(id);
+    }
+
+    //termina todos os tracos
+    public void clear(){
+        pointers.clear();
+    }
+
+    public boolean isActive(int id){
+        return pointers.isActive(id);
+    }
+
+    //estado de cada pointer (ultimo ponto, fim do path, retangulo), so pra leitura
+    public PointerStateTable getPointers(){
+        return pointers;
+    }
+
+    //pontos aceitos do traco id, os que o path ao vivo usa
+    public PointBuffer getPoints(int id){
+        return points[id];
+    }
+
+    //pontos do traco id que vao pro documento: os aceitos, ou depois do end os que
+    //sobraram da simplificacao
+    public PointBuffer getStoredPoints(int id){
+        return simplifiers != null ? simplifiers[id].getPoints() : points[id];
+    }
+
+    //amostras recebidas no traco id, contando o toque
+    public int getSampleCount(int id){
+        return sampleCount[id];
+    }
+
+    //emite de novo os segmentos de um traco guardado (pontos aceitos x/y a partir de
+    //offset), iguais aos que sairam ao vivo: cada ponto vira o controle de um quadTo
+    //que termina no meio ate o proximo. segment e preenchido e passado pro listener
+    public static void replay(int id, float[] coords, int offset, int pointCount,
+                              float[] segment, SegmentListener listener){
+        if(pointCount == 0)
+            return;
+
+        listener.onStrokeStart(id, coords[offset], coords[offset + 1]);
+        float endX = coords[offset];
+        float endY = coords[offset + 1];
+        for(int i = 1; i < pointCount; i++){
+            float controlX = coords[offset + 2 * i - 2];
+            float controlY = coords[offset + 2 * i - 1];
+            segment[0] = endX;
+            segment[1] = endY;
+            segment[2] = controlX;
+            segment[3] = controlY;
+            segment[4] = (coords[offset + 2 * i] + controlX) / 2;
+            segment[5] = (coords[offset + 2 * i + 1] + controlY) / 2;
+            listener.onSegment(id, segment);
+
+            endX = segment[4];
+            endY = segment[5];
+        }
+    }
+}
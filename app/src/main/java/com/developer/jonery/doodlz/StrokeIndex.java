@@ -0,0 +1,375 @@
+package com.developer.jonery.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Indice espacial dos tracos do StrokeDocument: uma grade uniforme onde cada celula
+ * lista, em ordem, os tracos cujo retangulo (com a grossura) passa por ela. Os tracos
+ * entram no fim como no documento, entao o undo so tira o ultimo de cada celula.
+ * O undo da borracha poe tracos de volta no meio e renumera os de depois.
+ * Pontos fora da area da grade caem nas celulas da borda, continua certo mas fica
+ * mais lento ate o ensureSize. Sem Android; usado numa thread so.
+ */
+
+public class StrokeIndex {
+    //lado das celulas em pixels
+    public static final int CELL_SIZE = 64;
+
+    private int columns;
+    private int rows;
+    private int[][] cells; //numeros dos tracos de cada celula, em ordem
+    private int[] cellCounts;
+
+    //retangulo com a grossura e camada de cada traco, indexados pelo numero do traco
+    private float[] bounds = new float[4 * 64];
+    private byte[] layers = new byte[64];
+    private int strokeCount;
+
+    //marca dos tracos ja vistos na consulta atual, pra nao repetir quem esta em varias celulas
+    private int[] seen = new int[64];
+    private int query;
+    private final float[] strokeBounds = new float[4];
+
+    public StrokeIndex(int width, int height){
+        columns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+        rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+        cells = new int[columns * rows][];
+        cellCounts = new int[columns * rows];
+    }
+
+    //aumenta a grade pra area nova e redistribui os tracos
+    public void ensureSize(int width, int height){
+        int newColumns = Math.max(columns, (width + CELL_SIZE - 1) / CELL_SIZE);
+        int newRows = Math.max(rows, (height + CELL_SIZE - 1) / CELL_SIZE);
+        if(newColumns == columns && newRows == rows)
+            return;
+
+        columns = newColumns;
+        rows = newRows;
+        cells = new int[columns * rows][];
+        cellCounts = new int[columns * rows];
+        for(int stroke = 0; stroke < strokeCount; stroke++)
+            insert(stroke);
+    }
+
+    //refaz o indice com todos os tracos do documento
+    public void rebuild(StrokeDocument document){
+        clear();
+        for(int stroke = 0; stroke < document.getStrokeCount(); stroke++)
+            add(document, stroke);
+    }
+
+    //indexa o traco novo do documento, que tem que ser o proximo numero
+    public void add(StrokeDocument document, int stroke){
+        if(stroke != strokeCount)
+            throw new IllegalArgumentException("traco fora de ordem: " + stroke + ", esperado " + strokeCount);
+
+        if(strokeCount == layers.length){
+            bounds = Arrays.copyOf(bounds, 8 * strokeCount);
+            layers = Arrays.copyOf(layers, 2 * strokeCount);
+        }
+        measure(document, stroke);
+        insert(strokeCount++);
+    }
+
+    //tira o ultimo traco, como o removeLastStroke do documento
+    public void removeLast(){
+        if(strokeCount == 0)
+            return;
+
+        strokeCount--;
+        int i = 4 * strokeCount;
+        int firstColumn = column(bounds[i]), lastColumn = column(bounds[i + 2]);
+        int firstRow = row(bounds[i + 1]), lastRow = row(bounds[i + 3]);
+        //foi o ultimo a entrar, entao e o ultimo de cada celula dele
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++)
+                cellCounts[row * columns + column]--;
+    }
+
+    //tira os count tracos de strokes (em ordem crescente) e renumera os outros igual
+    //ao removeStrokes do documento
+    public void removeStrokes(int[] strokes, int count){
+        if(count == 0)
+            return;
+
+        int kept = 0;
+        int next = 0;
+        for(int stroke = 0; stroke < strokeCount; stroke++){
+            if(next < count && strokes[next] == stroke){
+                next++;
+                continue;
+            }
+            System.arraycopy(bounds, 4 * stroke, bounds, 4 * kept, 4);
+            layers[kept] = layers[stroke];
+            kept++;
+        }
+        strokeCount = kept;
+
+        //as listas das celulas estao em ordem, entao so o fim delas muda: tira os
+        //apagados e desce cada numero pela quantidade de apagados antes dele
+        for(int cell = 0; cell < cellCounts.length; cell++){
+            int[] list = cells[cell];
+            int size = cellCounts[cell];
+            if(size == 0 || list[size - 1] < strokes[0])
+                continue;
+
+            int to = firstAtLeast(list, size, strokes[0]);
+            int removed = 0;
+            for(int n = to; n < size; n++){
+                int stroke = list[n];
+                while(removed < count && strokes[removed] < stroke)
+                    removed++;
+                if(removed < count && strokes[removed] == stroke)
+                    continue;
+                list[to++] = stroke - removed;
+            }
+            cellCounts[cell] = to;
+        }
+    }
+
+    //poe de volta os count tracos de strokes (em ordem crescente), que ja voltaram pro
+    //documento nesses numeros, e renumera os outros igual ao insertStrokes do documento
+    public void insertStrokes(StrokeDocument document, int[] strokes, int count){
+        if(count == 0)
+            return;
+
+        int total = strokeCount + count;
+        int capacity = Math.max(layers.length, total);
+        float[] newBounds = new float[4 * capacity];
+        byte[] newLayers = new byte[capacity];
+        int old = 0;
+        int next = 0;
+        for(int stroke = 0; stroke < total; stroke++){
+            if(next < count && strokes[next] == stroke){
+                next++;
+                continue;
+            }
+            System.arraycopy(bounds, 4 * old, newBounds, 4 * stroke, 4);
+            newLayers[stroke] = layers[old++];
+        }
+        bounds = newBounds;
+        layers = newLayers;
+        strokeCount = total;
+
+        //sobe cada numero pela quantidade de inseridos antes dele; como no removeStrokes
+        //so o fim das listas muda
+        for(int cell = 0; cell < cellCounts.length; cell++){
+            int[] list = cells[cell];
+            int size = cellCounts[cell];
+            if(size == 0 || list[size - 1] < strokes[0])
+                continue;
+
+            int inserted = 0;
+            for(int n = firstAtLeast(list, size, strokes[0]); n < size; n++){
+                while(inserted < count && strokes[inserted] <= list[n] + inserted)
+                    inserted++;
+                list[n] += inserted;
+            }
+        }
+
+        for(int n = 0; n < count; n++){
+            measure(document, strokes[n]);
+            insert(strokes[n]);
+        }
+    }
+
+    //primeira posicao de list com numero >= value
+    private static int firstAtLeast(int[] list, int size, int value){
+        int low = 0, high = size;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(list[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public void clear(){
+        strokeCount = 0;
+        Arrays.fill(cellCounts, 0);
+    }
+
+    public int getStrokeCount(){
+        return strokeCount;
+    }
+
+    //poe em out, em ordem crescente, os tracos da camada (ou de todas se layer < 0)
+    //cujo retangulo cruza o retangulo dado, e retorna quantos sao; out tem que caber
+    //getStrokeCount() tracos
+    public int query(float left, float top, float right, float bottom, int layer, int[] out){
+        int found = 0;
+        nextQuery();
+        int firstColumn = column(left), lastColumn = column(right);
+        int firstRow = row(top), lastRow = row(bottom);
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int cell = row * columns + column;
+                int[] strokes = cells[cell];
+                for(int n = 0; n < cellCounts[cell]; n++){
+                    int stroke = strokes[n];
+                    if(seen[stroke] == query)
+                        continue;
+                    seen[stroke] = query;
+
+                    int i = 4 * stroke;
+                    if((layer < 0 || layers[stroke] == layer) && bounds[i] <= right && bounds[i + 2] >= left
+                            && bounds[i + 1] <= bottom && bounds[i + 3] >= top)
+                        out[found++] = stroke;
+                }
+            }
+        Arrays.sort(out, 0, found);
+        return found;
+    }
+
+    //poe em out, em ordem crescente, os tracos da camada (ou de todas se layer < 0)
+    //que encostam no caminho de um circulo de raio radius indo de (x0, y0) a (x1, y1),
+    //contando a metade da grossura de cada traco, e retorna quantos sao
+    public int queryPath(StrokeDocument document, float x0, float y0, float x1, float y1, float radius,
+                         int layer, int[] out){
+        int candidates = query(Math.min(x0, x1) - radius, Math.min(y0, y1) - radius,
+                Math.max(x0, x1) + radius, Math.max(y0, y1) + radius, layer, out);
+
+        int found = 0;
+        float[] coords = document.getCoords();
+        for(int n = 0; n < candidates; n++){
+            int stroke = out[n];
+            //o balde de tinta so e apagado passando no toque dele, a grossura e a tolerancia
+            boolean fill = document.getBrush(stroke).isFill();
+            float reach = fill ? radius : radius + document.getWidth(stroke) / 2;
+            if(touches(coords, document.getCoordOffset(stroke), fill ? 1 : document.getPointCount(stroke),
+                    x0, y0, x1, y1, reach * reach))
+                out[found++] = stroke;
+        }
+        return found;
+    }
+
+    //se algum trecho entre os pontos aceitos fica a menos de sqrt(reachSquared) do
+    //segmento (x0, y0)-(x1, y1); o traco desenhado e a curva pelos meios dos trechos,
+    //que fica dentro deles
+    static boolean touches(float[] coords, int offset, int pointCount, float x0, float y0,
+                           float x1, float y1, float reachSquared){
+        if(pointCount == 1)
+            return pointSegmentDistanceSquared(coords[offset], coords[offset + 1], x0, y0, x1, y1) <= reachSquared;
+
+        //retangulo do caminho com a folga, pra descartar rapido os trechos longe dele
+        float reach = (float) Math.sqrt(reachSquared);
+        float left = Math.min(x0, x1) - reach, right = Math.max(x0, x1) + reach;
+        float top = Math.min(y0, y1) - reach, bottom = Math.max(y0, y1) + reach;
+
+        int end = offset + 2 * pointCount;
+        for(int i = offset + 2; i < end; i += 2){
+            float ax = coords[i - 2], ay = coords[i - 1], bx = coords[i], by = coords[i + 1];
+            if((ax < left && bx < left) || (ax > right && bx > right)
+                    || (ay < top && by < top) || (ay > bottom && by > bottom))
+                continue;
+            if(segmentDistanceSquared(ax, ay, bx, by, x0, y0, x1, y1) <= reachSquared)
+                return true;
+        }
+        return false;
+    }
+
+    //distancia ao quadrado entre os segmentos a-b e c-d
+    static float segmentDistanceSquared(float ax, float ay, float bx, float by,
+                                        float cx, float cy, float dx, float dy){
+        if(segmentsCross(ax, ay, bx, by, cx, cy, dx, dy))
+            return 0;
+        //sem cruzar, a menor distancia sai de uma das pontas
+        return Math.min(Math.min(pointSegmentDistanceSquared(ax, ay, cx, cy, dx, dy),
+                        pointSegmentDistanceSquared(bx, by, cx, cy, dx, dy)),
+                Math.min(pointSegmentDistanceSquared(cx, cy, ax, ay, bx, by),
+                        pointSegmentDistanceSquared(dx, dy, ax, ay, bx, by)));
+    }
+
+    private static boolean segmentsCross(float ax, float ay, float bx, float by,
+                                         float cx, float cy, float dx, float dy){
+        float d1 = cross(cx, cy, dx, dy, ax, ay);
+        float d2 = cross(cx, cy, dx, dy, bx, by);
+        float d3 = cross(ax, ay, bx, by, cx, cy);
+        float d4 = cross(ax, ay, bx, by, dx, dy);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    //lado de p em relacao a reta a-b
+    private static float cross(float ax, float ay, float bx, float by, float px, float py){
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    //distancia ao quadrado do ponto p ao segmento a-b
+    static float pointSegmentDistanceSquared(float px, float py, float ax, float ay, float bx, float by){
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        float x = ax + t * dx - px;
+        float y = ay + t * dy - py;
+        return x * x + y * y;
+    }
+
+    //bytes ocupados pelos arrays do indice
+    public long getMemoryBytes(){
+        long bytes = 17L * layers.length + 4L * seen.length + 4L * cellCounts.length;
+        for(int[] cell : cells)
+            if(cell != null)
+                bytes += 4L * cell.length;
+        return bytes;
+    }
+
+    //guarda o retangulo com a grossura e a camada do traco do documento no mesmo numero
+    private void measure(StrokeDocument document, int stroke){
+        document.getBounds(stroke, strokeBounds);
+        float reach = document.getBrush(stroke).getReach(document.getWidth(stroke));
+        int i = 4 * stroke;
+        bounds[i] = strokeBounds[0] - reach;
+        bounds[i + 1] = strokeBounds[1] - reach;
+        bounds[i + 2] = strokeBounds[2] + reach;
+        bounds[i + 3] = strokeBounds[3] + reach;
+        layers[stroke] = (byte) document.getLayer(stroke);
+    }
+
+    //poe o traco em todas as celulas que o retangulo dele cobre, na ordem dos numeros
+    private void insert(int stroke){
+        int i = 4 * stroke;
+        int firstColumn = column(bounds[i]), lastColumn = column(bounds[i + 2]);
+        int firstRow = row(bounds[i + 1]), lastRow = row(bounds[i + 3]);
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int cell = row * columns + column;
+                int[] strokes = cells[cell];
+                if(strokes == null){
+                    strokes = new int[8];
+                    cells[cell] = strokes;
+                }
+                else if(cellCounts[cell] == strokes.length){
+                    strokes = Arrays.copyOf(strokes, 2 * strokes.length);
+                    cells[cell] = strokes;
+                }
+                int size = cellCounts[cell]++;
+                //os tracos novos vao no fim; so o insertStrokes poe um no meio
+                int at = size > 0 && strokes[size - 1] > stroke ? firstAtLeast(strokes, size, stroke) : size;
+                System.arraycopy(strokes, at, strokes, at + 1, size - at);
+                strokes[at] = stroke;
+            }
+    }
+
+    //comeca uma consulta nova sem precisar limpar o seen
+    private void nextQuery(){
+        if(seen.length < strokeCount)
+            seen = new int[Math.max(strokeCount, 2 * seen.length)];
+        if(++query == 0){
+            Arrays.fill(seen, 0);
+            query = 1;
+        }
+    }
+
+    private int column(float x){
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / CELL_SIZE)));
+    }
+
+    private int row(float y){
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / CELL_SIZE)));
+    }
+}
@@ -0,0 +1,624 @@
+package com.developer.jonery.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+
+/**
+ * Diario binario so de acrescentar com cada alteracao do desenho (traco, undo, redo,
+ * clear, camada removida, tracos apagados e devolvidos), guardado no armazenamento privado do app pra sobreviver se o processo morrer.
+ * Os registros ficam num buffer e uma thread grava em lotes, com fsync de tempos em
+ * tempos. O checkpoint guarda o documento inteiro e os pixels dos tiles de cada
+ * camada, entao na
+ * recuperacao so os tracos do fim do diario precisam ser desenhados de novo. Cada
+ * diario comeca com a sua geracao e o checkpoint guarda a geracao que ele cobre:
+ * se o processo morrer depois do checkpoint novo e antes do diario ser esvaziado, o
+ * diario velho e ignorado em vez de ser aplicado de novo.
+ */
+
+public class StrokeJournal {
+    private static final String TAG = "StrokeJournal";
+
+    //recover retorna isso quando os tiles precisam ser todos redesenhados
+    public static final int REDRAW_ALL = -1;
+
+    private static final String JOURNAL_FILE = "strokes.journal";
+    private static final String CHECKPOINT_FILE = "strokes.checkpoint";
+
+    //tipos de registro
+    private static final byte RECORD_STROKE = 1;
+    private static final byte RECORD_UNDO = 2;
+    private static final byte RECORD_REDO = 3;
+    private static final byte RECORD_CLEAR = 4;
+    private static final byte RECORD_REMOVE_LAYER = 5;
+    private static final byte RECORD_ERASE = 6;
+    private static final byte RECORD_GENERATION = 7; //o primeiro de cada diario
+    private static final byte RECORD_INSERT = 8;
+
+    private static final long FLUSH_INTERVAL_MS = 250; //de quanto em quanto tempo grava o buffer
+    private static final long SYNC_INTERVAL_MS = 2000; //de quanto em quanto tempo faz fsync
+    //tamanho do diario que pede um checkpoint novo
+    private static final long CHECKPOINT_THRESHOLD = 512 * 1024;
+
+    private final File directory;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(); //registros ainda nao gravados
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(); //registro sendo montado
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private volatile long journalBytes; //tamanho do diario gravado mais o buffer
+    private boolean checkpointQueued;
+    //geracao do diario atual, a do checkpoint e a anterior
+    private volatile long generation = 1;
+
+    //usados so pela thread de gravacao
+    private FileOutputStream journalOut;
+    private long lastSync;
+    private boolean unsynced;
+    private final TileCodec tileCodec = new TileCodec();
+    private int[] tilePixels;
+
+    public StrokeJournal(File directory){
+        this.directory = directory;
+        directory.mkdirs();
+        journalBytes = new File(directory, JOURNAL_FILE).length();
+
+        writer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushPending(false);
+            }
+        }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    //acrescenta um traco terminado
+    public void appendStroke(int color, float width, Brush brush, int layer,
+                             float[] coords, int offset, int pointCount){
+        synchronized (lock){
+            try {
+                record.reset();
+                StrokeDocument.writeStroke(recordOut, color, width, brush, layer, coords, offset, pointCount);
+                appendRecord(RECORD_STROKE);
+            } catch (IOException e) {
+                //ByteArrayOutputStream nao da IOException
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public void appendUndo(){
+        appendEmpty(RECORD_UNDO);
+    }
+
+    public void appendRedo(){
+        appendEmpty(RECORD_REDO);
+    }
+
+    public void appendClear(){
+        appendEmpty(RECORD_CLEAR);
+    }
+
+    //a camada e os tracos dela foram removidos; as camadas novas nao tem registro,
+    //elas aparecem com o primeiro traco
+    public void appendRemoveLayer(int layer){
+        synchronized (lock){
+            record.reset();
+            writeInt(record, layer);
+            appendRecord(RECORD_REMOVE_LAYER);
+        }
+    }
+
+    //os count tracos de strokes, em ordem crescente, foram apagados pela borracha
+    public void appendErase(int[] strokes, int count){
+        synchronized (lock){
+            record.reset();
+            writeInt(record, count);
+            for(int i = 0; i < count; i++)
+                writeInt(record, strokes[i]);
+            appendRecord(RECORD_ERASE);
+        }
+    }
+
+    //o undo da borracha pos de volta os tracos de removed, o n-esimo no numero
+    //strokes[n] (em ordem crescente)
+    public void appendInsert(int[] strokes, int count, StrokeDocument removed){
+        synchronized (lock){
+            try {
+                record.reset();
+                recordOut.writeInt(count);
+                for(int i = 0; i < count; i++)
+                    recordOut.writeInt(strokes[i]);
+                float[] coords = removed.getCoords();
+                for(int n = 0; n < count; n++)
+                    StrokeDocument.writeStroke(recordOut, removed.getColor(n), removed.getWidth(n),
+                            removed.getBrush(n), removed.getLayer(n), coords, removed.getCoordOffset(n),
+                            removed.getPointCount(n));
+                appendRecord(RECORD_INSERT);
+            } catch (IOException e) {
+                //ByteArrayOutputStream nao da IOException
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    //se o diario ja cresceu o bastante pra valer um checkpoint
+    public boolean needsCheckpoint(){
+        synchronized (lock){
+            return !checkpointQueued && journalBytes > CHECKPOINT_THRESHOLD;
+        }
+    }
+
+    //grava em segundo plano um checkpoint com o documento e os tiles dos snapshots, um
+    //por camada, e esvazia o diario. document tem que ser uma copia e tudo tem que ser
+    //do mesmo momento. onWritten roda na thread de gravacao no fim, pra liberar os snapshots
+    public void checkpoint(final StrokeDocument document, final TiledCanvas.Snapshot[] snapshots,
+                           final int canvasWidth, final int canvasHeight, final Runnable onWritten){
+        final byte[] before;
+        synchronized (lock){
+            //o que ja esta no buffer entra no checkpoint, o que vier depois fica no diario novo
+            before = pending.toByteArray();
+            pending = new ByteArrayOutputStream();
+            journalBytes = 0;
+            checkpointQueued = true;
+        }
+
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //se o checkpoint falhar esses registros ainda estao no diario
+                    writeJournal(before);
+                    writeCheckpoint(document, snapshots, canvasWidth, canvasHeight);
+                    //o checkpoint novo ja esta no disco, o diario passa pra proxima geracao
+                    truncateJournal();
+                } catch (IOException e) {
+                    Log.e(TAG, "erro gravando o checkpoint", e);
+                } finally {
+                    synchronized (lock){
+                        checkpointQueued = false;
+                    }
+                    onWritten.run();
+                }
+            }
+        });
+    }
+
+    //grava o buffer e faz fsync agora, chamado no onPause
+    public void flush(){
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushPending(true);
+            }
+        });
+    }
+
+    //grava o que falta e fecha o arquivo
+    public void close(){
+        flush();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeJournal();
+            }
+        });
+        writer.shutdown();
+    }
+
+    //le o checkpoint e o diario pro documento e pras camadas, que devem estar vazios.
+    //retorna quantos tracos do documento ja estao nos tiles, ou REDRAW_ALL.
+    //roda antes de qualquer gravacao, na thread que usa o LayerStack
+    public int recover(StrokeDocument document, LayerStack layers){
+        int rasterized = 0;
+        long covered = 0; //geracao do diario que o checkpoint ja tem
+        File checkpoint = new File(directory, CHECKPOINT_FILE);
+        if(checkpoint.exists()){
+            try {
+                long[] checkpointGeneration = new long[1];
+                rasterized = readCheckpoint(checkpoint, document, layers, checkpointGeneration);
+                covered = checkpointGeneration[0];
+            } catch (IOException | DataFormatException e) {
+                //checkpoint ruim, fica so com o diario
+                Log.e(TAG, "checkpoint corrompido", e);
+                document.clear();
+                layers.clear();
+                rasterized = 0;
+                covered = 0;
+            }
+        }
+        generation = covered + 1;
+
+        File journal = new File(directory, JOURNAL_FILE);
+        if(!journal.exists())
+            return rasterized;
+
+        long validBytes = 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+            try {
+                byte[] payload = new byte[0];
+                while(true){
+                    int type = in.read();
+                    if(type < 0)
+                        break;
+                    int length = in.readInt();
+                    if(length < 0 || length > journal.length())
+                        break;
+                    if(payload.length < length)
+                        payload = new byte[length];
+                    in.readFully(payload, 0, length);
+                    int expected = in.readInt();
+
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(payload, 0, length);
+                    if((int) crc.getValue() != expected)
+                        break; //registro cortado no meio, o resto e lixo
+
+                    if(type == RECORD_GENERATION && validBytes == 0){
+                        long journalGeneration = length < 8 ? 0 : readLong(payload, 0);
+                        if(journalGeneration <= covered)
+                            //o checkpoint foi trocado mas o processo morreu antes de
+                            //esvaziar o diario: tudo nele ja esta no checkpoint
+                            break;
+                        generation = journalGeneration;
+                    } else
+                        rasterized = apply((byte) type, payload, length, document, rasterized);
+                    validBytes += 1 + 4 + length + 4;
+                }
+            } catch (EOFException e) {
+                //ultimo registro incompleto
+            } finally {
+                in.close();
+            }
+
+            //corta o lixo do fim, ou o diario ja coberto, pra que os proximos registros
+            //fiquem validos
+            if(validBytes < journal.length()){
+                RandomAccessFile file = new RandomAccessFile(journal, "rw");
+                try {
+                    file.setLength(validBytes);
+                } finally {
+                    file.close();
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "erro lendo o diario", e);
+        }
+        journalBytes = validBytes;
+        return rasterized;
+    }
+
+    //aplica um registro no documento e atualiza quantos tracos estao nos tiles
+    private static int apply(byte type, byte[] payload, int length, StrokeDocument document, int rasterized)
+            throws IOException {
+        switch (type){
+            case RECORD_STROKE:
+                DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(payload, 0, length));
+                document.readStroke(in);
+                break;
+            case RECORD_UNDO:
+                document.removeLastStroke();
+                //um traco que ja estava nos tiles saiu, eles tem que ser refeitos
+                if(rasterized != REDRAW_ALL && document.getStrokeCount() < rasterized)
+                    return REDRAW_ALL;
+                break;
+            case RECORD_REDO:
+                document.restoreStroke();
+                break;
+            case RECORD_CLEAR:
+                document.clear();
+                return REDRAW_ALL;
+            case RECORD_REMOVE_LAYER:
+                if(length < 4)
+                    throw new IOException("registro de camada cortado");
+                document.removeLayer(readInt(payload, 0));
+                return REDRAW_ALL;
+            case RECORD_ERASE:
+                int count = length < 4 ? -1 : readInt(payload, 0);
+                if(count < 0 || length < 4 + 4 * count)
+                    throw new IOException("registro de tracos apagados cortado");
+                int[] strokes = new int[count];
+                for(int i = 0; i < count; i++){
+                    strokes[i] = readInt(payload, 4 + 4 * i);
+                    if(strokes[i] < 0 || strokes[i] >= document.getStrokeCount()
+                            || (i > 0 && strokes[i] <= strokes[i - 1]))
+                        throw new IOException("traco apagado invalido: " + strokes[i]);
+                }
+                document.removeStrokes(strokes, count);
+                //os tiles so continuam valendo se nenhum traco ja desenhado saiu
+                if(count > 0 && rasterized != REDRAW_ALL && strokes[0] < rasterized)
+                    return REDRAW_ALL;
+                break;
+            case RECORD_INSERT:
+                DataInputStream insertIn = new DataInputStream(new java.io.ByteArrayInputStream(payload, 0, length));
+                int insertCount = insertIn.readInt();
+                if(insertCount < 0 || length < 4 + 4 * insertCount)
+                    throw new IOException("registro de tracos inseridos cortado");
+                int[] positions = new int[insertCount];
+                for(int i = 0; i < insertCount; i++){
+                    positions[i] = insertIn.readInt();
+                    if(positions[i] < 0 || positions[i] >= document.getStrokeCount() + insertCount
+                            || (i > 0 && positions[i] <= positions[i - 1]))
+                        throw new IOException("traco inserido invalido: " + positions[i]);
+                }
+                StrokeDocument inserted = new StrokeDocument();
+                for(int i = 0; i < insertCount; i++)
+                    inserted.readStroke(insertIn);
+                document.insertStrokes(positions, insertCount, inserted);
+                //os tiles so continuam valendo se todos entraram depois dos ja desenhados
+                if(insertCount > 0 && rasterized != REDRAW_ALL && positions[0] < rasterized)
+                    return REDRAW_ALL;
+                break;
+        }
+        return rasterized;
+    }
+
+    //int big endian gravado pelo writeInt
+    private static int readInt(byte[] bytes, int offset){
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int offset){
+        return (long) readInt(bytes, offset) << 32 | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private void appendEmpty(byte type){
+        synchronized (lock){
+            record.reset();
+            appendRecord(type);
+        }
+    }
+
+    //poe o registro montado em record no buffer: tipo, tamanho, dados e CRC32
+    private void appendRecord(byte type){
+        crc.reset();
+        crc.update(type);
+        crc.update(record.toByteArray(), 0, record.size());
+
+        int length = record.size();
+        pending.write(type);
+        writeInt(pending, length);
+        pending.write(record.toByteArray(), 0, length);
+        writeInt(pending, (int) crc.getValue());
+        journalBytes += 1 + 4 + length + 4;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value){
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    //registro com a geracao, no mesmo formato dos outros
+    private static byte[] generationRecord(long generation){
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(8);
+        writeInt(payload, (int) (generation >>> 32));
+        writeInt(payload, (int) generation);
+        CRC32 checksum = new CRC32();
+        checksum.update(RECORD_GENERATION);
+        checksum.update(payload.toByteArray(), 0, 8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + 4 + 8 + 4);
+        out.write(RECORD_GENERATION);
+        writeInt(out, 8);
+        out.write(payload.toByteArray(), 0, 8);
+        writeInt(out, (int) checksum.getValue());
+        return out.toByteArray();
+    }
+
+    //thread de gravacao: grava o buffer no fim do diario
+    private void flushPending(boolean sync){
+        byte[] bytes;
+        synchronized (lock){
+            //com checkpoint na fila, o que esta no buffer so pode ir pro diario depois dele
+            if(checkpointQueued || (pending.size() == 0 && !(sync && unsynced)))
+                return;
+            bytes = pending.toByteArray();
+            pending.reset();
+        }
+
+        try {
+            writeJournal(bytes);
+            long now = System.currentTimeMillis();
+            if(unsynced && (sync || now - lastSync >= SYNC_INTERVAL_MS)){
+                journalOut.getFD().sync();
+                unsynced = false;
+                lastSync = now;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "erro gravando o diario", e);
+        }
+    }
+
+    private void writeJournal(byte[] bytes) throws IOException {
+        if(bytes.length == 0)
+            return;
+        if(journalOut == null){
+            File journal = new File(directory, JOURNAL_FILE);
+            boolean empty = journal.length() == 0;
+            journalOut = new FileOutputStream(journal, true);
+            if(empty)
+                journalOut.write(generationRecord(generation));
+        }
+        journalOut.write(bytes);
+        unsynced = true;
+    }
+
+    //esvazia o diario e comeca a proxima geracao
+    private void truncateJournal() throws IOException {
+        closeJournal();
+        generation++;
+        journalOut = new FileOutputStream(new File(directory, JOURNAL_FILE), false);
+        journalOut.write(generationRecord(generation));
+        journalOut.getFD().sync();
+        unsynced = false;
+    }
+
+    private void closeJournal(){
+        if(journalOut == null)
+            return;
+        try {
+            journalOut.close();
+        } catch (IOException e) {
+            Log.w(TAG, "erro fechando o diario", e);
+        }
+        journalOut = null;
+    }
+
+    //grava num arquivo temporario e troca pelo checkpoint antigo so no final,
+    //entao sempre existe um checkpoint inteiro no disco. Ele cobre o diario da
+    //geracao atual, que so pode ser esvaziado depois do rename estar no disco
+    private void writeCheckpoint(StrokeDocument document, TiledCanvas.Snapshot[] snapshots,
+                                 int canvasWidth, int canvasHeight) throws IOException {
+        File temporary = new File(directory, CHECKPOINT_FILE + ".tmp");
+        FileOutputStream file = new FileOutputStream(temporary);
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        try {
+            //comeca como um DocumentFile, os tiles de cada camada vem depois dos tracos
+            DocumentFile.writeHeader(out, canvasWidth, canvasHeight);
+            document.write(out);
+
+            out.writeInt(snapshots.length);
+            for(TiledCanvas.Snapshot snapshot : snapshots)
+                writeTiles(out, snapshot);
+            out.writeLong(generation);
+
+            out.flush();
+            long checksum = checked.getChecksum().getValue();
+            out.writeLong(checksum);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if(!temporary.renameTo(new File(directory, CHECKPOINT_FILE)))
+            throw new IOException("nao deu pra trocar o checkpoint");
+        syncDirectory();
+    }
+
+    //fsync do diretorio, pra que o rename do checkpoint nao se perca se o aparelho desligar
+    private void syncDirectory(){
+        try {
+            FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            Log.w(TAG, "erro no fsync do diretorio", e);
+        }
+    }
+
+    //grava a quantidade de tiles que nao estao em branco e cada um comprimido
+    private void writeTiles(DataOutputStream out, TiledCanvas.Snapshot snapshot) throws IOException {
+        int tileCount = 0;
+        for(int i = 0; i < snapshot.getTileCount(); i++)
+            if(!snapshot.isBlank(i))
+                tileCount++;
+        out.writeInt(tileCount);
+
+        int tilePixelCount = TiledCanvas.TILE_SIZE * TiledCanvas.TILE_SIZE;
+        if(tilePixels == null)
+            tilePixels = new int[tilePixelCount];
+        for(int i = 0; i < snapshot.getTileCount(); i++){
+            if(snapshot.isBlank(i))
+                continue;
+            //os tiles que estavam no disco sao lidos aqui, na thread de gravacao
+            Bitmap tile = snapshot.getTile(i);
+            if(tile != null)
+                tile.getPixels(tilePixels, 0, TiledCanvas.TILE_SIZE, 0, 0,
+                        TiledCanvas.TILE_SIZE, TiledCanvas.TILE_SIZE);
+            else
+                Arrays.fill(tilePixels, Color.TRANSPARENT); //o arquivo do tile sumiu
+            byte[] compressed = tileCodec.compress(tilePixels, tilePixelCount);
+            out.writeInt(snapshot.getTileColumn(i));
+            out.writeInt(snapshot.getTileRow(i));
+            out.writeInt(compressed.length);
+            out.write(compressed);
+        }
+    }
+
+    //le o checkpoint e retorna quantos tracos ele tem, todos ja nos tiles, ou
+    //REDRAW_ALL se tem mais camadas do que cabem aqui; poe em generation a geracao
+    //do diario que ele cobre
+    private int readCheckpoint(File checkpoint, StrokeDocument document, LayerStack layers, long[] generation)
+            throws IOException, DataFormatException {
+        CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(checkpoint)), new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+        try {
+            int[] size = new int[2];
+            int version = DocumentFile.readHeader(in, size);
+            layers.ensureSize(size[0], size[1]);
+
+            int strokeCount = document.read(in);
+
+            //a versao 1 tem uma camada so, sem a quantidade
+            int layerCount = version == 1 ? 1 : in.readInt();
+            if(layerCount < 1 || layerCount > StrokeDocument.MAX_LAYERS)
+                throw new IOException("quantidade de camadas invalida: " + layerCount);
+            layers.ensureLayerCount(layerCount);
+            boolean fits = layers.getLayerCount() >= layerCount;
+
+            int tilePixelCount = TiledCanvas.TILE_SIZE * TiledCanvas.TILE_SIZE;
+            int[] pixels = new int[tilePixelCount];
+            byte[] compressed = new byte[0];
+            for(int layer = 0; layer < layerCount; layer++){
+                int tileCount = in.readInt();
+                for(int i = 0; i < tileCount; i++){
+                    int column = in.readInt();
+                    int row = in.readInt();
+                    int length = in.readInt();
+                    if(compressed.length < length)
+                        compressed = new byte[length];
+                    in.readFully(compressed, 0, length);
+                    if(!fits)
+                        continue; //so le pro checksum
+                    tileCodec.decompress(compressed, length, pixels, tilePixelCount);
+                    layers.getCanvas(layer).setPixels(pixels, 0, column * TiledCanvas.TILE_SIZE,
+                            row * TiledCanvas.TILE_SIZE, TiledCanvas.TILE_SIZE, TiledCanvas.TILE_SIZE);
+                }
+            }
+
+            generation[0] = in.readLong();
+
+            long expected = checked.getChecksum().getValue();
+            if(in.readLong() != expected)
+                throw new IOException("checksum do checkpoint nao bate");
+            return fits ? strokeCount : REDRAW_ALL;
+        } finally {
+            in.close();
+        }
+    }
+}
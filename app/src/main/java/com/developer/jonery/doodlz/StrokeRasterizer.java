@@ -0,0 +1,488 @@
+package com.developer.jonery.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Rasterizador em Java puro, pra desenhar um StrokeDocument fora do aparelho
+ * (miniaturas, exportacao no servidor). Desenha os mesmos quadTo do replay com o
+ * que o paintLine usa: anti-alias, STROKE e ponta ROUND, numa cor ARGB, num int[]
+ * de pixels ARGB nao pre-multiplicados, o mesmo formato do Bitmap.getPixels.
+ * Cada quadTo vira uma linha quebrada fina e a cobertura de cada pixel e a area
+ * dele entre as bordas do traco, medida a partir da distancia ate a linha, entao
+ * juntas e pontas ficam redondas como no Skia. Os pinceis de carimbo usam as
+ * mesmas mascaras, espacamento e acumulo de alpha da camada da DoodleView, e o
+ * balde de tinta usa o mesmo ScanlineFill, cortado no retangulo guardado.
+ */
+
+public class StrokeRasterizer {
+    //maior distancia entre a curva e a linha quebrada que substitui ela, em pixels
+    private static final float FLATTEN_TOLERANCE = 0.02f;
+    private static final int MAX_SUBDIVISIONS = 64;
+    //distancia do centro ate o canto de um pixel: alem disso da borda ele nao e tocado
+    private static final float PIXEL_REACH = 0.7072f;
+    //bytes das mascaras de carimbo guardadas
+    private static final long MAX_DAB_BYTES = 1024 * 1024;
+
+    private int[] pixels;
+    private int width;
+    private int height;
+
+    //transformacao aplicada aos pontos e a grossura, como uma matrix no Canvas
+    private float scale = 1;
+    private float translateX;
+    private float translateY;
+
+    //linha quebrada do traco sendo desenhado, x/y ja transformados
+    private float[] polyline = new float[512];
+    private int polylineCount; //floats usados
+    private final float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+    private final StrokeGeometry.SegmentListener flattener = new StrokeGeometry.SegmentListener() {
+        @Override
+        public void onStrokeStart(int id, float x, float y) {
+            polylineCount = 0;
+            addPolylinePoint(x * scale + translateX, y * scale + translateY);
+        }
+
+        @Override
+        public void onSegment(int id, float[] segment) {
+            flattenQuad(segment);
+        }
+    };
+
+    //cobertura de 0 a 255 de cada pixel no retangulo do traco, reusada entre tracos;
+    //fica zerada entre um traco e outro, o blend zera o que leu
+    private byte[] coverage = new byte[0];
+    //pedaco de cada linha do retangulo que alguma reta tocou, so ele e misturado
+    private int[] spanStart = new int[0];
+    private int[] spanEnd = new int[0];
+
+    //carimbos: mascaras do traco atual (uma por variacao) e o retangulo onde cabem
+    private final DabCache<byte[]> dabs = new DabCache<byte[]>(MAX_DAB_BYTES) {
+        @Override
+        protected byte[] create(Brush brush, float diameter, int variant, int side) {
+            byte[] mask = new byte[side * side];
+            DabMask.render(brush, diameter, variant, mask, side);
+            return mask;
+        }
+    };
+    private final byte[][] strokeDabs = new byte[Brush.MAX_VARIANTS][];
+    private int dabVariants;
+    private int dabSide;
+    private int dabFlow;
+    private int boxLeft, boxTop, boxRight, boxBottom;
+    private final ScanlineFill scanlineFill = new ScanlineFill();
+
+    private final DabSpacer spacer = new DabSpacer(new DabSpacer.DabListener() {
+        @Override
+        public void onDab(int id, float x, float y, int index) {
+            stamp(x * scale + translateX, y * scale + translateY, strokeDabs[index % dabVariants]);
+        }
+    });
+
+    //desenha num int[] novo de width x height pixels transparentes
+    public StrokeRasterizer(int width, int height){
+        this(new int[width * height], width, height);
+    }
+
+    //desenha direto em pixels, com width x height pixels linha a linha
+    public StrokeRasterizer(int[] pixels, int width, int height){
+        setTarget(pixels, width, height);
+    }
+
+    //troca os pixels onde os proximos tracos sao desenhados
+    public void setTarget(int[] pixels, int width, int height){
+        if(width < 0 || height < 0 || pixels.length < width * height)
+            throw new IllegalArgumentException("pixels nao tem " + width + "x" + height);
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    //escala e deslocamento dos pontos; a grossura tambem e escalada
+    public void setTransform(float scale, float translateX, float translateY){
+        this.scale = scale;
+        this.translateX = translateX;
+        this.translateY = translateY;
+    }
+
+    //pinta todos os pixels com color, como o eraseColor
+    public void fill(int color){
+        Arrays.fill(pixels, 0, width * height, color);
+    }
+
+    //desenha todos os tracos do documento
+    public void drawDocument(StrokeDocument document){
+        drawDocument(document, 0, document.getStrokeCount());
+    }
+
+    //desenha os tracos de first ate end (exclusivo), camada por camada de baixo pra
+    //cima e em ordem dentro de cada uma. O documento nao guarda visibilidade, opacidade
+    //nem mistura das camadas, entao sao todas visiveis, opacas e NORMAL, e desenhar
+    //tudo no mesmo destino e igual a misturar as camadas. So o balde de tinta muda com
+    //isso: ele ve as camadas de baixo juntas, e na DoodleView so a camada dele
+    public void drawDocument(StrokeDocument document, int first, int end){
+        float[] coords = document.getCoords();
+        int layerCount = document.getLayerCount();
+        for(int layer = 0; layer < layerCount; layer++)
+            for(int stroke = first; stroke < end; stroke++)
+                if(document.getLayer(stroke) == layer)
+                    drawStroke(document.getColor(stroke), document.getWidth(stroke), document.getBrush(stroke),
+                            coords, document.getCoordOffset(stroke), document.getPointCount(stroke));
+    }
+
+    //desenha um traco com os pontos aceitos x/y de coords[offset] em diante; igual ao
+    //Path da DoodleView, um traco de um ponto so (so o moveTo) nao desenha nada
+    public void drawStroke(int color, float strokeWidth, float[] coords, int offset, int pointCount){
+        drawStroke(color, strokeWidth, Brush.ROUND, coords, offset, pointCount);
+    }
+
+    //desenha o traco com o pincel; com carimbos um ponto so ja deixa um carimbo
+    public void drawStroke(int color, float strokeWidth, Brush brush, float[] coords, int offset, int pointCount){
+        if(brush.isFill()){
+            drawFill(color, (int) strokeWidth, coords, offset, pointCount);
+            return;
+        }
+        if(brush.isStamped()){
+            drawStampedStroke(color, strokeWidth, brush, coords, offset, pointCount);
+            return;
+        }
+        if(pointCount < 2 || (color >>> 24) == 0)
+            return;
+
+        StrokeGeometry.replay(0, coords, offset, pointCount, segment, flattener);
+
+        //grossura 0 no Paint e uma linha fina de 1 pixel que nao escala
+        float halfWidth = strokeWidth > 0 ? strokeWidth * Math.abs(scale) / 2 : 0.5f;
+        rasterizePolyline(color, halfWidth);
+    }
+
+    //balde de tinta a partir do primeiro ponto, so dentro do retangulo dos outros dois,
+    //com a cor trocando os pixels como o setPixels dos tiles
+    private void drawFill(int color, int tolerance, float[] coords, int offset, int pointCount){
+        if(pointCount < 3)
+            return;
+
+        int left = Math.max(0, (int) Math.floor(coords[offset + 2] * scale + translateX));
+        int top = Math.max(0, (int) Math.floor(coords[offset + 3] * scale + translateY));
+        int right = Math.min(width, (int) Math.ceil(coords[offset + 4] * scale + translateX));
+        int bottom = Math.min(height, (int) Math.ceil(coords[offset + 5] * scale + translateY));
+        if(left >= right || top >= bottom)
+            return;
+
+        int x = (int) Math.floor(coords[offset] * scale + translateX) - left;
+        int y = (int) Math.floor(coords[offset + 1] * scale + translateY) - top;
+        scanlineFill.fill(pixels, top * width + left, width, right - left, bottom - top, x, y, color, tolerance);
+    }
+
+    //junta os carimbos do traco na cobertura, acumulando como SRC_OVER numa camada
+    //ALPHA_8, e mistura a cor com a opacidade do pincel uma vez so
+    private void drawStampedStroke(int color, float strokeWidth, Brush brush, float[] coords,
+                                   int offset, int pointCount){
+        int strokeColor = brush.getStrokeAlpha(color) << 24 | (color & 0xFFFFFF);
+        if(pointCount < 1 || (strokeColor >>> 24) == 0)
+            return;
+
+        float diameter = brush.getDabDiameter(strokeWidth) * Math.abs(scale);
+        dabVariants = brush.variants;
+        for(int variant = 0; variant < dabVariants; variant++)
+            strokeDabs[variant] = dabs.get(brush, diameter, variant);
+        dabSide = DabMask.sideFor(DabCache.quantize(diameter));
+        dabFlow = brush.getFlowAlpha();
+
+        //retangulo dos pontos com meio carimbo de folga, cortado na imagem
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for(int i = offset; i < offset + 2 * pointCount; i += 2){
+            minX = Math.min(minX, coords[i]);
+            maxX = Math.max(maxX, coords[i]);
+            minY = Math.min(minY, coords[i + 1]);
+            maxY = Math.max(maxY, coords[i + 1]);
+        }
+        float reach = dabSide / 2f + 1;
+        boxLeft = Math.max(0, (int) Math.floor(Math.min(minX * scale, maxX * scale) + translateX - reach));
+        boxTop = Math.max(0, (int) Math.floor(Math.min(minY * scale, maxY * scale) + translateY - reach));
+        boxRight = Math.min(width, (int) Math.ceil(Math.max(minX * scale, maxX * scale) + translateX + reach));
+        boxBottom = Math.min(height, (int) Math.ceil(Math.max(minY * scale, maxY * scale) + translateY + reach));
+        if(boxLeft >= boxRight || boxTop >= boxBottom)
+            return;
+
+        int boxWidth = boxRight - boxLeft;
+        int rows = boxBottom - boxTop;
+        if(coverage.length < boxWidth * rows)
+            coverage = new byte[Math.max(boxWidth * rows, coverage.length * 2)];
+        if(spanStart.length < rows){
+            spanStart = new int[Math.max(rows, spanStart.length * 2)];
+            spanEnd = new int[spanStart.length];
+        }
+        Arrays.fill(spanStart, 0, rows, boxRight);
+        Arrays.fill(spanEnd, 0, rows, boxLeft);
+
+        //o espacamento e medido nos pontos do documento, antes da escala
+        spacer.setSpacing(brush.getDabSpacing(strokeWidth));
+        StrokeGeometry.replay(0, coords, offset, pointCount, segment, spacer);
+
+        blend(strokeColor, boxLeft, boxTop, boxRight, boxBottom, boxWidth);
+    }
+
+    //soma um carimbo centrado em (x, y) na cobertura: c + a * (1 - c), como o SRC_OVER
+    //de um ALPHA_8; a posicao e arredondada pro pixel igual ao drawBitmap da view
+    private void stamp(float x, float y, byte[] mask){
+        int side = dabSide;
+        int maskLeft = Math.round(x - side / 2f);
+        int maskTop = Math.round(y - side / 2f);
+        int x0 = Math.max(boxLeft, maskLeft);
+        int x1 = Math.min(boxRight, maskLeft + side);
+        int y0 = Math.max(boxTop, maskTop);
+        int y1 = Math.min(boxBottom, maskTop + side);
+        if(x0 >= x1)
+            return;
+
+        int boxWidth = boxRight - boxLeft;
+        for(int py = y0; py < y1; py++){
+            int row = (py - boxTop) * boxWidth - boxLeft;
+            int maskRow = (py - maskTop) * side - maskLeft;
+            for(int px = x0; px < x1; px++){
+                int alpha = ((mask[maskRow + px] & 0xFF) * dabFlow + 127) / 255;
+                if(alpha == 0)
+                    continue;
+                int cover = coverage[row + px] & 0xFF;
+                coverage[row + px] = (byte) (cover + (alpha * (255 - cover) + 127) / 255);
+            }
+            if(x0 < spanStart[py - boxTop])
+                spanStart[py - boxTop] = x0;
+            if(x1 > spanEnd[py - boxTop])
+                spanEnd[py - boxTop] = x1;
+        }
+    }
+
+    private void addPolylinePoint(float x, float y){
+        if(polylineCount + 2 > polyline.length)
+            polyline = Arrays.copyOf(polyline, polyline.length * 2);
+        polyline[polylineCount++] = x;
+        polyline[polylineCount++] = y;
+    }
+
+    //troca o quadTo por retas o bastante pra ficarem a FLATTEN_TOLERANCE da curva
+    private void flattenQuad(float[] quad){
+        float x0 = quad[0] * scale + translateX, y0 = quad[1] * scale + translateY;
+        float cx = quad[2] * scale + translateX, cy = quad[3] * scale + translateY;
+        float x1 = quad[4] * scale + translateX, y1 = quad[5] * scale + translateY;
+
+        //o erro de n retas e |p0 - 2c + p1| / (4 n^2)
+        float ddx = x0 - 2 * cx + x1;
+        float ddy = y0 - 2 * cy + y1;
+        float dd = (float) Math.sqrt(ddx * ddx + ddy * ddy);
+        int n = (int) Math.ceil(Math.sqrt(dd / (4 * FLATTEN_TOLERANCE)));
+        n = Math.max(1, Math.min(MAX_SUBDIVISIONS, n));
+
+        for(int i = 1; i < n; i++){
+            float t = (float) i / n;
+            float u = 1 - t;
+            addPolylinePoint(u * u * x0 + 2 * u * t * cx + t * t * x1,
+                    u * u * y0 + 2 * u * t * cy + t * t * y1);
+        }
+        addPolylinePoint(x1, y1);
+    }
+
+    //calcula a cobertura da linha quebrada no retangulo dela e mistura a cor nos pixels
+    private void rasterizePolyline(int color, float halfWidth){
+        //retangulo do traco em pixels, cortado na imagem
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for(int i = 0; i < polylineCount; i += 2){
+            minX = Math.min(minX, polyline[i]);
+            maxX = Math.max(maxX, polyline[i]);
+            minY = Math.min(minY, polyline[i + 1]);
+            maxY = Math.max(maxY, polyline[i + 1]);
+        }
+        float reach = halfWidth + PIXEL_REACH;
+        int left = Math.max(0, (int) Math.floor(minX - reach));
+        int top = Math.max(0, (int) Math.floor(minY - reach));
+        int right = Math.min(width, (int) Math.ceil(maxX + reach));
+        int bottom = Math.min(height, (int) Math.ceil(maxY + reach));
+        if(left >= right || top >= bottom)
+            return;
+
+        int boxWidth = right - left;
+        int boxSize = boxWidth * (bottom - top);
+        if(coverage.length < boxSize)
+            coverage = new byte[Math.max(boxSize, coverage.length * 2)];
+        int rows = bottom - top;
+        if(spanStart.length < rows){
+            spanStart = new int[Math.max(rows, spanStart.length * 2)];
+            spanEnd = new int[spanStart.length];
+        }
+        Arrays.fill(spanStart, 0, rows, right);
+        Arrays.fill(spanEnd, 0, rows, left);
+
+        //um ponto repetido no fim vira uma reta de tamanho 0, que ainda desenha a ponta
+        for(int i = 0; i + 3 < polylineCount; i += 2)
+            coverSegment(polyline[i], polyline[i + 1], polyline[i + 2], polyline[i + 3],
+                    halfWidth, left, top, right, bottom, boxWidth);
+
+        blend(color, left, top, right, bottom, boxWidth);
+    }
+
+    //guarda em coverage a cobertura de cada pixel perto da reta (ax, ay)-(bx, by),
+    //mantendo a maior entre as retas do mesmo traco, ja que o path e uma forma so
+    private void coverSegment(float ax, float ay, float bx, float by, float halfWidth,
+                              int left, int top, int right, int bottom, int boxWidth){
+        float reach = halfWidth + PIXEL_REACH;
+        int x0 = Math.max(left, (int) Math.floor(Math.min(ax, bx) - reach));
+        int x1 = Math.min(right, (int) Math.ceil(Math.max(ax, bx) + reach));
+        int y0 = Math.max(top, (int) Math.floor(Math.min(ay, by) - reach));
+        int y1 = Math.min(bottom, (int) Math.ceil(Math.max(ay, by) + reach));
+
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float inverseLength = lengthSquared > 0 ? 1 / lengthSquared : 0;
+        float reachSquared = reach * reach;
+
+        for(int y = y0; y < y1; y++){
+            float py = y + 0.5f - ay;
+            int row = (y - top) * boxWidth - left;
+
+            //so o pedaco da reta a menos de reach desta linha alcanca ela
+            float from = 0, to = 1;
+            if(dy != 0){
+                float t0 = (py - reach) / dy;
+                float t1 = (py + reach) / dy;
+                from = Math.max(0, Math.min(t0, t1));
+                to = Math.min(1, Math.max(t0, t1));
+                if(from > to)
+                    continue;
+            }
+            float fromX = ax + from * dx;
+            float toX = ax + to * dx;
+            int rowStart = Math.max(x0, (int) Math.floor(Math.min(fromX, toX) - reach));
+            int rowEnd = Math.min(x1, (int) Math.ceil(Math.max(fromX, toX) + reach));
+            if(rowStart < spanStart[y - top])
+                spanStart[y - top] = rowStart;
+            if(rowEnd > spanEnd[y - top])
+                spanEnd[y - top] = rowEnd;
+
+            for(int x = rowStart; x < rowEnd; x++){
+                //no meio de um traco grosso varias retas passam pelo mesmo pixel
+                if(coverage[row + x] == (byte) 255)
+                    continue;
+                float px = x + 0.5f - ax;
+
+                //ponto mais perto na reta
+                float t = (px * dx + py * dy) * inverseLength;
+                if(t < 0)
+                    t = 0;
+                else if(t > 1)
+                    t = 1;
+                float ex = px - t * dx;
+                float ey = py - t * dy;
+                float distanceSquared = ex * ex + ey * ey;
+                if(distanceSquared >= reachSquared)
+                    continue;
+
+                //area do pixel entre as duas bordas do traco, que perto do pixel sao
+                //retas perpendiculares a direcao ate o ponto mais perto
+                float distance = (float) Math.sqrt(distanceSquared);
+                float normalX, normalY;
+                if(distance > 1e-3f){
+                    normalX = Math.abs(ex) / distance;
+                    normalY = Math.abs(ey) / distance;
+                }
+                else if(lengthSquared > 0){
+                    float length = (float) Math.sqrt(lengthSquared);
+                    normalX = Math.abs(dy) / length;
+                    normalY = Math.abs(dx) / length;
+                }
+                else {
+                    normalX = 1;
+                    normalY = 0;
+                }
+                float inside = edgeCoverage(halfWidth - distance, normalX, normalY)
+                        + edgeCoverage(halfWidth + distance, normalX, normalY) - 1;
+                int value = (int) (inside * 255 + 0.5f);
+                if(value <= 0)
+                    continue;
+                if(value > 255)
+                    value = 255;
+                if(value > (coverage[row + x] & 0xFF))
+                    coverage[row + x] = (byte) value;
+            }
+        }
+    }
+
+    //area de um pixel 1x1 do lado de dentro de uma reta com normal (nx, ny), ambos
+    //positivos, quando o centro do pixel esta a distance pra dentro (negativo e fora)
+    private static float edgeCoverage(float distance, float nx, float ny){
+        float a = Math.max(nx, ny);
+        float b = Math.min(nx, ny);
+        float reach = (a + b) / 2;
+        if(distance >= reach)
+            return 1;
+        if(distance <= -reach)
+            return 0;
+
+        //no meio a area cresce linear, nas pontas e um triangulo
+        float linear = (a - b) / 2;
+        if(distance > linear){
+            float gap = reach - distance;
+            return 1 - gap * gap / (2 * a * b);
+        }
+        if(distance < -linear){
+            float gap = reach + distance;
+            return gap * gap / (2 * a * b);
+        }
+        return 0.5f + distance / a;
+    }
+
+    //mistura color nos pixels com a cobertura como alpha extra (SRC_OVER) e zera a cobertura
+    private void blend(int color, int left, int top, int right, int bottom, int boxWidth){
+        int colorAlpha = color >>> 24;
+        int red = (color >> 16) & 0xFF;
+        int green = (color >> 8) & 0xFF;
+        int blue = color & 0xFF;
+
+        for(int y = top; y < bottom; y++){
+            int row = (y - top) * boxWidth - left;
+            int pixelRow = y * width;
+            for(int x = spanStart[y - top]; x < spanEnd[y - top]; x++){
+                int cover = coverage[row + x] & 0xFF;
+                if(cover == 0)
+                    continue;
+                coverage[row + x] = 0;
+
+                int sourceAlpha = (colorAlpha * cover + 127) / 255;
+                int index = pixelRow + x;
+                if(sourceAlpha == 255){
+                    pixels[index] = color | 0xFF000000;
+                    continue;
+                }
+
+                int destination = pixels[index];
+                int destinationAlpha = destination >>> 24;
+                //alpha do destino que sobra embaixo da fonte, de 0 a 255*255
+                int under = destinationAlpha * (255 - sourceAlpha);
+                int outAlpha255 = sourceAlpha * 255 + under;
+                if(outAlpha255 == 0)
+                    continue;
+
+                int outRed = (red * sourceAlpha * 255 + ((destination >> 16) & 0xFF) * under + outAlpha255 / 2) / outAlpha255;
+                int outGreen = (green * sourceAlpha * 255 + ((destination >> 8) & 0xFF) * under + outAlpha255 / 2) / outAlpha255;
+                int outBlue = (blue * sourceAlpha * 255 + (destination & 0xFF) * under + outAlpha255 / 2) / outAlpha255;
+                int outAlpha = (outAlpha255 + 127) / 255;
+                pixels[index] = outAlpha << 24 | outRed << 16 | outGreen << 8 | outBlue;
+            }
+        }
+    }
+
+    public int[] getPixels(){
+        return pixels;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+}
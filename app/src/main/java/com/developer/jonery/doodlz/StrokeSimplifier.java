@@ -0,0 +1,81 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Simplificacao de um traco enquanto os pontos chegam, no estilo Ramer-Douglas-Peucker
+ * com janela: a partir do ultimo ponto guardado (a ancora), cada ponto novo vira o fim
+ * de um trecho candidato, e enquanto todos os pontos do meio ficam a menos de
+ * tolerance desse trecho nenhum deles precisa ser guardado. Quando um sai, o ponto
+ * anterior ao novo e guardado e vira a ancora. A janela tem tamanho maximo, entao
+ * cada ponto custa no maximo maxWindow testes. O finish fecha o traco no ultimo ponto.
+ * Sem Android; um objeto por traco em andamento.
+ */
+
+public class StrokeSimplifier {
+    private float toleranceSquared;
+    private final int maxWindow;
+    private final PointBuffer kept = new PointBuffer(64);
+    private int anchor; //index em source do ultimo ponto guardado
+
+    //tolerance e a distancia maxima, em pixels, de um ponto tirado ate o trecho que
+    //ficou no lugar dele; maxWindow e quantos pontos um trecho pode pular
+    public StrokeSimplifier(float tolerance, int maxWindow){
+        toleranceSquared = tolerance * tolerance;
+        this.maxWindow = Math.max(2, maxWindow);
+    }
+
+    //troca a tolerancia, pro proximo traco
+    public void setTolerance(float tolerance){
+        toleranceSquared = tolerance * tolerance;
+    }
+
+    //comeca com o primeiro ponto de source
+    public void start(PointBuffer source){
+        kept.clear();
+        kept.add(source.getX(0), source.getY(0));
+        anchor = 0;
+    }
+
+    //o ultimo ponto de source acabou de chegar
+    public void addPoint(PointBuffer source){
+        int last = source.getPointCount() - 1;
+        if(last - anchor < 2)
+            return;
+
+        if(last - anchor > maxWindow || !fits(source, last)){
+            anchor = last - 1;
+            kept.add(source.getX(anchor), source.getY(anchor));
+        }
+    }
+
+    //termina o traco guardando o ultimo ponto, retorna os pontos que ficaram. O replay
+    //termina no meio entre os dois ultimos pontos, e com os trechos longos que sobram
+    //isso cortaria o fim do traco, entao o ultimo ponto vai duas vezes e o traco chega nele
+    public PointBuffer finish(PointBuffer source){
+        int last = source.getPointCount() - 1;
+        if(last == 0)
+            return kept;
+
+        if(last > anchor){
+            anchor = last;
+            kept.add(source.getX(last), source.getY(last));
+        }
+        kept.add(source.getX(last), source.getY(last));
+        return kept;
+    }
+
+    //pontos guardados ate agora
+    public PointBuffer getPoints(){
+        return kept;
+    }
+
+    //se todos os pontos entre a ancora e end ficam perto do trecho ancora-end
+    private boolean fits(PointBuffer source, int end){
+        float ax = source.getX(anchor), ay = source.getY(anchor);
+        float bx = source.getX(end), by = source.getY(end);
+        for(int i = anchor + 1; i < end; i++)
+            if(StrokeIndex.pointSegmentDistanceSquared(source.getX(i), source.getY(i), ax, ay, bx, by)
+                    > toleranceSquared)
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+package com.developer.jonery.doodlz;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Comprime e descomprime pixels ARGB com deflate. O desenho tem areas grandes
+ * da mesma cor, entao os tiles salvos pro undo ficam bem menores que os pixels crus.
+ * Os buffers sao reusados entre chamadas, entao a instancia nao e thread safe.
+ */
+
+public class TileCodec {
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private ByteBuffer raw = ByteBuffer.allocate(0); //pixels como bytes
+    private byte[] chunk = new byte[16 * 1024]; //saida do deflater
+
+    //comprime os primeiros count pixels
+    public byte[] compress(int[] pixels, int count){
+        ByteBuffer bytes = rawBuffer(count);
+        bytes.asIntBuffer().put(pixels, 0, count);
+
+        deflater.reset();
+        deflater.setInput(bytes.array(), 0, count * 4);
+        deflater.finish();
+
+        int length = 0;
+        while(!deflater.finished()){
+            if(length == chunk.length){
+                byte[] bigger = new byte[chunk.length * 2];
+                System.arraycopy(chunk, 0, bigger, 0, length);
+                chunk = bigger;
+            }
+            length += deflater.deflate(chunk, length, chunk.length - length);
+        }
+
+        byte[] compressed = new byte[length];
+        System.arraycopy(chunk, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    //descomprime count pixels em pixels
+    public void decompress(byte[] compressed, int[] pixels, int count) throws DataFormatException {
+        decompress(compressed, compressed.length, pixels, count);
+    }
+
+    //descomprime count pixels dos primeiros length bytes de compressed
+    public void decompress(byte[] compressed, int length, int[] pixels, int count) throws DataFormatException {
+        ByteBuffer bytes = rawBuffer(count);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        int read = 0;
+        while(read < count * 4 && !inflater.finished()){
+            int bytesRead = inflater.inflate(bytes.array(), read, count * 4 - read);
+            if(bytesRead == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                throw new DataFormatException("tile truncado");
+            read += bytesRead;
+        }
+        if(read != count * 4)
+            throw new DataFormatException("esperava " + count * 4 + " bytes, veio " + read);
+
+        bytes.asIntBuffer().get(pixels, 0, count);
+    }
+
+    //buffer cru com pelo menos count pixels
+    private ByteBuffer rawBuffer(int count){
+        if(raw.capacity() < count * 4)
+            raw = ByteBuffer.allocate(count * 4).order(ByteOrder.nativeOrder());
+        raw.clear();
+        return raw;
+    }
+}
@@ -0,0 +1,42 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Reducao pela metade de pixels ARGB, sem Android: cada pixel do destino e a media
+ * dos 2x2 da origem, canal por canal. Os canais vermelho e azul sao somados juntos
+ * num int, e o alpha e o verde em outro, porque a soma de 4 canais cabe nos 16 bits
+ * de cada um. Usado pra montar cada nivel da TilePyramid a partir do de baixo.
+ */
+
+public class TileDownsampler {
+
+    private TileDownsampler(){
+    }
+
+    //escreve em destination (width x height, dstStride inteiros por linha a partir de
+    //dstOffset) a media de cada 2x2 de source, que tem 2 * width x 2 * height pixels
+    //com srcStride inteiros por linha a partir de srcOffset
+    public static void halve(int[] source, int srcOffset, int srcStride,
+                             int[] destination, int dstOffset, int dstStride, int width, int height){
+        if(width < 0 || height < 0 || srcStride < 2 * width || dstStride < width
+                || (height > 0 && source.length < srcOffset + (2 * height - 1) * srcStride + 2 * width)
+                || (height > 0 && destination.length < dstOffset + (height - 1) * dstStride + width))
+            throw new IllegalArgumentException("pixels nao tem " + width + "x" + height);
+
+        for(int y = 0; y < height; y++){
+            int top = srcOffset + 2 * y * srcStride;
+            int bottom = top + srcStride;
+            int out = dstOffset + y * dstStride;
+            for(int x = 0; x < width; x++){
+                int a = source[top + 2 * x];
+                int b = source[top + 2 * x + 1];
+                int c = source[bottom + 2 * x];
+                int d = source[bottom + 2 * x + 1];
+                //+2 arredonda a divisao por 4
+                int redBlue = (a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF) + 0x00020002;
+                int alphaGreen = (a >>> 8 & 0x00FF00FF) + (b >>> 8 & 0x00FF00FF) + (c >>> 8 & 0x00FF00FF)
+                        + (d >>> 8 & 0x00FF00FF) + 0x00020002;
+                destination[out + x] = (alphaGreen >>> 2 & 0x00FF00FF) << 8 | (redBlue >>> 2 & 0x00FF00FF);
+            }
+        }
+    }
+}
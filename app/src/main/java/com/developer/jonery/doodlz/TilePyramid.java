@@ -0,0 +1,198 @@
+package com.developer.jonery.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Mipmaps do desenho ja misturado, pra tela de longe: o nivel 1 tem metade do
+ * tamanho do desenho, o 2 um quarto e assim por diante, cada nivel num TiledCanvas
+ * branco. Cada tile de um nivel e feito dos 4 tiles de baixo dele, reduzidos pela
+ * metade pelo TileDownsampler; no nivel 0 o tile e a mistura de todas as camadas,
+ * pedida pra Source. Pra nao refazer nada que nao mudou, cada tile guarda quais dos
+ * seus 4 quadrantes estao velhos e a versao de cada tile do nivel 0, que vem da
+ * soma das versoes das camadas; so os quadrantes velhos dos tiles desenhados sao
+ * refeitos, na hora de desenhar. Sincroniza no mesmo lock das camadas.
+ */
+
+public class TilePyramid {
+    private static final int TILE_SIZE = TiledCanvas.TILE_SIZE;
+    private static final int HALF = TILE_SIZE / 2;
+
+    //de onde vem os tiles do nivel 0
+    public interface Source {
+        //muda sempre que alguma coisa no tile index do nivel 0 muda
+        int getTileStamp(int index);
+        //desenha no canvas, em (0, 0), o tile index de todas as camadas misturadas
+        void composeTile(int index, Canvas canvas);
+    }
+
+    private final Source source;
+    private final int levels;
+    //de 1 ate levels, o nivel 0 e a propria Source
+    private final TiledCanvas[] canvases;
+    private final int[] columns;
+    private final int[] rows;
+    //por nivel e tile, um bit pra cada quadrante velho: 1 em cima na esquerda, 2 em
+    //cima na direita, 4 embaixo na esquerda e 8 embaixo na direita
+    private final byte[][] stale;
+    private final long[] stamps; //ultima versao vista de cada tile do nivel 0, -1 nao vista
+
+    private Bitmap composed; //um tile do nivel 0 misturado
+    private final Canvas composeCanvas = new Canvas();
+    private final int[] childPixels = new int[TILE_SIZE * TILE_SIZE];
+    private final int[] quadrantPixels = new int[HALF * HALF];
+
+    //piramide com levels niveis em cima de uma grade de columns x rows tiles
+    public TilePyramid(int columns, int rows, int levels, File directory, Object lock, Source source){
+        this.source = source;
+        this.levels = levels;
+        canvases = new TiledCanvas[levels + 1];
+        this.columns = new int[levels + 1];
+        this.rows = new int[levels + 1];
+        stale = new byte[levels + 1][];
+        this.columns[0] = columns;
+        this.rows[0] = rows;
+        for(int level = 1; level <= levels; level++){
+            int levelColumns = (this.columns[level - 1] + 1) / 2;
+            int levelRows = (this.rows[level - 1] + 1) / 2;
+            this.columns[level] = levelColumns;
+            this.rows[level] = levelRows;
+            //cada nivel e bem menor que as camadas, fica todo na memoria
+            canvases[level] = new TiledCanvas(levelColumns * TILE_SIZE, levelRows * TILE_SIZE,
+                    levelColumns * levelRows, new File(directory, "mip" + level), Color.WHITE, lock);
+            stale[level] = new byte[levelColumns * levelRows];
+        }
+        stamps = new long[columns * rows];
+        invalidate();
+    }
+
+    public int getLevels(){
+        return levels;
+    }
+
+    //tudo fica velho, por exemplo quando a visibilidade ou a opacidade de uma camada muda
+    public void invalidate(){
+        for(int level = 1; level <= levels; level++)
+            Arrays.fill(stale[level], (byte) 0xF);
+        Arrays.fill(stamps, -1);
+    }
+
+    //desenha o nivel level (de 1 ate getLevels) na parte clip, em coordenadas do
+    //desenho, de um canvas que ja esta na escala do desenho; os quadrantes velhos dos
+    //tiles que aparecem sao refeitos antes
+    public void draw(Canvas canvas, Rect clip, int level, Paint paint){
+        int span = 1 << level; //tiles do nivel 0 em cada lado de um tile do nivel
+        int size = TILE_SIZE * span;
+        int firstColumn = Math.max(0, clip.left / size);
+        int lastColumn = Math.min(columns[level] - 1, (clip.right - 1) / size);
+        int firstRow = Math.max(0, clip.top / size);
+        int lastRow = Math.min(rows[level] - 1, (clip.bottom - 1) / size);
+        if(firstColumn > lastColumn || firstRow > lastRow)
+            return;
+
+        //os tiles do nivel 0 que mudaram deixam velhos os quadrantes de cima deles
+        checkStamps(firstColumn * span, firstRow * span, Math.min(columns[0] - 1, (lastColumn + 1) * span - 1),
+                Math.min(rows[0] - 1, (lastRow + 1) * span - 1));
+
+        TiledCanvas levelCanvas = canvases[level];
+        canvas.save();
+        canvas.scale(span, span);
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int index = row * columns[level] + column;
+                if(stale[level][index] != 0)
+                    refresh(level, column, row);
+                Bitmap tile = levelCanvas.getTile(index);
+                if(tile != null)
+                    canvas.drawBitmap(tile, column * TILE_SIZE, row * TILE_SIZE, paint);
+            }
+        canvas.restore();
+    }
+
+    //compara a versao dos tiles do nivel 0 no retangulo (inclusivo) com a ultima vista
+    private void checkStamps(int firstColumn, int firstRow, int lastColumn, int lastRow){
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int index = row * columns[0] + column;
+                int stamp = source.getTileStamp(index);
+                if(stamps[index] != stamp){
+                    stamps[index] = stamp;
+                    markChanged(column, row);
+                }
+            }
+    }
+
+    //o tile (column, row) do nivel 0 mudou: marca o quadrante dele em cada nivel
+    private void markChanged(int column, int row){
+        for(int level = 1; level <= levels; level++){
+            int quadrant = (column >> (level - 1) & 1) | (row >> (level - 1) & 1) << 1;
+            stale[level][(row >> level) * columns[level] + (column >> level)] |= 1 << quadrant;
+        }
+    }
+
+    //refaz os quadrantes velhos do tile (column, row) do nivel level
+    private void refresh(int level, int column, int row){
+        int index = row * columns[level] + column;
+        int quadrants = stale[level][index];
+        stale[level][index] = 0;
+        for(int quadrant = 0; quadrant < 4; quadrant++){
+            if((quadrants & 1 << quadrant) == 0)
+                continue;
+
+            int childColumn = 2 * column + (quadrant & 1);
+            int childRow = 2 * row + (quadrant >> 1);
+            if(childColumn >= columns[level - 1] || childRow >= rows[level - 1])
+                //fora do desenho, o nivel de baixo tem numero impar de tiles
+                Arrays.fill(quadrantPixels, Color.WHITE);
+            else {
+                readChild(level - 1, childColumn, childRow);
+                TileDownsampler.halve(childPixels, 0, TILE_SIZE, quadrantPixels, 0, HALF, HALF, HALF);
+            }
+            canvases[level].writePixels(quadrantPixels, 0, HALF, column * TILE_SIZE + (quadrant & 1) * HALF,
+                    row * TILE_SIZE + (quadrant >> 1) * HALF, HALF, HALF);
+        }
+    }
+
+    //poe em childPixels o tile (column, row) do nivel level, atualizado
+    private void readChild(int level, int column, int row){
+        if(level == 0){
+            if(composed == null)
+                composed = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+            composeCanvas.setBitmap(composed);
+            source.composeTile(row * columns[0] + column, composeCanvas);
+            composeCanvas.setBitmap(null);
+            composed.getPixels(childPixels, 0, TILE_SIZE, 0, 0, TILE_SIZE, TILE_SIZE);
+            return;
+        }
+
+        //o filho refaz os quadrantes dele antes, o que usa os mesmos arrays
+        if(stale[level][row * columns[level] + column] != 0)
+            refresh(level, column, row);
+        canvases[level].readPixels(childPixels, 0, TILE_SIZE, column * TILE_SIZE, row * TILE_SIZE,
+                TILE_SIZE, TILE_SIZE);
+    }
+
+    //bytes de pixels na memoria
+    public long getResidentBytes(){
+        long bytes = composed != null ? 4L * TILE_SIZE * TILE_SIZE : 0;
+        for(int level = 1; level <= levels; level++)
+            bytes += canvases[level].getResidentBytes();
+        return bytes;
+    }
+
+    //libera a memoria e os arquivos, nao deve ser usado depois
+    public void recycle(){
+        for(int level = 1; level <= levels; level++)
+            canvases[level].recycle();
+        if(composed != null){
+            composed.recycle();
+            composed = null;
+        }
+    }
+}
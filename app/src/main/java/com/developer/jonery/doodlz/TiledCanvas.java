@@ -0,0 +1,753 @@
+package com.developer.jonery.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Area de desenho dividida numa grade de tiles de TILE_SIZE pixels. Um tile so e
+ * alocado quando algo e desenhado nele, tile em branco nao ocupa memoria. Quando
+ * passa do limite de tiles na memoria, o usado ha mais tempo vai pro disco
+ * (armazenamento privado do app) e volta quando for preciso de novo. Tile em
+ * branco tem a cor de fundo, que e transparente nas camadas do LayerStack. Os
+ * snapshots nao leem os tiles que estao no disco: ficam com um link pro arquivo, que
+ * so e lido por quem usar a foto.
+ */
+
+public class TiledCanvas {
+    private static final String TAG = "TiledCanvas";
+
+    public static final int TILE_SIZE = 256;
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    //quantos bitmaps de tiles descartados ficam guardados pra reusar
+    private static final int POOL_SIZE = 4;
+    //subpasta dos links que os snapshots fazem pros arquivos dos tiles
+    private static final String SNAPSHOT_DIRECTORY = "snapshot";
+
+    private final File spillDirectory; //onde os tiles frios sao gravados
+    private final int backgroundColor;
+    private final Object lock; //quem usa em mais de uma thread sincroniza nele
+    private int width;
+    private int height;
+    private int columns;
+    private int rows;
+
+    private Bitmap[] tiles; //null se o tile esta em branco ou no disco
+    private boolean[] spilled; //tile gravado no disco
+    private long[] lastUse; //pra achar o tile usado ha mais tempo
+    //quantos snapshots ainda usam o bitmap do tile, ele e copiado antes de ser alterado
+    private int[] shareCount;
+    //quantas vezes cada tile mudou, pra quem guarda algo feito a partir dele
+    private int[] versions;
+    private long useClock;
+    private int residentTiles;
+    private int maxResidentTiles;
+
+    private final ArrayDeque<Bitmap> pool = new ArrayDeque<>(); //bitmaps pra reusar
+    private final Canvas tileCanvas = new Canvas(); //desenha em um tile por vez
+    private final Rect clip = new Rect(); //limite dos desenhos, se clipped
+    private boolean clipped;
+    private ByteBuffer ioBuffer; //usado pra gravar e ler tiles do disco
+    private int linkCount; //pra dar um nome novo a cada link
+
+    public TiledCanvas(int width, int height, int maxResidentTiles, File spillDirectory){
+        this(width, height, maxResidentTiles, spillDirectory, Color.WHITE, null);
+    }
+
+    //lock null usa o proprio TiledCanvas; varios canvas podem dividir o mesmo lock
+    public TiledCanvas(int width, int height, int maxResidentTiles, File spillDirectory,
+                       int backgroundColor, Object lock){
+        this.spillDirectory = spillDirectory;
+        this.maxResidentTiles = Math.max(1, maxResidentTiles);
+        this.backgroundColor = backgroundColor;
+        this.lock = lock != null ? lock : this;
+
+        this.width = width;
+        this.height = height;
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new Bitmap[columns * rows];
+        spilled = new boolean[columns * rows];
+        lastUse = new long[columns * rows];
+        shareCount = new int[columns * rows];
+        versions = new int[columns * rows];
+
+        //arquivos de uma sessao anterior nao valem mais
+        deleteFiles(new File(spillDirectory, SNAPSHOT_DIRECTORY));
+        deleteSpillFiles();
+    }
+
+    //quantos tiles cabem na memoria usando no maximo a fracao do heap
+    public static int tilesForHeapFraction(float fraction){
+        return (int) (Runtime.getRuntime().maxMemory() * fraction / TILE_BYTES);
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getColumns(){
+        return columns;
+    }
+
+    public int getRows(){
+        return rows;
+    }
+
+    public int getBackgroundColor(){
+        return backgroundColor;
+    }
+
+    public Object getLock(){
+        return lock;
+    }
+
+    //aumenta a area de desenho mantendo os tiles que ja existem no mesmo lugar
+    public void ensureSize(int newWidth, int newHeight){
+        if(newWidth <= width && newHeight <= height)
+            return;
+
+        int newColumns = (Math.max(width, newWidth) + TILE_SIZE - 1) / TILE_SIZE;
+        int newRows = (Math.max(height, newHeight) + TILE_SIZE - 1) / TILE_SIZE;
+        Bitmap[] newTiles = new Bitmap[newColumns * newRows];
+        boolean[] newSpilled = new boolean[newColumns * newRows];
+        long[] newLastUse = new long[newColumns * newRows];
+        int[] newShareCount = new int[newColumns * newRows];
+        int[] newVersions = new int[newColumns * newRows];
+
+        for(int row = 0; row < rows; row++)
+            for(int column = 0; column < columns; column++){
+                int from = row * columns + column;
+                int to = row * newColumns + column;
+                newTiles[to] = tiles[from];
+                newSpilled[to] = spilled[from];
+                newLastUse[to] = lastUse[from];
+                newShareCount[to] = shareCount[from];
+                newVersions[to] = versions[from];
+            }
+
+        width = Math.max(width, newWidth);
+        height = Math.max(height, newHeight);
+        columns = newColumns;
+        rows = newRows;
+        tiles = newTiles;
+        spilled = newSpilled;
+        lastUse = newLastUse;
+        shareCount = newShareCount;
+        versions = newVersions;
+    }
+
+    //os proximos drawPath e drawBitmap so mudam os pixels dentro de rect (em coordenadas
+    //do canvas); null tira o limite
+    public void setClip(Rect rect){
+        clipped = rect != null;
+        if(clipped)
+            clip.set(rect);
+    }
+
+    //desenha o path em todos os tiles que o retangulo (em coordenadas do canvas) cobre
+    public void drawPath(Path path, Paint paint, float left, float top, float right, float bottom){
+        int firstColumn = Math.max(0, (int) Math.floor(left / TILE_SIZE));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor(right / TILE_SIZE));
+        int firstRow = Math.max(0, (int) Math.floor(top / TILE_SIZE));
+        int lastRow = Math.min(rows - 1, (int) Math.floor(bottom / TILE_SIZE));
+        if(clipped){
+            firstColumn = Math.max(firstColumn, clip.left / TILE_SIZE);
+            lastColumn = Math.min(lastColumn, (clip.right - 1) / TILE_SIZE);
+            firstRow = Math.max(firstRow, clip.top / TILE_SIZE);
+            lastRow = Math.min(lastRow, (clip.bottom - 1) / TILE_SIZE);
+        }
+
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                tileCanvas.setBitmap(tileForWriting(row * columns + column));
+                tileCanvas.save();
+                tileCanvas.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+                if(clipped)
+                    tileCanvas.clipRect(clip);
+                tileCanvas.drawPath(path, paint);
+                tileCanvas.restore();
+            }
+        tileCanvas.setBitmap(null);
+    }
+
+    //desenha a parte source do bitmap no retangulo destination (em coordenadas do
+    //canvas), em todos os tiles que ele cobre
+    public void drawBitmap(Bitmap bitmap, Rect source, Rect destination, Paint paint){
+        int firstColumn = Math.max(0, destination.left / TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (destination.right - 1) / TILE_SIZE);
+        int firstRow = Math.max(0, destination.top / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (destination.bottom - 1) / TILE_SIZE);
+        if(clipped){
+            firstColumn = Math.max(firstColumn, clip.left / TILE_SIZE);
+            lastColumn = Math.min(lastColumn, (clip.right - 1) / TILE_SIZE);
+            firstRow = Math.max(firstRow, clip.top / TILE_SIZE);
+            lastRow = Math.min(lastRow, (clip.bottom - 1) / TILE_SIZE);
+        }
+
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                tileCanvas.setBitmap(tileForWriting(row * columns + column));
+                tileCanvas.save();
+                tileCanvas.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+                if(clipped)
+                    tileCanvas.clipRect(clip);
+                tileCanvas.drawBitmap(bitmap, source, destination, paint);
+                tileCanvas.restore();
+            }
+        tileCanvas.setBitmap(null);
+    }
+
+    //volta o retangulo (em coordenadas do canvas) pra cor de fundo; os tiles que ficam
+    //inteiros dentro dele sao liberados
+    public void clearRect(Rect rect){
+        int firstColumn = Math.max(0, rect.left / TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (rect.right - 1) / TILE_SIZE);
+        int firstRow = Math.max(0, rect.top / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (rect.bottom - 1) / TILE_SIZE);
+
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int index = row * columns + column;
+                int x = column * TILE_SIZE;
+                int y = row * TILE_SIZE;
+                if(rect.left <= x && rect.top <= y && rect.right >= x + TILE_SIZE && rect.bottom >= y + TILE_SIZE)
+                    clearTile(index);
+                else if(tiles[index] != null || spilled[index]){
+                    tileCanvas.setBitmap(tileForWriting(index));
+                    tileCanvas.save();
+                    tileCanvas.translate(-x, -y);
+                    tileCanvas.clipRect(rect);
+                    tileCanvas.drawColor(backgroundColor, PorterDuff.Mode.SRC);
+                    tileCanvas.restore();
+                }
+            }
+        tileCanvas.setBitmap(null);
+    }
+
+    //desenha os tiles que cruzam clip no canvas da tela, tiles em branco viram so a cor
+    //de fundo, ou nada se backgroundPaint e null
+    public void draw(Canvas canvas, Rect clip, Paint paint, Paint backgroundPaint){
+        int firstColumn = Math.max(0, clip.left / TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (clip.right - 1) / TILE_SIZE);
+        int firstRow = Math.max(0, clip.top / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (clip.bottom - 1) / TILE_SIZE);
+
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int x = column * TILE_SIZE;
+                int y = row * TILE_SIZE;
+                Bitmap tile = tileForReading(row * columns + column);
+                if(tile != null)
+                    canvas.drawBitmap(tile, x, y, paint);
+                else if(backgroundPaint != null)
+                    canvas.drawRect(x, y, x + TILE_SIZE, y + TILE_SIZE, backgroundPaint);
+            }
+    }
+
+    //copia pixels de um retangulo que fica dentro de um tile so
+    public void getPixels(int[] pixels, int offset, int x, int y, int w, int h){
+        Bitmap tile = tileForReading(tileIndexAt(x, y));
+        if(tile == null){
+            //tile em branco
+            for(int line = 0; line < h; line++)
+                java.util.Arrays.fill(pixels, offset + line * w, offset + line * w + w, backgroundColor);
+            return;
+        }
+        tile.getPixels(pixels, offset, w, x % TILE_SIZE, y % TILE_SIZE, w, h);
+    }
+
+    //escreve pixels num retangulo que fica dentro de um tile so
+    public void setPixels(int[] pixels, int offset, int x, int y, int w, int h){
+        Bitmap tile = tileForWriting(tileIndexAt(x, y));
+        tile.setPixels(pixels, offset, w, x % TILE_SIZE, y % TILE_SIZE, w, h);
+    }
+
+    //copia os pixels do retangulo (x, y, w, h), que pode cruzar varios tiles, pra
+    //pixels[offset] com stride inteiros por linha; tiles em branco viram a cor de fundo
+    public void readPixels(int[] pixels, int offset, int stride, int x, int y, int w, int h){
+        int firstColumn = x / TILE_SIZE, lastColumn = (x + w - 1) / TILE_SIZE;
+        int firstRow = y / TILE_SIZE, lastRow = (y + h - 1) / TILE_SIZE;
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int left = Math.max(x, column * TILE_SIZE), right = Math.min(x + w, (column + 1) * TILE_SIZE);
+                int top = Math.max(y, row * TILE_SIZE), bottom = Math.min(y + h, (row + 1) * TILE_SIZE);
+                copyTile(tileForReading(row * columns + column), backgroundColor, pixels,
+                        offset + (top - y) * stride + left - x, stride, left, top, right - left, bottom - top);
+            }
+    }
+
+    //escreve pixels no retangulo (x, y, w, h), que pode cruzar varios tiles, lendo de
+    //pixels[offset] com stride inteiros por linha
+    public void writePixels(int[] pixels, int offset, int stride, int x, int y, int w, int h){
+        int firstColumn = x / TILE_SIZE, lastColumn = (x + w - 1) / TILE_SIZE;
+        int firstRow = y / TILE_SIZE, lastRow = (y + h - 1) / TILE_SIZE;
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int left = Math.max(x, column * TILE_SIZE), right = Math.min(x + w, (column + 1) * TILE_SIZE);
+                int top = Math.max(y, row * TILE_SIZE), bottom = Math.min(y + h, (row + 1) * TILE_SIZE);
+                tileForWriting(row * columns + column).setPixels(pixels, offset + (top - y) * stride + left - x,
+                        stride, left % TILE_SIZE, top % TILE_SIZE, right - left, bottom - top);
+            }
+    }
+
+    //copia o pedaco (x, y, w, h) do tile, em coordenadas do canvas, ou a cor de fundo
+    //se o tile esta em branco
+    private static void copyTile(Bitmap tile, int background, int[] pixels, int offset, int stride,
+                                 int x, int y, int w, int h){
+        if(tile == null){
+            for(int line = 0; line < h; line++)
+                java.util.Arrays.fill(pixels, offset + line * stride, offset + line * stride + w, background);
+            return;
+        }
+        tile.getPixels(pixels, offset, stride, x % TILE_SIZE, y % TILE_SIZE, w, h);
+    }
+
+    //tira uma foto da area (x, y, w, h) sem copiar pixels: o snapshot guarda os bitmaps
+    //dos tiles e quem desenhar num deles depois desenha numa copia. Os tiles dessa area
+    //que estao no disco nao sao lidos agora, o snapshot guarda um link pro arquivo e le
+    //na thread que usar a foto; nada e carregado e o limite de tiles na memoria continua
+    //valendo. Quem usa o TiledCanvas em mais de uma thread sincroniza no getLock(), e o
+    //release() tambem
+    public Snapshot snapshot(int x, int y, int w, int h){
+        int firstColumn = Math.max(0, x / TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (x + w - 1) / TILE_SIZE);
+        int firstRow = Math.max(0, y / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (y + h - 1) / TILE_SIZE);
+
+        Snapshot snapshot = new Snapshot(x, y, w, h, firstColumn, firstRow,
+                lastColumn - firstColumn + 1, lastRow - firstRow + 1);
+        for(int row = firstRow; row <= lastRow; row++)
+            for(int column = firstColumn; column <= lastColumn; column++){
+                int index = row * columns + column;
+                int i = (row - firstRow) * snapshot.columnCount + column - firstColumn;
+                if(tiles[index] == null && spilled[index]){
+                    snapshot.files[i] = linkSpillFile(index);
+                    if(snapshot.files[i] != null)
+                        continue;
+                    //sem o link, o tile e lido agora mesmo
+                }
+                Bitmap tile = tileForReading(index);
+                if(tile != null)
+                    shareCount[index]++;
+                snapshot.tiles[i] = tile;
+            }
+        return snapshot;
+    }
+
+    //cria outro nome pro arquivo do tile index, que continua com os pixels de agora
+    //mesmo que o tile volte pra memoria ou seja apagado; null se nao deu
+    private File linkSpillFile(int index){
+        File directory = new File(spillDirectory, SNAPSHOT_DIRECTORY);
+        directory.mkdirs();
+        File link = new File(directory, "tile_" + index % columns + "_" + index / columns + "_" + ++linkCount);
+        try {
+            Os.link(spillFile(index).getPath(), link.getPath());
+            return link;
+        } catch (ErrnoException e) {
+            Log.w(TAG, "nao deu pra fazer o link do tile " + index, e);
+            return null;
+        }
+    }
+
+    //foto da area de desenho que pode ser desenhada em outra thread
+    public class Snapshot {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int firstColumn;
+        private final int firstRow;
+        private final int columnCount;
+        private final Bitmap[] tiles; //null nos tiles em branco ou no disco
+        private final File[] files; //link pro arquivo dos tiles que estavam no disco
+        private Bitmap fileTile; //tile lido de um dos files
+        private ByteBuffer fileBuffer;
+        private boolean released;
+
+        private Snapshot(int x, int y, int width, int height,
+                         int firstColumn, int firstRow, int columnCount, int rowCount){
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.firstColumn = firstColumn;
+            this.firstRow = firstRow;
+            this.columnCount = columnCount;
+            tiles = new Bitmap[columnCount * rowCount];
+            files = new File[columnCount * rowCount];
+        }
+
+        public int getWidth(){
+            return width;
+        }
+
+        public int getHeight(){
+            return height;
+        }
+
+        //desenha a foto no destino, que precisa ter width x height; pode rodar em qualquer thread
+        public void render(Bitmap destination){
+            Canvas canvas = new Canvas(destination);
+            destination.eraseColor(backgroundColor);
+            render(canvas, null);
+        }
+
+        //desenha os tiles que nao estao em branco por cima do que ja esta em canvas,
+        //com o canto da foto em 0, 0
+        public void render(Canvas canvas, Paint paint){
+            for(int i = 0; i < tiles.length; i++){
+                Bitmap tile = getTile(i);
+                if(tile != null)
+                    canvas.drawBitmap(tile,
+                            (firstColumn + i % columnCount) * TILE_SIZE - x,
+                            (firstRow + i / columnCount) * TILE_SIZE - y, paint);
+            }
+        }
+
+        //copia os pixels da foto pra pixels[offset] com stride inteiros por linha, igual
+        //ao readPixels do TiledCanvas; pode rodar em qualquer thread
+        public void getPixels(int[] pixels, int offset, int stride){
+            for(int i = 0; i < tiles.length; i++){
+                int column = firstColumn + i % columnCount, row = firstRow + i / columnCount;
+                int left = Math.max(x, column * TILE_SIZE), right = Math.min(x + width, (column + 1) * TILE_SIZE);
+                int top = Math.max(y, row * TILE_SIZE), bottom = Math.min(y + height, (row + 1) * TILE_SIZE);
+                if(left < right && top < bottom)
+                    copyTile(getTile(i), backgroundColor, pixels, offset + (top - y) * stride + left - x, stride,
+                            left, top, right - left, bottom - top);
+            }
+        }
+
+        //quantidade de tiles da foto, contando os em branco
+        public int getTileCount(){
+            return tiles.length;
+        }
+
+        public boolean isBlank(int i){
+            return tiles[i] == null && files[i] == null;
+        }
+
+        //bitmap do tile i, null se esta em branco; so pode ser lido. Se o tile estava
+        //no disco ele e lido agora num bitmap da foto, que so vale ate a proxima leitura
+        public Bitmap getTile(int i){
+            if(tiles[i] != null || files[i] == null)
+                return tiles[i];
+
+            if(fileTile == null){
+                fileTile = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+                fileBuffer = ByteBuffer.allocateDirect(TILE_BYTES);
+            }
+            fileBuffer.clear();
+            try {
+                readFile(files[i], fileBuffer);
+            } catch (IOException e) {
+                Log.e(TAG, "nao deu pra ler o tile " + i + " da foto", e);
+                return null;
+            }
+            fileBuffer.flip();
+            fileTile.copyPixelsFromBuffer(fileBuffer);
+            return fileTile;
+        }
+
+        public int getTileColumn(int i){
+            return firstColumn + i % columnCount;
+        }
+
+        public int getTileRow(int i){
+            return firstRow + i / columnCount;
+        }
+
+        //cria um bitmap com a foto
+        public Bitmap render(){
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            render(bitmap);
+            return bitmap;
+        }
+
+        //devolve os tiles, sincronizado no TiledCanvas pra poder ser chamado em qualquer thread
+        public void release(){
+            synchronized (lock){
+                if(released)
+                    return;
+                released = true;
+
+                for(int i = 0; i < tiles.length; i++){
+                    if(tiles[i] == null)
+                        continue;
+                    int index = (firstRow + i / columnCount) * columns + firstColumn + i % columnCount;
+                    //se o tile ja foi copiado ou foi pro disco, o bitmap da foto so fica pro GC
+                    if(TiledCanvas.this.tiles[index] == tiles[i] && shareCount[index] > 0)
+                        shareCount[index]--;
+                    tiles[i] = null;
+                }
+                for(int i = 0; i < files.length; i++)
+                    if(files[i] != null){
+                        files[i].delete();
+                        files[i] = null;
+                    }
+                if(fileTile != null){
+                    fileTile.recycle();
+                    fileTile = null;
+                }
+            }
+        }
+    }
+
+    //volta tudo pra branco, liberando os tiles
+    public void clear(){
+        for(int i = 0; i < tiles.length; i++){
+            if(tiles[i] != null && shareCount[i] == 0)
+                release(tiles[i]);
+            tiles[i] = null;
+            spilled[i] = false;
+            shareCount[i] = 0;
+            versions[i]++;
+        }
+        residentTiles = 0;
+        deleteSpillFiles();
+    }
+
+    //libera a memoria e os arquivos, o canvas nao deve ser usado depois
+    public void recycle(){
+        clear();
+        for(Bitmap bitmap : pool)
+            bitmap.recycle();
+        pool.clear();
+    }
+
+    public int getResidentTileCount(){
+        return residentTiles;
+    }
+
+    public int getSpilledTileCount(){
+        int count = 0;
+        for(boolean tileSpilled : spilled)
+            if(tileSpilled)
+                count++;
+        return count;
+    }
+
+    //bytes de pixels na memoria
+    public long getResidentBytes(){
+        return (long) (residentTiles + pool.size()) * TILE_BYTES;
+    }
+
+    public void setMaxResidentTiles(int maxTiles){
+        maxResidentTiles = Math.max(1, maxTiles);
+        while(residentTiles > maxResidentTiles)
+            spillColdest(-1);
+    }
+
+    //index do tile que contem o pixel
+    public int tileIndexAt(int x, int y){
+        return (y / TILE_SIZE) * columns + x / TILE_SIZE;
+    }
+
+    //bitmap do tile index (linha * colunas + coluna) so pra ler, null se esta em branco
+    public Bitmap getTile(int index){
+        return tileForReading(index);
+    }
+
+    //bitmap do tile index pra desenhar direto, alocado se estava em branco
+    public Bitmap editTile(int index){
+        return tileForWriting(index);
+    }
+
+    //muda cada vez que o tile index pode ter mudado: quando e pedido pra desenhar,
+    //escrever pixels ou limpar
+    public int getTileVersion(int index){
+        return versions[index];
+    }
+
+    //volta o tile index pra branco, liberando a memoria ou o arquivo dele
+    public void clearTile(int index){
+        versions[index]++;
+        if(tiles[index] != null){
+            if(shareCount[index] == 0)
+                release(tiles[index]);
+            tiles[index] = null;
+            residentTiles--;
+        }
+        if(spilled[index])
+            spillFile(index).delete();
+        spilled[index] = false;
+        shareCount[index] = 0;
+    }
+
+    //tile pra ler, null se esta em branco
+    private Bitmap tileForReading(int index){
+        if(tiles[index] == null && spilled[index])
+            load(index);
+        if(tiles[index] != null)
+            lastUse[index] = ++useClock;
+        return tiles[index];
+    }
+
+    //tile pra desenhar, aloca se ainda estava em branco
+    private Bitmap tileForWriting(int index){
+        versions[index]++;
+        Bitmap tile = tileForReading(index);
+        if(tile != null && shareCount[index] > 0){
+            //um snapshot ainda usa esse bitmap, entao desenha numa copia
+            Bitmap copy = obtain();
+            tileCanvas.setBitmap(copy);
+            copy.eraseColor(Color.TRANSPARENT);
+            tileCanvas.drawBitmap(tile, 0, 0, null);
+            tileCanvas.setBitmap(null);
+            tiles[index] = copy;
+            shareCount[index] = 0;
+            tile = copy;
+        }
+        else if(tile == null){
+            tile = obtain();
+            tile.eraseColor(backgroundColor);
+            makeResident(index, tile);
+        }
+        return tile;
+    }
+
+    private void makeResident(int index, Bitmap tile){
+        //abre espaco antes, mandando o tile mais frio pro disco
+        while(residentTiles >= maxResidentTiles)
+            spillColdest(index);
+
+        tiles[index] = tile;
+        lastUse[index] = ++useClock;
+        residentTiles++;
+    }
+
+    //grava no disco o tile usado ha mais tempo, menos o keep
+    private void spillColdest(int keep){
+        int coldest = -1;
+        for(int i = 0; i < tiles.length; i++)
+            if(tiles[i] != null && i != keep && (coldest < 0 || lastUse[i] < lastUse[coldest]))
+                coldest = i;
+        if(coldest < 0){
+            //so sobrou o tile que esta sendo usado
+            maxResidentTiles = residentTiles + 1;
+            return;
+        }
+
+        Bitmap tile = tiles[coldest];
+        try {
+            write(coldest, tile);
+            spilled[coldest] = true;
+        } catch (IOException e) {
+            //sem disco, o tile fica na memoria mesmo
+            Log.e(TAG, "nao deu pra gravar o tile " + coldest, e);
+            lastUse[coldest] = ++useClock;
+            maxResidentTiles = residentTiles + 1;
+            return;
+        }
+        tiles[coldest] = null;
+        residentTiles--;
+        //bitmap usado por um snapshot nao pode ser reusado
+        if(shareCount[coldest] == 0)
+            release(tile);
+        shareCount[coldest] = 0;
+    }
+
+    private void write(int index, Bitmap tile) throws IOException {
+        ByteBuffer buffer = ioBuffer();
+        tile.copyPixelsToBuffer(buffer);
+        buffer.flip();
+
+        spillDirectory.mkdirs();
+        //arquivo novo, e nao o mesmo sobrescrito, porque um snapshot pode ter um link
+        //pro arquivo antigo
+        spillFile(index).delete();
+        FileChannel channel = new FileOutputStream(spillFile(index)).getChannel();
+        try {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void load(int index){
+        ByteBuffer buffer = ioBuffer();
+        try {
+            readFile(spillFile(index), buffer);
+        } catch (IOException e) {
+            //perdeu o arquivo, o tile volta em branco
+            Log.e(TAG, "nao deu pra ler o tile " + index, e);
+            spilled[index] = false;
+            return;
+        }
+
+        buffer.flip();
+        Bitmap tile = obtain();
+        tile.copyPixelsFromBuffer(buffer);
+        spilled[index] = false;
+        spillFile(index).delete();
+        makeResident(index, tile);
+    }
+
+    private static void readFile(File file, ByteBuffer buffer) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                //le ate encher o buffer
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    //o nome usa coluna e linha pra continuar valendo depois do ensureSize
+    private File spillFile(int index){
+        return new File(spillDirectory, "tile_" + index % columns + "_" + index / columns);
+    }
+
+    private ByteBuffer ioBuffer(){
+        if(ioBuffer == null)
+            ioBuffer = ByteBuffer.allocateDirect(TILE_BYTES);
+        ioBuffer.clear();
+        return ioBuffer;
+    }
+
+    private Bitmap obtain(){
+        Bitmap tile = pool.poll();
+        return tile != null ? tile : Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    private void release(Bitmap tile){
+        if(pool.size() < POOL_SIZE)
+            pool.push(tile);
+        else
+            tile.recycle();
+    }
+
+    //os links dos snapshots ficam numa subpasta, que nao e apagada aqui
+    private void deleteSpillFiles(){
+        deleteFiles(spillDirectory);
+    }
+
+    private static void deleteFiles(File directory){
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                if(file.isFile())
+                    file.delete();
+    }
+}
@@ -0,0 +1,90 @@
+package com.developer.jonery.doodlz;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fila sem lock de eventos de toque, com um unico produtor (a thread de UI) e um
+ * unico consumidor (a thread de render). Os eventos ficam em arrays primitivos
+ * num anel de tamanho potencia de 2, entao nada e alocado por evento. Cada lado so
+ * escreve o seu indice, e o lazySet publica os dados do evento antes do indice.
+ */
+
+public class TouchEventQueue {
+    //tipos de evento
+    public static final int DOWN = 0;
+    public static final int MOVE = 1;
+    public static final int UP = 2;
+    public static final int CANCEL = 3; //o traco do pointer some sem ir pro documento
+
+    //recebe os eventos na thread que consome a fila
+    public interface Consumer {
+        void onTouchEvent(int type, int pointerId, float x, float y, long time);
+    }
+
+    private final int mask;
+    private final int[] types;
+    private final int[] pointerIds;
+    private final float[] xs;
+    private final float[] ys;
+    private final long[] times;
+
+    private final AtomicLong head = new AtomicLong(); //proximo a ler, so o consumidor escreve
+    private final AtomicLong tail = new AtomicLong(); //proximo a escrever, so o produtor escreve
+    private long cachedHead; //ultima leitura do head pelo produtor, evita ler o atomic sempre
+
+    //capacity e arredondado pra proxima potencia de 2
+    public TouchEventQueue(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        types = new int[size];
+        pointerIds = new int[size];
+        xs = new float[size];
+        ys = new float[size];
+        times = new long[size];
+    }
+
+    public int getCapacity(){
+        return mask + 1;
+    }
+
+    //coloca um evento na fila, retorna false se ela esta cheia. So o produtor chama
+    public boolean offer(int type, int pointerId, float x, float y, long time){
+        long t = tail.get();
+        if(t - cachedHead > mask){
+            cachedHead = head.get();
+            if(t - cachedHead > mask)
+                return false;
+        }
+
+        int i = (int) t & mask;
+        types[i] = type;
+        pointerIds[i] = pointerId;
+        xs[i] = x;
+        ys[i] = y;
+        times[i] = time;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    //entrega todos os eventos que estao na fila, em ordem, e retorna quantos foram.
+    //So o consumidor chama
+    public int drain(Consumer consumer){
+        long h = head.get();
+        long t = tail.get();
+        for(long n = h; n < t; n++){
+            int i = (int) n & mask;
+            consumer.onTouchEvent(types[i], pointerIds[i], xs[i], ys[i], times[i]);
+        }
+        //so libera os lugares depois de ler
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    public boolean isEmpty(){
+        return head.get() == tail.get();
+    }
+
+    public int size(){
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,151 @@
+package com.developer.jonery.doodlz;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pilhas de undo e redo com um limite de bytes. Cada entrada guarda, comprimidos,
+ * so os pixels dos tiles que um traco mudou; a da borracha guarda tambem os tracos
+ * apagados, pra voltarem pro documento. Quando passa do limite as entradas
+ * de undo mais antigas sao descartadas primeiro.
+ */
+
+public class UndoHistory {
+    //tiles de um traco: camada, numero de cada tile (linha * colunas + coluna) e os
+    //pixels comprimidos. Na borracha, os numeros que os tracos apagados tinham, em
+    //ordem crescente, e os tracos
+    public static class Entry {
+        private final int layer;
+        private final int[] tiles;
+        private final byte[] pixels;
+        private final int[] erased;
+        private final StrokeDocument erasedStrokes;
+
+        public Entry(int layer, int[] tiles, byte[] pixels){
+            this(layer, tiles, pixels, null, null);
+        }
+
+        public Entry(int layer, int[] tiles, byte[] pixels, int[] erased, StrokeDocument erasedStrokes){
+            this.layer = layer;
+            this.tiles = tiles;
+            this.pixels = pixels;
+            this.erased = erased;
+            this.erasedStrokes = erasedStrokes;
+        }
+
+        public int getLayer(){
+            return layer;
+        }
+
+        public int[] getTiles(){
+            return tiles;
+        }
+
+        public byte[] getPixels(){
+            return pixels;
+        }
+
+        //se a entrada e de tracos apagados pela borracha
+        public boolean isErase(){
+            return erased != null;
+        }
+
+        public int[] getErased(){
+            return erased;
+        }
+
+        public StrokeDocument getErasedStrokes(){
+            return erasedStrokes;
+        }
+
+        //a mesma entrada com outros pixels nos mesmos tiles, pro undo virar redo
+        public Entry withPixels(byte[] pixels){
+            return new Entry(layer, tiles, pixels, erased, erasedStrokes);
+        }
+
+        //memoria usada pela entrada
+        public long getBytes(){
+            long bytes = 4L * tiles.length + pixels.length;
+            if(erased != null)
+                bytes += 4L * erased.length + erasedStrokes.getMemoryBytes();
+            return bytes;
+        }
+    }
+
+    private final ArrayDeque<Entry> undoStack = new ArrayDeque<>(); //a mais nova fica no fim
+    private final ArrayDeque<Entry> redoStack = new ArrayDeque<>();
+    private long budgetBytes;
+    private long usedBytes;
+
+    public UndoHistory(long budgetBytes){
+        this.budgetBytes = budgetBytes;
+    }
+
+    //adiciona o undo de uma nova alteracao, o que invalida o redo
+    public void push(Entry entry){
+        while(!redoStack.isEmpty())
+            usedBytes -= redoStack.removeLast().getBytes();
+        pushUndo(entry);
+    }
+
+    //adiciona uma entrada de undo sem mexer no redo (usado pelo redo)
+    public void pushUndo(Entry entry){
+        undoStack.addLast(entry);
+        usedBytes += entry.getBytes();
+        trim();
+    }
+
+    public void pushRedo(Entry entry){
+        redoStack.addLast(entry);
+        usedBytes += entry.getBytes();
+        trim();
+    }
+
+    //retorna e remove a ultima entrada de undo, ou null
+    public Entry popUndo(){
+        Entry entry = undoStack.pollLast();
+        if(entry != null)
+            usedBytes -= entry.getBytes();
+        return entry;
+    }
+
+    //retorna e remove a ultima entrada de redo, ou null
+    public Entry popRedo(){
+        Entry entry = redoStack.pollLast();
+        if(entry != null)
+            usedBytes -= entry.getBytes();
+        return entry;
+    }
+
+    public boolean canUndo(){
+        return !undoStack.isEmpty();
+    }
+
+    public boolean canRedo(){
+        return !redoStack.isEmpty();
+    }
+
+    public void clear(){
+        undoStack.clear();
+        redoStack.clear();
+        usedBytes = 0;
+    }
+
+    public void setBudgetBytes(long budgetBytes){
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    public long getBudgetBytes(){
+        return budgetBytes;
+    }
+
+    public long getUsedBytes(){
+        return usedBytes;
+    }
+
+    //descarta os undos mais antigos ate caber no limite
+    private void trim(){
+        while(usedBytes > budgetBytes && !undoStack.isEmpty())
+            usedBytes -= undoStack.removeFirst().getBytes();
+    }
+}
@@ -0,0 +1,137 @@
+package com.developer.jonery.doodlz;
+
+/**
+ * Zoom e deslocamento da tela sobre o desenho, sem Android: um ponto (x, y) do
+ * desenho aparece na tela em (x * scale + translateX, y * scale + translateY). A
+ * escala fica entre MIN_SCALE e MAX_SCALE e o desenho nunca sai todo da tela, pelo
+ * menos MIN_VISIBLE pixels dele continuam aparecendo em cada direcao.
+ */
+
+public class Viewport {
+    public static final float MIN_SCALE = 1f / 8;
+    public static final float MAX_SCALE = 8;
+    //pixels da tela que o desenho sempre ocupa, nas bordas
+    private static final float MIN_VISIBLE = 64;
+
+    private float scale = 1;
+    private float translateX;
+    private float translateY;
+    private int viewWidth;
+    private int viewHeight;
+    private int contentWidth;
+    private int contentHeight;
+
+    public float getScale(){
+        return scale;
+    }
+
+    public float getTranslateX(){
+        return translateX;
+    }
+
+    public float getTranslateY(){
+        return translateY;
+    }
+
+    //tamanho da tela e do desenho, em pixels; o deslocamento e ajustado aos dois
+    public void setSizes(int viewWidth, int viewHeight, int contentWidth, int contentHeight){
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.contentWidth = contentWidth;
+        this.contentHeight = contentHeight;
+        clampTranslation();
+    }
+
+    //volta pra 1:1 com o canto do desenho no canto da tela
+    public void reset(){
+        scale = 1;
+        translateX = 0;
+        translateY = 0;
+    }
+
+    public boolean isIdentity(){
+        return scale == 1 && translateX == 0 && translateY == 0;
+    }
+
+    //multiplica a escala por factor mantendo parado o ponto do desenho que esta em
+    //(focusX, focusY) na tela; retorna false se nada mudou
+    public boolean zoom(float factor, float focusX, float focusY){
+        float newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        if(newScale == scale)
+            return false;
+
+        float applied = newScale / scale;
+        translateX = focusX - (focusX - translateX) * applied;
+        translateY = focusY - (focusY - translateY) * applied;
+        scale = newScale;
+        clampTranslation();
+        return true;
+    }
+
+    //desloca o desenho (dx, dy) pixels da tela; retorna false se nada mudou
+    public boolean pan(float dx, float dy){
+        float oldX = translateX;
+        float oldY = translateY;
+        translateX += dx;
+        translateY += dy;
+        clampTranslation();
+        return translateX != oldX || translateY != oldY;
+    }
+
+    //ponto da tela em coordenadas do desenho
+    public float toContentX(float screenX){
+        return (screenX - translateX) / scale;
+    }
+
+    public float toContentY(float screenY){
+        return (screenY - translateY) / scale;
+    }
+
+    //ponto do desenho em coordenadas da tela
+    public float toScreenX(float contentX){
+        return contentX * scale + translateX;
+    }
+
+    public float toScreenY(float contentY){
+        return contentY * scale + translateY;
+    }
+
+    //troca o retangulo left, top, right e bottom da tela pelo do desenho
+    public void toContent(float[] rect){
+        rect[0] = toContentX(rect[0]);
+        rect[1] = toContentY(rect[1]);
+        rect[2] = toContentX(rect[2]);
+        rect[3] = toContentY(rect[3]);
+    }
+
+    //troca o retangulo left, top, right e bottom do desenho pelo da tela
+    public void toScreen(float[] rect){
+        rect[0] = toScreenX(rect[0]);
+        rect[1] = toScreenY(rect[1]);
+        rect[2] = toScreenX(rect[2]);
+        rect[3] = toScreenY(rect[3]);
+    }
+
+    //nivel da piramide de tiles pra escala atual: 0 de perto ate 1:1, e k quando a
+    //escala fica mais perto de 1/2^k, no maximo maxLevel. Abaixo de 1:1 cada pixel
+    //do nivel escolhido vira entre 0.7 e 1.4 pixels da tela
+    public int getLevel(int maxLevel){
+        if(scale >= 1)
+            return 0;
+        int level = (int) Math.floor(Math.log(1 / scale) / Math.log(2) + 0.5);
+        return Math.min(maxLevel, level);
+    }
+
+    //o desenho continua com pelo menos MIN_VISIBLE pixels dentro da tela
+    private void clampTranslation(){
+        if(viewWidth <= 0 || viewHeight <= 0)
+            return;
+        translateX = clamp(translateX, contentWidth * scale, viewWidth);
+        translateY = clamp(translateY, contentHeight * scale, viewHeight);
+    }
+
+    private static float clamp(float translate, float content, int view){
+        float visible = Math.min(MIN_VISIBLE, Math.min(content, view));
+        return Math.max(visible - content, Math.min(view - visible, translate));
+    }
+}
@@ -0,0 +1,105 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da exportacao em lote com arquivos de verdade numa pasta temporaria.
+ */
+public class BatchRendererTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("batch").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    @Test
+    public void documents_renderSameAsRasterizer() throws Exception {
+        List<File> inputs = new ArrayList<>();
+        List<StrokeDocument> documents = new ArrayList<>();
+        for(int i = 0; i < 6; i++){
+            StrokeDocument document = new StrokeDocument();
+            for(int stroke = 0; stroke <= i; stroke++)
+                document.addStroke(0xFF000000 | stroke * 0x203040, 3 + stroke,
+                        new float[]{10 + stroke * 7, 10, 60, 30 + stroke * 5, 20, 70 + i}, 0, 3);
+            File input = new File(directory, "doodle" + i + ".doodle");
+            DocumentFile.write(input, document, 80 + i, 90);
+            inputs.add(input);
+            documents.add(document);
+        }
+
+        File output = new File(directory, "out");
+        //mais threads que buffers: as tarefas esperam um buffer livre
+        BatchRenderer renderer = new BatchRenderer(output, 32, 3, 2);
+        BatchRenderer.Report report = renderer.render(inputs);
+        renderer.release();
+
+        assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+        assertEquals(6, report.getDocuments());
+        assertEquals(21, report.getStrokes());
+
+        for(int i = 0; i < 6; i++){
+            StrokeRasterizer expected = new StrokeRasterizer(80 + i, 90);
+            expected.fill(0xFFFFFFFF);
+            expected.drawDocument(documents.get(i));
+
+            BufferedImage image = ImageIO.read(new File(output, "doodle" + i + ".png"));
+            assertArrayEquals(expected.getPixels(), image.getRGB(0, 0, 80 + i, 90, null, 0, 80 + i));
+
+            BufferedImage thumbnail = ImageIO.read(new File(output, "doodle" + i + "_thumb.png"));
+            assertEquals(32, thumbnail.getHeight());
+            assertEquals(Math.round((80 + i) * 32f / 90), thumbnail.getWidth());
+        }
+    }
+
+    @Test
+    public void badFile_isReportedWithoutStoppingOthers() throws Exception {
+        File good = new File(directory, "good.doodle");
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(0xFF000000, 5, new float[]{1, 1, 30, 30}, 0, 2);
+        DocumentFile.write(good, document, 40, 40);
+
+        File bad = new File(directory, "bad.doodle");
+        FileOutputStream out = new FileOutputStream(bad);
+        out.write(new byte[]{1, 2, 3, 4, 5});
+        out.close();
+
+        File output = new File(directory, "out");
+        BatchRenderer renderer = new BatchRenderer(output, 0, 2, 2);
+        BatchRenderer.Report report = renderer.render(Arrays.asList(bad, good));
+        renderer.release();
+
+        assertEquals(1, report.getDocuments());
+        assertEquals(1, report.getFailures().size());
+        assertTrue(report.getFailures().get(0).startsWith(bad.toString()));
+        assertTrue(new File(output, "good.png").isFile());
+        assertFalse(new File(output, "good_thumb.png").exists());
+    }
+
+    private static void delete(File file){
+        File[] children = file.listFiles();
+        if(children != null)
+            for(File child : children)
+                delete(child);
+        file.delete();
+    }
+}
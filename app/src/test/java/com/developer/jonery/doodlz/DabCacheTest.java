@@ -0,0 +1,77 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do cache de mascaras: reuso, diametro arredondado pra meio pixel e
+ * descarte das menos usadas quando passa do limite de bytes.
+ */
+public class DabCacheTest {
+    private final List<byte[]> discarded = new ArrayList<>();
+
+    private DabCache<byte[]> newCache(long maxBytes){
+        return new DabCache<byte[]>(maxBytes) {
+            @Override
+            protected byte[] create(Brush brush, float diameter, int variant, int side) {
+                byte[] mask = new byte[side * side];
+                DabMask.render(brush, diameter, variant, mask, side);
+                return mask;
+            }
+
+            @Override
+            protected void discard(byte[] dab) {
+                discarded.add(dab);
+            }
+        };
+    }
+
+    @Test
+    public void nearDiameters_shareOneMask() {
+        DabCache<byte[]> cache = newCache(1 << 20);
+        byte[] first = cache.get(Brush.AIRBRUSH, 10.1f, 0);
+        assertSame(first, cache.get(Brush.AIRBRUSH, 9.9f, 0));
+        assertNotSame(first, cache.get(Brush.AIRBRUSH, 10.5f, 0));
+        assertNotSame(first, cache.get(Brush.MARKER, 10, 0));
+        assertNotSame(first, cache.get(Brush.AIRBRUSH, 10, 1));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(4, cache.size());
+        assertEquals(10, DabCache.quantize(10.2f), 0);
+        assertEquals(1, DabCache.quantize(0.1f), 0);
+    }
+
+    @Test
+    public void overBudget_evictsLeastRecentlyUsed() {
+        int side = DabMask.sideFor(20);
+        //cabem duas mascaras de diametro 20
+        DabCache<byte[]> cache = newCache(2L * side * side);
+        byte[] a = cache.get(Brush.PENCIL, 20, 0);
+        byte[] b = cache.get(Brush.PENCIL, 20, 1);
+        cache.get(Brush.PENCIL, 20, 0); //a fica mais recente que b
+        byte[] c = cache.get(Brush.PENCIL, 20, 2);
+
+        assertEquals(1, discarded.size());
+        assertSame(b, discarded.get(0));
+        assertSame(a, cache.get(Brush.PENCIL, 20, 0));
+        assertSame(c, cache.get(Brush.PENCIL, 20, 2));
+        assertEquals(2L * side * side, cache.getBytes());
+    }
+
+    @Test
+    public void maskBiggerThanBudget_isStillReturned() {
+        DabCache<byte[]> cache = newCache(16);
+        byte[] mask = cache.get(Brush.AIRBRUSH, 30, 0);
+        assertEquals(DabMask.sideFor(30) * DabMask.sideFor(30), mask.length);
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+        assertSame(mask, discarded.get(0));
+    }
+}
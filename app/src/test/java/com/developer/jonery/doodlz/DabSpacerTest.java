@@ -0,0 +1,75 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do espacador de carimbos: distancia igual entre carimbos mesmo com o
+ * traco dividido em varios segmentos, e um carimbo por spacing de comprimento.
+ */
+public class DabSpacerTest {
+    private final List<float[]> dabs = new ArrayList<>();
+    private final DabSpacer spacer = new DabSpacer(new DabSpacer.DabListener() {
+        @Override
+        public void onDab(int id, float x, float y, int index) {
+            assertEquals(dabs.size(), index);
+            dabs.add(new float[]{x, y});
+        }
+    });
+
+    @Test
+    public void straightLine_dabsAreEvenlySpacedAcrossSegments() {
+        spacer.setSpacing(3);
+        spacer.onStrokeStart(0, 0, 0);
+        //segmentos retos de tamanhos que nao sao multiplos do spacing
+        float[] ends = {2.5f, 7, 7.5f, 19, 31};
+        float x = 0;
+        for(float end : ends){
+            spacer.onSegment(0, new float[]{x, 0, (x + end) / 2, 0, end, 0});
+            x = end;
+        }
+
+        assertEquals(11, dabs.size()); //0, 3, ..., 30
+        for(int i = 0; i < dabs.size(); i++){
+            assertEquals(i * 3, dabs.get(i)[0], 1e-3);
+            assertEquals(0, dabs.get(i)[1], 0);
+        }
+        assertEquals(11, spacer.getDabCount(0));
+    }
+
+    @Test
+    public void curve_dabCountFollowsArcLength() {
+        spacer.setSpacing(2);
+        spacer.onStrokeStart(0, 0, 0);
+        //arco de parabola com comprimento ~147.9
+        spacer.onSegment(0, new float[]{0, 0, 50, 100, 100, 0});
+
+        assertEquals(1 + (int) (147.9f / 2), dabs.size(), 1);
+        for(int i = 1; i < dabs.size(); i++){
+            float dx = dabs.get(i)[0] - dabs.get(i - 1)[0];
+            float dy = dabs.get(i)[1] - dabs.get(i - 1)[1];
+            //a corda entre carimbos vizinhos e quase o spacing
+            assertEquals(2, Math.sqrt(dx * dx + dy * dy), 0.05);
+        }
+    }
+
+    @Test
+    public void spacingIsFixedWhenTheStrokeStarts() {
+        spacer.setSpacing(5);
+        spacer.onStrokeStart(1, 0, 0);
+        spacer.setSpacing(1);
+        spacer.onSegment(1, new float[]{0, 0, 10, 0, 20, 0});
+
+        assertEquals(5, dabs.size());
+        assertEquals(20, dabs.get(4)[0], 1e-3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSpacing_isRejected() {
+        spacer.setSpacing(0);
+    }
+}
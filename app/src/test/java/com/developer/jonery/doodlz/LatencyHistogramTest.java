@@ -0,0 +1,148 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do histograma de tempos e das medidas de frame em cima dele.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty_isZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void smallValues_areExact() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 50; i++)
+            histogram.record(i);
+
+        assertEquals(25, histogram.getPercentile(50));
+        assertEquals(45, histogram.getPercentile(90));
+        assertEquals(50, histogram.getPercentile(100));
+        assertEquals(25, histogram.getMean());
+    }
+
+    @Test
+    public void percentiles_stayWithinBucketError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[10000];
+        for(int i = 0; i < values.length; i++){
+            //tempos de ~100us a ~1s
+            values[i] = (long) Math.exp(Math.log(100) + random.nextDouble() * Math.log(10000));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for(double p : new double[]{50, 90, 95, 99, 99.9}){
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(p);
+            assertTrue("p" + p + " " + estimate + " < " + exact, estimate >= exact);
+            assertTrue("p" + p + " " + estimate + " >> " + exact, estimate <= exact * 1.033);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void buckets_coverEveryValueOnce() throws Exception {
+        assertEquals(0, LatencyHistogram.getBucketLowerBound(0));
+        for(int bucket = 1; bucket < LatencyHistogram.getBuckets(); bucket++){
+            long lower = LatencyHistogram.getBucketLowerBound(bucket);
+            assertTrue(lower > LatencyHistogram.getBucketLowerBound(bucket - 1));
+
+            //o menor valor de cada balde cai nele, e o anterior cai no balde de antes
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(lower);
+            histogram.record(lower - 1);
+            assertEquals(1, histogram.getBucketCount(bucket));
+            assertEquals(1, histogram.getBucketCount(bucket - 1));
+        }
+    }
+
+    @Test
+    public void outOfRange_isClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(LatencyHistogram.MAX_MICROS * 4);
+
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(LatencyHistogram.getBuckets() - 1));
+        assertEquals(LatencyHistogram.MAX_MICROS, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void copyAndReset() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(3000);
+        LatencyHistogram copy = new LatencyHistogram();
+        histogram.copyTo(copy);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(2, copy.getCount());
+        assertEquals(3000, copy.getMax());
+        assertEquals(2000, copy.getMean());
+    }
+
+    @Test
+    public void frameMetrics_measuresLatencyFromOldestInput() throws Exception {
+        FrameMetrics metrics = new FrameMetrics();
+
+        //dois toques antes do mesmo frame, so o primeiro conta
+        metrics.inputReceived(100);
+        metrics.inputReceived(108);
+        metrics.frameDrawn(0, 130);
+        //frame sem toque novo nao entra
+        metrics.frameDrawn(0, 140);
+
+        LatencyHistogram latency = metrics.getHistogram(FrameMetrics.INPUT_LATENCY);
+        assertEquals(1, latency.getCount());
+        assertEquals(30000, latency.getMax());
+        assertEquals(1, metrics.getFrames());
+    }
+
+    @Test
+    public void frameMetrics_countsDroppedFramesButNotPauses() throws Exception {
+        FrameMetrics metrics = new FrameMetrics();
+        long period = 10000000;
+        metrics.setFramePeriodNanos(period);
+
+        long[] frameTimes = {
+                period, 2 * period, 3 * period, //em dia
+                6 * period, //perdeu 2 frames
+                7 * period,
+                100 * period //dedo parado, e pausa
+        };
+        for(long time : frameTimes){
+            metrics.inputReceived(time / 1000000);
+            metrics.frameDrawn(time, time / 1000000);
+        }
+
+        assertEquals(6, metrics.getFrames());
+        assertEquals(2, metrics.getDroppedFrames());
+        assertEquals(4, metrics.getHistogram(FrameMetrics.FRAME_INTERVAL).getCount());
+
+        StringBuilder summary = new StringBuilder();
+        metrics.appendSummary(summary);
+        assertTrue(summary.toString(), summary.toString().endsWith("dropped 2/6"));
+
+        StringWriter csv = new StringWriter();
+        metrics.writeTo(csv);
+        assertTrue(csv.toString().contains("\nframe_interval,4,"));
+        assertTrue(csv.toString().contains("\nframe_interval,29696,1\n"));
+    }
+}
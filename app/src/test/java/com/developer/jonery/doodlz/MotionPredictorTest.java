@@ -0,0 +1,129 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da previsao de movimento usada na ponta dos tracos.
+ */
+public class MotionPredictorTest {
+    private static final float MAX_DISTANCE = 1000;
+
+    @Test
+    public void oneSample_hasNoPrediction() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(16, MAX_DISTANCE);
+        predictor.start(0, 10, 10, 0);
+
+        assertFalse(predictor.predict(0, 0, new float[2]));
+    }
+
+    @Test
+    public void constantVelocity_extrapolatesLinearly() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(16, MAX_DISTANCE);
+        float[] out = new float[2];
+
+        //1 px/ms em x e 0.5 px/ms em y
+        predictor.start(0, 0, 0, 0);
+        predictor.addSample(0, 8, 4, 8);
+        predictor.addSample(0, 16, 8, 16);
+
+        assertTrue(predictor.predict(0, 16, out));
+        assertEquals(32, out[0], 0.001f);
+        assertEquals(16, out[1], 0.001f);
+    }
+
+    @Test
+    public void constantAcceleration_isFollowed() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(10, MAX_DISTANCE);
+        float[] out = new float[2];
+
+        //velocidade media 1 px/ms entre 0 e 10 e 3 px/ms entre 10 e 20
+        predictor.start(0, 0, 0, 0);
+        predictor.addSample(0, 10, 0, 10);
+        predictor.addSample(0, 40, 0, 20);
+
+        //a = 0.2 px/ms2, previsao = 40 + 3 * 10 + 0.2 * 100 / 2
+        assertTrue(predictor.predict(0, 20, out));
+        assertEquals(80, out[0], 0.001f);
+        assertEquals(0, out[1], 0.001f);
+    }
+
+    @Test
+    public void stationaryFinger_predictsSamePoint() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(16, MAX_DISTANCE);
+        float[] out = new float[2];
+
+        predictor.start(0, 50, 60, 0);
+        predictor.addSample(0, 50, 60, 8);
+        predictor.addSample(0, 50, 60, 16);
+
+        assertTrue(predictor.predict(0, 16, out));
+        assertEquals(50, out[0], 0);
+        assertEquals(60, out[1], 0);
+    }
+
+    @Test
+    public void staleSamples_haveNoPrediction() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(16, MAX_DISTANCE);
+        predictor.start(0, 0, 0, 0);
+        predictor.addSample(0, 10, 0, MotionPredictor.DEFAULT_STALE_MS + 1);
+
+        assertFalse(predictor.predict(0, MotionPredictor.DEFAULT_STALE_MS + 1, new float[2]));
+    }
+
+    @Test
+    public void stoppedFinger_hasNoPrediction() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(16, MAX_DISTANCE);
+        predictor.start(0, 0, 0, 0);
+        predictor.addSample(0, 10, 0, 8);
+
+        //o dedo parou e nenhuma amostra chegou desde a de 8 ms
+        long now = 8 + MotionPredictor.DEFAULT_STALE_MS;
+        assertFalse(predictor.isStale(0, now));
+        assertTrue(predictor.predict(0, now, new float[2]));
+        assertTrue(predictor.isStale(0, now + 1));
+        assertFalse(predictor.predict(0, now + 1, new float[2]));
+    }
+
+    @Test
+    public void prediction_isClampedToMaxDistance() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(16, 5);
+        float[] out = new float[2];
+
+        predictor.start(0, 0, 0, 0);
+        predictor.addSample(0, 0, 30, 8);
+
+        assertTrue(predictor.predict(0, 8, out));
+        assertEquals(0, out[0], 0.001f);
+        assertEquals(35, out[1], 0.001f);
+    }
+
+    @Test
+    public void sameTimestamp_replacesLastSample() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(8, MAX_DISTANCE);
+        float[] out = new float[2];
+
+        predictor.start(0, 0, 0, 0);
+        predictor.addSample(0, 4, 0, 8);
+        predictor.addSample(0, 8, 0, 8);
+
+        //1 px/ms entre (0, 0) e (8, 8)
+        assertTrue(predictor.predict(0, 8, out));
+        assertEquals(16, out[0], 0.001f);
+        assertEquals(8, predictor.getLastX(0), 0);
+    }
+
+    @Test
+    public void disabledOrEnded_hasNoPrediction() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(0, MAX_DISTANCE);
+        predictor.start(1, 0, 0, 0);
+        predictor.addSample(1, 8, 0, 8);
+        assertFalse(predictor.predict(1, 8, new float[2]));
+
+        predictor.setPredictionMs(16);
+        assertTrue(predictor.predict(1, 8, new float[2]));
+        predictor.end(1);
+        assertFalse(predictor.predict(1, 8, new float[2]));
+    }
+}
@@ -0,0 +1,105 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do codificador de PNG: o que ele grava tem que voltar igual pelo ImageIO.
+ */
+public class PngEncoderTest {
+
+    @Test
+    public void rgbaImage_decodesToSamePixels() throws Exception {
+        int width = 37, height = 23;
+        int[] pixels = new int[width * height];
+        Random random = new Random(1);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt();
+
+        byte[] png = encode(pixels, width, height, true, 1);
+        assertArrayEquals(pixels, decode(png, width, height));
+    }
+
+    @Test
+    public void rgbImage_dropsAlpha() throws Exception {
+        int width = 16, height = 4;
+        int[] pixels = new int[width * height];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0x80000000 | i * 0x030507;
+
+        int[] decoded = decode(encode(pixels, width, height, false, 1), width, height);
+        for(int i = 0; i < pixels.length; i++)
+            assertEquals(pixels[i] | 0xFF000000, decoded[i]);
+    }
+
+    @Test
+    public void largeNoisyImage_spansSeveralDataChunksAndRowBatches() throws Exception {
+        //ruido nao comprime, entao a saida passa de varios chunks de 64 KB
+        int width = 300, height = 300;
+        int[] pixels = new int[width * height];
+        Random random = new Random(2);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt();
+
+        byte[] png = encode(pixels, width, height, true, 7);
+        assertTrue(png.length > 3 * 64 * 1024);
+        assertArrayEquals(pixels, decode(png, width, height));
+    }
+
+    @Test
+    public void encoder_isReusable() throws Exception {
+        PngEncoder encoder = new PngEncoder();
+        int[] first = {0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF};
+        int[] second = {0xFF123456};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.begin(out, 2, 2, false);
+        encoder.writeRows(first, 0, 2, 2);
+        encoder.end();
+        assertEquals(out.size(), encoder.getBytesWritten());
+
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        encoder.begin(again, 1, 1, false);
+        encoder.writeRows(second, 0, 1, 1);
+        encoder.end();
+        encoder.release();
+
+        assertArrayEquals(first, decode(out.toByteArray(), 2, 2));
+        assertArrayEquals(second, decode(again.toByteArray(), 1, 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void end_withMissingRows_fails() throws Exception {
+        PngEncoder encoder = new PngEncoder();
+        encoder.begin(new ByteArrayOutputStream(), 4, 4, false);
+        encoder.writeRows(new int[16], 0, 4, 3);
+        encoder.end();
+    }
+
+    //codifica em lotes de batch linhas, como quem grava enquanto desenha
+    private static byte[] encode(int[] pixels, int width, int height, boolean alpha, int batch) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngEncoder encoder = new PngEncoder();
+        encoder.begin(out, width, height, alpha);
+        for(int row = 0; row < height; row += batch)
+            encoder.writeRows(pixels, row * width, width, Math.min(batch, height - row));
+        encoder.end();
+        encoder.release();
+        return out.toByteArray();
+    }
+
+    private static int[] decode(byte[] png, int width, int height) throws Exception {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+}
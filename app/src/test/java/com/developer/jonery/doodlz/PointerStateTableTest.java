@@ -0,0 +1,125 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da tabela de pointers, incluindo a contagem de alocacoes durante
+ * sequencias de multi-touch sinteticas.
+ */
+public class PointerStateTableTest {
+    private static final float TOLERANCE = 10;
+
+    @Test
+    public void sampleBelowTolerance_isFiltered() throws Exception {
+        PointerStateTable table = new PointerStateTable();
+        float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+
+        assertTrue(table.start(0, 100, 100, 0));
+        assertFalse(table.addSample(0, 105, 109, 8, TOLERANCE, segment));
+        assertEquals(100, table.getLastX(0), 0);
+        assertEquals(8, table.getLastTime(0));
+    }
+
+    @Test
+    public void acceptedSample_emitsMidpointQuad() throws Exception {
+        PointerStateTable table = new PointerStateTable();
+        float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+
+        table.start(3, 0, 0, 0);
+        assertTrue(table.addSample(3, 20, 0, 8, TOLERANCE, segment));
+        assertArrayEquals(new float[]{0, 0, 0, 0, 10, 0}, segment, 0);
+
+        assertTrue(table.addSample(3, 20, 40, 16, TOLERANCE, segment));
+        assertArrayEquals(new float[]{10, 0, 20, 0, 20, 20}, segment, 0);
+        assertEquals(20, table.getEndY(3), 0);
+    }
+
+    @Test
+    public void pointersAreIndependent() throws Exception {
+        PointerStateTable table = new PointerStateTable();
+        float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+
+        table.start(0, 0, 0, 0);
+        table.start(1, 500, 500, 0);
+        assertEquals(2, table.getActiveCount());
+
+        assertTrue(table.addSample(1, 520, 500, 8, TOLERANCE, segment));
+        assertEquals(0, table.getLastX(0), 0);
+        assertEquals(520, table.getLastX(1), 0);
+
+        table.end(0);
+        assertFalse(table.isActive(0));
+        assertFalse(table.addSample(0, 50, 50, 16, TOLERANCE, segment));
+        assertEquals(1, table.getActiveCount());
+    }
+
+    @Test
+    public void invalidIds_areIgnored() throws Exception {
+        PointerStateTable table = new PointerStateTable();
+
+        assertFalse(table.start(-1, 0, 0, 0));
+        assertFalse(table.start(PointerStateTable.MAX_POINTERS, 0, 0, 0));
+        assertFalse(table.isActive(PointerStateTable.MAX_POINTERS));
+        table.end(PointerStateTable.MAX_POINTERS);
+        assertEquals(0, table.getActiveCount());
+    }
+
+    @Test
+    public void multiTouchSequence_doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threads.isThreadAllocatedMemorySupported())
+            return;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PointerStateTable table = new PointerStateTable();
+        float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+        long threadId = Thread.currentThread().getId();
+
+        //aquece o JIT e carrega as classes antes de medir
+        for(int i = 0; i < 20; i++)
+            drive(table, segment);
+
+        //quanto a propria medicao aloca
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        overhead = threads.getThreadAllocatedBytes(threadId) - overhead;
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int segments = drive(table, segment);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue(segments > 0);
+        assertEquals(0, allocated);
+    }
+
+    //simula 10 dedos descendo em tempos diferentes e fazendo circulos,
+    //retorna quantos segmentos passaram pelo filtro
+    private static int drive(PointerStateTable table, float[] segment){
+        int segments = 0;
+        long time = 0;
+
+        for(int frame = 0; frame < 2000; frame++){
+            time += 8;
+            for(int id = 0; id < 10; id++){
+                float angle = (frame + id * 7) * 0.05f;
+                float x = 400 + id * 50 + 100 * (float) Math.cos(angle);
+                float y = 400 + 100 * (float) Math.sin(angle);
+
+                //cada dedo levanta e desce de novo num ciclo diferente
+                int phase = (frame + id * 13) % 150;
+                if(phase == 0)
+                    table.start(id, x, y, time);
+                else if(phase == 149)
+                    table.end(id);
+                else if(table.addSample(id, x, y, time, TOLERANCE, segment))
+                    segments++;
+            }
+        }
+        table.clear();
+        return segments;
+    }
+}
@@ -0,0 +1,160 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do balde de tinta: o preenchimento por trechos tem que pintar exatamente
+ * os mesmos pixels que uma busca simples pixel a pixel, com e sem threads.
+ */
+public class ScanlineFillTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+    private static final int RED = 0xFFFF0000;
+
+    @Test
+    public void fill_staysInsideTheRing() throws Exception {
+        int size = 40;
+        int[] pixels = new int[size * size];
+        Arrays.fill(pixels, WHITE);
+        //quadrado preto de 10 a 30
+        for(int i = 10; i <= 30; i++){
+            pixels[10 * size + i] = BLACK;
+            pixels[30 * size + i] = BLACK;
+            pixels[i * size + 10] = BLACK;
+            pixels[i * size + 30] = BLACK;
+        }
+
+        ScanlineFill fill = new ScanlineFill();
+        assertEquals(19 * 19, fill.fill(pixels, size, size, 20, 20, RED, 0));
+        assertEquals(RED, pixels[11 * size + 11]);
+        assertEquals(BLACK, pixels[10 * size + 20]);
+        assertEquals(WHITE, pixels[5 * size + 5]);
+
+        int[] bounds = new int[4];
+        fill.getBounds(bounds);
+        assertArrayEquals(new int[]{11, 11, 30, 30}, bounds);
+    }
+
+    @Test
+    public void tolerance_includesCloseColorsOnly() throws Exception {
+        int[] pixels = {WHITE, 0xFFF0F0F0, 0xFFC0C0C0, WHITE};
+
+        assertEquals(2, new ScanlineFill().fill(pixels, 4, 1, 0, 0, RED, 16));
+        assertEquals(RED, pixels[1]);
+        assertEquals(0xFFC0C0C0, pixels[2]);
+        assertEquals(WHITE, pixels[3]);
+    }
+
+    @Test
+    public void sameColor_fillsOnce() throws Exception {
+        int[] pixels = new int[30 * 20];
+        Arrays.fill(pixels, WHITE);
+
+        ScanlineFill fill = new ScanlineFill();
+        assertEquals(600, fill.fill(pixels, 30, 20, 3, 4, WHITE, 255));
+        //a mascara foi zerada, o segundo preenchimento ve tudo de novo
+        assertEquals(600, fill.fill(pixels, 30, 20, 29, 19, RED, 0));
+    }
+
+    @Test
+    public void stride_leavesTheRestOfTheImage() throws Exception {
+        int width = 20;
+        int[] pixels = new int[width * 20];
+        Arrays.fill(pixels, WHITE);
+
+        //retangulo de 5x5 comecando em (4, 6)
+        assertEquals(25, new ScanlineFill().fill(pixels, 6 * width + 4, width, 5, 5, 2, 2, RED, 0));
+        assertEquals(RED, pixels[6 * width + 4]);
+        assertEquals(RED, pixels[10 * width + 8]);
+        assertEquals(WHITE, pixels[10 * width + 9]);
+        assertEquals(WHITE, pixels[11 * width + 4]);
+        assertEquals(WHITE, pixels[6 * width + 3]);
+    }
+
+    @Test
+    public void outsideSeed_paintsNothing() throws Exception {
+        int[] pixels = new int[16];
+        assertEquals(0, new ScanlineFill().fill(pixels, 4, 4, 4, 0, RED, 0));
+        assertEquals(0, pixels[3]);
+    }
+
+    @Test
+    public void randomMazes_matchPixelByPixelSearch() throws Exception {
+        Random random = new Random(7);
+        ScanlineFill fill = new ScanlineFill();
+        for(int round = 0; round < 30; round++){
+            int width = 1 + random.nextInt(60);
+            int height = 1 + random.nextInt(60);
+            int[] pixels = maze(random, width, height, 0.4f);
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+
+            int[] expected = pixels.clone();
+            int expectedCount = referenceFill(expected, width, height, x, y, RED);
+            assertEquals(expectedCount, fill.fill(pixels, width, height, x, y, RED, 0));
+            assertArrayEquals(expected, pixels);
+        }
+    }
+
+    @Test
+    public void parallel_matchesSequential() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(11);
+            ScanlineFill sequential = new ScanlineFill();
+            ScanlineFill parallel = new ScanlineFill(pool);
+            int width = 700, height = 600;
+            //em branco o teste em faixas sempre acontece; com paredes depende do toque
+            for(int round = 0; round < 4; round++){
+                int[] pixels = maze(random, width, height, round == 0 ? 0 : 0.3f);
+                int[] copy = pixels.clone();
+                int x = random.nextInt(width), y = random.nextInt(height);
+
+                int count = sequential.fill(pixels, width, height, x, y, RED, 0);
+                assertEquals(count, parallel.fill(copy, width, height, x, y, RED, 0));
+                assertArrayEquals(pixels, copy);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //pixels brancos com uma fracao de pretos espalhados
+    private static int[] maze(Random random, int width, int height, float walls){
+        int[] pixels = new int[width * height];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextFloat() < walls ? BLACK : WHITE;
+        return pixels;
+    }
+
+    //busca em largura pixel a pixel, com tolerancia 0
+    private static int referenceFill(int[] pixels, int width, int height, int x, int y, int color){
+        int seed = pixels[y * width + x];
+        boolean[] seen = new boolean[pixels.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(y * width + x);
+        seen[y * width + x] = true;
+        int count = 0;
+        while(!queue.isEmpty()){
+            int i = queue.poll();
+            pixels[i] = color;
+            count++;
+            int px = i % width, py = i / width;
+            int[] neighbours = {px > 0 ? i - 1 : -1, px < width - 1 ? i + 1 : -1,
+                    py > 0 ? i - width : -1, py < height - 1 ? i + width : -1};
+            for(int n : neighbours)
+                if(n >= 0 && !seen[n] && pixels[n] == seed){
+                    seen[n] = true;
+                    queue.add(n);
+                }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,140 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do detector de shake com as sequencias do acelerometro em traces/, a 25 Hz
+ * como o fragmento registra o sensor: mao parada, desenhando, andando, largando o
+ * aparelho e chacoalhando. Cada arquivo tem o timestamp em ns e x, y, z em m/s2.
+ */
+public class ShakeDetectorTest {
+
+    @Test
+    public void idle_neverTriggers() throws Exception {
+        assertEquals(0, countShakes("idle_table.csv", 1));
+    }
+
+    @Test
+    public void drawingHandheld_neverTriggers() throws Exception {
+        assertEquals(0, countShakes("drawing_handheld.csv", 1));
+    }
+
+    @Test
+    public void walking_neverTriggers() throws Exception {
+        assertEquals(0, countShakes("walking.csv", 1));
+    }
+
+    @Test
+    public void singleBump_neverTriggers() throws Exception {
+        assertEquals(0, countShakes("dropped_on_table.csv", 1));
+    }
+
+    @Test
+    public void shake_triggersOnce() throws Exception {
+        assertEquals(1, countShakes("shake.csv", 1));
+    }
+
+    @Test
+    public void longShake_triggersOnce() throws Exception {
+        assertEquals(1, countShakes("long_shake.csv", 1));
+    }
+
+    @Test
+    public void separateShakes_triggerTwice() throws Exception {
+        assertEquals(2, countShakes("two_shakes.csv", 1));
+    }
+
+    @Test
+    public void fallbackSamplingRate_stillDetects() throws Exception {
+        //so uma amostra a cada 2 (12.5 Hz), a taxa usada sem FIFO no sensor
+        assertEquals(1, countShakes("shake.csv", 2));
+        assertEquals(1, countShakes("long_shake.csv", 2));
+        assertEquals(2, countShakes("two_shakes.csv", 2));
+        assertEquals(0, countShakes("drawing_handheld.csv", 2));
+        assertEquals(0, countShakes("walking.csv", 2));
+    }
+
+    @Test
+    public void gapInSamples_restartsFilter() throws Exception {
+        ShakeDetector detector = new ShakeDetector();
+        long second = 1000000000L;
+
+        //parado com o aparelho deitado, e depois de uma pausa longa em pe: a
+        //gravidade mudou de eixo mas nao pode contar como movimento
+        for(int i = 0; i < 25; i++)
+            assertFalse(detector.addSample(i * second / 25, 0, 0, 9.81f));
+        for(int i = 0; i < 25; i++)
+            assertFalse(detector.addSample(10 * second + i * second / 25, 0, 9.81f, 0));
+    }
+
+    @Test
+    public void reset_forgetsPeaks() throws Exception {
+        List<Sample> samples = readTrace("shake.csv");
+        ShakeDetector detector = new ShakeDetector();
+        int i = 0;
+        while(!samples.get(i).feed(detector))
+            i++;
+
+        //logo depois do reset o cooldown nao vale mais e o shake e detectado de novo
+        detector.reset();
+        assertEquals(1, countShakes(detector, samples, 1));
+    }
+
+    //uma linha do trace
+    private static class Sample {
+        final long timestamp;
+        final float x, y, z;
+
+        Sample(long timestamp, float x, float y, float z){
+            this.timestamp = timestamp;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        boolean feed(ShakeDetector detector){
+            return detector.addSample(timestamp, x, y, z);
+        }
+    }
+
+    //conta os shakes usando uma amostra a cada step
+    private static int countShakes(String trace, int step) throws Exception {
+        return countShakes(new ShakeDetector(), readTrace(trace), step);
+    }
+
+    private static int countShakes(ShakeDetector detector, List<Sample> samples, int step){
+        int shakes = 0;
+        for(int i = 0; i < samples.size(); i += step)
+            if(samples.get(i).feed(detector))
+                shakes++;
+        return shakes;
+    }
+
+    private static List<Sample> readTrace(String name) throws Exception {
+        InputStream in = ShakeDetectorTest.class.getResourceAsStream("/traces/" + name);
+        assertNotNull("falta o trace " + name, in);
+        List<Sample> samples = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while((line = reader.readLine()) != null){
+                if(line.startsWith("#") || line.isEmpty())
+                    continue;
+                String[] fields = line.split(",");
+                samples.add(new Sample(Long.parseLong(fields[0]),
+                        Float.parseFloat(fields[1]), Float.parseFloat(fields[2]), Float.parseFloat(fields[3])));
+            }
+        } finally {
+            reader.close();
+        }
+        return samples;
+    }
+}
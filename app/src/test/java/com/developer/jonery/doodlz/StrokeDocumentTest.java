@@ -0,0 +1,192 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da gravacao dos tracos com o pincel e a camada, inclusive dos arquivos de
+ * antes dos pinceis e das camadas.
+ */
+public class StrokeDocumentTest {
+    private static final float[] POINTS = {1, 2, 3, 4, 5, 6};
+
+    @Test
+    public void version_changesOnEveryEdit() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        float[] line = {0, 0, 10, 10};
+        int version = document.getVersion();
+
+        document.addStroke(0xFF000000, 2, line, 0, 2);
+        version = assertChanged(document, version);
+        document.removeLastStroke();
+        version = assertChanged(document, version);
+        document.restoreStroke();
+        version = assertChanged(document, version);
+        document.removeStrokes(new int[]{0}, 1);
+        version = assertChanged(document, version);
+        document.clear();
+        assertChanged(document, version);
+    }
+
+    @Test
+    public void writeAndRead_keepBrushOfEachStroke() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        for(Brush brush : Brush.values())
+            document.addStroke(0x80123456, 7, brush, POINTS, 0, 3);
+
+        StrokeDocument copy = new StrokeDocument();
+        copy.read(input(bytes(document)));
+
+        assertEquals(Brush.values().length, copy.getStrokeCount());
+        for(Brush brush : Brush.values()){
+            int stroke = brush.ordinal();
+            assertEquals(brush, copy.getBrush(stroke));
+            assertEquals(3, copy.getPointCount(stroke));
+            assertEquals(0x80123456, copy.getColor(stroke));
+            assertEquals(5, copy.getCoords()[copy.getCoordOffset(stroke) + 4], 0);
+        }
+        assertEquals(Brush.PENCIL, document.copy().getBrush(Brush.PENCIL.ordinal()));
+    }
+
+    @Test
+    public void oldRecordWithoutBrush_readsAsRound() throws Exception {
+        //formato antigo: cor, grossura, quantidade de pontos e os x/y
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1);
+        out.writeInt(0xFF000000);
+        out.writeFloat(5);
+        out.writeInt(3);
+        for(float coord : POINTS)
+            out.writeFloat(coord);
+
+        StrokeDocument document = new StrokeDocument();
+        document.read(input(bytes.toByteArray()));
+        assertEquals(Brush.ROUND, document.getBrush(0));
+        assertEquals(3, document.getPointCount(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownBrush_isRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xFF000000);
+        out.writeFloat(5);
+        out.writeInt(0x7F000001);
+        out.writeFloat(0);
+        out.writeFloat(0);
+        new StrokeDocument().readStroke(input(bytes.toByteArray()));
+    }
+
+    @Test
+    public void writeAndRead_keepLayerOfEachStroke() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(0xFF000000, 3, Brush.MARKER, 2, POINTS, 0, 3);
+        document.addStroke(0xFF000000, 3, Brush.ROUND, POINTS, 0, 3);
+        document.addStroke(0xFF000000, 3, Brush.PENCIL, StrokeDocument.MAX_LAYERS - 1, POINTS, 0, 3);
+
+        StrokeDocument copy = new StrokeDocument();
+        copy.read(input(bytes(document)));
+
+        assertEquals(2, copy.getLayer(0));
+        assertEquals(0, copy.getLayer(1));
+        assertEquals(StrokeDocument.MAX_LAYERS - 1, copy.getLayer(2));
+        assertEquals(Brush.PENCIL, copy.getBrush(2));
+        assertEquals(3, copy.getPointCount(2));
+        assertEquals(StrokeDocument.MAX_LAYERS, copy.getLayerCount());
+    }
+
+    @Test
+    public void removeLayer_dropsItsStrokesAndShiftsLayersAbove() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(0xFF000001, 3, Brush.ROUND, 0, POINTS, 0, 3);
+        document.addStroke(0xFF000002, 3, Brush.ROUND, 1, POINTS, 0, 2);
+        document.addStroke(0xFF000003, 3, Brush.ROUND, 2, POINTS, 2, 2);
+        document.addStroke(0xFF000004, 3, Brush.ROUND, 1, POINTS, 0, 3);
+
+        assertEquals(2, document.removeLayer(1));
+
+        assertEquals(2, document.getStrokeCount());
+        assertEquals(0xFF000001, document.getColor(0));
+        assertEquals(0xFF000003, document.getColor(1));
+        assertEquals(1, document.getLayer(1));
+        assertEquals(2, document.getLayerCount());
+        //os pontos do traco que ficou vem junto
+        assertEquals(POINTS[2], document.getCoords()[document.getCoordOffset(1)], 0);
+    }
+
+    @Test
+    public void removeStrokes_keepsOrderAndPointsOfTheOthers() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        for(int stroke = 0; stroke < 6; stroke++)
+            document.addStroke(0xFF000000 | stroke, 3, Brush.ROUND, stroke % 2, POINTS, 2 * (stroke % 3), 1);
+
+        document.removeStrokes(new int[]{1, 2, 5}, 3);
+
+        assertEquals(3, document.getStrokeCount());
+        assertEquals(0xFF000000, document.getColor(0));
+        assertEquals(0xFF000003, document.getColor(1));
+        assertEquals(0xFF000004, document.getColor(2));
+        assertEquals(1, document.getLayer(1));
+        assertEquals(POINTS[2], document.getCoords()[document.getCoordOffset(2)], 0);
+        assertEquals(3, document.getTotalPointCount());
+        //os apagados nao voltam com o redo
+        assertFalse(document.restoreStroke());
+    }
+
+    @Test
+    public void insertStrokes_undoesRemoveStrokesAndKeepsRedo() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        for(int stroke = 0; stroke < 7; stroke++)
+            document.addStroke(0xFF000000 | stroke, 3, Brush.ROUND, stroke % 2, POINTS, 2 * (stroke % 2), 1 + stroke % 2);
+        //o ultimo foi desfeito e ainda pode voltar
+        document.removeLastStroke();
+        int points = document.getTotalPointCount();
+
+        int[] erased = {0, 2, 5};
+        StrokeDocument removed = document.extract(erased, erased.length);
+        document.removeStrokes(erased, erased.length);
+        assertEquals(3, document.getStrokeCount());
+        document.insertStrokes(erased, erased.length, removed);
+
+        assertEquals(6, document.getStrokeCount());
+        assertEquals(points, document.getTotalPointCount());
+        for(int stroke = 0; stroke < 6; stroke++){
+            assertEquals(0xFF000000 | stroke, document.getColor(stroke));
+            assertEquals(stroke % 2, document.getLayer(stroke));
+            assertEquals(1 + stroke % 2, document.getPointCount(stroke));
+            assertEquals(POINTS[2 * (stroke % 2)], document.getCoords()[document.getCoordOffset(stroke)], 0);
+        }
+        assertTrue(document.restoreStroke());
+        assertEquals(0xFF000006, document.getColor(6));
+        assertEquals(points + 1, document.getTotalPointCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void layerOutOfRange_isRejected(){
+        new StrokeDocument().addStroke(0xFF000000, 3, Brush.ROUND, StrokeDocument.MAX_LAYERS, POINTS, 0, 3);
+    }
+
+    private static byte[] bytes(StrokeDocument document) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        document.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes){
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    //confere que a versao mudou e retorna a nova
+    private static int assertChanged(StrokeDocument document, int version){
+        assertTrue(document.getVersion() != version);
+        return document.getVersion();
+    }
+}
@@ -0,0 +1,183 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da geometria dos tracos sem Android: os segmentos ao vivo e os do replay
+ * do documento tem que ser iguais.
+ */
+public class StrokeGeometryTest {
+    private static final float TOLERANCE = 10;
+
+    @Test
+    public void liveSegments_matchReplayOfAcceptedPoints() throws Exception {
+        Recorder live = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(TOLERANCE, live);
+
+        geometry.start(2, 0, 0, 0);
+        for(int i = 1; i <= 20; i++)
+            geometry.addSample(2, i * 7, (i % 3) * 13, i * 8);
+        geometry.end(2);
+
+        PointBuffer points = geometry.getPoints(2);
+        Recorder replayed = new Recorder();
+        StrokeGeometry.replay(2, points.getCoords(), 0, points.getPointCount(),
+                new float[PointerStateTable.SEGMENT_SIZE], replayed);
+
+        assertTrue(live.count > 1);
+        assertEquals(live.count, replayed.count);
+        assertArrayEquals(Arrays.copyOf(live.values, live.size), Arrays.copyOf(replayed.values, replayed.size), 0);
+    }
+
+    @Test
+    public void filteredSamples_emitNothing() throws Exception {
+        Recorder recorder = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(TOLERANCE, recorder);
+
+        geometry.start(0, 100, 100, 0);
+        assertFalse(geometry.addSample(0, 104, 96, 8));
+        assertTrue(geometry.addSample(0, 120, 100, 16));
+
+        //o start e um segmento
+        assertEquals(2, recorder.count);
+        assertEquals(2, geometry.getPoints(0).getPointCount());
+    }
+
+    @Test
+    public void pointers_areIndependent() throws Exception {
+        Recorder recorder = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(TOLERANCE, recorder);
+
+        geometry.start(0, 0, 0, 0);
+        geometry.start(1, 500, 500, 0);
+        geometry.addSample(1, 540, 500, 8);
+        geometry.addSample(0, 0, 40, 8);
+        geometry.end(1);
+
+        assertTrue(geometry.isActive(0));
+        assertFalse(geometry.isActive(1));
+        assertFalse(geometry.addSample(1, 600, 600, 16));
+        assertEquals(500, geometry.getPoints(1).getX(0), 0);
+        assertEquals(40, geometry.getPoints(0).getY(1), 0);
+    }
+
+    @Test
+    public void invalidId_isRejected() throws Exception {
+        Recorder recorder = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(TOLERANCE, recorder);
+
+        assertFalse(geometry.start(PointerStateTable.MAX_POINTERS, 0, 0, 0));
+        assertFalse(geometry.addSample(-1, 50, 50, 8));
+        assertEquals(0, recorder.count);
+    }
+
+    @Test
+    public void adaptiveTolerance_acceptsMoreWhenSlowThanWhenFast() throws Exception {
+        Recorder recorder = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(3, 16, 0, recorder);
+
+        //mesma reta de 4 px por amostra: devagar (0.1 px/ms) e rapido (4 px/ms)
+        geometry.start(0, 0, 0, 0);
+        geometry.start(1, 0, 100, 0);
+        for(int i = 1; i <= 50; i++){
+            geometry.addSample(0, i * 4, 0, i * 40);
+            geometry.addSample(1, i * 4, 100, i);
+        }
+
+        assertEquals(51, geometry.getSampleCount(0));
+        assertTrue(geometry.getPoints(0).getPointCount() > 2 * geometry.getPoints(1).getPointCount());
+    }
+
+    @Test
+    public void adaptiveTolerance_keepsCorners() throws Exception {
+        Recorder recorder = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(3, 16, 0, recorder);
+
+        //rapido pra direita e depois voltando: a volta e aceita com a tolerancia minima
+        geometry.start(0, 0, 0, 0);
+        for(int i = 1; i <= 10; i++)
+            geometry.addSample(0, i * 20, 0, i);
+        assertTrue(geometry.addSample(0, 196, 0, 11));
+    }
+
+    @Test
+    public void simplification_storesFewerPointsWithTheSameEnds() throws Exception {
+        Recorder recorder = new Recorder();
+        StrokeGeometry geometry = new StrokeGeometry(3, 3, 1, recorder);
+
+        geometry.start(0, 0, 0, 0);
+        for(int i = 1; i <= 40; i++)
+            geometry.addSample(0, i * 5, i < 20 ? 0 : (i - 20) * 5, i * 8);
+        geometry.end(0);
+
+        PointBuffer accepted = geometry.getPoints(0);
+        PointBuffer stored = geometry.getStoredPoints(0);
+        int last = stored.getPointCount() - 1;
+        assertTrue(stored.getPointCount() < accepted.getPointCount() / 4);
+        assertEquals(accepted.getX(accepted.getPointCount() - 1), stored.getX(last), 0);
+        assertEquals(stored.getX(last - 1), stored.getX(last), 0);
+        //o canto continua la
+        boolean corner = false;
+        for(int i = 0; i < stored.getPointCount(); i++)
+            corner |= stored.getX(i) == 100 && stored.getY(i) == 0;
+        assertTrue(corner);
+    }
+
+    @Test
+    public void withoutSimplification_storedPointsAreTheAcceptedOnes() throws Exception {
+        StrokeGeometry geometry = new StrokeGeometry(TOLERANCE, new Recorder());
+
+        geometry.start(0, 0, 0, 0);
+        geometry.addSample(0, 30, 0, 8);
+        geometry.end(0);
+        assertSame(geometry.getPoints(0), geometry.getStoredPoints(0));
+    }
+
+    @Test
+    public void scale_keepsToleranceInScreenPixels() throws Exception {
+        StrokeGeometry geometry = new StrokeGeometry(TOLERANCE, new Recorder());
+
+        //com zoom de 4x, 3 unidades sao 12 pixels da tela e passam da tolerancia
+        geometry.setScale(4);
+        geometry.start(0, 0, 0, 0);
+        assertTrue(geometry.addSample(0, 3, 0, 8));
+
+        //de longe, 1/4, 30 unidades sao so 7.5 pixels
+        geometry.setScale(0.25f);
+        geometry.start(1, 0, 0, 0);
+        assertFalse(geometry.addSample(1, 30, 0, 8));
+    }
+
+    //guarda em sequencia o start (id, x, y) e cada segmento (id e os 6 valores)
+    private static class Recorder implements StrokeGeometry.SegmentListener {
+        float[] values = new float[64];
+        int size;
+        int count;
+
+        @Override
+        public void onStrokeStart(int id, float x, float y) {
+            add(id);
+            add(x);
+            add(y);
+            count++;
+        }
+
+        @Override
+        public void onSegment(int id, float[] segment) {
+            add(id);
+            for(int i = 0; i < PointerStateTable.SEGMENT_SIZE; i++)
+                add(segment[i]);
+            count++;
+        }
+
+        private void add(float value){
+            if(size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
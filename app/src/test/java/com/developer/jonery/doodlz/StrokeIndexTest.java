@@ -0,0 +1,179 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do indice espacial: as consultas tem que achar o mesmo que olhar todos os
+ * tracos, e continuar certas depois de undo, redo e tracos apagados.
+ */
+public class StrokeIndexTest {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 1800;
+
+    @Test
+    public void query_matchesLinearScan() throws Exception {
+        StrokeDocument document = randomDocument(2000, 3);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+        assertQueriesMatchLinearScan(document, index, new Random(5));
+    }
+
+    @Test
+    public void removeLastAndAdd_followUndoAndRedo() throws Exception {
+        StrokeDocument document = randomDocument(300, 1);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+
+        for(int i = 0; i < 40; i++){
+            document.removeLastStroke();
+            index.removeLast();
+        }
+        for(int i = 0; i < 15; i++){
+            document.restoreStroke();
+            index.add(document, document.getStrokeCount() - 1);
+        }
+        assertEquals(document.getStrokeCount(), index.getStrokeCount());
+        assertQueriesMatchLinearScan(document, index, new Random(6));
+    }
+
+    @Test
+    public void removeStrokes_renumbersLikeDocument() throws Exception {
+        StrokeDocument document = randomDocument(500, 2);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+
+        int[] removed = {0, 7, 8, 120, 499};
+        document.removeStrokes(removed, removed.length);
+        index.removeStrokes(removed, removed.length);
+        assertEquals(495, index.getStrokeCount());
+        assertQueriesMatchLinearScan(document, index, new Random(7));
+    }
+
+    @Test
+    public void insertStrokes_undoesRemoveStrokes() throws Exception {
+        StrokeDocument document = randomDocument(500, 2);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+
+        int[] erased = {0, 7, 8, 120, 499};
+        StrokeDocument removed = document.extract(erased, erased.length);
+        document.removeStrokes(erased, erased.length);
+        index.removeStrokes(erased, erased.length);
+        document.insertStrokes(erased, erased.length, removed);
+        index.insertStrokes(document, erased, erased.length);
+        assertEquals(500, index.getStrokeCount());
+        assertQueriesMatchLinearScan(document, index, new Random(11));
+    }
+
+    @Test
+    public void ensureSize_keepsStrokesOutsideOldArea() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(0xFF000000, 4, new float[]{900, 900, 950, 950}, 0, 2);
+        StrokeIndex index = new StrokeIndex(100, 100);
+        index.add(document, 0);
+
+        int[] out = new int[1];
+        assertEquals(1, index.query(890, 890, 960, 960, -1, out));
+        index.ensureSize(1000, 1000);
+        assertEquals(1, index.query(890, 890, 960, 960, -1, out));
+        assertEquals(0, index.query(0, 0, 100, 100, -1, out));
+    }
+
+    @Test
+    public void queryPath_findsThinStrokeCrossedByFastMove() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        //traco vertical em x = 500 e um horizontal longe do caminho
+        document.addStroke(0xFF000000, 2, new float[]{500, 100, 500, 300}, 0, 2);
+        document.addStroke(0xFF000000, 2, new float[]{100, 700, 300, 700}, 0, 2);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+
+        //o dedo pulou de um lado pro outro entre duas amostras, sem amostra perto do traco
+        int[] out = new int[2];
+        assertEquals(1, index.queryPath(document, 400, 200, 600, 200, 5, -1, out));
+        assertEquals(0, out[0]);
+        //passando perto, mas longe mais que o raio e a metade da grossura
+        assertEquals(0, index.queryPath(document, 400, 310, 600, 310, 5, -1, out));
+        assertEquals(1, index.queryPath(document, 400, 305, 600, 305, 5, -1, out));
+    }
+
+    @Test
+    public void queryPath_onlyReturnsStrokesOfLayer() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        float[] line = {100, 100, 200, 100};
+        document.addStroke(0xFF000000, 4, Brush.ROUND, 0, line, 0, 2);
+        document.addStroke(0xFF000000, 4, Brush.ROUND, 1, line, 0, 2);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+
+        int[] out = new int[2];
+        assertEquals(1, index.queryPath(document, 150, 100, 150, 100, 5, 1, out));
+        assertEquals(1, out[0]);
+        assertEquals(2, index.queryPath(document, 150, 100, 150, 100, 5, -1, out));
+    }
+
+    @Test
+    public void queryPath_hitsFillOnlyAtItsSeed() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        //balde tocado em (150, 150) que pintou de (100, 100) a (400, 400), tolerancia 32
+        document.addStroke(0xFFFF0000, 32, Brush.FILL, 0, new float[]{150, 150, 100, 100, 400, 400}, 0, 3);
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        index.rebuild(document);
+
+        int[] out = new int[1];
+        assertEquals(1, index.query(300, 300, 310, 310, -1, out));
+        assertEquals(0, index.queryPath(document, 300, 300, 310, 310, 5, -1, out));
+        assertEquals(1, index.queryPath(document, 140, 150, 160, 150, 5, -1, out));
+    }
+
+    //retangulos aleatorios de varios tamanhos, comparados com o teste de todos os tracos
+    private static void assertQueriesMatchLinearScan(StrokeDocument document, StrokeIndex index, Random random){
+        int[] out = new int[document.getStrokeCount()];
+        float[] bounds = new float[4];
+        for(int q = 0; q < 200; q++){
+            float size = random.nextInt(4) == 0 ? 600 : 40;
+            float left = random.nextFloat() * WIDTH - size / 2;
+            float top = random.nextFloat() * HEIGHT - size / 2;
+            float right = left + random.nextFloat() * size;
+            float bottom = top + random.nextFloat() * size;
+            int layer = random.nextInt(3) - 1;
+
+            int found = index.query(left, top, right, bottom, layer, out);
+            int expected = 0;
+            for(int stroke = 0; stroke < document.getStrokeCount(); stroke++){
+                document.getBounds(stroke, bounds);
+                float reach = document.getBrush(stroke).getReach(document.getWidth(stroke));
+                if((layer < 0 || document.getLayer(stroke) == layer) && bounds[0] - reach <= right
+                        && bounds[2] + reach >= left && bounds[1] - reach <= bottom && bounds[3] + reach >= top){
+                    assertTrue("faltou o traco " + stroke, expected < found);
+                    assertEquals(stroke, out[expected++]);
+                }
+            }
+            assertEquals(expected, found);
+        }
+    }
+
+    //rabiscos curtos espalhados pela area, em layers camadas
+    private static StrokeDocument randomDocument(int strokes, int layers){
+        Random random = new Random(strokes);
+        StrokeDocument document = new StrokeDocument();
+        float[] points = new float[40];
+        for(int stroke = 0; stroke < strokes; stroke++){
+            int pointCount = 1 + random.nextInt(points.length / 2);
+            float x = random.nextFloat() * WIDTH;
+            float y = random.nextFloat() * HEIGHT;
+            for(int i = 0; i < pointCount; i++){
+                points[2 * i] = x += random.nextFloat() * 30 - 15;
+                points[2 * i + 1] = y += random.nextFloat() * 30 - 15;
+            }
+            Brush brush = Brush.values()[random.nextInt(Brush.values().length)];
+            document.addStroke(0xFF000000, 1 + random.nextFloat() * 20, brush, random.nextInt(layers),
+                    points, 0, pointCount);
+        }
+        return document;
+    }
+}
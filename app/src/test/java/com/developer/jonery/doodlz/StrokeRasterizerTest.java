@@ -0,0 +1,357 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do rasterizador sem Android. A cobertura e comparada com uma referencia
+ * feita com 16x16 amostras por pixel da forma exata do traco (o que o anti-alias do
+ * Skia aproxima), e as imagens de golden/ pegam qualquer mudanca no resultado.
+ * Pra gravar as imagens de novo: -Dgolden.record=true rodando do diretorio app.
+ */
+public class StrokeRasterizerTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+    //diferenca maxima num pixel e media na imagem toda, de 0 a 255, contra a referencia;
+    //do lado de dentro de curvas mais fechadas que a grossura a cobertura e a da borda
+    //mais perto so, entao alguns pixels ali podem passar de MAX_PIXEL_ERROR
+    private static final int MAX_PIXEL_ERROR = 24;
+    private static final int MAX_OUTLIERS = 4;
+    private static final double MAX_MEAN_ERROR = 0.25;
+    //diferenca maxima por canal contra as imagens golden
+    private static final int GOLDEN_TOLERANCE = 2;
+
+    //pontos aceitos de um rabisco curvo, como os que a StrokeGeometry guarda
+    private static final float[] SCRIBBLE = {
+            12, 50, 30, 22, 58, 14, 86, 30, 96, 58, 80, 86, 52, 90, 40, 66, 62, 52, 110, 60
+    };
+
+    @Test
+    public void straightStroke_matchesSupersampledReference() throws Exception {
+        float[] line = {10, 20, 30, 24, 50, 28, 70, 32, 90, 36};
+        assertMatchesReference(line, 5, 100, 60);
+        assertMatchesReference(line, 1, 100, 60);
+    }
+
+    @Test
+    public void curvedStroke_matchesSupersampledReference() throws Exception {
+        assertMatchesReference(SCRIBBLE, 5, 128, 104);
+        assertMatchesReference(SCRIBBLE, 18, 128, 104);
+    }
+
+    @Test
+    public void roundCaps_extendHalfWidthPastEnds() throws Exception {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(60, 20);
+        rasterizer.fill(WHITE);
+        rasterizer.drawStroke(BLACK, 10, new float[]{20, 10, 30, 10, 40, 10}, 0, 3);
+        int[] pixels = rasterizer.getPixels();
+
+        //o path termina no meio entre os dois ultimos pontos, x = 35, e a ponta vai ate 40
+        assertEquals(BLACK, pixels[10 * 60 + 37]);
+        assertEquals(BLACK, pixels[10 * 60 + 16]);
+        assertEquals(WHITE, pixels[10 * 60 + 41]);
+        assertEquals(WHITE, pixels[10 * 60 + 13]);
+        //canto do retangulo que uma ponta quadrada pintaria
+        assertEquals(WHITE, pixels[5 * 60 + 39]);
+    }
+
+    @Test
+    public void singlePointStroke_drawsNothing() throws Exception {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(20, 20);
+        rasterizer.fill(WHITE);
+        rasterizer.drawStroke(BLACK, 8, new float[]{10, 10}, 0, 1);
+
+        for(int pixel : rasterizer.getPixels())
+            assertEquals(WHITE, pixel);
+    }
+
+    @Test
+    public void translucentStroke_blendsOnceWhereItCrossesItself() throws Exception {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(100, 100);
+        rasterizer.fill(WHITE);
+        //um laco que passa duas vezes perto de (50, 50)
+        float[] loop = {10, 50, 50, 50, 90, 50, 90, 90, 50, 90, 50, 50, 50, 10};
+        rasterizer.drawStroke(0x80FF0000, 6, loop, 0, loop.length / 2);
+        int[] pixels = rasterizer.getPixels();
+
+        int single = pixels[50 * 100 + 25];
+        assertEquals(0xFFFF7F7F, single);
+        assertEquals(single, pixels[50 * 100 + 50]);
+    }
+
+    @Test
+    public void transparentTarget_keepsStrokeColorWithCoverageAlpha() throws Exception {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(40, 20);
+        rasterizer.drawStroke(0xFF2040C0, 5, new float[]{5, 10, 20, 10, 35, 10}, 0, 3);
+        int[] pixels = rasterizer.getPixels();
+
+        assertEquals(0xFF2040C0, pixels[10 * 40 + 20]);
+        //pixel da borda: cor igual, so o alpha muda
+        int edge = pixels[12 * 40 + 20];
+        assertEquals(0x2040C0, edge & 0xFFFFFF);
+        assertTrue((edge >>> 24) > 0 && (edge >>> 24) < 255);
+        assertEquals(0, pixels[0]);
+    }
+
+    @Test
+    public void transform_scalesPointsAndWidth() throws Exception {
+        float[] points = {10, 10, 30, 10, 50, 10};
+        StrokeRasterizer full = new StrokeRasterizer(60, 20);
+        full.drawStroke(BLACK, 6, points, 0, 3);
+        StrokeRasterizer half = new StrokeRasterizer(30, 10);
+        half.setTransform(0.5f, 0, 0);
+        half.drawStroke(BLACK, 6, points, 0, 3);
+
+        //a linha de 6px vira 3px: cobre as linhas 3 a 6 de um pixel de altura com bordas
+        assertEquals(BLACK, full.getPixels()[10 * 60 + 20]);
+        assertEquals(BLACK, half.getPixels()[5 * 30 + 10]);
+        assertEquals(0, half.getPixels()[2 * 30 + 10]);
+        assertEquals(0, half.getPixels()[8 * 30 + 10]);
+    }
+
+    @Test
+    public void stampedStroke_staysWithinBrushReach() throws Exception {
+        for(Brush brush : new Brush[]{Brush.AIRBRUSH, Brush.MARKER, Brush.PENCIL}){
+            StrokeRasterizer rasterizer = new StrokeRasterizer(80, 60);
+            rasterizer.drawStroke(BLACK, 8, brush, new float[]{20, 30, 40, 30, 60, 30}, 0, 3);
+            int[] pixels = rasterizer.getPixels();
+
+            float reach = brush.getReach(8);
+            int painted = 0;
+            for(int y = 0; y < 60; y++)
+                for(int x = 0; x < 80; x++)
+                    if(pixels[y * 80 + x] != 0){
+                        painted++;
+                        assertTrue(brush + " pintou fora do alcance em " + x + "," + y,
+                                x >= 20 - reach && x <= 60 + reach && Math.abs(y - 30) <= reach);
+                    }
+            assertTrue(brush + " nao pintou", painted > 0);
+        }
+    }
+
+    @Test
+    public void markerOverlap_neverPassesItsOpacity() throws Exception {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(60, 40);
+        rasterizer.drawStroke(BLACK, 10, Brush.MARKER, new float[]{10, 20, 30, 20, 50, 20}, 0, 3);
+
+        int maxAlpha = 0;
+        for(int pixel : rasterizer.getPixels())
+            maxAlpha = Math.max(maxAlpha, pixel >>> 24);
+        //os carimbos se sobrepoem muito, mas o traco so pinta uma vez com a opacidade
+        assertEquals(Brush.MARKER.getStrokeAlpha(BLACK), maxAlpha, 1);
+    }
+
+    @Test
+    public void singlePointStampedStroke_drawsOneDab() throws Exception {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(40, 40);
+        rasterizer.drawStroke(BLACK, 6, Brush.AIRBRUSH, new float[]{20, 20}, 0, 1);
+        int[] pixels = rasterizer.getPixels();
+
+        //um carimbo so, com o alpha do fluxo no meio e caindo pra borda
+        int center = pixels[20 * 40 + 20] >>> 24;
+        assertEquals(Brush.AIRBRUSH.getFlowAlpha(), center, 2);
+        assertTrue((pixels[20 * 40 + 26] >>> 24) < center);
+        assertTrue((pixels[20 * 40 + 14] >>> 24) < center);
+        assertEquals(0, pixels[0]);
+    }
+
+    @Test
+    public void lowerLayerStroke_drawnUnderEarlierUpperStroke() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        float[] line = {5, 10, 20, 10, 35, 10};
+        document.addStroke(BLACK, 8, Brush.ROUND, 1, line, 0, 3);
+        document.addStroke(0xFFFF0000, 8, Brush.ROUND, 0, line, 0, 3);
+
+        StrokeRasterizer rasterizer = new StrokeRasterizer(40, 20);
+        rasterizer.fill(WHITE);
+        rasterizer.drawDocument(document);
+
+        //o vermelho veio depois, mas esta na camada de baixo
+        assertEquals(BLACK, rasterizer.getPixels()[10 * 40 + 20]);
+    }
+
+    @Test
+    public void fillStroke_paintsInsideTheRingUpToItsRectangle() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(BLACK, 4, new float[]{10, 10, 50, 10, 50, 50, 10, 50, 10, 10, 10, 10}, 0, 6);
+        //o retangulo guardado corta o preenchimento em y = 30
+        document.addStroke(0xFFFF0000, 32, Brush.FILL, 0, new float[]{30, 20, 0, 0, 60, 30}, 0, 3);
+
+        StrokeRasterizer rasterizer = new StrokeRasterizer(60, 60);
+        rasterizer.fill(WHITE);
+        rasterizer.drawDocument(document);
+        int[] pixels = rasterizer.getPixels();
+
+        assertEquals(0xFFFF0000, pixels[20 * 60 + 30]);
+        assertEquals(0xFFFF0000, pixels[29 * 60 + 20]);
+        assertEquals(WHITE, pixels[35 * 60 + 30]);
+        assertEquals(WHITE, pixels[5 * 60 + 5]);
+    }
+
+    @Test
+    public void document_matchesGoldenImage() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(BLACK, 5, SCRIBBLE, 0, SCRIBBLE.length / 2);
+        document.addStroke(0xFF1E88E5, 12, new float[]{20, 110, 60, 100, 100, 120, 110, 150}, 0, 4);
+        document.addStroke(0x99E53935, 20, new float[]{10, 150, 50, 120, 90, 150, 120, 110}, 0, 4);
+        document.addStroke(0xFF43A047, 1, new float[]{5, 5, 120, 25, 5, 45}, 0, 3);
+
+        StrokeRasterizer rasterizer = new StrokeRasterizer(128, 160);
+        rasterizer.fill(WHITE);
+        rasterizer.drawDocument(document);
+        assertMatchesGolden("document.png", rasterizer);
+    }
+
+    @Test
+    public void scaledDocument_matchesGoldenImage() throws Exception {
+        StrokeDocument document = new StrokeDocument();
+        document.addStroke(0xFF6A1B9A, 8, SCRIBBLE, 0, SCRIBBLE.length / 2);
+
+        StrokeRasterizer rasterizer = new StrokeRasterizer(64, 52);
+        rasterizer.fill(WHITE);
+        rasterizer.setTransform(0.5f, 0, 0);
+        rasterizer.drawDocument(document);
+        assertMatchesGolden("thumbnail.png", rasterizer);
+    }
+
+    //desenha em preto no branco e compara cada pixel com a cobertura de referencia
+    private static void assertMatchesReference(float[] points, float strokeWidth, int width, int height){
+        StrokeRasterizer rasterizer = new StrokeRasterizer(width, height);
+        rasterizer.fill(WHITE);
+        rasterizer.drawStroke(BLACK, strokeWidth, points, 0, points.length / 2);
+        int[] pixels = rasterizer.getPixels();
+        float[] reference = referenceCoverage(points, strokeWidth, width, height);
+
+        long total = 0;
+        int outliers = 0;
+        for(int i = 0; i < pixels.length; i++){
+            int expected = Math.round(255 * (1 - reference[i]));
+            int error = Math.abs((pixels[i] & 0xFF) - expected);
+            total += error;
+            if(error > MAX_PIXEL_ERROR)
+                outliers++;
+        }
+        double mean = (double) total / pixels.length;
+        assertTrue(outliers + " pixels com erro maior que " + MAX_PIXEL_ERROR, outliers <= MAX_OUTLIERS);
+        assertTrue("erro medio " + mean, mean <= MAX_MEAN_ERROR);
+    }
+
+    //fracao de cada pixel dentro da grossura do traco, contando 16x16 amostras
+    private static float[] referenceCoverage(float[] points, float strokeWidth, int width, int height){
+        //a curva bem fina: 64 retas por quadTo
+        final float[] curve = new float[2 * (64 * points.length + 1)];
+        final int[] count = new int[1];
+        StrokeGeometry.replay(0, points, 0, points.length / 2, new float[PointerStateTable.SEGMENT_SIZE],
+                new StrokeGeometry.SegmentListener() {
+                    @Override
+                    public void onStrokeStart(int id, float x, float y) {
+                        curve[count[0]++] = x;
+                        curve[count[0]++] = y;
+                    }
+
+                    @Override
+                    public void onSegment(int id, float[] segment) {
+                        for(int i = 1; i <= 64; i++){
+                            float t = i / 64f;
+                            float u = 1 - t;
+                            curve[count[0]++] = u * u * segment[0] + 2 * u * t * segment[2] + t * t * segment[4];
+                            curve[count[0]++] = u * u * segment[1] + 2 * u * t * segment[3] + t * t * segment[5];
+                        }
+                    }
+                });
+
+        float halfWidth = strokeWidth / 2;
+        float[] coverage = new float[width * height];
+        int[] near = new int[count[0] / 2];
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                //so os pixels na borda precisam das amostras: as retas a menos de meia
+                //diagonal mais a grossura do centro sao as unicas que alcancam elas
+                float centerX = x + 0.5f, centerY = y + 0.5f;
+                int nearCount = 0;
+                float closest = Float.MAX_VALUE;
+                for(int i = 0; i + 3 < count[0]; i += 2){
+                    float distance = distanceToSegment(curve, i, centerX, centerY);
+                    closest = Math.min(closest, distance);
+                    if(distance <= halfWidth + 0.75f)
+                        near[nearCount++] = i;
+                }
+                if(closest > halfWidth + 0.75f)
+                    continue;
+                if(closest < halfWidth - 0.75f){
+                    coverage[y * width + x] = 1;
+                    continue;
+                }
+
+                int inside = 0;
+                for(int sy = 0; sy < 16; sy++){
+                    for(int sx = 0; sx < 16; sx++){
+                        float px = x + (sx + 0.5f) / 16;
+                        float py = y + (sy + 0.5f) / 16;
+                        for(int n = 0; n < nearCount; n++){
+                            if(distanceToSegment(curve, near[n], px, py) <= halfWidth){
+                                inside++;
+                                break;
+                            }
+                        }
+                    }
+                }
+                coverage[y * width + x] = inside / 256f;
+            }
+        }
+        return coverage;
+    }
+
+    //distancia de (px, py) ate a reta que comeca em curve[i]
+    private static float distanceToSegment(float[] curve, int i, float px, float py){
+        float ax = curve[i], ay = curve[i + 1];
+        float dx = curve[i + 2] - ax, dy = curve[i + 3] - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        float ex = px - ax - t * dx, ey = py - ay - t * dy;
+        return (float) Math.sqrt(ex * ex + ey * ey);
+    }
+
+    private static void assertMatchesGolden(String name, StrokeRasterizer rasterizer) throws IOException {
+        int width = rasterizer.getWidth();
+        int height = rasterizer.getHeight();
+        if(Boolean.getBoolean("golden.record")){
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(0, 0, width, height, rasterizer.getPixels(), 0, width);
+            ImageIO.write(image, "png", new File("src/test/resources/golden", name));
+            return;
+        }
+
+        InputStream in = StrokeRasterizerTest.class.getResourceAsStream("/golden/" + name);
+        assertNotNull("falta a imagem golden/" + name, in);
+        BufferedImage golden;
+        try {
+            golden = ImageIO.read(in);
+        }
+        finally {
+            in.close();
+        }
+        assertEquals(width, golden.getWidth());
+        assertEquals(height, golden.getHeight());
+
+        int[] expected = golden.getRGB(0, 0, width, height, null, 0, width);
+        int[] actual = rasterizer.getPixels();
+        for(int i = 0; i < expected.length; i++){
+            for(int shift = 0; shift < 32; shift += 8){
+                int difference = Math.abs(((expected[i] >>> shift) & 0xFF) - ((actual[i] >>> shift) & 0xFF));
+                if(difference > GOLDEN_TOLERANCE)
+                    fail(name + " difere em (" + i % width + ", " + i / width + "): esperado "
+                            + Integer.toHexString(expected[i]) + ", obtido " + Integer.toHexString(actual[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da simplificacao dos tracos enquanto os pontos chegam.
+ */
+public class StrokeSimplifierTest {
+
+    @Test
+    public void straightLine_keepsOnlyTheEnds() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(1, 32);
+        PointBuffer source = new PointBuffer(16);
+        source.add(0, 0);
+        simplifier.start(source);
+        for(int i = 1; i <= 10; i++){
+            source.add(i * 10, i * 5 + (i % 2) * 0.5f);
+            simplifier.addPoint(source);
+        }
+        PointBuffer kept = simplifier.finish(source);
+
+        //o primeiro, o ultimo e o ultimo de novo pro replay chegar nele
+        assertEquals(3, kept.getPointCount());
+        assertEquals(0, kept.getX(0), 0);
+        assertEquals(100, kept.getX(1), 0);
+        assertEquals(100, kept.getX(2), 0);
+        assertEquals(50, kept.getY(2), 0);
+    }
+
+    @Test
+    public void corner_isKept() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(1, 32);
+        PointBuffer source = new PointBuffer(16);
+        source.add(0, 0);
+        simplifier.start(source);
+        for(int i = 1; i <= 5; i++){
+            source.add(i * 10, 0);
+            simplifier.addPoint(source);
+        }
+        for(int i = 1; i <= 5; i++){
+            source.add(50, i * 10);
+            simplifier.addPoint(source);
+        }
+        PointBuffer kept = simplifier.finish(source);
+
+        assertEquals(4, kept.getPointCount());
+        assertEquals(50, kept.getX(1), 0);
+        assertEquals(0, kept.getY(1), 0);
+        assertEquals(50, kept.getY(2), 0);
+    }
+
+    @Test
+    public void window_limitsHowManyPointsAreSkipped() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(1, 4);
+        PointBuffer source = new PointBuffer(32);
+        source.add(0, 0);
+        simplifier.start(source);
+        for(int i = 1; i <= 20; i++){
+            source.add(i, 0);
+            simplifier.addPoint(source);
+        }
+        PointBuffer kept = simplifier.finish(source);
+
+        for(int i = 1; i < kept.getPointCount(); i++)
+            assertTrue(kept.getX(i) - kept.getX(i - 1) <= 4);
+        assertTrue(kept.getPointCount() < 20);
+    }
+
+    @Test
+    public void singlePoint_staysSingle() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(1, 32);
+        PointBuffer source = new PointBuffer(4);
+        source.add(7, 9);
+        simplifier.start(source);
+
+        PointBuffer kept = simplifier.finish(source);
+        assertEquals(1, kept.getPointCount());
+        assertEquals(9, kept.getY(0), 0);
+    }
+
+    @Test
+    public void start_forgetsThePreviousStroke() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(1, 32);
+        PointBuffer source = new PointBuffer(8);
+        source.add(0, 0);
+        simplifier.start(source);
+        source.add(10, 40);
+        simplifier.addPoint(source);
+        simplifier.finish(source);
+
+        source.clear();
+        source.add(5, 5);
+        simplifier.start(source);
+        assertEquals(1, simplifier.getPoints().getPointCount());
+        assertEquals(5, simplifier.getPoints().getX(0), 0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da reducao pela metade que monta os niveis da piramide de tiles.
+ */
+public class TileDownsamplerTest {
+
+    @Test
+    public void halve_averagesEachChannelOfTheBlock() throws Exception {
+        int[] source = {
+                0xFF000000, 0xFFFFFFFF,
+                0x00FF0000, 0x800000FF};
+        int[] destination = new int[1];
+        TileDownsampler.halve(source, 0, 2, destination, 0, 1, 1, 1);
+
+        //alpha (255 + 255 + 0 + 128) / 4, vermelho (0 + 255 + 255 + 0) / 4, verde 255 / 4
+        //e azul (255 + 255) / 4, todos arredondados
+        assertEquals(0xA0804080, destination[0]);
+    }
+
+    @Test
+    public void halve_keepsSolidColors() throws Exception {
+        int[] source = new int[8 * 8];
+        java.util.Arrays.fill(source, 0xFF3366CC);
+        int[] destination = new int[4 * 4];
+        TileDownsampler.halve(source, 0, 8, destination, 0, 4, 4, 4);
+        for(int pixel : destination)
+            assertEquals(0xFF3366CC, pixel);
+    }
+
+    @Test
+    public void halve_matchesPerChannelAverage() throws Exception {
+        Random random = new Random(5);
+        int[] source = new int[32 * 16];
+        for(int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+        int[] destination = new int[16 * 8];
+        TileDownsampler.halve(source, 0, 32, destination, 0, 16, 16, 8);
+
+        for(int y = 0; y < 8; y++)
+            for(int x = 0; x < 16; x++){
+                int expected = 0;
+                for(int shift = 0; shift < 32; shift += 8){
+                    int sum = 0;
+                    for(int dy = 0; dy < 2; dy++)
+                        for(int dx = 0; dx < 2; dx++)
+                            sum += source[(2 * y + dy) * 32 + 2 * x + dx] >>> shift & 0xFF;
+                    expected |= ((sum + 2) / 4) << shift;
+                }
+                assertEquals(expected, destination[y * 16 + x]);
+            }
+    }
+
+    @Test
+    public void stride_writesOnlyTheQuadrant() throws Exception {
+        //origem de 4x4 no meio de uma linha de 10, destino no quadrante de baixo a
+        //direita de um tile de 4x4
+        int[] source = new int[10 * 4];
+        for(int y = 0; y < 4; y++)
+            for(int x = 0; x < 4; x++)
+                source[y * 10 + 3 + x] = 0xFF000000 | (y * 4 + x);
+        int[] destination = new int[4 * 4];
+        TileDownsampler.halve(source, 3, 10, destination, 2 * 4 + 2, 4, 2, 2);
+
+        assertEquals(0, destination[0]);
+        assertEquals(0, destination[2 * 4 + 1]);
+        //media de 0, 1, 4 e 5
+        assertEquals(0xFF000003, destination[2 * 4 + 2]);
+        //media de 10, 11, 14 e 15
+        assertEquals(0xFF00000D, destination[3 * 4 + 3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallSource_isRejected() throws Exception {
+        TileDownsampler.halve(new int[7], 0, 4, new int[4], 0, 2, 2, 2);
+    }
+}
@@ -0,0 +1,106 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes da fila de eventos de toque entre a thread de UI e a de render.
+ */
+public class TouchEventQueueTest {
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() throws Exception {
+        assertEquals(8, new TouchEventQueue(5).getCapacity());
+        assertEquals(8, new TouchEventQueue(8).getCapacity());
+    }
+
+    @Test
+    public void drain_deliversEventsInOrder() throws Exception {
+        TouchEventQueue queue = new TouchEventQueue(4);
+        queue.offer(TouchEventQueue.DOWN, 1, 10, 20, 100);
+        queue.offer(TouchEventQueue.MOVE, 1, 30, 40, 108);
+        queue.offer(TouchEventQueue.UP, 1, 0, 0, 116);
+
+        Recorder recorder = new Recorder(3);
+        assertEquals(3, queue.drain(recorder));
+        assertTrue(queue.isEmpty());
+        assertArrayEquals(new long[]{100, 108, 116}, recorder.times);
+        assertEquals(TouchEventQueue.MOVE, recorder.types[1]);
+        assertEquals(30, recorder.xs[1], 0);
+    }
+
+    @Test
+    public void fullQueue_rejectsUntilDrained() throws Exception {
+        TouchEventQueue queue = new TouchEventQueue(4);
+        for(int i = 0; i < 4; i++)
+            assertTrue(queue.offer(TouchEventQueue.MOVE, 0, i, i, i));
+        assertFalse(queue.offer(TouchEventQueue.MOVE, 0, 4, 4, 4));
+
+        queue.drain(new Recorder(4));
+        //depois de dar a volta no anel continua em ordem
+        for(int i = 0; i < 3; i++)
+            assertTrue(queue.offer(TouchEventQueue.MOVE, 0, i, i, 10 + i));
+        Recorder recorder = new Recorder(3);
+        queue.drain(recorder);
+        assertArrayEquals(new long[]{10, 11, 12}, recorder.times);
+    }
+
+    @Test
+    public void producerAndConsumerThreads_keepOrder() throws Exception {
+        final int count = 200000;
+        final TouchEventQueue queue = new TouchEventQueue(64);
+        final long[] next = new long[1];
+        final boolean[] ordered = {true};
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                TouchEventQueue.Consumer check = new TouchEventQueue.Consumer() {
+                    @Override
+                    public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+                        //x foi escrito junto com o time, tem que chegar igual
+                        if(time != next[0] || x != (float) (time % 1000))
+                            ordered[0] = false;
+                        next[0]++;
+                    }
+                };
+                while(next[0] < count)
+                    if(queue.drain(check) == 0)
+                        Thread.yield();
+            }
+        });
+        consumer.start();
+
+        for(long time = 0; time < count; time++)
+            while(!queue.offer(TouchEventQueue.MOVE, 0, time % 1000, 0, time))
+                Thread.yield();
+        consumer.join(10000);
+
+        assertFalse(consumer.isAlive());
+        assertTrue(ordered[0]);
+        assertEquals(count, next[0]);
+    }
+
+    //guarda os eventos recebidos
+    private static class Recorder implements TouchEventQueue.Consumer {
+        final int[] types;
+        final float[] xs;
+        final long[] times;
+        int count;
+
+        Recorder(int size){
+            types = new int[size];
+            xs = new float[size];
+            times = new long[size];
+        }
+
+        @Override
+        public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+            types[count] = type;
+            xs[count] = x;
+            times[count] = time;
+            count++;
+        }
+    }
+}
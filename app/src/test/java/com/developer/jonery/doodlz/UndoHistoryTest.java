@@ -0,0 +1,73 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do historico de undo e da compressao dos tiles.
+ */
+public class UndoHistoryTest {
+
+    @Test
+    public void codec_roundTripsPixels() throws Exception {
+        TileCodec codec = new TileCodec();
+        int[] pixels = new int[64 * 64 * 3];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = i % 97 == 0 ? 0xFF000000 | i : 0xFFFFFFFF;
+
+        byte[] compressed = codec.compress(pixels, pixels.length);
+        assertTrue(compressed.length < pixels.length * 4 / 10);
+
+        int[] restored = new int[pixels.length];
+        codec.decompress(compressed, restored, restored.length);
+        assertArrayEquals(pixels, restored);
+    }
+
+    @Test
+    public void undoThenRedo_movesEntryBetweenStacks() throws Exception {
+        UndoHistory history = new UndoHistory(1024);
+        UndoHistory.Entry entry = entry(100);
+
+        history.push(entry);
+        assertTrue(history.canUndo());
+        assertSame(entry, history.popUndo());
+        assertFalse(history.canUndo());
+
+        history.pushRedo(entry);
+        assertTrue(history.canRedo());
+        assertSame(entry, history.popRedo());
+        assertEquals(0, history.getUsedBytes());
+    }
+
+    @Test
+    public void newEdit_clearsRedo() throws Exception {
+        UndoHistory history = new UndoHistory(1024);
+        history.pushRedo(entry(100));
+
+        history.push(entry(100));
+        assertFalse(history.canRedo());
+        assertEquals(entry(100).getBytes(), history.getUsedBytes());
+    }
+
+    @Test
+    public void budget_evictsOldestUndoFirst() throws Exception {
+        UndoHistory history = new UndoHistory(3 * entry(100).getBytes());
+        UndoHistory.Entry oldest = entry(100);
+        history.push(oldest);
+        history.push(entry(100));
+        history.push(entry(100));
+        UndoHistory.Entry newest = entry(100);
+        history.push(newest);
+
+        assertTrue(history.getUsedBytes() <= history.getBudgetBytes());
+        assertSame(newest, history.popUndo());
+        history.popUndo();
+        assertNotSame(oldest, history.popUndo());
+        assertFalse(history.canUndo());
+    }
+
+    private static UndoHistory.Entry entry(int bytes){
+        return new UndoHistory.Entry(0, new int[]{0}, new byte[bytes]);
+    }
+}
@@ -0,0 +1,90 @@
+package com.developer.jonery.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do zoom e deslocamento da tela: os pontos vao e voltam entre tela e
+ * desenho, o zoom mantem parado o ponto entre os dedos e o nivel da piramide segue
+ * a escala.
+ */
+public class ViewportTest {
+
+    @Test
+    public void mapping_goesBothWays() throws Exception {
+        Viewport viewport = new Viewport();
+        viewport.setSizes(1000, 800, 2000, 2000);
+        viewport.zoom(2.5f, 300, 200);
+        viewport.pan(-40, 25);
+
+        float x = viewport.toContentX(512), y = viewport.toContentY(77);
+        assertEquals(512, viewport.toScreenX(x), 0.001f);
+        assertEquals(77, viewport.toScreenY(y), 0.001f);
+
+        float[] rect = {10, 20, 110, 220};
+        viewport.toScreen(rect);
+        viewport.toContent(rect);
+        assertArrayEquals(new float[]{10, 20, 110, 220}, rect, 0.001f);
+    }
+
+    @Test
+    public void zoom_keepsTheFocusInPlace() throws Exception {
+        Viewport viewport = new Viewport();
+        viewport.setSizes(1000, 800, 2000, 2000);
+
+        float x = viewport.toContentX(400), y = viewport.toContentY(300);
+        assertTrue(viewport.zoom(3, 400, 300));
+        assertEquals(3, viewport.getScale(), 0);
+        assertEquals(400, viewport.toScreenX(x), 0.001f);
+        assertEquals(300, viewport.toScreenY(y), 0.001f);
+    }
+
+    @Test
+    public void zoom_staysInsideTheLimits() throws Exception {
+        Viewport viewport = new Viewport();
+        viewport.zoom(1000, 0, 0);
+        assertEquals(Viewport.MAX_SCALE, viewport.getScale(), 0);
+        assertFalse(viewport.zoom(2, 0, 0));
+
+        viewport.zoom(1e-6f, 0, 0);
+        assertEquals(Viewport.MIN_SCALE, viewport.getScale(), 0);
+    }
+
+    @Test
+    public void pan_keepsPartOfTheDrawingOnScreen() throws Exception {
+        Viewport viewport = new Viewport();
+        viewport.setSizes(1000, 800, 2000, 2000);
+
+        viewport.pan(5000, -5000);
+        //a borda esquerda e a de baixo do desenho continuam na tela
+        assertTrue(viewport.toScreenX(0) < 1000);
+        assertTrue(viewport.toScreenY(2000) > 0);
+        assertFalse(viewport.pan(10, -10));
+
+        viewport.reset();
+        assertTrue(viewport.isIdentity());
+        assertEquals(123, viewport.toContentX(123), 0);
+    }
+
+    @Test
+    public void level_followsTheScale() throws Exception {
+        Viewport viewport = new Viewport();
+        assertEquals(0, viewport.getLevel(3));
+        viewport.zoom(4, 0, 0);
+        assertEquals(0, viewport.getLevel(3));
+
+        viewport.reset();
+        viewport.zoom(0.75f, 0, 0);
+        assertEquals(0, viewport.getLevel(3));
+        viewport.zoom(0.8f, 0, 0); //0.6
+        assertEquals(1, viewport.getLevel(3));
+
+        viewport.reset();
+        viewport.zoom(0.25f, 0, 0);
+        assertEquals(2, viewport.getLevel(3));
+        viewport.zoom(0.5f, 0, 0);
+        assertEquals(3, viewport.getLevel(3));
+        assertEquals(2, viewport.getLevel(2));
+    }
+}
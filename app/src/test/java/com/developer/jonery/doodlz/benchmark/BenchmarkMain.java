@@ -0,0 +1,32 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Roda todos os benchmarks deste pacote e grava o resultado em JSON, pra comparar
+ * entre versoes. Chamado pela task jmh do app/build.gradle; o primeiro argumento e
+ * o arquivo de saida e o segundo, opcional, um regex pra rodar so alguns.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        File result = new File(args.length > 0 ? args[0] : "build/reports/jmh/results.json");
+        String include = args.length > 1 ? args[1] : BenchmarkMain.class.getPackage().getName() + ".*";
+        if(result.getParentFile() != null)
+            result.getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.StrokeDocument;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo pra gravar e ler um StrokeDocument no formato do checkpoint do diario,
+ * com documentos de tamanhos diferentes montados a partir dos gestos sinteticos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentSerializationBenchmark {
+
+    @Param({"100", "1000"})
+    public int strokes;
+
+    private final StrokeDocument document = new StrokeDocument();
+    private final StrokeDocument readBack = new StrokeDocument();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        document.clear();
+        GestureTrace.generate(11, 1, strokes, 120).addStrokesTo(document, 10, 0xFF000000, 5);
+        serialized = write();
+    }
+
+    @Benchmark
+    public int writeDocument() throws IOException {
+        return write().length;
+    }
+
+    @Benchmark
+    public int readDocument() throws IOException {
+        readBack.clear();
+        return readBack.read(new DataInputStream(new ByteArrayInputStream(serialized)));
+    }
+
+    private byte[] write() throws IOException {
+        bytes.reset();
+        DataOutputStream out = new DataOutputStream(bytes);
+        document.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
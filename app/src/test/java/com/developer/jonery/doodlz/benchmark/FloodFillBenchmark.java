@@ -0,0 +1,132 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.ScanlineFill;
+import com.developer.jonery.doodlz.StrokeDocument;
+import com.developer.jonery.doodlz.StrokeRasterizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo do balde de tinta numa area de 2560x1600 a partir do canto de baixo, em
+ * branco ou com rabiscos (que ficam na parte da esquerda), com o ScanlineFill numa
+ * thread so, com as faixas num ForkJoinPool e com uma busca pixel a pixel numa
+ * fila, que e o que um balde simples faria. Cada chamada troca a cor entre
+ * vermelho e branco, entao a area pintada e sempre a mesma.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloodFillBenchmark {
+    private static final int WIDTH = 2560;
+    private static final int HEIGHT = 1600;
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int RED = 0xFFFF0000;
+    private static final int TOLERANCE = 32;
+    private static final int SEED_X = WIDTH - 1;
+    private static final int SEED_Y = HEIGHT - 1;
+
+    @Param({"blank", "scribbled"})
+    public String canvas;
+
+    private final int[] pixels = new int[WIDTH * HEIGHT];
+    private final ScanlineFill sequential = new ScanlineFill();
+    private ForkJoinPool pool;
+    private ScanlineFill parallel;
+    private int[] queue;
+    private boolean[] seen;
+    private boolean red;
+
+    @Setup
+    public void setUp(){
+        StrokeRasterizer rasterizer = new StrokeRasterizer(pixels, WIDTH, HEIGHT);
+        rasterizer.fill(WHITE);
+        if(canvas.equals("scribbled")){
+            StrokeDocument document = new StrokeDocument();
+            GestureTrace.generate(23, 5, 40, 120).addStrokesTo(document, 10, 0xFF000000, 5);
+            rasterizer.drawDocument(document);
+        }
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        parallel = new ScanlineFill(pool);
+        queue = new int[WIDTH * HEIGHT];
+        seen = new boolean[WIDTH * HEIGHT];
+        red = false;
+    }
+
+    @TearDown
+    public void tearDown(){
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int scanline(){
+        return sequential.fill(pixels, WIDTH, HEIGHT, SEED_X, SEED_Y, nextColor(), TOLERANCE);
+    }
+
+    @Benchmark
+    public int scanlineParallel(){
+        return parallel.fill(pixels, WIDTH, HEIGHT, SEED_X, SEED_Y, nextColor(), TOLERANCE);
+    }
+
+    //busca em largura com os 4 vizinhos de cada pixel, sem os trechos
+    @Benchmark
+    public int pixelQueue(){
+        int color = nextColor();
+        int start = SEED_Y * WIDTH + SEED_X;
+        int seed = pixels[start];
+        java.util.Arrays.fill(seen, false);
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        seen[start] = true;
+        while(head < tail){
+            int i = queue[head++];
+            pixels[i] = color;
+            int x = i % WIDTH;
+            if(x > 0)
+                tail = visit(i - 1, seed, tail);
+            if(x < WIDTH - 1)
+                tail = visit(i + 1, seed, tail);
+            if(i >= WIDTH)
+                tail = visit(i - WIDTH, seed, tail);
+            if(i < WIDTH * (HEIGHT - 1))
+                tail = visit(i + WIDTH, seed, tail);
+        }
+        return tail;
+    }
+
+    private int visit(int i, int seed, int tail){
+        if(!seen[i] && close(pixels[i], seed)){
+            seen[i] = true;
+            queue[tail++] = i;
+        }
+        return tail;
+    }
+
+    private static boolean close(int color, int seed){
+        return Math.abs((color >>> 24) - (seed >>> 24)) <= TOLERANCE
+                && Math.abs((color >> 16 & 0xFF) - (seed >> 16 & 0xFF)) <= TOLERANCE
+                && Math.abs((color >> 8 & 0xFF) - (seed >> 8 & 0xFF)) <= TOLERANCE
+                && Math.abs((color & 0xFF) - (seed & 0xFF)) <= TOLERANCE;
+    }
+
+    private int nextColor(){
+        red = !red;
+        return red ? RED : WHITE;
+    }
+}
@@ -0,0 +1,156 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.StrokeDocument;
+import com.developer.jonery.doodlz.StrokeGeometry;
+import com.developer.jonery.doodlz.TouchEventQueue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sequencia de eventos de toque gravada em arrays, usada como entrada dos
+ * benchmarks. generate cria gestos sinteticos com a mesma semente sempre dando o
+ * mesmo resultado: varios dedos ao mesmo tempo fazendo curvas a ~120 Hz, com um
+ * pouco de tremido e amostras pequenas que o filtro de tolerancia segura.
+ */
+public class GestureTrace {
+    //intervalo entre amostras de um touch panel de ~120 Hz
+    public static final int SAMPLE_INTERVAL_MS = 8;
+
+    private int[] types = new int[256];
+    private int[] pointerIds = new int[256];
+    private float[] xs = new float[256];
+    private float[] ys = new float[256];
+    private long[] times = new long[256];
+    private int size;
+
+    //strokes rodadas em que pointers dedos descem juntos, andam samplesPerStroke amostras e sobem
+    public static GestureTrace generate(long seed, int pointers, int strokes, int samplesPerStroke){
+        Random random = new Random(seed);
+        GestureTrace trace = new GestureTrace();
+        float[] centerX = new float[pointers];
+        float[] centerY = new float[pointers];
+        float[] radius = new float[pointers];
+        float[] speed = new float[pointers];
+        float[] phase = new float[pointers];
+        long time = 0;
+
+        for(int stroke = 0; stroke < strokes; stroke++){
+            for(int id = 0; id < pointers; id++){
+                centerX[id] = 100 + random.nextFloat() * 880;
+                centerY[id] = 100 + random.nextFloat() * 1700;
+                radius[id] = 40 + random.nextFloat() * 300;
+                //radianos por amostra, os mais lentos andam menos que a tolerancia as vezes
+                speed[id] = 0.01f + random.nextFloat() * 0.08f;
+                phase[id] = random.nextFloat() * 6.28f;
+                trace.add(TouchEventQueue.DOWN, id, x(centerX[id], radius[id], phase[id]),
+                        y(centerY[id], radius[id], phase[id]), time);
+            }
+
+            for(int sample = 1; sample <= samplesPerStroke; sample++){
+                time += SAMPLE_INTERVAL_MS;
+                for(int id = 0; id < pointers; id++){
+                    float angle = phase[id] + speed[id] * sample;
+                    float jitter = 1.5f;
+                    trace.add(TouchEventQueue.MOVE, id,
+                            x(centerX[id], radius[id], angle) + (random.nextFloat() - 0.5f) * jitter,
+                            y(centerY[id], radius[id], angle) + (random.nextFloat() - 0.5f) * jitter, time);
+                }
+            }
+
+            time += SAMPLE_INTERVAL_MS;
+            for(int id = 0; id < pointers; id++)
+                trace.add(TouchEventQueue.UP, id, 0, 0, time);
+            time += 200; //pausa entre os gestos
+        }
+        return trace;
+    }
+
+    //curva de Lissajous, parecida com rabiscos
+    private static float x(float center, float radius, float angle){
+        return center + radius * (float) Math.cos(angle);
+    }
+
+    private static float y(float center, float radius, float angle){
+        return center + radius * (float) Math.sin(2 * angle) / 2;
+    }
+
+    public void add(int type, int pointerId, float x, float y, long time){
+        if(size == types.length){
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            pointerIds = Arrays.copyOf(pointerIds, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        types[size] = type;
+        pointerIds[size] = pointerId;
+        xs[size] = x;
+        ys[size] = y;
+        times[size] = time;
+        size++;
+    }
+
+    //entrega o evento i
+    public void deliver(int i, TouchEventQueue.Consumer consumer){
+        consumer.onTouchEvent(types[i], pointerIds[i], xs[i], ys[i], times[i]);
+    }
+
+    //entrega todos os eventos em ordem
+    public void replay(TouchEventQueue.Consumer consumer){
+        for(int i = 0; i < size; i++)
+            deliver(i, consumer);
+    }
+
+    //passa os eventos pela geometria e guarda cada traco terminado no documento,
+    //como o touchEnded faz
+    public void addStrokesTo(final StrokeDocument document, float tolerance, final int color, final float width){
+        final StrokeGeometry geometry = new StrokeGeometry(tolerance, new StrokeGeometry.SegmentListener() {
+            @Override
+            public void onStrokeStart(int id, float x, float y) {
+            }
+
+            @Override
+            public void onSegment(int id, float[] segment) {
+            }
+        });
+        replay(new TouchEventQueue.Consumer() {
+            @Override
+            public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+                if(type == TouchEventQueue.DOWN)
+                    geometry.start(pointerId, x, y, time);
+                else if(type == TouchEventQueue.MOVE)
+                    geometry.addSample(pointerId, x, y, time);
+                else {
+                    document.addStroke(color, width, geometry.getPoints(pointerId));
+                    geometry.end(pointerId);
+                }
+            }
+        });
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int getType(int i){
+        return types[i];
+    }
+
+    public int getPointerId(int i){
+        return pointerIds[i];
+    }
+
+    public float getX(int i){
+        return xs[i];
+    }
+
+    public float getY(int i){
+        return ys[i];
+    }
+
+    public long getTime(int i){
+        return times[i];
+    }
+}
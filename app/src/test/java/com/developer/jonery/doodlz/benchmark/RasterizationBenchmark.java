@@ -0,0 +1,65 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.StrokeDocument;
+import com.developer.jonery.doodlz.StrokeRasterizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo pra rasterizar um documento inteiro com o StrokeRasterizer, numa tela do
+ * tamanho de um celular e numa miniatura, com linhas finas e grossas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterizationBenchmark {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int THUMBNAIL_SCALE = 8;
+
+    @Param({"5", "30"})
+    public float lineWidth;
+
+    private final StrokeDocument document = new StrokeDocument();
+    private StrokeRasterizer full;
+    private StrokeRasterizer thumbnail;
+
+    @Setup
+    public void setUp(){
+        document.clear();
+        GestureTrace.generate(5, 2, 50, 120).addStrokesTo(document, 10, 0xCC3366FF, lineWidth);
+
+        full = new StrokeRasterizer(WIDTH, HEIGHT);
+        thumbnail = new StrokeRasterizer(WIDTH / THUMBNAIL_SCALE, HEIGHT / THUMBNAIL_SCALE);
+        thumbnail.setTransform(1f / THUMBNAIL_SCALE, 0, 0);
+    }
+
+    @Benchmark
+    public int[] rasterizeFullSize(){
+        full.fill(0xFFFFFFFF);
+        full.drawDocument(document);
+        return full.getPixels();
+    }
+
+    @Benchmark
+    public int[] rasterizeThumbnail(){
+        thumbnail.fill(0xFFFFFFFF);
+        thumbnail.drawDocument(document);
+        return thumbnail.getPixels();
+    }
+}
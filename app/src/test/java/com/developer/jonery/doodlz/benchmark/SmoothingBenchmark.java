@@ -0,0 +1,91 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.PointBuffer;
+import com.developer.jonery.doodlz.PointerStateTable;
+import com.developer.jonery.doodlz.StrokeGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazao da suavizacao em pontos por milissegundo: o filtro mais quadTo ao vivo
+ * sobre as amostras cruas de um traco longo, e o replay dos pontos aceitos que o
+ * redraw do documento faz.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmoothingBenchmark {
+    private static final int SAMPLES = 4096;
+    private static final float TOUCH_TOLERANCE = 10;
+
+    private final float[] rawX = new float[SAMPLES];
+    private final float[] rawY = new float[SAMPLES];
+    private final long[] rawTime = new long[SAMPLES];
+    private float[] accepted; //pontos aceitos x/y do mesmo traco
+    private int acceptedCount;
+    private final float[] segment = new float[PointerStateTable.SEGMENT_SIZE];
+    private float sink;
+
+    private final StrokeGeometry.SegmentListener listener = new StrokeGeometry.SegmentListener() {
+        @Override
+        public void onStrokeStart(int id, float x, float y) {
+            sink += x;
+        }
+
+        @Override
+        public void onSegment(int id, float[] segment) {
+            sink += segment[2] + segment[4];
+        }
+    };
+    private final StrokeGeometry geometry = new StrokeGeometry(TOUCH_TOLERANCE, listener);
+
+    @Setup
+    public void setUp(){
+        //um dedo so, um traco com SAMPLES amostras
+        GestureTrace trace = GestureTrace.generate(7, 1, 1, SAMPLES - 1);
+        for(int i = 0; i < SAMPLES; i++){
+            rawX[i] = trace.getX(i);
+            rawY[i] = trace.getY(i);
+            rawTime[i] = trace.getTime(i);
+        }
+
+        liveSmoothing();
+        PointBuffer points = geometry.getPoints(0);
+        acceptedCount = points.getPointCount();
+        accepted = points.getCoords().clone();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float liveSmoothing(){
+        geometry.start(0, rawX[0], rawY[0], rawTime[0]);
+        for(int i = 1; i < SAMPLES; i++)
+            geometry.addSample(0, rawX[i], rawY[i], rawTime[i]);
+        geometry.end(0);
+        return sink;
+    }
+
+    //por ponto aceito seria mais justo, mas o numero de aceitos so e conhecido no setup;
+    //a conta fica por amostra crua pros dois benchmarks serem comparaveis
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float replaySmoothing(){
+        StrokeGeometry.replay(0, accepted, 0, acceptedCount, segment, listener);
+        return sink;
+    }
+}
@@ -0,0 +1,103 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.StrokeDocument;
+import com.developer.jonery.doodlz.StrokeIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo das consultas do StrokeIndex (um passo da borracha e um retangulo) em
+ * documentos grandes, contra olhar o retangulo de todos os tracos, que e o que
+ * tinha que ser feito sem o indice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeIndexBenchmark {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int POSITIONS = 1024;
+
+    @Param({"5000", "50000"})
+    public int strokes;
+
+    private final StrokeDocument document = new StrokeDocument();
+    private final StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+    private final float[] bounds = new float[4];
+    private int[] out;
+    //lugares onde as consultas acontecem, percorridos em ordem
+    private final float[] positions = new float[2 * POSITIONS];
+    private int next;
+
+    @Setup
+    public void setUp(){
+        document.clear();
+        GestureTrace.generate(17, 1, strokes, 30).addStrokesTo(document, 10, 0xFF000000, 5);
+        index.rebuild(document);
+        out = new int[strokes];
+
+        Random random = new Random(3);
+        for(int i = 0; i < POSITIONS; i++){
+            positions[2 * i] = random.nextFloat() * WIDTH;
+            positions[2 * i + 1] = random.nextFloat() * HEIGHT;
+        }
+    }
+
+    //um passo de 20 pixels da borracha de 16 pixels de raio
+    @Benchmark
+    public int eraserStep(){
+        int i = 2 * (next++ & (POSITIONS - 1));
+        float x = positions[i];
+        float y = positions[i + 1];
+        return index.queryPath(document, x, y, x + 20, y, 16, -1, out);
+    }
+
+    @Benchmark
+    public int queryRect(){
+        int i = 2 * (next++ & (POSITIONS - 1));
+        return index.query(positions[i], positions[i + 1], positions[i] + 100, positions[i + 1] + 100, -1, out);
+    }
+
+    //o mesmo retangulo sem indice
+    @Benchmark
+    public int linearScanRect(){
+        int i = 2 * (next++ & (POSITIONS - 1));
+        float left = positions[i];
+        float top = positions[i + 1];
+        int found = 0;
+        for(int stroke = 0; stroke < document.getStrokeCount(); stroke++){
+            document.getBounds(stroke, bounds);
+            float reach = document.getWidth(stroke) / 2 + 2;
+            if(bounds[0] - reach <= left + 100 && bounds[2] + reach >= left
+                    && bounds[1] - reach <= top + 100 && bounds[3] + reach >= top)
+                out[found++] = stroke;
+        }
+        return found;
+    }
+
+    //o que o touchEnded e o undo fazem no indice
+    @Benchmark
+    public int addAndRemoveLast(){
+        document.removeLastStroke();
+        index.removeLast();
+        document.restoreStroke();
+        index.add(document, document.getStrokeCount() - 1);
+        return index.getStrokeCount();
+    }
+}
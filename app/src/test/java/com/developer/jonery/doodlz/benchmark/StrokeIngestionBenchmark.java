@@ -0,0 +1,144 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.MotionPredictor;
+import com.developer.jonery.doodlz.StrokeGeometry;
+import com.developer.jonery.doodlz.TouchEventQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo por evento de toque do que o touchStarted/touchMoved/touchEnded fazem sem
+ * o Android: filtro e suavizacao do StrokeGeometry, sozinhos ou junto com a fila
+ * da thread de render e a previsao de movimento, com 1 a 10 dedos. A variante
+ * adaptiva usa a tolerancia e a simplificacao que a DoodleView usa.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeIngestionBenchmark {
+    private static final float TOUCH_TOLERANCE = 10;
+    //os mesmos valores da DoodleView
+    private static final float MIN_TOUCH_TOLERANCE = 3;
+    private static final float MAX_TOUCH_TOLERANCE = 16;
+    private static final float SIMPLIFY_TOLERANCE = 1;
+
+    @Param({"1", "2", "5", "10"})
+    public int pointers;
+
+    private GestureTrace trace;
+    private int cursor;
+    private float sink; //soma dos fins dos segmentos, pro JIT nao jogar o trabalho fora
+
+    private final StrokeGeometry.SegmentListener listener = new StrokeGeometry.SegmentListener() {
+        @Override
+        public void onStrokeStart(int id, float x, float y) {
+            sink += x;
+        }
+
+        @Override
+        public void onSegment(int id, float[] segment) {
+            sink += segment[4];
+        }
+    };
+    private final StrokeGeometry geometry = new StrokeGeometry(TOUCH_TOLERANCE, listener);
+    private final StrokeGeometry adaptive = new StrokeGeometry(MIN_TOUCH_TOLERANCE, MAX_TOUCH_TOLERANCE,
+            SIMPLIFY_TOLERANCE, listener);
+
+    //o mesmo que o touchConsumer da DoodleView faz com cada evento
+    private final MotionPredictor predictor = new MotionPredictor(16, 48);
+    private final float[] predicted = new float[2];
+    private final TouchEventQueue queue = new TouchEventQueue(64);
+    private final TouchEventQueue.Consumer consumer = new TouchEventQueue.Consumer() {
+        @Override
+        public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+            if(type == TouchEventQueue.DOWN){
+                predictor.start(pointerId, x, y, time);
+                geometry.start(pointerId, x, y, time);
+            }
+            else if(type == TouchEventQueue.UP){
+                predictor.end(pointerId);
+                geometry.end(pointerId);
+            }
+            else if(geometry.isActive(pointerId)){
+                predictor.addSample(pointerId, x, y, time);
+                geometry.addSample(pointerId, x, y, time);
+                if(predictor.predict(pointerId, time, predicted))
+                    sink += predicted[0];
+            }
+        }
+    };
+
+    //so a geometria
+    private final TouchEventQueue.Consumer geometryOnly = new TouchEventQueue.Consumer() {
+        @Override
+        public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+            if(type == TouchEventQueue.DOWN)
+                geometry.start(pointerId, x, y, time);
+            else if(type == TouchEventQueue.UP)
+                geometry.end(pointerId);
+            else
+                geometry.addSample(pointerId, x, y, time);
+        }
+    };
+
+    //tolerancia adaptativa e simplificacao dos pontos guardados
+    private final TouchEventQueue.Consumer adaptiveOnly = new TouchEventQueue.Consumer() {
+        @Override
+        public void onTouchEvent(int type, int pointerId, float x, float y, long time) {
+            if(type == TouchEventQueue.DOWN)
+                adaptive.start(pointerId, x, y, time);
+            else if(type == TouchEventQueue.UP)
+                adaptive.end(pointerId);
+            else
+                adaptive.addSample(pointerId, x, y, time);
+        }
+    };
+
+    @Setup
+    public void setUp(){
+        trace = GestureTrace.generate(42, pointers, 20, 240);
+        cursor = 0;
+    }
+
+    @Benchmark
+    public float geometryPerEvent(){
+        trace.deliver(cursor, geometryOnly);
+        if(++cursor == trace.size())
+            cursor = 0;
+        return sink;
+    }
+
+    @Benchmark
+    public float adaptiveGeometryPerEvent(){
+        trace.deliver(cursor, adaptiveOnly);
+        if(++cursor == trace.size())
+            cursor = 0;
+        return sink;
+    }
+
+    //caminho do modo SURFACE: evento na fila, fila esvaziada, geometria e previsao
+    @Benchmark
+    public float queuedWithPredictionPerEvent(){
+        queue.offer(trace.getType(cursor), trace.getPointerId(cursor), trace.getX(cursor),
+                trace.getY(cursor), trace.getTime(cursor));
+        queue.drain(consumer);
+        if(++cursor == trace.size())
+            cursor = 0;
+        return sink;
+    }
+}
@@ -0,0 +1,156 @@
+package com.developer.jonery.doodlz.benchmark;
+
+import com.developer.jonery.doodlz.LayerStack;
+import com.developer.jonery.doodlz.StrokeDocument;
+import com.developer.jonery.doodlz.StrokeRasterizer;
+import com.developer.jonery.doodlz.TileDownsampler;
+import com.developer.jonery.doodlz.TiledCanvas;
+import com.developer.jonery.doodlz.Viewport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo de redesenhar uma tela de 1280x800 sobre um desenho rabiscado de 5120x3200
+ * com zoom, sem Android: lendo os pixels do nivel da piramide que a Viewport
+ * escolhe, um por pixel da tela, ou lendo o desenho em tamanho real e fazendo a
+ * media de todos os pixels que caem em cada pixel da tela, que e o que desenhar os
+ * tiles grandes reduzidos custa. Mede tambem refazer so os quadrantes de cima de um
+ * tile que mudou, como a TilePyramid faz, contra refazer a piramide inteira.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoomedRedrawBenchmark {
+    private static final int WIDTH = 5120;
+    private static final int HEIGHT = 3200;
+    private static final int VIEW_WIDTH = 1280;
+    private static final int VIEW_HEIGHT = 800;
+    private static final int LEVELS = LayerStack.PYRAMID_LEVELS;
+    private static final int TILE_SIZE = TiledCanvas.TILE_SIZE;
+    private static final int HALF = TILE_SIZE / 2;
+    //tile do nivel 0 que muda a cada traco, no meio dos rabiscos
+    private static final int DIRTY_COLUMN = 5;
+    private static final int DIRTY_ROW = 3;
+
+    //o nivel 0 e o desenho, cada um dos outros tem metade do tamanho do anterior
+    private final int[][] levels = new int[LEVELS + 1][];
+    private final int[] widths = new int[LEVELS + 1];
+    private final int[] heights = new int[LEVELS + 1];
+    private final int[] screen = new int[VIEW_WIDTH * VIEW_HEIGHT];
+
+    //escala da tela, com o nivel que a Viewport escolhe pra ela
+    @State(Scope.Thread)
+    public static class View {
+        @Param({"1", "0.5", "0.25"})
+        public float scale;
+
+        int level;
+        //pixels do nivel por pixel da tela
+        float step;
+        //lado do quadrado de pixels do desenho que cai em cada pixel da tela, e o
+        //deslocamento que divide pela area dele
+        int box;
+        int shift;
+
+        @Setup
+        public void setUp(){
+            Viewport viewport = new Viewport();
+            viewport.zoom(scale, 0, 0);
+            level = viewport.getLevel(LEVELS);
+            step = 1 / (scale * (1 << level));
+            box = Math.round(1 / scale);
+            shift = 2 * Integer.numberOfTrailingZeros(box);
+        }
+    }
+
+    @Setup
+    public void setUp(){
+        widths[0] = WIDTH;
+        heights[0] = HEIGHT;
+        levels[0] = new int[WIDTH * HEIGHT];
+        StrokeRasterizer rasterizer = new StrokeRasterizer(levels[0], WIDTH, HEIGHT);
+        rasterizer.fill(0xFFFFFFFF);
+        StrokeDocument document = new StrokeDocument();
+        GestureTrace.generate(25, 5, 40, 120).addStrokesTo(document, 10, 0xFF000000, 5);
+        rasterizer.drawDocument(document);
+
+        for(int level = 1; level <= LEVELS; level++){
+            widths[level] = widths[level - 1] / 2;
+            heights[level] = heights[level - 1] / 2;
+            levels[level] = new int[widths[level] * heights[level]];
+        }
+        rebuildPyramid();
+    }
+
+    @Benchmark
+    public int redrawFromPyramid(View view){
+        int[] pixels = levels[view.level];
+        int stride = widths[view.level];
+        int i = 0;
+        for(int y = 0; y < VIEW_HEIGHT; y++){
+            int row = (int) (y * view.step) * stride;
+            for(int x = 0; x < VIEW_WIDTH; x++)
+                screen[i++] = pixels[row + (int) (x * view.step)];
+        }
+        return screen[screen.length - 1];
+    }
+
+    @Benchmark
+    public int redrawFromFullSize(View view){
+        int[] pixels = levels[0];
+        int box = view.box;
+        int shift = view.shift;
+        int i = 0;
+        for(int y = 0; y < VIEW_HEIGHT; y++)
+            for(int x = 0; x < VIEW_WIDTH; x++){
+                int redBlue = 0, alphaGreen = 0;
+                for(int by = 0; by < box; by++){
+                    int source = (y * box + by) * WIDTH + x * box;
+                    for(int bx = 0; bx < box; bx++){
+                        int color = pixels[source + bx];
+                        redBlue += color & 0x00FF00FF;
+                        alphaGreen += color >>> 8 & 0x00FF00FF;
+                    }
+                }
+                screen[i++] = (alphaGreen >>> shift & 0x00FF00FF) << 8 | (redBlue >>> shift & 0x00FF00FF);
+            }
+        return screen[screen.length - 1];
+    }
+
+    //em cada nivel refaz o quadrante de 128x128 que fica em cima do tile que mudou,
+    //a partir do tile de 256x256 do nivel de baixo
+    @Benchmark
+    public int refreshDirtyTile(){
+        for(int level = 1; level <= LEVELS; level++){
+            int column = DIRTY_COLUMN >> (level - 1);
+            int row = DIRTY_ROW >> (level - 1);
+            int below = widths[level - 1];
+            TileDownsampler.halve(levels[level - 1], row * TILE_SIZE * below + column * TILE_SIZE, below,
+                    levels[level], row * HALF * widths[level] + column * HALF, widths[level], HALF, HALF);
+        }
+        return levels[LEVELS][0];
+    }
+
+    @Benchmark
+    public int rebuildPyramid(){
+        for(int level = 1; level <= LEVELS; level++)
+            TileDownsampler.halve(levels[level - 1], 0, widths[level - 1], levels[level], 0, widths[level],
+                    widths[level], heights[level]);
+        return levels[LEVELS][0];
+    }
+}